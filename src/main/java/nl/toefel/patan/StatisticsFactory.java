@@ -19,7 +19,27 @@
 package nl.toefel.patan;
 
 import nl.toefel.patan.api.Statistics;
+import nl.toefel.patan.asyncimpl.AsyncStatistics;
+import nl.toefel.patan.asyncimpl.OverflowPolicy;
+import nl.toefel.patan.concurrentimpl.ConcurrentStatistics;
+import nl.toefel.patan.mappedimpl.MappedStatistics;
+import nl.toefel.patan.mappedimpl.MappedStatisticsReader;
+import nl.toefel.patan.singlethreadedimpl.CardinalityLimit;
+import nl.toefel.patan.singlethreadedimpl.DenseStatistics;
+import nl.toefel.patan.singlethreadedimpl.DistributionAccumulator;
+import nl.toefel.patan.singlethreadedimpl.DurationAccumulator;
+import nl.toefel.patan.singlethreadedimpl.HistogramAccumulator;
+import nl.toefel.patan.singlethreadedimpl.HistogramLayout;
+import nl.toefel.patan.singlethreadedimpl.KllAccumulator;
+import nl.toefel.patan.singlethreadedimpl.PrefixedAccumulatorFactory;
+import nl.toefel.patan.singlethreadedimpl.SampleAccumulatorFactory;
 import nl.toefel.patan.singlethreadedimpl.SingleThreadedStatisticsFacade;
+import nl.toefel.patan.threadlocalimpl.ThreadLocalStatistics;
+import nl.toefel.patan.windowedimpl.RateStatistics;
+import nl.toefel.patan.windowedimpl.WindowedStatistics;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Factory for statistics instances. All clients should use this factory to create {@link Statistics} instances.
@@ -32,11 +52,172 @@ public final class StatisticsFactory {
 
     /**
      * Creates a thread-safe {@link Statistics} implementation that is unrelated to all other instances of statistics.
+     * The thread-safe statistics are also {@link nl.toefel.patan.api.HierarchicalStatistics} and
+     * {@link nl.toefel.patan.api.IncrementalStatistics}.
      *
      * @return a new thread-safe Statistics instance
      */
     public static Statistics createThreadsafeStatistics () {
-        return new SynchronizedStatistics(new SingleThreadedStatisticsFacade());
+        return new SynchronizedHierarchicalIncrementalStatistics(new SingleThreadedStatisticsFacade());
+    }
+
+    /**
+     * Creates a thread-safe {@link Statistics} implementation that keeps durations in the accumulators of the given
+     * factory. Use {@link HistogramAccumulator#factory(HistogramLayout)} to be able to read percentiles of durations.
+     *
+     * @param durationAccumulators creates the accumulator of every new duration name
+     * @return a new thread-safe Statistics instance
+     */
+    public static Statistics createThreadsafeStatistics(SampleAccumulatorFactory durationAccumulators) {
+        return new SynchronizedHierarchicalIncrementalStatistics(new SingleThreadedStatisticsFacade(durationAccumulators));
+    }
+
+    /**
+     * Creates a thread-safe {@link Statistics} implementation that keeps samples and durations in the accumulators of
+     * the given factories. Use {@link PrefixedAccumulatorFactory} to choose the accumulator per name, for example a
+     * {@link KllAccumulator} for samples with an unknown range.
+     *
+     * @param sampleAccumulators creates the accumulator of every new sample name
+     * @param durationAccumulators creates the accumulator of every new duration name
+     * @return a new thread-safe Statistics instance
+     */
+    public static Statistics createThreadsafeStatistics(SampleAccumulatorFactory sampleAccumulators, SampleAccumulatorFactory durationAccumulators) {
+        return new SynchronizedHierarchicalIncrementalStatistics(new SingleThreadedStatisticsFacade(sampleAccumulators, durationAccumulators));
+    }
+
+    /**
+     * Creates a thread-safe {@link Statistics} implementation that keeps at most the given number of names of each kind,
+     * values of other names are recorded under the overflow name of the limit.
+     *
+     * @param limit limits the number of names of each kind
+     * @return a new thread-safe Statistics instance
+     */
+    public static Statistics createThreadsafeStatistics(CardinalityLimit limit) {
+        return new SynchronizedHierarchicalIncrementalStatistics(new SingleThreadedStatisticsFacade(DistributionAccumulator.FACTORY, DurationAccumulator.FACTORY, limit));
+    }
+
+    /**
+     * Creates a thread-safe {@link Statistics} implementation that does not use a global lock. Recording under different
+     * names never contends, this scales better than {@link #createThreadsafeStatistics()} when many threads record.
+     *
+     * @return a new thread-safe Statistics instance
+     */
+    public static Statistics createConcurrentStatistics() {
+        return new ConcurrentStatistics();
+    }
+
+    /**
+     * Creates a thread-safe {@link Statistics} implementation that does not use a global lock and keeps durations in the
+     * accumulators of the given factory, see {@link #createThreadsafeStatistics(SampleAccumulatorFactory)}.
+     *
+     * @param durationAccumulators creates the accumulators of every new duration name
+     * @return a new thread-safe Statistics instance
+     */
+    public static Statistics createConcurrentStatistics(SampleAccumulatorFactory durationAccumulators) {
+        return new ConcurrentStatistics(durationAccumulators);
+    }
+
+    /**
+     * Creates a thread-safe {@link Statistics} implementation that does not use a global lock and keeps samples and
+     * durations in the accumulators of the given factories, see
+     * {@link #createThreadsafeStatistics(SampleAccumulatorFactory, SampleAccumulatorFactory)}.
+     *
+     * @param sampleAccumulators creates the accumulators of every new sample name
+     * @param durationAccumulators creates the accumulators of every new duration name
+     * @return a new thread-safe Statistics instance
+     */
+    public static Statistics createConcurrentStatistics(SampleAccumulatorFactory sampleAccumulators, SampleAccumulatorFactory durationAccumulators) {
+        return new ConcurrentStatistics(sampleAccumulators, durationAccumulators);
+    }
+
+    /**
+     * Creates a thread-safe {@link Statistics} implementation that does not use a global lock and keeps at most the given
+     * number of names of each kind, see {@link #createThreadsafeStatistics(CardinalityLimit)}.
+     *
+     * @param limit limits the number of names of each kind
+     * @return a new thread-safe Statistics instance
+     */
+    public static Statistics createConcurrentStatistics(CardinalityLimit limit) {
+        return new ConcurrentStatistics(DistributionAccumulator.FACTORY, DurationAccumulator.FACTORY, limit);
+    }
+
+    /**
+     * Creates a thread-safe {@link Statistics} implementation where every thread records into its own private stores,
+     * which are merged when reading. Recording threads never share memory, reading is more expensive than with the other
+     * implementations. Meant for many threads that record at a high rate.
+     *
+     * @return a new thread-safe Statistics instance
+     */
+    public static Statistics createThreadLocalStatistics() {
+        return new ThreadLocalStatistics();
+    }
+
+    /**
+     * Creates a thread-safe {@link Statistics} implementation where recording only writes into a ring buffer that is
+     * applied by a background thread. Uses a buffer of 65536 records and falls back to recording synchronously when the
+     * buffer is full, so no records are lost.
+     *
+     * @return a new thread-safe Statistics instance, call {@link AsyncStatistics#shutdown()} when done with it
+     */
+    public static AsyncStatistics createAsyncStatistics() {
+        return createAsyncStatistics(65536, OverflowPolicy.SYNCHRONOUS);
+    }
+
+    /**
+     * Creates a thread-safe {@link Statistics} implementation where recording only writes into a ring buffer that is
+     * applied by a background thread.
+     *
+     * @param bufferSize the minimum number of records that can be buffered, rounded up to a power of two
+     * @param overflowPolicy what recording threads do when the buffer is full
+     * @return a new thread-safe Statistics instance, call {@link AsyncStatistics#shutdown()} when done with it
+     */
+    public static AsyncStatistics createAsyncStatistics(int bufferSize, OverflowPolicy overflowPolicy) {
+        return new AsyncStatistics(bufferSize, overflowPolicy);
+    }
+
+    /**
+     * Creates thread-safe statistics that also keep the values of the last 15 minutes in buckets of 5 seconds, see
+     * {@link WindowedStatistics#findDuration(String, long)}. Windows can be read by any number of consumers without
+     * resetting.
+     *
+     * @return a new thread-safe WindowedStatistics instance
+     */
+    public static WindowedStatistics createWindowedStatistics() {
+        return new WindowedStatistics(createConcurrentStatistics());
+    }
+
+    /**
+     * Creates thread-safe statistics that also track the moving 1, 5 and 15 minute rates of every occurrence, see
+     * {@link RateStatistics#findRates(String)}. Snapshots contain the rates alongside the counters.
+     *
+     * @return a new thread-safe RateStatistics instance
+     */
+    public static RateStatistics createRateStatistics() {
+        return new RateStatistics(createConcurrentStatistics());
+    }
+
+    /**
+     * Creates rate statistics that keep at most the given number of names of each kind, the rates of rejected names are
+     * kept under the same overflow name as their counters.
+     *
+     * @param limit limits the number of names of each kind and the number of names with rates
+     * @return a new thread-safe RateStatistics instance
+     */
+    public static RateStatistics createRateStatistics(CardinalityLimit limit) {
+        return new RateStatistics(createConcurrentStatistics(limit), limit);
+    }
+
+    /**
+     * Creates thread-safe statistics that keep their values in a memory-mapped file, which other processes can read
+     * with a {@link MappedStatisticsReader} while this process is running or after it has died.
+     *
+     * @param file the file to write to, created, or replaced if it exists
+     * @param slotCount maximum number of names of all kinds together, records under new names are dropped beyond that
+     * @return a new thread-safe MappedStatistics instance
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public static MappedStatistics createMappedStatistics(File file, int slotCount) throws IOException {
+        return new MappedStatistics(file, slotCount);
     }
 
     /**
@@ -48,4 +229,39 @@ public final class StatisticsFactory {
     public static Statistics createSingleThreadedStatistics() {
         return new SingleThreadedStatisticsFacade();
     }
+
+    /**
+     * Creates a {@link Statistics} instance that is not safe to use in a multi-threaded environment and keeps the values
+     * of all names in primitive arrays indexed by a dense id per name. Record by id on hot paths, see
+     * {@link DenseStatistics#occurrenceId(String)}.
+     *
+     * @return a new non-thread-safe instance
+     */
+    public static DenseStatistics createDenseStatistics() {
+        return new DenseStatistics();
+    }
+
+    /**
+     * Creates a {@link Statistics} instance that is not safe to use in a multi-threaded environment and keeps durations
+     * in the accumulators of the given factory, see {@link #createThreadsafeStatistics(SampleAccumulatorFactory)}.
+     *
+     * @param durationAccumulators creates the accumulator of every new duration name
+     * @return a new non-thread-safe instance
+     */
+    public static Statistics createSingleThreadedStatistics(SampleAccumulatorFactory durationAccumulators) {
+        return new SingleThreadedStatisticsFacade(durationAccumulators);
+    }
+
+    /**
+     * Creates a {@link Statistics} instance that is not safe to use in a multi-threaded environment and keeps samples and
+     * durations in the accumulators of the given factories, see
+     * {@link #createThreadsafeStatistics(SampleAccumulatorFactory, SampleAccumulatorFactory)}.
+     *
+     * @param sampleAccumulators creates the accumulator of every new sample name
+     * @param durationAccumulators creates the accumulator of every new duration name
+     * @return a new non-thread-safe instance
+     */
+    public static Statistics createSingleThreadedStatistics(SampleAccumulatorFactory sampleAccumulators, SampleAccumulatorFactory durationAccumulators) {
+        return new SingleThreadedStatisticsFacade(sampleAccumulators, durationAccumulators);
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan;
+
+import nl.toefel.patan.api.HierarchicalStatistics;
+import nl.toefel.patan.api.Snapshot;
+
+/**
+ * {@link SynchronizedStatistics} of a {@link HierarchicalStatistics}, that also guards the methods with a prefix.
+ */
+public class SynchronizedHierarchicalStatistics extends SynchronizedStatistics implements HierarchicalStatistics {
+    private final HierarchicalStatistics hierarchical;
+
+    /**
+     * @param statistics the statistics to guard, cannot be null
+     */
+    public SynchronizedHierarchicalStatistics(HierarchicalStatistics statistics) {
+        super(statistics);
+        this.hierarchical = statistics;
+    }
+
+    @Override
+    public Snapshot getSnapshot(String prefix) {
+        try {
+            rwLock.readLock().lock();
+            return hierarchical.getSnapshot(prefix);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Snapshot getSnapshotAndReset(String prefix) {
+        try {
+            rwLock.writeLock().lock();
+            return hierarchical.getSnapshotAndReset(prefix);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void reset(String prefix) {
+        try {
+            rwLock.writeLock().lock();
+            hierarchical.reset(prefix);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+}
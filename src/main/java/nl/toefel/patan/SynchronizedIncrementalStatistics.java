@@ -0,0 +1,64 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan;
+
+import nl.toefel.patan.api.IncrementalSnapshot;
+import nl.toefel.patan.api.IncrementalStatistics;
+import nl.toefel.patan.api.SnapshotToken;
+
+/**
+ * {@link SynchronizedStatistics} of an {@link IncrementalStatistics}, that also guards the incremental snapshots.
+ */
+public class SynchronizedIncrementalStatistics extends SynchronizedStatistics implements IncrementalStatistics {
+    private final IncrementalStatistics incremental;
+
+    /**
+     * @param statistics the statistics to guard, cannot be null
+     */
+    public SynchronizedIncrementalStatistics(IncrementalStatistics statistics) {
+        super(statistics);
+        this.incremental = statistics;
+    }
+
+    /**
+     * Holds the write lock, taking a token starts a new epoch in the guarded statistics.
+     */
+    @Override
+    public IncrementalSnapshot getIncrementalSnapshot() {
+        try {
+            rwLock.writeLock().lock();
+            return incremental.getIncrementalSnapshot();
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Holds the write lock, taking a token starts a new epoch in the guarded statistics.
+     */
+    @Override
+    public IncrementalSnapshot getChangedSince(SnapshotToken token) {
+        try {
+            rwLock.writeLock().lock();
+            return incremental.getChangedSince(token);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+}
@@ -19,21 +19,40 @@
 package nl.toefel.patan;
 
 import nl.toefel.patan.api.*;
+import nl.toefel.patan.singlethreadedimpl.DetachedSnapshot;
+import nl.toefel.patan.singlethreadedimpl.OutcomeTimer;
+import nl.toefel.patan.singlethreadedimpl.TimerCache;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class SynchronizedStatistics implements Statistics {
     private final Statistics statistics;
 
-    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+    final ReadWriteLock rwLock = new ReentrantReadWriteLock();
 
+    /** the same instance as statistics when it supports detaching generations, otherwise null */
+    private final GenerationalStatistics generational;
+
+    private final TimerCache timerCache = new TimerCache(this);
+
+    /**
+     * When the given statistics is a {@link GenerationalStatistics}, the xxxSnapshotAndReset() methods only hold the write
+     * lock to detach the current generation, which takes constant time. Building the snapshot happens outside the lock.
+     * Use a {@link SynchronizedHierarchicalStatistics} to guard a {@link HierarchicalStatistics} and a
+     * {@link SynchronizedIncrementalStatistics} to guard an {@link IncrementalStatistics}.
+     *
+     * @param statistics the statistics to guard, cannot be null
+     */
     public SynchronizedStatistics(Statistics statistics) {
         this.statistics = statistics;
         if (this.statistics == null) {
             throw new IllegalArgumentException("statistics cannot be null");
         }
+        this.generational = statistics instanceof GenerationalStatistics ? (GenerationalStatistics) statistics : null;
     }
 
     @Override
@@ -44,29 +63,14 @@ public class SynchronizedStatistics implements Statistics {
 
     @Override
 	public void recordElapsedTime(final String eventName, final Runnable runnable) {
-    	// don't hold lock while running, it might block long and is not needed
-		Stopwatch stopwatch = startStopwatch();
-		try {
-			runnable.run();
-			recordElapsedTime(eventName + ".ok", stopwatch);
-		} catch (RuntimeException e) {
-			recordElapsedTime(eventName + ".failed", stopwatch);
-			throw e;
-		}
+    	// don't hold lock while running, it might block long and is not needed. The timer only locks while recording
+		timerCache.timer(eventName).recordElapsedTime(runnable);
 	}
 
     @Override
 	public <T> T recordElapsedTime(final String eventName, final TimedTask<T> runnable) {
-    	// don't hold lock while running, it might block long and is not needed
-		Stopwatch stopwatch = startStopwatch();
-		try {
-			T val = runnable.get();
-			recordElapsedTime(eventName + ".ok", stopwatch);
-			return val;
-		} catch (RuntimeException e) {
-			recordElapsedTime(eventName + ".failed", stopwatch);
-			throw e;
-		}
+    	// don't hold lock while running, it might block long and is not needed. The timer only locks while recording
+		return timerCache.timer(eventName).recordElapsedTime(runnable);
 	}
 
 
@@ -80,6 +84,38 @@ public class SynchronizedStatistics implements Statistics {
         }
     }
 
+    @Override
+    public long recordElapsedNanos(String eventName, long startNanos) {
+        try {
+            rwLock.writeLock().lock();
+            return statistics.recordElapsedNanos(eventName, startNanos);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Timer timer(final String eventName) {
+        final Timer timer;
+        try {
+            rwLock.writeLock().lock(); // resolving a handle may add the name, like it does in a DenseStatistics
+            timer = statistics.timer(eventName);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+        return new OutcomeTimer(this, eventName) {
+            @Override
+            public double recordElapsedTime(Stopwatch stopwatch) {
+                try {
+                    rwLock.writeLock().lock();
+                    return timer.recordElapsedTime(stopwatch);
+                } finally {
+                    rwLock.writeLock().unlock();
+                }
+            }
+        };
+    }
+
     @Override
     public StatisticalDistribution findDuration(final String name) {
         try {
@@ -102,12 +138,22 @@ public class SynchronizedStatistics implements Statistics {
 
     @Override
     public Map<String, StatisticalDistribution> getAllDurationsSnapshotAndReset() {
+        if (generational == null) {
+            try {
+                rwLock.writeLock().lock();
+                return statistics.getAllDurationsSnapshotAndReset();
+            } finally {
+                rwLock.writeLock().unlock();
+            }
+        }
+        Generation<SortedMap<String, StatisticalDistribution>> detached;
         try {
             rwLock.writeLock().lock();
-            return statistics.getAllDurationsSnapshotAndReset();
+            detached = generational.detachDurations();
         } finally {
             rwLock.writeLock().unlock();
         }
+        return detached.toSnapshot();
     }
 
     @Override
@@ -130,6 +176,33 @@ public class SynchronizedStatistics implements Statistics {
         }
     }
 
+    @Override
+    public Counter counter(String eventName) {
+        final Counter counter;
+        try {
+            rwLock.writeLock().lock();
+            counter = statistics.counter(eventName);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+        return new Counter() {
+            @Override
+            public void increment() {
+                increment(1L);
+            }
+
+            @Override
+            public void increment(long timesOccurred) {
+                try {
+                    rwLock.writeLock().lock();
+                    counter.increment(timesOccurred);
+                } finally {
+                    rwLock.writeLock().unlock();
+                }
+            }
+        };
+    }
+
     @Override
     public StatisticalDistribution findSampleDistribution(String eventName) {
         try {
@@ -152,12 +225,22 @@ public class SynchronizedStatistics implements Statistics {
 
     @Override
     public Map<String, StatisticalDistribution> getAllSamplesSnapshotAndReset() {
+        if (generational == null) {
+            try {
+                rwLock.writeLock().lock();
+                return statistics.getAllSamplesSnapshotAndReset();
+            } finally {
+                rwLock.writeLock().unlock();
+            }
+        }
+        Generation<SortedMap<String, StatisticalDistribution>> detached;
         try {
             rwLock.writeLock().lock();
-            return statistics.getAllSamplesSnapshotAndReset();
+            detached = generational.detachSamples();
         } finally {
             rwLock.writeLock().unlock();
         }
+        return detached.toSnapshot();
     }
 
     @Override
@@ -182,12 +265,22 @@ public class SynchronizedStatistics implements Statistics {
 
     @Override
     public Map<String, Long> getAllOccurrencesSnapshotAndReset() {
+        if (generational == null) {
+            try {
+                rwLock.writeLock().lock();
+                return statistics.getAllOccurrencesSnapshotAndReset();
+            } finally {
+                rwLock.writeLock().unlock();
+            }
+        }
+        Generation<SortedMap<String, Long>> detached;
         try {
             rwLock.writeLock().lock();
-            return statistics.getAllOccurrencesSnapshotAndReset();
+            detached = generational.detachOccurrences();
         } finally {
             rwLock.writeLock().unlock();
         }
+        return detached.toSnapshot();
     }
 
     @Override
@@ -210,6 +303,88 @@ public class SynchronizedStatistics implements Statistics {
         }
     }
 
+    @Override
+    public SampleRecorder sampleRecorder(String eventName) {
+        final SampleRecorder recorder;
+        try {
+            rwLock.writeLock().lock();
+            recorder = statistics.sampleRecorder(eventName);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+        return new SampleRecorder() {
+            @Override
+            public void record(double value) {
+                try {
+                    rwLock.writeLock().lock();
+                    recorder.record(value);
+                } finally {
+                    rwLock.writeLock().unlock();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void addDistinct(String name, long value) {
+        try {
+            rwLock.writeLock().lock();
+            statistics.addDistinct(name, value);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addDistinct(String name, String value) {
+        try {
+            rwLock.writeLock().lock();
+            statistics.addDistinct(name, value);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public DistinctCount findDistinctCount(String name) {
+        try {
+            rwLock.readLock().lock();
+            return statistics.findDistinctCount(name);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, DistinctCount> getAllDistinctCountsSnapshot() {
+        try {
+            rwLock.readLock().lock();
+            return statistics.getAllDistinctCountsSnapshot();
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, DistinctCount> getAllDistinctCountsSnapshotAndReset() {
+        if (generational == null) {
+            try {
+                rwLock.writeLock().lock();
+                return statistics.getAllDistinctCountsSnapshotAndReset();
+            } finally {
+                rwLock.writeLock().unlock();
+            }
+        }
+        Generation<SortedMap<String, DistinctCount>> detached;
+        try {
+            rwLock.writeLock().lock();
+            detached = generational.detachDistinctCounts();
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+        return detached.toSnapshot();
+    }
+
     @Override
     public Snapshot getSnapshot() {
         try {
@@ -222,11 +397,28 @@ public class SynchronizedStatistics implements Statistics {
 
     @Override
     public Snapshot getSnapshotAndReset() {
+        if (generational == null) {
+            try {
+                rwLock.writeLock().lock();
+                return statistics.getSnapshotAndReset();
+            } finally {
+                rwLock.writeLock().unlock();
+            }
+        }
+        Generation<SortedMap<String, StatisticalDistribution>> samples;
+        Generation<SortedMap<String, Long>> occurrences;
+        Generation<SortedMap<String, StatisticalDistribution>> durations;
+        Generation<SortedMap<String, DistinctCount>> distinctCounts;
         try {
             rwLock.writeLock().lock();
-            return statistics.getSnapshotAndReset();
+            samples = generational.detachSamples();
+            occurrences = generational.detachOccurrences();
+            durations = generational.detachDurations();
+            distinctCounts = generational.detachDistinctCounts();
         } finally {
             rwLock.writeLock().unlock();
         }
+        return new DetachedSnapshot(samples.toSnapshot(), occurrences.toSnapshot(), durations.toSnapshot(),
+                Collections.<String, MovingRates>emptyMap(), distinctCounts.toSnapshot());
     }
 }
\ No newline at end of file
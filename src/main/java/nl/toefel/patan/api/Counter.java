@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.api;
+
+/**
+ * Handle to a single occurrence counter, obtained by {@link OccurrenceStore#counter(String)}. The name is resolved once,
+ * incrementing writes straight into the counter. Use handles in hot loops instead of {@link OccurrenceStore#addOccurrence(String)}.
+ * <p>
+ * A handle stays valid when the store is reset, increments after a reset are counted from zero again.
+ */
+public interface Counter {
+
+	/**
+	 * Adds a single occurrence, equivalent to {@link OccurrenceStore#addOccurrence(String)}.
+	 */
+	void increment();
+
+	/**
+	 * Adds multiple occurrences, equivalent to {@link OccurrenceStore#addOccurrences(String, long)}.
+	 *
+	 * @param timesOccurred times the event occurred. can be negative but it is strongly discouraged.
+	 */
+	void increment(long timesOccurred);
+}
@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.api;
+
+/**
+ * Estimated number of distinct values recorded under a name, for example the number of unique users that logged in.
+ * The values themselves are not kept, the estimate has a standard error of about 1.6%.
+ */
+public interface DistinctCount {
+
+	/**
+	 * @return the estimated number of distinct values
+	 */
+	long getEstimate();
+
+	/**
+	 * Creates a new distinct count of the values of this and the other count combined, values recorded in both are
+	 * counted once. Used to combine counts that were recorded separately, for example in different snapshots.
+	 *
+	 * @param other the count to merge with this one
+	 * @return new distinct count
+	 */
+	DistinctCount newMergedWith(DistinctCount other);
+}
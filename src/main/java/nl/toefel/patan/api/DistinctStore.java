@@ -0,0 +1,60 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.api;
+
+import java.util.Map;
+
+/**
+ * Counts the distinct values seen per name, like the unique users or tenant ids that made a request, without keeping
+ * the values. Memory per name is a few kilobytes regardless of the number of distinct values.
+ */
+public interface DistinctStore extends Resettable {
+
+	/**
+	 * Records a value under the given name, values that were recorded before under the same name do not change the count.
+	 *
+	 * @param name name to count the distinct values of
+	 * @param value the value, for example a user id
+	 */
+	void addDistinct(String name, long value);
+
+	/**
+	 * Records a value under the given name, values that were recorded before under the same name do not change the count.
+	 *
+	 * @param name name to count the distinct values of
+	 * @param value the value, for example a tenant id, cannot be null
+	 */
+	void addDistinct(String name, String value);
+
+	/**
+	 * @param name the name to look up
+	 * @return the distinct count of the name, an estimate of zero if nothing was recorded under the name
+	 */
+	DistinctCount findDistinctCount(String name);
+
+	/**
+	 * @return a copy of the distinct counts by name that is detached from the implementation
+	 */
+	Map<String, DistinctCount> getAllDistinctCountsSnapshot();
+
+	/**
+	 * Returns a snapshot of all distinct counts and clears the internal state.
+	 *
+	 * @return a copy of the distinct counts by name that is detached from the implementation
+	 */
+	Map<String, DistinctCount> getAllDistinctCountsSnapshotAndReset();
+}
@@ -41,6 +41,31 @@ public interface DurationStore extends Resettable {
 	 */
 	double recordElapsedTime(String eventName, Stopwatch stopwatch);
 
+	/**
+	 * Records the time elapsed since startNanos, which must have been read from {@link System#nanoTime()} by the caller.
+	 * Avoids allocating a {@link Stopwatch}, the duration is accumulated in nanoseconds.
+	 *
+	 * <code>
+	 *      long start = System.nanoTime();
+	 *      someMethod();
+	 *      recordElapsedNanos("someMethod", start);
+	 * </code>
+	 *
+	 * @param eventName name to store the elapsed time under
+	 * @param startNanos the value of {@link System#nanoTime()} when the measured operation started
+	 * @return the recorded elapsed time in nanoseconds
+	 */
+	long recordElapsedNanos(String eventName, long startNanos);
+
+	/**
+	 * Resolves the duration distribution with the given name once and returns a handle to it. The distribution is
+	 * created on the first duration recorded through the handle.
+	 *
+	 * @param eventName name to store the elapsed time under
+	 * @return a handle that stays valid when the store is reset, never null
+	 */
+	Timer timer(String eventName);
+
 	/**
 	 * Finds the current statistical distribution for the recorded durations under the given name. If the name has not been found,
 	 * a empty distribution will be returned, use the {@link StatisticalDistribution#getSampleCount()} method to check for emptiness.
@@ -0,0 +1,31 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.api;
+
+/**
+ * Values that were detached from a store, obtained by {@link GenerationalStatistics}. Recording threads no longer write
+ * into a detached generation, so converting it into a snapshot does not need to hold any lock.
+ *
+ * @param <T> the type of the snapshot
+ */
+public interface Generation<T> {
+
+	/**
+	 * @return the values of this generation, the result is detached and may be modified
+	 */
+	T toSnapshot();
+}
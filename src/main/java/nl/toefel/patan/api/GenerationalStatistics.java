@@ -0,0 +1,50 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.api;
+
+import java.util.SortedMap;
+
+/**
+ * Statistics that can swap in an empty generation of values in constant time, independent of the number of names. The
+ * previous generation is returned and can be converted into a snapshot later, for example after releasing a lock that
+ * recording threads wait for.
+ * <p>
+ * Detaching a generation has the same effect as the corresponding xxxSnapshotAndReset() method. Handles obtained before
+ * detaching record into the new generation.
+ */
+public interface GenerationalStatistics extends Statistics {
+
+	/**
+	 * @return the occurrences recorded since the last reset, the store continues with an empty generation
+	 */
+	Generation<SortedMap<String, Long>> detachOccurrences();
+
+	/**
+	 * @return the samples recorded since the last reset, the store continues with an empty generation
+	 */
+	Generation<SortedMap<String, StatisticalDistribution>> detachSamples();
+
+	/**
+	 * @return the durations recorded since the last reset, the store continues with an empty generation
+	 */
+	Generation<SortedMap<String, StatisticalDistribution>> detachDurations();
+
+	/**
+	 * @return the distinct counts recorded since the last reset, the store continues with an empty generation
+	 */
+	Generation<SortedMap<String, DistinctCount>> detachDistinctCounts();
+}
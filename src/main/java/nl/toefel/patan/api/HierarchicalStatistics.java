@@ -0,0 +1,49 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.api;
+
+/**
+ * Statistics that keep their names sorted, so the values under a prefix like "jms." can be read and reset without
+ * visiting the names of all other prefixes. The cost of these methods depends on the number of matching names, not on the
+ * total number of names.
+ * <p>
+ * The empty prefix selects all names. Prefixes are plain string prefixes, "jms.message" also selects
+ * "jms.messages.sent"; end the prefix with a dot to select a subtree of a dot-separated name hierarchy.
+ */
+public interface HierarchicalStatistics extends Statistics {
+
+	/**
+	 * @param prefix the prefix of the names to include
+	 * @return a snapshot of the durations, occurrences, samples and distinct counts with names that start with the prefix
+	 */
+	Snapshot getSnapshot(String prefix);
+
+	/**
+	 * Removes the values of the names that start with the prefix, handles of these names record into new values.
+	 *
+	 * @param prefix the prefix of the names to include
+	 * @return a snapshot of the removed durations, occurrences, samples and distinct counts
+	 */
+	Snapshot getSnapshotAndReset(String prefix);
+
+	/**
+	 * Removes the values of the names that start with the prefix, see {@link #getSnapshotAndReset(String)}.
+	 *
+	 * @param prefix the prefix of the names to remove
+	 */
+	void reset(String prefix);
+}
@@ -0,0 +1,37 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.api;
+
+/**
+ * A snapshot that only contains the names that changed since an earlier snapshot, unless {@link #isComplete()}. The
+ * rates of an incremental snapshot are always empty.
+ */
+public interface IncrementalSnapshot extends Snapshot {
+
+	/**
+	 * @return the token to read the changes after this snapshot with
+	 */
+	SnapshotToken getToken();
+
+	/**
+	 * A snapshot is complete when it was requested without a token, or when the values were reset after the token was
+	 * taken. A complete snapshot replaces the state of the consumer, names that it does not contain have no values.
+	 *
+	 * @return true if this snapshot contains all names with values, false if it only contains the changed names
+	 */
+	boolean isComplete();
+}
@@ -0,0 +1,45 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.api;
+
+/**
+ * Statistics that stamp every name when it is recorded, so an exporter can read only the names that changed since its
+ * previous snapshot. The cost and allocation of {@link #getChangedSince(SnapshotToken)} depend on the number of changed
+ * names instead of the total number of names.
+ * <pre>
+ *     IncrementalSnapshot snapshot = statistics.getIncrementalSnapshot(); // all names
+ *     ...
+ *     IncrementalSnapshot changes = statistics.getChangedSince(snapshot.getToken());
+ * </pre>
+ * A consumer reconstructs the full snapshot by replacing its state with every complete snapshot and by putting the values
+ * of every other snapshot into its state, the changed names contain their current values, not the difference.
+ */
+public interface IncrementalStatistics extends Statistics {
+
+	/**
+	 * @return a complete snapshot of the durations, occurrences, samples and distinct counts
+	 */
+	IncrementalSnapshot getIncrementalSnapshot();
+
+	/**
+	 * @param token the token of an earlier snapshot of these statistics
+	 * @return the names that were recorded after the token was taken, or a complete snapshot when the values were reset
+	 * in the meantime
+	 * @throws IllegalArgumentException if the token is null or was handed out by other statistics
+	 */
+	IncrementalSnapshot getChangedSince(SnapshotToken token);
+}
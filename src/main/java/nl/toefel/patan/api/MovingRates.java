@@ -0,0 +1,40 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.api;
+
+/**
+ * Exponentially-weighted moving average rates of an occurrence, in occurrences per second. Recent occurrences weigh
+ * more than old ones, the mean age of the occurrences that make up a rate is about the length of its period. Unlike the
+ * counter itself, rates are not affected by the xxxSnapshotAndReset() methods.
+ */
+public interface MovingRates {
+
+	/**
+	 * @return the rate over roughly the last minute, in occurrences per second
+	 */
+	double getOneMinuteRate();
+
+	/**
+	 * @return the rate over roughly the last five minutes, in occurrences per second
+	 */
+	double getFiveMinuteRate();
+
+	/**
+	 * @return the rate over roughly the last fifteen minutes, in occurrences per second
+	 */
+	double getFifteenMinuteRate();
+}
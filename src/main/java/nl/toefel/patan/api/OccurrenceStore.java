@@ -72,6 +72,15 @@ public interface OccurrenceStore extends Resettable {
 	 */
 	void addOccurrences(final String name, long timesOccurred);
 
+	/**
+	 * Resolves the counter with the given name once and returns a handle to it. The counter is created on the first
+	 * increment through the handle.
+	 *
+	 * @param name event name to store the occurrences under
+	 * @return a handle that stays valid when the store is reset, never null
+	 */
+	Counter counter(String name);
+
 	/**
 	 * Finds the current amount of times the event occurred. If the name has not been found, zero will be returned.
 	 * was returned.
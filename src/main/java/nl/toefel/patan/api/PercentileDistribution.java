@@ -0,0 +1,30 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.api;
+
+/**
+ * Distribution that can estimate percentiles in addition to the moments of {@link StatisticalDistribution}. Stores that
+ * keep histograms or quantile sketches return distributions of this type.
+ */
+public interface PercentileDistribution extends StatisticalDistribution {
+
+	/**
+	 * @param percentile between 0 and 100, for example 99.9
+	 * @return the estimated value at or below which the given percentage of samples falls, 0 if there are no samples
+	 */
+	double getPercentile(double percentile);
+}
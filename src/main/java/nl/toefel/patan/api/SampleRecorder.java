@@ -0,0 +1,33 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.api;
+
+/**
+ * Handle to a single statistical distribution, obtained by {@link SampleStore#sampleRecorder(String)}. The name is resolved
+ * once, recording writes straight into the distribution. Use handles in hot loops instead of {@link SampleStore#addSample(String, double)}.
+ * <p>
+ * A handle stays valid when the store is reset, samples recorded after a reset end up in a new distribution.
+ */
+public interface SampleRecorder {
+
+	/**
+	 * Adds a sample, equivalent to {@link SampleStore#addSample(String, double)}.
+	 *
+	 * @param value current value to record into the distribution
+	 */
+	void record(double value);
+}
@@ -32,6 +32,15 @@ public interface SampleStore extends Resettable {
 	 */
 	void addSample(String name, double value);
 
+	/**
+	 * Resolves the statistical distribution with the given name once and returns a handle to it. The distribution is
+	 * created on the first sample recorded through the handle.
+	 *
+	 * @param name the name of the sample
+	 * @return a handle that stays valid when the store is reset, never null
+	 */
+	SampleRecorder sampleRecorder(String name);
+
 	/**
 	 * Finds the statistical distribution by name. If the name has not been found, a empty statistic will be returned,
 	 * use the {@link StatisticalDistribution#getSampleCount()} method to check for emptiness.
@@ -34,6 +34,28 @@ public interface Snapshot {
 	 */
 	long findOccurrence(String name);
 
+	/**
+	 * @return the moving rates of the occurrences by their name, empty if the statistics do not track rates (never null)
+	 */
+	Map<String, MovingRates> getRates();
+
+	/**
+	 * @param name the name of the occurrence
+	 * @return the moving rates of the occurrence, rates of zero if none
+	 */
+	MovingRates findRates(String name);
+
+	/**
+	 * @return the distinct counts by their name (never null)
+	 */
+	Map<String, DistinctCount> getDistinctCounts();
+
+	/**
+	 * @param name the name of the distinct count
+	 * @return the distinct count, an estimate of zero if none
+	 */
+	DistinctCount findDistinctCount(String name);
+
 	/**
 	 * @param name the name of the duration
 	 * @return the duration distribution or an empty distribution if none
@@ -18,6 +18,16 @@ public interface StatisticalDistribution {
 	 */
 	StatisticalDistribution newWithExtraSample(double sampleValue);
 
+	/**
+	 * Creates a new statistical distribution object that describes the samples of this and the other distribution
+	 * combined, as if all samples were added to a single distribution. Used to combine distributions that were recorded
+	 * separately, for example by different threads or in different snapshots.
+	 *
+	 * @param other the distribution to merge with this one
+	 * @return new statistical distribution.
+	 */
+	StatisticalDistribution newMergedWith(StatisticalDistribution other);
+
 	/**
 	 * @return the number of recorded samples in the distribution
 	 */
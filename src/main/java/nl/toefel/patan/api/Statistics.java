@@ -19,15 +19,15 @@ package nl.toefel.patan.api;
 /**
  * This is the interface that implementations should implement.
  */
-public interface Statistics extends DurationStore, OccurrenceStore, SampleStore {
+public interface Statistics extends DurationStore, OccurrenceStore, SampleStore, DistinctStore {
 
 	/**
-	 * @return a snapshot of all collected data (durations, occurrences and samples)
+	 * @return a snapshot of all collected data (durations, occurrences, samples and distinct counts)
 	 */
 	Snapshot getSnapshot();
 
 	/**
-	 * @return a snapshot of all collected data (durations, occurrences and samples)
+	 * @return a snapshot of all collected data (durations, occurrences, samples and distinct counts)
 	 */
 	Snapshot getSnapshotAndReset();
 
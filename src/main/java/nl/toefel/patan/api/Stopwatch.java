@@ -26,4 +26,9 @@ public interface Stopwatch {
 	 * @return The elapsed time since the creation of this StopWatch in milliseconds with nanosecond precision.
 	 */
 	double elapsedMillis();
+
+	/**
+	 * @return The elapsed time since the creation of this StopWatch in nanoseconds.
+	 */
+	long elapsedNanos();
 }
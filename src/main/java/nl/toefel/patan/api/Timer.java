@@ -0,0 +1,53 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.api;
+
+/**
+ * Handle to the duration distribution of a single event, obtained by {@link DurationStore#timer(String)}. The name is
+ * resolved once, recording writes straight into the distribution. Use handles in hot loops instead of
+ * {@link DurationStore#recordElapsedTime(String, Stopwatch)}.
+ * <p>
+ * A handle stays valid when the store is reset, durations recorded after a reset end up in a new distribution.
+ */
+public interface Timer {
+
+	/**
+	 * Records the elapsed time of the stopwatch, equivalent to {@link DurationStore#recordElapsedTime(String, Stopwatch)}.
+	 *
+	 * @param stopwatch the {@link Stopwatch} that measures the elapsed time
+	 * @return the recorded elapsed time in millis with nanos precision. (see {@link Stopwatch#elapsedMillis()}
+	 */
+	double recordElapsedTime(Stopwatch stopwatch);
+
+	/**
+	 * Runs the task and records it's execution duration under the name of this timer postfixed with '.ok' or '.failed',
+	 * equivalent to {@link DurationStore#recordElapsedTime(String, TimedTask)}. The postfixed names are resolved once.
+	 *
+	 * @param <T> the return type of the measured task
+	 * @param task the task to run
+	 * @return the result of {@link TimedTask#get()}
+	 */
+	<T> T recordElapsedTime(TimedTask<T> task);
+
+	/**
+	 * Runs the runnable and records it's execution duration under the name of this timer postfixed with '.ok' or
+	 * '.failed', equivalent to {@link DurationStore#recordElapsedTime(String, Runnable)}. The postfixed names are resolved once.
+	 *
+	 * @param runnable the runnable to run
+	 */
+	void recordElapsedTime(Runnable runnable);
+}
@@ -0,0 +1,441 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.asyncimpl;
+
+import nl.toefel.patan.api.*;
+import nl.toefel.patan.singlethreadedimpl.DistributionAccumulator;
+import nl.toefel.patan.singlethreadedimpl.DurationAccumulator;
+import nl.toefel.patan.singlethreadedimpl.ForeverRunningStopwatch;
+import nl.toefel.patan.singlethreadedimpl.HyperLogLog;
+import nl.toefel.patan.singlethreadedimpl.OutcomeTimer;
+import nl.toefel.patan.singlethreadedimpl.SampleAccumulatorFactory;
+import nl.toefel.patan.singlethreadedimpl.SingleThreadedStatisticsFacade;
+import nl.toefel.patan.singlethreadedimpl.TimerCache;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Thread-safe statistics implementation where recording only writes the record into a preallocated ring buffer. A
+ * background aggregator thread applies the records in batches to a {@link SingleThreadedStatisticsFacade}.
+ * <p>
+ * All read methods first apply the records that were made before the read, so a thread always reads its own records.
+ * What happens when the buffer is full is decided by the {@link OverflowPolicy}.
+ * <p>
+ * The aggregator is a daemon thread, call {@link #shutdown()} to stop it when the instance is no longer used.
+ */
+public class AsyncStatistics implements Statistics {
+
+	private static final int BATCH_SIZE = 1024;
+	/** the aggregator backs off from this park time when the buffer stays empty */
+	private static final long MIN_IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+	/** after backing off to this park time the aggregator sleeps until a record is made */
+	private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	/** upper bound of a sleep, in case a wake up is missed */
+	private static final long SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final RecordRingBuffer buffer;
+	private final OverflowPolicy overflowPolicy;
+
+	/** guards the facade and makes sure only one thread at a time consumes the buffer */
+	private final Object lock = new Object();
+	private final SingleThreadedStatisticsFacade facade;
+
+	private final AtomicLong droppedRecords = new AtomicLong();
+	private final TimerCache timerCache = new TimerCache(this);
+
+	private final Thread aggregator;
+	private volatile boolean running = true;
+
+	/** set by the aggregator before it sleeps, the first record made afterwards wakes it up */
+	private volatile boolean sleeping;
+
+	/**
+	 * Creates a new instance and starts its aggregator thread.
+	 *
+	 * @param bufferSize the minimum number of records that can be buffered, rounded up to a power of two
+	 * @param overflowPolicy what to do when the buffer is full
+	 */
+	public AsyncStatistics(final int bufferSize, final OverflowPolicy overflowPolicy) {
+		this(bufferSize, overflowPolicy, DurationAccumulator.FACTORY);
+	}
+
+	/**
+	 * Creates a new instance and starts its aggregator thread.
+	 *
+	 * @param bufferSize the minimum number of records that can be buffered, rounded up to a power of two
+	 * @param overflowPolicy what to do when the buffer is full
+	 * @param durationAccumulators creates the accumulator of every new duration name
+	 */
+	public AsyncStatistics(final int bufferSize, final OverflowPolicy overflowPolicy, final SampleAccumulatorFactory durationAccumulators) {
+		this(bufferSize, overflowPolicy, DistributionAccumulator.FACTORY, durationAccumulators);
+	}
+
+	/**
+	 * Creates a new instance and starts its aggregator thread.
+	 *
+	 * @param bufferSize the minimum number of records that can be buffered, rounded up to a power of two
+	 * @param overflowPolicy what to do when the buffer is full
+	 * @param sampleAccumulators creates the accumulator of every new sample name
+	 * @param durationAccumulators creates the accumulator of every new duration name
+	 */
+	public AsyncStatistics(final int bufferSize, final OverflowPolicy overflowPolicy,
+						   final SampleAccumulatorFactory sampleAccumulators, final SampleAccumulatorFactory durationAccumulators) {
+		if (overflowPolicy == null) {
+			throw new IllegalArgumentException("overflowPolicy cannot be null");
+		}
+		this.buffer = new RecordRingBuffer(bufferSize);
+		this.facade = new SingleThreadedStatisticsFacade(sampleAccumulators, durationAccumulators);
+		this.overflowPolicy = overflowPolicy;
+		this.aggregator = new Thread(new Aggregator(), "patan-aggregator");
+		this.aggregator.setDaemon(true);
+		this.aggregator.start();
+	}
+
+	/**
+	 * Applies all records that were made before this call, after it returns all read methods reflect them.
+	 */
+	public void flush() {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+		}
+	}
+
+	/**
+	 * Stops the aggregator thread and applies the remaining records. Records made afterwards are applied when reading,
+	 * a full buffer is then handled as {@link OverflowPolicy#SYNCHRONOUS} unless the policy is to drop.
+	 */
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(aggregator);
+		try {
+			aggregator.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+	}
+
+	/**
+	 * @return the number of records discarded because the buffer was full, only when using {@link OverflowPolicy#DROP}
+	 */
+	public long getDroppedRecords() {
+		return droppedRecords.get();
+	}
+
+	/**
+	 * @return the number of records the buffer can hold
+	 */
+	public int getBufferSize() {
+		return buffer.capacity();
+	}
+
+	@Override
+	public Stopwatch startStopwatch() {
+		return ForeverRunningStopwatch.startNewStopwatch();
+	}
+
+	@Override
+	public void recordElapsedTime(final String eventName, final Runnable runnable) {
+		timerCache.timer(eventName).recordElapsedTime(runnable);
+	}
+
+	@Override
+	public <T> T recordElapsedTime(final String eventName, final TimedTask<T> runnable) {
+		return timerCache.timer(eventName).recordElapsedTime(runnable);
+	}
+
+	@Override
+	public double recordElapsedTime(final String eventName, final Stopwatch stopwatch) {
+		long elapsedNanos = stopwatch.elapsedNanos();
+		record(RecordRingBuffer.DURATION, eventName, elapsedNanos, 0);
+		return elapsedNanos / 1e6;
+	}
+
+	@Override
+	public long recordElapsedNanos(final String eventName, final long startNanos) {
+		long elapsedNanos = System.nanoTime() - startNanos;
+		record(RecordRingBuffer.DURATION, eventName, elapsedNanos, 0);
+		return elapsedNanos;
+	}
+
+	@Override
+	public Timer timer(final String eventName) {
+		return new OutcomeTimer(this, eventName) {
+			@Override
+			public double recordElapsedTime(final Stopwatch stopwatch) {
+				return AsyncStatistics.this.recordElapsedTime(eventName, stopwatch);
+			}
+		};
+	}
+
+	@Override
+	public void addOccurrence(final String eventName) {
+		record(RecordRingBuffer.OCCURRENCES, eventName, 1, 0);
+	}
+
+	@Override
+	public void addOccurrences(final String eventName, final long timesOccurred) {
+		record(RecordRingBuffer.OCCURRENCES, eventName, timesOccurred, 0);
+	}
+
+	@Override
+	public Counter counter(final String eventName) {
+		return new Counter() {
+			@Override
+			public void increment() {
+				record(RecordRingBuffer.OCCURRENCES, eventName, 1, 0);
+			}
+
+			@Override
+			public void increment(final long timesOccurred) {
+				record(RecordRingBuffer.OCCURRENCES, eventName, timesOccurred, 0);
+			}
+		};
+	}
+
+	@Override
+	public void addSample(final String eventName, final double value) {
+		record(RecordRingBuffer.SAMPLE, eventName, 0, value);
+	}
+
+	@Override
+	public SampleRecorder sampleRecorder(final String eventName) {
+		return new SampleRecorder() {
+			@Override
+			public void record(final double value) {
+				AsyncStatistics.this.record(RecordRingBuffer.SAMPLE, eventName, 0, value);
+			}
+		};
+	}
+
+	@Override
+	public void addDistinct(final String name, final long value) {
+		record(RecordRingBuffer.DISTINCT, name, value, 0);
+	}
+
+	/**
+	 * The string is converted into its {@link HyperLogLog#fingerprint(String) fingerprint} by the calling thread.
+	 */
+	@Override
+	public void addDistinct(final String name, final String value) {
+		record(RecordRingBuffer.DISTINCT, name, HyperLogLog.fingerprint(value), 0);
+	}
+
+	@Override
+	public StatisticalDistribution findDuration(final String eventName) {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+			return facade.findDuration(eventName);
+		}
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshot() {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+			return facade.getAllDurationsSnapshot();
+		}
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshotAndReset() {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+			return facade.getAllDurationsSnapshotAndReset();
+		}
+	}
+
+	@Override
+	public StatisticalDistribution findSampleDistribution(final String eventName) {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+			return facade.findSampleDistribution(eventName);
+		}
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshot() {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+			return facade.getAllSamplesSnapshot();
+		}
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshotAndReset() {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+			return facade.getAllSamplesSnapshotAndReset();
+		}
+	}
+
+	@Override
+	public long findOccurrence(final String eventName) {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+			return facade.findOccurrence(eventName);
+		}
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshot() {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+			return facade.getAllOccurrencesSnapshot();
+		}
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshotAndReset() {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+			return facade.getAllOccurrencesSnapshotAndReset();
+		}
+	}
+
+	@Override
+	public DistinctCount findDistinctCount(final String name) {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+			return facade.findDistinctCount(name);
+		}
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshot() {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+			return facade.getAllDistinctCountsSnapshot();
+		}
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshotAndReset() {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+			return facade.getAllDistinctCountsSnapshotAndReset();
+		}
+	}
+
+	@Override
+	public void reset() {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+			facade.reset();
+		}
+	}
+
+	@Override
+	public Snapshot getSnapshot() {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+			return facade.getSnapshot();
+		}
+	}
+
+	@Override
+	public Snapshot getSnapshotAndReset() {
+		synchronized (lock) {
+			buffer.drainClaimed(facade);
+			return facade.getSnapshotAndReset();
+		}
+	}
+
+	private void record(final int type, final String eventName, final long count, final double value) {
+		if (buffer.offer(type, eventName, count, value)) {
+			if (sleeping) {
+				LockSupport.unpark(aggregator);
+			}
+			return;
+		}
+		if (overflowPolicy == OverflowPolicy.DROP) {
+			droppedRecords.incrementAndGet();
+			return;
+		}
+		if (overflowPolicy == OverflowPolicy.BLOCK) {
+			while (running) {
+				LockSupport.unpark(aggregator);
+				Thread.yield();
+				if (buffer.offer(type, eventName, count, value)) {
+					return;
+				}
+			}
+		}
+		synchronized (lock) {
+			applyDirectly(type, eventName, count, value);
+		}
+	}
+
+	private void applyDirectly(final int type, final String eventName, final long count, final double value) {
+		if (type == RecordRingBuffer.OCCURRENCES) {
+			facade.addOccurrences(eventName, count);
+		} else if (type == RecordRingBuffer.SAMPLE) {
+			facade.addSample(eventName, value);
+		} else if (type == RecordRingBuffer.DISTINCT) {
+			facade.addDistinct(eventName, count);
+		} else {
+			facade.recordElapsedTime(eventName, new Stopwatch() {
+				@Override
+				public double elapsedMillis() {
+					return count / 1e6;
+				}
+
+				@Override
+				public long elapsedNanos() {
+					return count;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Drains the buffer in batches. While the buffer stays empty it parks for a doubling time, then it sleeps until a
+	 * producer wakes it up, so an idle instance does not use CPU.
+	 */
+	private final class Aggregator implements Runnable {
+		@Override
+		public void run() {
+			long idleParkNanos = MIN_IDLE_PARK_NANOS;
+			while (running) {
+				int applied;
+				synchronized (lock) {
+					applied = buffer.drainAvailable(facade, BATCH_SIZE);
+				}
+				if (applied > 0) {
+					idleParkNanos = MIN_IDLE_PARK_NANOS;
+				} else if (idleParkNanos < MAX_IDLE_PARK_NANOS) {
+					LockSupport.parkNanos(idleParkNanos);
+					idleParkNanos <<= 1;
+				} else {
+					sleep();
+				}
+			}
+		}
+
+		private void sleep() {
+			sleeping = true;
+			// check again after announcing the sleep, a record published before it would not wake us up
+			if (buffer.isEmpty() && running) {
+				LockSupport.parkNanos(SLEEP_NANOS);
+			}
+			sleeping = false;
+		}
+	}
+}
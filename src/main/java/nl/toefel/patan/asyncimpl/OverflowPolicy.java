@@ -0,0 +1,39 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.asyncimpl;
+
+/**
+ * What a recording thread does when the ring buffer of an {@link AsyncStatistics} is full.
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * The record is discarded and counted, see {@link AsyncStatistics#getDroppedRecords()}. Recording never waits.
+	 */
+	DROP,
+
+	/**
+	 * The recording thread waits until the aggregator made room in the buffer. No records are lost.
+	 */
+	BLOCK,
+
+	/**
+	 * The recording thread applies the record itself, contending with the aggregator for the aggregation lock. No
+	 * records are lost.
+	 */
+	SYNCHRONOUS
+}
@@ -0,0 +1,181 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.asyncimpl;
+
+import nl.toefel.patan.api.Statistics;
+import nl.toefel.patan.api.Stopwatch;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer single-consumer ring buffer of records. The slots are preallocated as parallel arrays, offering
+ * a record claims a sequence number with a CAS, writes the slot and publishes the sequence number of the slot.
+ * <p>
+ * Only one thread at a time may consume, callers of the drain methods are responsible for that.
+ */
+final class RecordRingBuffer {
+
+	static final int OCCURRENCES = 0;
+	static final int SAMPLE = 1;
+	/** the count of a duration record is the elapsed time in nanoseconds */
+	static final int DURATION = 2;
+	/** the count of a distinct record is the value */
+	static final int DISTINCT = 3;
+
+	private final int capacity;
+	private final int mask;
+
+	private final int[] types;
+	private final String[] names;
+	private final long[] counts;
+	private final double[] values;
+
+	/** sequence number of the record last written to each slot */
+	private final AtomicLongArray published;
+
+	/** next sequence number to hand out */
+	private final AtomicLong claimed = new AtomicLong();
+
+	/** next sequence number to consume, only written by the consumer */
+	private volatile long consumed;
+
+	/** reused by the consumer to hand durations to the target */
+	private final ElapsedStopwatch elapsed = new ElapsedStopwatch();
+
+	/**
+	 * @param minimumCapacity the minimum number of records the buffer can hold, rounded up to a power of two
+	 */
+	RecordRingBuffer(final int minimumCapacity) {
+		if (minimumCapacity <= 0 || minimumCapacity > 1 << 30) {
+			throw new IllegalArgumentException("buffer size must be between 1 and 2^30 but was " + minimumCapacity);
+		}
+		capacity = minimumCapacity == 1 ? 1 : Integer.highestOneBit(minimumCapacity - 1) << 1;
+		mask = capacity - 1;
+		types = new int[capacity];
+		names = new String[capacity];
+		counts = new long[capacity];
+		values = new double[capacity];
+		published = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			published.set(i, i - capacity); // published in the lap before the first
+		}
+	}
+
+	int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return true if the next record to consume is not published yet
+	 */
+	boolean isEmpty() {
+		long sequence = consumed;
+		return published.get((int) sequence & mask) != sequence;
+	}
+
+	/**
+	 * @return false if the buffer is full, the record was not added
+	 */
+	boolean offer(final int type, final String name, final long count, final double value) {
+		long sequence;
+		do {
+			sequence = claimed.get();
+			if (sequence - consumed >= capacity) {
+				return false;
+			}
+		} while (!claimed.compareAndSet(sequence, sequence + 1));
+		int index = (int) sequence & mask;
+		types[index] = type;
+		names[index] = name;
+		counts[index] = count;
+		values[index] = value;
+		published.lazySet(index, sequence);
+		return true;
+	}
+
+	/**
+	 * Applies records that are published, stops at the first record that is claimed but not yet published.
+	 *
+	 * @return the number of records applied
+	 */
+	int drainAvailable(final Statistics target, final int maxRecords) {
+		long sequence = consumed;
+		int applied = 0;
+		while (applied < maxRecords && published.get((int) sequence & mask) == sequence) {
+			apply((int) sequence & mask, target);
+			consumed = ++sequence;
+			applied++;
+		}
+		return applied;
+	}
+
+	/**
+	 * Applies all records claimed before this call, waits for records that are claimed but not yet published.
+	 */
+	void drainClaimed(final Statistics target) {
+		long end = claimed.get();
+		long sequence = consumed;
+		while (sequence < end) {
+			int index = (int) sequence & mask;
+			if (published.get(index) == sequence) {
+				apply(index, target);
+				consumed = ++sequence;
+			} else {
+				Thread.yield(); // the producer is between claiming and publishing
+			}
+		}
+	}
+
+	private void apply(final int index, final Statistics target) {
+		switch (types[index]) {
+			case OCCURRENCES:
+				target.addOccurrences(names[index], counts[index]);
+				break;
+			case SAMPLE:
+				target.addSample(names[index], values[index]);
+				break;
+			case DURATION:
+				elapsed.elapsedNanos = counts[index];
+				target.recordElapsedTime(names[index], elapsed);
+				break;
+			case DISTINCT:
+				target.addDistinct(names[index], counts[index]);
+				break;
+			default:
+				throw new IllegalStateException("unknown record type " + types[index]);
+		}
+		names[index] = null; // do not keep the name alive until the slot is reused
+	}
+
+	/**
+	 * Stopwatch that reports a duration that was measured by the recording thread.
+	 */
+	private static final class ElapsedStopwatch implements Stopwatch {
+		private long elapsedNanos;
+
+		@Override
+		public double elapsedMillis() {
+			return elapsedNanos / 1e6;
+		}
+
+		@Override
+		public long elapsedNanos() {
+			return elapsedNanos;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.concurrentimpl;
+
+import nl.toefel.patan.api.Counter;
+import nl.toefel.patan.api.OccurrenceStore;
+import nl.toefel.patan.singlethreadedimpl.CardinalityGuard;
+import nl.toefel.patan.singlethreadedimpl.CardinalityLimit;
+
+import java.util.SortedMap;
+
+/**
+ * Thread-safe counter store. Counts are primitive longs in a {@link ConcurrentStringLongMap} that are updated with a
+ * compare-and-set, writes to different names never contend and recording does not allocate. Recording never waits
+ * when the map grows or is reset, reads wait while a growing map moves its names.
+ */
+public class ConcurrentCounterStore implements OccurrenceStore {
+
+	/**
+	 * Estimated memory of a counter without its name: two slots of the map at the highest load factor.
+	 */
+	private static final int ENTRY_BYTES = 32;
+
+	private final ConcurrentStringLongMap counters = new ConcurrentStringLongMap();
+
+	private final CardinalityLimit limit;
+
+	/**
+	 * Replaced on every reset together with the table of the map, names of the previous period then no longer count
+	 * towards the limit. Names that are added while a reset takes place may be counted by the wrong guard, this is
+	 * corrected by the next reset.
+	 */
+	private volatile CardinalityGuard guard;
+
+	public ConcurrentCounterStore() {
+		this(CardinalityLimit.NONE);
+	}
+
+	/**
+	 * @param limit limits the number of counters, see {@link CardinalityLimit}
+	 */
+	public ConcurrentCounterStore(final CardinalityLimit limit) {
+		this.limit = limit;
+		this.guard = limit.newGuard(ENTRY_BYTES);
+	}
+
+	@Override
+	public void addOccurrence(final String name) {
+		addOccurrences(name, 1L);
+	}
+
+	@Override
+	public void addOccurrences(final String name, final long timesOccurred) {
+		add(name, timesOccurred);
+	}
+
+	@Override
+	public Counter counter(final String name) {
+		return new CounterHandle(name);
+	}
+
+	private void add(final String name, final long timesOccurred) {
+		for (;;) {
+			if (counters.addIfPresent(name, timesOccurred)) {
+				return;
+			}
+			CardinalityGuard admittedBy = guard;
+			String admitted = admittedBy.admit(name);
+			if (!admitted.equals(name)) {
+				add(admitted, timesOccurred);
+				return;
+			}
+			int outcome = counters.insert(name, timesOccurred);
+			if (outcome == ConcurrentStringLongMap.INSERTED) {
+				return;
+			} else if (outcome == ConcurrentStringLongMap.FOUND) {
+				admittedBy.release(name);
+				return;
+			}
+			// the name was moved into a snapshot by a concurrent reset, start over with the guard of the new period
+		}
+	}
+
+	@Override
+	public long findOccurrence(final String name) {
+		return counters.get(name);
+	}
+
+	@Override
+	public SortedMap<String, Long> getAllOccurrencesSnapshot() {
+		return counters.snapshot();
+	}
+
+	@Override
+	public SortedMap<String, Long> getAllOccurrencesSnapshotAndReset() {
+		guard = limit.newGuard(ENTRY_BYTES);
+		return counters.snapshotAndReset();
+	}
+
+	@Override
+	public void reset() {
+		getAllOccurrencesSnapshotAndReset();
+	}
+
+	/**
+	 * Caches the slot of its name, the name is resolved again when the slot has been frozen by a reset or because the
+	 * map has grown.
+	 */
+	private final class CounterHandle implements Counter {
+		private final String name;
+		private volatile ResolvedSlot resolved;
+
+		CounterHandle(final String name) {
+			this.name = name;
+		}
+
+		@Override
+		public void increment() {
+			increment(1L);
+		}
+
+		@Override
+		public void increment(final long timesOccurred) {
+			ResolvedSlot current = resolved;
+			if (current == null || !counters.addAt(current.table, current.slot, timesOccurred)) {
+				add(name, timesOccurred);
+				ConcurrentStringLongMap.Table table = counters.table();
+				int slot = counters.slotOf(table, name);
+				resolved = slot < 0 ? null : new ResolvedSlot(table, slot);
+			}
+		}
+	}
+
+	private static final class ResolvedSlot {
+		private final ConcurrentStringLongMap.Table table;
+		private final int slot;
+
+		ResolvedSlot(final ConcurrentStringLongMap.Table table, final int slot) {
+			this.table = table;
+			this.slot = slot;
+		}
+	}
+}
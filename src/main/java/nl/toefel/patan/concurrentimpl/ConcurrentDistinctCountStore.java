@@ -0,0 +1,133 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.concurrentimpl;
+
+import nl.toefel.patan.api.DistinctCount;
+import nl.toefel.patan.api.DistinctStore;
+import nl.toefel.patan.singlethreadedimpl.CardinalityGuard;
+import nl.toefel.patan.singlethreadedimpl.CardinalityLimit;
+import nl.toefel.patan.singlethreadedimpl.HyperLogLog;
+import nl.toefel.patan.singlethreadedimpl.ImmutableDistinctCount;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-safe distinct count store. Every name has its own {@link DistinctCell}, adding a value is lock-free and does
+ * not write to memory at all when the sketch of the name is not changed by it.
+ * <p>
+ * A value that is added while its name is being moved into a snapshot by a reset can be counted both in that snapshot
+ * and in the next one.
+ */
+public class ConcurrentDistinctCountStore implements DistinctStore {
+
+	/**
+	 * Estimated memory of a distinct count without its name: the map node, the cell and the sketch.
+	 */
+	private static final int ENTRY_BYTES = 4250;
+
+	private final ConcurrentMap<String, DistinctCell> cells = new ConcurrentHashMap<String, DistinctCell>();
+
+	private final CardinalityGuard guard;
+
+	public ConcurrentDistinctCountStore() {
+		this(CardinalityLimit.NONE);
+	}
+
+	/**
+	 * @param limit limits the number of distinct counts, see {@link CardinalityLimit}
+	 */
+	public ConcurrentDistinctCountStore(final CardinalityLimit limit) {
+		this.guard = limit.newGuard(ENTRY_BYTES);
+	}
+
+	@Override
+	public void addDistinct(final String name, final long value) {
+		for (;;) {
+			DistinctCell cell = cells.get(name);
+			if (cell == null) {
+				String admitted = guard.admit(name);
+				if (!admitted.equals(name)) {
+					addDistinct(admitted, value);
+					return;
+				}
+				DistinctCell created = new DistinctCell();
+				created.add(value);
+				if (cells.putIfAbsent(name, created) == null) {
+					return;
+				}
+				guard.release(name);
+			} else if (cell.add(value)) {
+				return;
+			} else {
+				remove(name, cell); // retired by a concurrent reset, help removing it and retry
+			}
+		}
+	}
+
+	@Override
+	public void addDistinct(final String name, final String value) {
+		addDistinct(name, HyperLogLog.fingerprint(value));
+	}
+
+	@Override
+	public DistinctCount findDistinctCount(final String name) {
+		DistinctCell cell = cells.get(name);
+		DistinctCount count = cell == null ? null : cell.get();
+		return count == null ? ImmutableDistinctCount.createEmpty() : count;
+	}
+
+	@Override
+	public SortedMap<String, DistinctCount> getAllDistinctCountsSnapshot() {
+		SortedMap<String, DistinctCount> snapshot = new TreeMap<String, DistinctCount>();
+		for (Map.Entry<String, DistinctCell> entry : cells.entrySet()) {
+			DistinctCount count = entry.getValue().get();
+			if (count != null) {
+				snapshot.put(entry.getKey(), count);
+			}
+		}
+		return snapshot;
+	}
+
+	@Override
+	public SortedMap<String, DistinctCount> getAllDistinctCountsSnapshotAndReset() {
+		SortedMap<String, DistinctCount> snapshot = new TreeMap<String, DistinctCount>();
+		for (Map.Entry<String, DistinctCell> entry : cells.entrySet()) {
+			DistinctCell cell = entry.getValue();
+			DistinctCount last = cell.retire();
+			if (last != null) {
+				snapshot.put(entry.getKey(), last);
+			}
+			remove(entry.getKey(), cell);
+		}
+		return snapshot;
+	}
+
+	private void remove(final String name, final DistinctCell cell) {
+		if (cells.remove(name, cell)) {
+			guard.release(name);
+		}
+	}
+
+	@Override
+	public void reset() {
+		getAllDistinctCountsSnapshotAndReset();
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.concurrentimpl;
+
+import nl.toefel.patan.api.SampleRecorder;
+import nl.toefel.patan.api.SampleStore;
+import nl.toefel.patan.api.StatisticalDistribution;
+import nl.toefel.patan.singlethreadedimpl.CardinalityGuard;
+import nl.toefel.patan.singlethreadedimpl.CardinalityLimit;
+import nl.toefel.patan.singlethreadedimpl.DistributionAccumulator;
+import nl.toefel.patan.singlethreadedimpl.ElapsedNanosRecorder;
+import nl.toefel.patan.singlethreadedimpl.ImmutableStatisticalDistribution;
+import nl.toefel.patan.singlethreadedimpl.SampleAccumulatorFactory;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-safe store of statistical distributions. Every name has its own {@link DistributionCell} that is updated in
+ * place, writes to different names never contend.
+ */
+public class ConcurrentDistributionStore implements SampleStore {
+
+	/**
+	 * Estimated memory of a distribution without its name: the map node, the cell and an accumulator of fixed size.
+	 */
+	private static final int ENTRY_BYTES = 192;
+
+	private final SampleAccumulatorFactory accumulatorFactory;
+
+	private final CardinalityGuard guard;
+
+	private final ConcurrentMap<String, DistributionCell> distributionsByName = new ConcurrentHashMap<String, DistributionCell>();
+
+	/**
+	 * Creates a store that keeps a {@link DistributionAccumulator} per name and stripe.
+	 */
+	public ConcurrentDistributionStore() {
+		this(DistributionAccumulator.FACTORY);
+	}
+
+	/**
+	 * @param accumulatorFactory creates the accumulators of every new name, one per stripe
+	 */
+	public ConcurrentDistributionStore(final SampleAccumulatorFactory accumulatorFactory) {
+		this(accumulatorFactory, CardinalityLimit.NONE);
+	}
+
+	/**
+	 * @param accumulatorFactory creates the accumulators of every new name, one per stripe
+	 * @param limit limits the number of distributions, see {@link CardinalityLimit}
+	 */
+	public ConcurrentDistributionStore(final SampleAccumulatorFactory accumulatorFactory, final CardinalityLimit limit) {
+		if (accumulatorFactory == null) {
+			throw new IllegalArgumentException("accumulatorFactory cannot be null");
+		}
+		this.accumulatorFactory = accumulatorFactory;
+		this.guard = limit.newGuard(ENTRY_BYTES);
+	}
+
+	@Override
+	public void addSample(final String name, final double value) {
+		add(name, value);
+	}
+
+	@Override
+	public SampleRecorder sampleRecorder(final String name) {
+		return new DistributionHandle(name);
+	}
+
+	/**
+	 * @return the cell that accepted the sample
+	 */
+	private DistributionCell add(final String name, final double value) {
+		for (;;) {
+			DistributionCell cell = distributionsByName.get(name);
+			if (cell == null) {
+				String admitted = guard.admit(name);
+				if (!admitted.equals(name)) {
+					return add(admitted, value);
+				}
+				DistributionCell created = DistributionCell.withSample(accumulatorFactory, name, value);
+				if (distributionsByName.putIfAbsent(name, created) == null) {
+					return created;
+				}
+				guard.release(name);
+			} else if (cell.addSample(value)) {
+				return cell;
+			} else {
+				remove(name, cell); // retired by a concurrent reset, help removing it and retry
+			}
+		}
+	}
+
+	/**
+	 * Adds a duration measured in nanoseconds, see {@link nl.toefel.patan.singlethreadedimpl.SampleAccumulator#addElapsedNanos(long)}.
+	 *
+	 * @param name the name of the duration
+	 * @param elapsedNanos the duration to add
+	 */
+	public void addElapsedNanos(final String name, final long elapsedNanos) {
+		addNanos(name, elapsedNanos);
+	}
+
+	/**
+	 * @param name the name of the duration
+	 * @return a handle that adds durations measured in nanoseconds, it stays valid after a reset
+	 */
+	public ElapsedNanosRecorder elapsedNanosRecorder(final String name) {
+		return new DistributionHandle(name);
+	}
+
+	/**
+	 * @return the cell that accepted the duration
+	 */
+	private DistributionCell addNanos(final String name, final long elapsedNanos) {
+		for (;;) {
+			DistributionCell cell = distributionsByName.get(name);
+			if (cell == null) {
+				String admitted = guard.admit(name);
+				if (!admitted.equals(name)) {
+					return addNanos(admitted, elapsedNanos);
+				}
+				DistributionCell created = DistributionCell.withElapsedNanos(accumulatorFactory, name, elapsedNanos);
+				if (distributionsByName.putIfAbsent(name, created) == null) {
+					return created;
+				}
+				guard.release(name);
+			} else if (cell.addElapsedNanos(elapsedNanos)) {
+				return cell;
+			} else {
+				remove(name, cell); // retired by a concurrent reset, help removing it and retry
+			}
+		}
+	}
+
+	@Override
+	public StatisticalDistribution findSampleDistribution(final String name) {
+		DistributionCell cell = distributionsByName.get(name);
+		StatisticalDistribution distribution = cell == null ? null : cell.get();
+		if (distribution == null) {
+			return ImmutableStatisticalDistribution.createEmpty();
+		} else {
+			return distribution;
+		}
+	}
+
+	@Override
+	public SortedMap<String, StatisticalDistribution> getAllSamplesSnapshot() {
+		SortedMap<String, StatisticalDistribution> snapshot = new TreeMap<String, StatisticalDistribution>();
+		for (Map.Entry<String, DistributionCell> entry : distributionsByName.entrySet()) {
+			StatisticalDistribution distribution = entry.getValue().get();
+			if (distribution != null) {
+				snapshot.put(entry.getKey(), distribution);
+			}
+		}
+		return snapshot;
+	}
+
+	@Override
+	public SortedMap<String, StatisticalDistribution> getAllSamplesSnapshotAndReset() {
+		SortedMap<String, StatisticalDistribution> snapshot = new TreeMap<String, StatisticalDistribution>();
+		for (Map.Entry<String, DistributionCell> entry : distributionsByName.entrySet()) {
+			DistributionCell cell = entry.getValue();
+			StatisticalDistribution last = cell.retire();
+			if (last != null) {
+				snapshot.put(entry.getKey(), last);
+			}
+			remove(entry.getKey(), cell);
+		}
+		return snapshot;
+	}
+
+	private void remove(final String name, final DistributionCell cell) {
+		if (distributionsByName.remove(name, cell)) {
+			guard.release(name);
+		}
+	}
+
+	@Override
+	public void reset() {
+		getAllSamplesSnapshotAndReset();
+	}
+
+	/**
+	 * Caches the cell of its name, the name is resolved again when the cell has been retired by a reset.
+	 */
+	private final class DistributionHandle implements SampleRecorder, ElapsedNanosRecorder {
+		private final String name;
+		private volatile DistributionCell cell;
+
+		DistributionHandle(final String name) {
+			this.name = name;
+		}
+
+		@Override
+		public void record(final double value) {
+			DistributionCell current = cell;
+			if (current == null || !current.addSample(value)) {
+				cell = add(name, value);
+			}
+		}
+
+		@Override
+		public void recordElapsedNanos(final long elapsedNanos) {
+			DistributionCell current = cell;
+			if (current == null || !current.addElapsedNanos(elapsedNanos)) {
+				cell = addNanos(name, elapsedNanos);
+			}
+		}
+	}
+}
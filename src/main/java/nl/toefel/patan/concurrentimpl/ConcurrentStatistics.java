@@ -0,0 +1,234 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.concurrentimpl;
+
+import nl.toefel.patan.api.*;
+import nl.toefel.patan.singlethreadedimpl.CardinalityLimit;
+import nl.toefel.patan.singlethreadedimpl.DetachedSnapshot;
+import nl.toefel.patan.singlethreadedimpl.DistributionAccumulator;
+import nl.toefel.patan.singlethreadedimpl.DurationAccumulator;
+import nl.toefel.patan.singlethreadedimpl.ForeverRunningStopwatch;
+import nl.toefel.patan.singlethreadedimpl.SampleAccumulatorFactory;
+import nl.toefel.patan.singlethreadedimpl.SampleRecorderTimer;
+import nl.toefel.patan.singlethreadedimpl.TimerCache;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Thread-safe statistics implementation without a global lock. Every metric name is backed by its own cell, so threads
+ * recording under different names never contend.
+ * <p>
+ * Snapshots are not taken atomically across names; each individual value is consistent and every recorded value ends up
+ * in exactly one snapshot when using the xxxSnapshotAndReset() methods.
+ */
+public class ConcurrentStatistics implements Statistics {
+
+	private final ConcurrentDistributionStore sampleStore;
+
+	private final ConcurrentDistributionStore durationStore;
+
+	private final ConcurrentCounterStore counterStore;
+
+	private final ConcurrentDistinctCountStore distinctStore;
+
+	private final TimerCache timerCache = new TimerCache(this);
+
+	public ConcurrentStatistics() {
+		this(DurationAccumulator.FACTORY);
+	}
+
+	/**
+	 * @param durationAccumulators creates the accumulators of every new duration name
+	 */
+	public ConcurrentStatistics(final SampleAccumulatorFactory durationAccumulators) {
+		this(DistributionAccumulator.FACTORY, durationAccumulators);
+	}
+
+	/**
+	 * @param sampleAccumulators creates the accumulators of every new sample name
+	 * @param durationAccumulators creates the accumulators of every new duration name
+	 */
+	public ConcurrentStatistics(final SampleAccumulatorFactory sampleAccumulators, final SampleAccumulatorFactory durationAccumulators) {
+		this(sampleAccumulators, durationAccumulators, CardinalityLimit.NONE);
+	}
+
+	/**
+	 * @param sampleAccumulators creates the accumulators of every new sample name
+	 * @param durationAccumulators creates the accumulators of every new duration name
+	 * @param limit limits the number of names of each kind, see {@link CardinalityLimit}
+	 */
+	public ConcurrentStatistics(final SampleAccumulatorFactory sampleAccumulators, final SampleAccumulatorFactory durationAccumulators,
+								final CardinalityLimit limit) {
+		if (limit == null) {
+			throw new IllegalArgumentException("limit cannot be null");
+		}
+		this.sampleStore = new ConcurrentDistributionStore(sampleAccumulators, limit);
+		this.durationStore = new ConcurrentDistributionStore(durationAccumulators, limit);
+		this.counterStore = new ConcurrentCounterStore(limit);
+		this.distinctStore = new ConcurrentDistinctCountStore(limit);
+	}
+
+	@Override
+	public Stopwatch startStopwatch() {
+		return ForeverRunningStopwatch.startNewStopwatch();
+	}
+
+	@Override
+	public void recordElapsedTime(final String eventName, final Runnable runnable) {
+		timerCache.timer(eventName).recordElapsedTime(runnable);
+	}
+
+	@Override
+	public <T> T recordElapsedTime(final String eventName, final TimedTask<T> runnable) {
+		return timerCache.timer(eventName).recordElapsedTime(runnable);
+	}
+
+	@Override
+	public double recordElapsedTime(final String eventName, final Stopwatch stopwatch) {
+		long elapsedNanos = stopwatch.elapsedNanos();
+		durationStore.addElapsedNanos(eventName, elapsedNanos);
+		return elapsedNanos / 1e6;
+	}
+
+	@Override
+	public long recordElapsedNanos(final String eventName, final long startNanos) {
+		long elapsedNanos = System.nanoTime() - startNanos;
+		durationStore.addElapsedNanos(eventName, elapsedNanos);
+		return elapsedNanos;
+	}
+
+	@Override
+	public Timer timer(final String eventName) {
+		return new SampleRecorderTimer(this, eventName, durationStore.elapsedNanosRecorder(eventName));
+	}
+
+	@Override
+	public StatisticalDistribution findDuration(final String name) {
+		return durationStore.findSampleDistribution(name);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshot() {
+		return durationStore.getAllSamplesSnapshot();
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshotAndReset() {
+		return durationStore.getAllSamplesSnapshotAndReset();
+	}
+
+	@Override
+	public void addOccurrence(final String eventName) {
+		counterStore.addOccurrence(eventName);
+	}
+
+	@Override
+	public void addOccurrences(final String eventName, final long timesOccurred) {
+		counterStore.addOccurrences(eventName, timesOccurred);
+	}
+
+	@Override
+	public Counter counter(final String eventName) {
+		return counterStore.counter(eventName);
+	}
+
+	@Override
+	public void addSample(final String eventName, final double value) {
+		sampleStore.addSample(eventName, value);
+	}
+
+	@Override
+	public SampleRecorder sampleRecorder(final String eventName) {
+		return sampleStore.sampleRecorder(eventName);
+	}
+
+	@Override
+	public StatisticalDistribution findSampleDistribution(final String eventName) {
+		return sampleStore.findSampleDistribution(eventName);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshot() {
+		return sampleStore.getAllSamplesSnapshot();
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshotAndReset() {
+		return sampleStore.getAllSamplesSnapshotAndReset();
+	}
+
+	@Override
+	public long findOccurrence(final String eventName) {
+		return counterStore.findOccurrence(eventName);
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshot() {
+		return counterStore.getAllOccurrencesSnapshot();
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshotAndReset() {
+		return counterStore.getAllOccurrencesSnapshotAndReset();
+	}
+
+	@Override
+	public void addDistinct(final String name, final long value) {
+		distinctStore.addDistinct(name, value);
+	}
+
+	@Override
+	public void addDistinct(final String name, final String value) {
+		distinctStore.addDistinct(name, value);
+	}
+
+	@Override
+	public DistinctCount findDistinctCount(final String name) {
+		return distinctStore.findDistinctCount(name);
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshot() {
+		return distinctStore.getAllDistinctCountsSnapshot();
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshotAndReset() {
+		return distinctStore.getAllDistinctCountsSnapshotAndReset();
+	}
+
+	@Override
+	public void reset() {
+		counterStore.reset();
+		durationStore.reset();
+		sampleStore.reset();
+		distinctStore.reset();
+	}
+
+	@Override
+	public Snapshot getSnapshot() {
+		return new DetachedSnapshot(getAllSamplesSnapshot(), getAllOccurrencesSnapshot(), getAllDurationsSnapshot(),
+				Collections.<String, MovingRates>emptyMap(), getAllDistinctCountsSnapshot());
+	}
+
+	@Override
+	public Snapshot getSnapshotAndReset() {
+		return new DetachedSnapshot(getAllSamplesSnapshotAndReset(), getAllOccurrencesSnapshotAndReset(), getAllDurationsSnapshotAndReset(),
+				Collections.<String, MovingRates>emptyMap(), getAllDistinctCountsSnapshotAndReset());
+	}
+}
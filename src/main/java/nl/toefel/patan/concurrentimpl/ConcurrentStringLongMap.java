@@ -0,0 +1,405 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.concurrentimpl;
+
+import nl.toefel.patan.singlethreadedimpl.SortedLongMap;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Thread-safe open-addressing hash map from names to primitive longs, used by {@link ConcurrentCounterStore}. Keys and
+ * values are kept in a parallel {@link AtomicReferenceArray} and {@link AtomicLongArray} of a table and found with
+ * linear probing. Adding to an existing key is a compare-and-set on its slot, new keys claim a free slot with a
+ * compare-and-set, so recording neither locks nor allocates.
+ * <p>
+ * A table is frozen when it grows and when its contents are moved into a snapshot: free slots are marked as moved and
+ * values are replaced by {@link #FROZEN} one by one, just like a {@link DistributionCell} is retired. Both publish the
+ * successor before the old table is frozen, writers that find a frozen slot continue in the successor and never wait.
+ * A growing table moves its keys into the successor one by one and adds their values to it; until a key has been moved
+ * writers keep adding to its slot in the predecessor, so the value is carried over. Reads wait until all keys have been
+ * moved.
+ * <p>
+ * Slots start out as {@link #UNSET} so that a key that was claimed but not added to yet can be told apart from a value
+ * of zero.
+ */
+final class ConcurrentStringLongMap {
+
+	/**
+	 * {@link #insert(String, long)} added the key.
+	 */
+	static final int INSERTED = 0;
+
+	/**
+	 * {@link #insert(String, long)} found the key, it was added by another thread.
+	 */
+	static final int FOUND = 1;
+
+	/**
+	 * {@link #insert(String, long)} added the key, but a reset moved it into a snapshot before the value was added.
+	 * The value was not added, the caller has to start over.
+	 */
+	static final int MOVED_BY_RESET = 2;
+
+	private static final long FROZEN = Long.MIN_VALUE;
+	private static final long UNSET = Long.MIN_VALUE + 1;
+	private static final String MOVED = new String("moved"); // compared by identity, never equal to a key
+	private static final int ABSENT = -1;
+	private static final int FROZEN_SLOT = -2;
+	private static final int FULL = -3;
+	private static final int MIN_CAPACITY = 16;
+
+	private final Object freezeLock = new Object();
+
+	private volatile Table table = new Table(MIN_CAPACITY);
+
+	/**
+	 * @return the current table, to cache slots with {@link #slotOf(Table, String)}
+	 */
+	Table table() {
+		return table;
+	}
+
+	/**
+	 * @return the slot of the key in the given table, negative if the key is not in it or the table is frozen
+	 */
+	int slotOf(final Table t, final String key) {
+		int slot = hash(key) & t.mask;
+		for (int probes = 0; probes <= t.mask; probes++) {
+			String existing = t.keys.get(slot);
+			if (existing == null) {
+				return ABSENT;
+			} else if (existing == MOVED) {
+				return FROZEN_SLOT;
+			} else if (existing.equals(key)) {
+				return slot;
+			}
+			slot = (slot + 1) & t.mask;
+		}
+		return ABSENT;
+	}
+
+	/**
+	 * @return false if the slot has been frozen, the delta is not added in that case
+	 */
+	boolean addAt(final Table t, final int slot, final long delta) {
+		for (;;) {
+			long current = t.values.get(slot);
+			if (current == FROZEN) {
+				return false;
+			}
+			if (t.values.compareAndSet(slot, current, current == UNSET ? delta : current + delta)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @return false if the key is not in the map, the delta is not added in that case
+	 */
+	boolean addIfPresent(final String key, final long delta) {
+		for (;;) {
+			Table t = table;
+			Table predecessor = t.predecessor; // read first, all keys are in the table once it is null
+			int slot = slotOf(t, key);
+			if (slot >= 0 && addAt(t, slot, delta)) {
+				return true;
+			} else if (slot == ABSENT) {
+				int moved = addToPredecessor(predecessor, key, delta);
+				if (moved != FROZEN_SLOT) {
+					return moved >= 0;
+				}
+			}
+			// the table was frozen and its successor published, or the key was moved into this table meanwhile
+		}
+	}
+
+	/**
+	 * Adds the key if it is not in the map and adds the delta to its value.
+	 *
+	 * @return {@link #INSERTED}, {@link #FOUND} or {@link #MOVED_BY_RESET}
+	 */
+	int insert(final String key, final long delta) {
+		boolean inserted = false;
+		for (;;) {
+			Table t = table;
+			Table predecessor = t.predecessor; // read first, all keys are in the table once it is null
+			int slot = freeSlotOrSlotOf(t, key);
+			if (slot == FULL) {
+				grow(t);
+				continue;
+			}
+			if (slot >= 0) {
+				String existing = t.keys.get(slot);
+				if (existing == null) {
+					int moved = addToPredecessor(predecessor, key, delta);
+					if (moved >= 0) {
+						return inserted ? INSERTED : FOUND;
+					} else if (moved == FROZEN_SLOT) {
+						continue; // the key has been moved into this table meanwhile
+					}
+					if (!reserve(t, predecessor)) {
+						grow(t);
+						continue;
+					}
+					if (!t.keys.compareAndSet(slot, null, key)) {
+						t.size.decrementAndGet();
+						continue; // another key or a freeze took the slot, probe again
+					}
+					inserted = true;
+				} else if (existing != MOVED && !existing.equals(key)) {
+					continue; // another key took the slot, probe again
+				}
+				if (existing != MOVED && addAt(t, slot, delta)) {
+					return inserted ? INSERTED : FOUND;
+				}
+			}
+			if (inserted && !t.grown) {
+				return MOVED_BY_RESET;
+			}
+			// the table was frozen, the successor has been published before and a growing table moves the key into it
+		}
+	}
+
+	/**
+	 * Adds the delta to the key in the table that is moving its keys into the current one, if any.
+	 *
+	 * @return the slot in the predecessor that the delta was added to, {@link #ABSENT} if the key is in neither table or
+	 * {@link #FROZEN_SLOT} if the key was moved meanwhile, it is in the current table then
+	 */
+	private int addToPredecessor(final Table predecessor, final String key, final long delta) {
+		if (predecessor == null) {
+			return ABSENT;
+		}
+		int slot = slotOf(predecessor, key);
+		if (slot < 0) {
+			return ABSENT; // keys are claimed in the successor before they are frozen, a frozen probe means it is absent
+		}
+		return addAt(predecessor, slot, delta) ? slot : FROZEN_SLOT;
+	}
+
+	/**
+	 * Counts a key that is about to be claimed, the keys of a predecessor count as well so that there is room to move
+	 * them.
+	 *
+	 * @return false if the table has to grow first
+	 */
+	private static boolean reserve(final Table t, final Table predecessor) {
+		int moving = predecessor == null ? 0 : predecessor.size.get();
+		if (t.size.incrementAndGet() + moving > t.threshold) {
+			t.size.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the value of the key, zero if the key is not in the map
+	 */
+	long get(final String key) {
+		for (;;) {
+			Table t = readableTable();
+			int slot = slotOf(t, key);
+			if (slot == ABSENT) {
+				return 0L;
+			} else if (slot >= 0) {
+				long value = t.values.get(slot);
+				if (value != FROZEN) {
+					return value == UNSET ? 0L : value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a sorted copy of the map, values are only boxed when they are read
+	 */
+	SortedLongMap snapshot() {
+		for (;;) {
+			Table t = readableTable();
+			String[] keys = new String[t.mask + 1];
+			long[] values = new long[t.mask + 1];
+			int size = 0;
+			boolean frozen = false;
+			for (int slot = 0; slot <= t.mask && !frozen; slot++) {
+				String key = t.keys.get(slot);
+				if (key != null) {
+					long value = t.values.get(slot);
+					frozen = key == MOVED || value == FROZEN;
+					if (value != UNSET) {
+						keys[size] = key;
+						values[size++] = value;
+					}
+				}
+			}
+			if (!frozen) {
+				return SortedLongMap.sort(keys, values, size);
+			}
+		}
+	}
+
+	/**
+	 * Continues with an empty table and freezes the current one, no value is added to it after it is returned. Names that
+	 * were claimed but not added to are left out, an insert that raced with the reset adds its value to the new table
+	 * instead.
+	 *
+	 * @return a sorted copy of the frozen table
+	 */
+	SortedLongMap snapshotAndReset() {
+		Table t;
+		synchronized (freezeLock) {
+			t = table;
+			table = new Table(t.size.get() * 2); // room for the names of the previous period
+		}
+		String[] keys = new String[t.mask + 1];
+		long[] values = new long[t.mask + 1];
+		int size = 0;
+		for (int slot = 0; slot <= t.mask; slot++) {
+			String key = freezeKey(t, slot);
+			if (key != null) {
+				long value = t.values.getAndSet(slot, FROZEN);
+				if (value != UNSET) {
+					keys[size] = key;
+					values[size++] = value;
+				}
+			}
+		}
+		return SortedLongMap.sort(keys, values, size);
+	}
+
+	private void grow(final Table t) {
+		synchronized (freezeLock) {
+			if (table != t) {
+				return;
+			}
+			Table next = new Table((t.mask + 1) << 1);
+			next.predecessor = t;
+			t.grown = true;
+			table = next;
+			for (int slot = 0; slot <= t.mask; slot++) {
+				String key = freezeKey(t, slot);
+				if (key != null) {
+					int target = claim(next, key); // before the freeze, writers that find it frozen find the key in next
+					long value = t.values.getAndSet(slot, FROZEN);
+					if (value != UNSET) {
+						addAt(next, target, value);
+					}
+				}
+			}
+			next.predecessor = null;
+		}
+	}
+
+	/**
+	 * @return the current table, after waiting for a growing table to move all its keys into it
+	 */
+	private Table readableTable() {
+		Table t = table;
+		if (t.predecessor == null) {
+			return t;
+		}
+		synchronized (freezeLock) { // held by grow until all keys have been moved
+			return table;
+		}
+	}
+
+	/**
+	 * @return the slot of the key in a table that is not frozen, the key is added if it is not in it yet
+	 */
+	private static int claim(final Table t, final String key) {
+		for (;;) {
+			int slot = freeSlotOrSlotOf(t, key);
+			if (t.keys.get(slot) != null) {
+				return slot;
+			} else if (t.keys.compareAndSet(slot, null, key)) {
+				t.size.incrementAndGet();
+				return slot;
+			}
+		}
+	}
+
+	/**
+	 * @return the slot of the key, the free slot where it should be added, {@link #FROZEN_SLOT} or {@link #FULL}
+	 */
+	private static int freeSlotOrSlotOf(final Table t, final String key) {
+		int slot = hash(key) & t.mask;
+		for (int probes = 0; probes <= t.mask; probes++) {
+			String existing = t.keys.get(slot);
+			if (existing == MOVED) {
+				return FROZEN_SLOT;
+			} else if (existing == null || existing.equals(key)) {
+				return slot;
+			}
+			slot = (slot + 1) & t.mask;
+		}
+		return FULL;
+	}
+
+	/**
+	 * @return the key of the slot, or null if the slot was free, it is marked as moved in that case
+	 */
+	private static String freezeKey(final Table t, final int slot) {
+		for (;;) {
+			String key = t.keys.get(slot);
+			if (key != null) {
+				return key;
+			} else if (t.keys.compareAndSet(slot, null, MOVED)) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Spreads the hash code of the key, the low bits select the first slot.
+	 */
+	private static int hash(final String key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Fixed-size generation of the map, replaced when it grows or is reset.
+	 */
+	static final class Table {
+		private final AtomicReferenceArray<String> keys;
+		private final AtomicLongArray values;
+		private final AtomicInteger size = new AtomicInteger();
+		private final int mask;
+		private final int threshold;
+		private volatile boolean grown;
+
+		/**
+		 * The table that is moving its keys into this one while it grows, null once they have all been moved.
+		 */
+		private volatile Table predecessor;
+
+		Table(final int capacity) {
+			int slots = MIN_CAPACITY;
+			while (slots < capacity) {
+				slots <<= 1;
+			}
+			long[] unset = new long[slots];
+			Arrays.fill(unset, UNSET);
+			this.keys = new AtomicReferenceArray<String>(slots);
+			this.values = new AtomicLongArray(unset);
+			this.mask = slots - 1;
+			this.threshold = slots - (slots >> 2);
+		}
+	}
+}
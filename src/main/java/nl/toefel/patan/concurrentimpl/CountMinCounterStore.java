@@ -0,0 +1,235 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.concurrentimpl;
+
+import nl.toefel.patan.api.Counter;
+import nl.toefel.patan.api.OccurrenceStore;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe counter store with a fixed memory footprint for any number of names, backed by a Count-Min sketch of
+ * Cormode and Muthukrishnan. Every name maps to one counter in each of the depth rows of a width x depth matrix, its
+ * count is estimated as the minimum of those counters. Estimates never underestimate, with a probability of
+ * 1 - e^-depth they overestimate by at most 2N / width, where N is the total number of occurrences.
+ * <p>
+ * Updates are conservative: only the counters that are below the new estimate are raised, which lowers the error of
+ * names that share counters with frequent names considerably. Increments are lock-free, the counter with the lowest
+ * value is incremented atomically and the other counters of the name are raised to at least its new value. When
+ * increments of the same name race and each picks a different lowest counter, one of them can be absorbed by the
+ * other, so the guarantee to never underestimate holds up to the increments that raced.
+ * <p>
+ * The sketch does not keep the names, it answers point queries with {@link #findOccurrence(String)} only and the
+ * snapshots are always empty. Occurrences cannot be negative.
+ */
+public class CountMinCounterStore implements OccurrenceStore {
+
+	private final int width;
+	private final int depth;
+	// row r occupies the indexes [r * width, (r + 1) * width)
+	private final AtomicLongArray cells;
+
+	/**
+	 * @param width the number of counters per row, determines the error bound
+	 * @param depth the number of rows, determines the probability that the error bound holds
+	 */
+	public CountMinCounterStore(final int width, final int depth) {
+		if (width < 1 || depth < 1 || (long) width * depth > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("width and depth must be positive and fit in an array but were " + width + " and " + depth);
+		}
+		this.width = width;
+		this.depth = depth;
+		this.cells = new AtomicLongArray(width * depth);
+	}
+
+	/**
+	 * Creates a sketch that overestimates by at most epsilon * N with a probability of at least 1 - delta.
+	 *
+	 * @param epsilon the relative error, between 0 and 1
+	 * @param delta the probability that the error is exceeded, between 0 and 1
+	 * @return a new sketch
+	 */
+	public static CountMinCounterStore forErrorBound(final double epsilon, final double delta) {
+		if (!(epsilon > 0 && epsilon < 1) || !(delta > 0 && delta < 1)) {
+			throw new IllegalArgumentException("epsilon and delta must be between 0 and 1 but were " + epsilon + " and " + delta);
+		}
+		int width = (int) Math.ceil(2 / epsilon);
+		int depth = (int) Math.ceil(Math.log(1 / delta));
+		return new CountMinCounterStore(width, depth);
+	}
+
+	@Override
+	public void addOccurrence(final String name) {
+		addOccurrences(name, 1L);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if timesOccurred is negative
+	 */
+	@Override
+	public void addOccurrences(final String name, final long timesOccurred) {
+		add(hashOf(name), timesOccurred);
+	}
+
+	@Override
+	public Counter counter(final String name) {
+		final long hash = hashOf(name);
+		return new Counter() {
+			@Override
+			public void increment() {
+				add(hash, 1L);
+			}
+
+			@Override
+			public void increment(final long timesOccurred) {
+				add(hash, timesOccurred);
+			}
+		};
+	}
+
+	private void add(final long hash, final long timesOccurred) {
+		if (timesOccurred < 0) {
+			throw new IllegalArgumentException("timesOccurred cannot be negative but was " + timesOccurred);
+		}
+		int lowest = indexOf(hash, 0);
+		long lowestValue = cells.get(lowest);
+		for (int row = 1; row < depth; row++) {
+			int index = indexOf(hash, row);
+			long value = cells.get(index);
+			if (value < lowestValue) {
+				lowest = index;
+				lowestValue = value;
+			}
+		}
+		long estimate = cells.addAndGet(lowest, timesOccurred);
+		for (int row = 0; row < depth; row++) {
+			int index = indexOf(hash, row);
+			if (index != lowest) {
+				raise(index, estimate);
+			}
+		}
+	}
+
+	private void raise(final int index, final long atLeast) {
+		for (;;) {
+			long current = cells.get(index);
+			if (current >= atLeast || cells.compareAndSet(index, current, atLeast)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return the estimated number of occurrences, never less than the actual number
+	 */
+	@Override
+	public long findOccurrence(final String name) {
+		long hash = hashOf(name);
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, cells.get(indexOf(hash, row)));
+		}
+		return estimate;
+	}
+
+	/**
+	 * Adds the counts of another sketch to this sketch, the estimates of this sketch then cover the occurrences of both.
+	 * The other sketch is not modified.
+	 *
+	 * @param other a sketch of the same width and depth
+	 */
+	public void merge(final CountMinCounterStore other) {
+		if (other.width != width || other.depth != depth) {
+			throw new IllegalArgumentException("cannot merge a " + other.width + "x" + other.depth + " sketch into a " + width + "x" + depth + " sketch");
+		}
+		for (int i = 0; i < cells.length(); i++) {
+			long value = other.cells.get(i);
+			if (value != 0) {
+				cells.addAndGet(i, value);
+			}
+		}
+	}
+
+	/**
+	 * @return an empty map, the sketch does not keep the names
+	 */
+	@Override
+	public SortedMap<String, Long> getAllOccurrencesSnapshot() {
+		return new TreeMap<String, Long>();
+	}
+
+	/**
+	 * Clears the sketch.
+	 *
+	 * @return an empty map, the sketch does not keep the names
+	 */
+	@Override
+	public SortedMap<String, Long> getAllOccurrencesSnapshotAndReset() {
+		reset();
+		return new TreeMap<String, Long>();
+	}
+
+	/**
+	 * Clears the counters one by one, occurrences added concurrently may be partially kept.
+	 */
+	@Override
+	public void reset() {
+		for (int i = 0; i < cells.length(); i++) {
+			cells.set(i, 0L);
+		}
+	}
+
+	/**
+	 * @return the number of counters of the sketch
+	 */
+	public int getCounterCount() {
+		return cells.length();
+	}
+
+	/**
+	 * Hashes the characters of the name to 64 bits, independent of {@link String#hashCode()} so names with the same
+	 * hash code, like "Aa" and "BB", do not share their counters. The characters are folded in FNV-1a style and the
+	 * result is mixed with the finalizer of MurmurHash3.
+	 */
+	private static long hashOf(final String name) {
+		long h = 0xCBF29CE484222325L;
+		for (int i = 0; i < name.length(); i++) {
+			h = (h ^ name.charAt(i)) * 0x100000001B3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+
+	/**
+	 * Derives the counter of a row from the two halves of the hash, as proposed by Kirsch and Mitzenmacher.
+	 */
+	private int indexOf(final long hash, final int row) {
+		int first = (int) hash;
+		int second = (int) (hash >>> 32) | 1;
+		return row * width + ((first + row * second) & Integer.MAX_VALUE) % width;
+	}
+
+	@Override
+	public String toString() {
+		return "CountMinCounterStore [width=" + width + ", depth=" + depth + ']';
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.concurrentimpl;
+
+import nl.toefel.patan.api.DistinctCount;
+import nl.toefel.patan.singlethreadedimpl.HyperLogLog;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Distinct count of a single name, see {@link DistributionCell} for the retirement protocol.
+ * <p>
+ * Values are added to the lock-free sketch before checking whether the cell was retired. A writer that finds the cell
+ * retired adds the value again to a fresh cell, which is harmless because adding a value twice does not change a
+ * sketch. A writer that finds the cell active is certain its value is part of the final count of the cell.
+ */
+final class DistinctCell {
+
+	private final HyperLogLog sketch = new HyperLogLog();
+
+	private final AtomicBoolean retired = new AtomicBoolean();
+
+	/**
+	 * @param value value to add
+	 * @return false if the cell has been retired, the value may or may not be part of its final count in that case
+	 */
+	boolean add(final long value) {
+		sketch.add(value);
+		return !retired.get();
+	}
+
+	/**
+	 * @return the current count, null if the cell has been retired
+	 */
+	DistinctCount get() {
+		DistinctCount count = sketch.toDistinctCount();
+		return retired.get() ? null : count;
+	}
+
+	/**
+	 * Retires the cell, values added afterwards are added again to a fresh cell by their writers.
+	 *
+	 * @return the final count of the cell or null if it was already retired by another thread
+	 */
+	DistinctCount retire() {
+		if (retired.compareAndSet(false, true)) {
+			return sketch.toDistinctCount();
+		} else {
+			return null;
+		}
+	}
+}
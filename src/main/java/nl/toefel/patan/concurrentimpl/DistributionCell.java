@@ -0,0 +1,201 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.concurrentimpl;
+
+import nl.toefel.patan.api.StatisticalDistribution;
+import nl.toefel.patan.singlethreadedimpl.ConcurrentSampleAccumulator;
+import nl.toefel.patan.singlethreadedimpl.SampleAccumulator;
+import nl.toefel.patan.singlethreadedimpl.SampleAccumulatorFactory;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Statistical distribution of a single sample or duration name. A cell is retired when its distribution is moved into a
+ * snapshot by a reset, writers that find a retired cell must look up (or create) a fresh cell for the name. This way
+ * every write ends up either in the snapshot or in the new cell, without a lock shared by all names.
+ * <p>
+ * Samples are recorded in place into one of several {@link SampleAccumulator} stripes, the stripe is selected by
+ * the id of the recording thread and is guarded by its own monitor. Threads recording under the same name therefore
+ * rarely contend and recording does not allocate. Stripes are created on first use, a name that is only recorded by a
+ * single thread has a single stripe. The stripes are merged into an immutable distribution when it is read.
+ * <p>
+ * Names whose accumulator is a {@link ConcurrentSampleAccumulator} have no stripes, all threads record into a single
+ * accumulator without a lock. Writers register themselves in a counter while they record, a retiring thread waits
+ * until writers that started before the retirement are done, so no sample is lost.
+ */
+final class DistributionCell {
+
+	private static final int STRIPES = stripeCount(Runtime.getRuntime().availableProcessors());
+
+	private final SampleAccumulatorFactory accumulatorFactory;
+	private final String name;
+
+	private final AtomicReferenceArray<SampleAccumulator> stripes = new AtomicReferenceArray<SampleAccumulator>(STRIPES);
+	private final ConcurrentSampleAccumulator shared;
+	private final AtomicInteger writers = new AtomicInteger();
+
+	private final AtomicBoolean retired = new AtomicBoolean();
+
+	private DistributionCell(final SampleAccumulatorFactory accumulatorFactory, final String name) {
+		this.accumulatorFactory = accumulatorFactory;
+		this.name = name;
+		SampleAccumulator first = accumulatorFactory.create(name);
+		if (first instanceof ConcurrentSampleAccumulator) {
+			this.shared = (ConcurrentSampleAccumulator) first;
+		} else {
+			this.shared = null;
+			stripes.set(stripeIndexOfCurrentThread(), first);
+		}
+	}
+
+	static DistributionCell withSample(final SampleAccumulatorFactory accumulatorFactory, final String name, final double firstSample) {
+		DistributionCell cell = new DistributionCell(accumulatorFactory, name);
+		cell.accumulatorOfCurrentThread().addSample(firstSample); // not published yet, no need to synchronize
+		return cell;
+	}
+
+	static DistributionCell withElapsedNanos(final SampleAccumulatorFactory accumulatorFactory, final String name, final long firstElapsedNanos) {
+		DistributionCell cell = new DistributionCell(accumulatorFactory, name);
+		cell.accumulatorOfCurrentThread().addElapsedNanos(firstElapsedNanos); // not published yet, no need to synchronize
+		return cell;
+	}
+
+	/**
+	 * @param sampleValue value to add
+	 * @return false if the cell has been retired, the sample is not added in that case
+	 */
+	boolean addSample(final double sampleValue) {
+		if (shared != null) {
+			writers.incrementAndGet();
+			try {
+				if (retired.get()) {
+					return false;
+				}
+				shared.addSample(sampleValue);
+				return true;
+			} finally {
+				writers.decrementAndGet();
+			}
+		}
+		SampleAccumulator stripe = stripeOfCurrentThread();
+		synchronized (stripe) {
+			if (retired.get()) {
+				return false;
+			}
+			stripe.addSample(sampleValue);
+			return true;
+		}
+	}
+
+	/**
+	 * @param elapsedNanos duration to add
+	 * @return false if the cell has been retired, the duration is not added in that case
+	 */
+	boolean addElapsedNanos(final long elapsedNanos) {
+		if (shared != null) {
+			writers.incrementAndGet();
+			try {
+				if (retired.get()) {
+					return false;
+				}
+				shared.addElapsedNanos(elapsedNanos);
+				return true;
+			} finally {
+				writers.decrementAndGet();
+			}
+		}
+		SampleAccumulator stripe = stripeOfCurrentThread();
+		synchronized (stripe) {
+			if (retired.get()) {
+				return false;
+			}
+			stripe.addElapsedNanos(elapsedNanos);
+			return true;
+		}
+	}
+
+	/**
+	 * @return the current distribution, null if the cell has been retired
+	 */
+	StatisticalDistribution get() {
+		StatisticalDistribution distribution = shared != null ? shared.toDistribution() : mergeStripes();
+		return retired.get() ? null : distribution;
+	}
+
+	/**
+	 * Retires the cell, no writes will be accepted afterwards.
+	 *
+	 * @return the final distribution of the cell or null if it was already retired by another thread
+	 */
+	StatisticalDistribution retire() {
+		if (retired.compareAndSet(false, true)) {
+			if (shared == null) {
+				return mergeStripes();
+			}
+			while (writers.get() != 0) {
+				Thread.yield();
+			}
+			return shared.toDistribution();
+		} else {
+			return null;
+		}
+	}
+
+	private StatisticalDistribution mergeStripes() {
+		SampleAccumulator total = accumulatorFactory.create(name);
+		for (int i = 0; i < STRIPES; i++) {
+			SampleAccumulator stripe = stripes.get(i);
+			if (stripe != null) {
+				synchronized (stripe) {
+					total.merge(stripe);
+				}
+			}
+		}
+		return total.toDistribution();
+	}
+
+	private SampleAccumulator accumulatorOfCurrentThread() {
+		return shared != null ? shared : stripeOfCurrentThread();
+	}
+
+	private SampleAccumulator stripeOfCurrentThread() {
+		int index = stripeIndexOfCurrentThread();
+		SampleAccumulator stripe = stripes.get(index);
+		if (stripe == null) {
+			stripes.compareAndSet(index, null, accumulatorFactory.create(name));
+			stripe = stripes.get(index);
+		}
+		return stripe;
+	}
+
+	private static int stripeIndexOfCurrentThread() {
+		return (int) Thread.currentThread().getId() & (STRIPES - 1);
+	}
+
+	/**
+	 * @return the smallest power of two that is greater than or equal to the number of processors
+	 */
+	static int stripeCount(final int processors) {
+		int stripes = 1;
+		while (stripes < processors) {
+			stripes <<= 1;
+		}
+		return stripes;
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.mappedimpl;
+
+/**
+ * Layout of the file of {@link MappedStatistics}, the contract for external tools that read it. All numbers are big
+ * endian, the file has a fixed size and consists of three regions:
+ * <pre>
+ * header     64 bytes        magic, version, slot count, entry sizes, number of used slots, creation time
+ * directory  128 bytes/slot  kind (1 byte), unused (1 byte), name length (2 bytes), UTF-8 name (up to 124 bytes)
+ * data       64 bytes/slot   sequence number (8 bytes) followed by the values of the slot
+ * </pre>
+ * Slot i is described by directory entry i, slots are handed out in order and never reused. A directory entry is
+ * complete before the number of used slots in the header includes it.
+ * <p>
+ * The values of a slot are written between two increments of its sequence number, a reader that reads an even sequence
+ * number before and the same number after reading the values has read a consistent slot, like a seqlock.
+ * An occurrence slot holds the count followed by 1 if the name has been recorded since the last reset. Sample slots hold
+ * the count, minimum, maximum, sum, shift, shifted sum and shifted sum of squares as doubles. Duration slots hold the
+ * same values as longs in nanoseconds, except the shifted sum of squares which is a double.
+ */
+public final class MappedLayout {
+
+	/**
+	 * The first four bytes of the file, "PATN".
+	 */
+	public static final int MAGIC = 0x5041544E;
+	public static final int VERSION = 1;
+
+	public static final int HEADER_BYTES = 64;
+	public static final int DIRECTORY_ENTRY_BYTES = 128;
+	public static final int SLOT_BYTES = 64;
+	public static final int MAX_NAME_BYTES = DIRECTORY_ENTRY_BYTES - 4;
+
+	public static final byte KIND_OCCURRENCE = 1;
+	public static final byte KIND_SAMPLE = 2;
+	public static final byte KIND_DURATION = 3;
+
+	static final int MAGIC_OFFSET = 0;
+	static final int VERSION_OFFSET = 4;
+	static final int SLOT_COUNT_OFFSET = 8;
+	static final int DIRECTORY_ENTRY_BYTES_OFFSET = 12;
+	static final int SLOT_BYTES_OFFSET = 16;
+	static final int USED_SLOTS_OFFSET = 20;
+	static final int CREATED_MILLIS_OFFSET = 24;
+
+	private MappedLayout() {
+	}
+
+	/**
+	 * @return the size of a file with the given number of slots
+	 */
+	public static long fileBytes(final int slotCount) {
+		return HEADER_BYTES + (long) slotCount * (DIRECTORY_ENTRY_BYTES + SLOT_BYTES);
+	}
+
+	static int directoryEntryOffset(final int slot) {
+		return HEADER_BYTES + slot * DIRECTORY_ENTRY_BYTES;
+	}
+
+	static int slotOffset(final int slotCount, final int slot) {
+		return HEADER_BYTES + slotCount * DIRECTORY_ENTRY_BYTES + slot * SLOT_BYTES;
+	}
+}
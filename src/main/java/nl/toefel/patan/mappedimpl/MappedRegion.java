@@ -0,0 +1,239 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.mappedimpl;
+
+import nl.toefel.patan.api.StatisticalDistribution;
+import nl.toefel.patan.singlethreadedimpl.ImmutableStatisticalDistribution;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import static nl.toefel.patan.mappedimpl.MappedLayout.*;
+
+/**
+ * Access to a file in the {@link MappedLayout}, shared by the writer and the reader. Only absolute gets and puts are
+ * used, the position of the buffer is never changed.
+ */
+final class MappedRegion {
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Number of values in a slot after the sequence number.
+	 */
+	static final int SLOT_VALUES = 7;
+
+	private static final double NANOS_PER_MILLI = 1000 * 1000;
+
+	/**
+	 * A reader gives up waiting for a consistent slot after this many attempts, so the file of a writer that died in the
+	 * middle of an update can still be read.
+	 */
+	private static final int MAX_READ_ATTEMPTS = 1000;
+
+	private final ByteBuffer buffer;
+	private final int slotCount;
+
+	private MappedRegion(final ByteBuffer buffer, final int slotCount) {
+		this.buffer = buffer;
+		this.slotCount = slotCount;
+	}
+
+	/**
+	 * Writes an empty header to a new file next to the given one and renames it over the given file. An existing file is
+	 * replaced, never truncated: readers that still map it, like a post-mortem read of a crashed writer, keep its last
+	 * values instead of crashing on a truncated mapping.
+	 *
+	 * @throws IOException if the new file cannot be written, or the existing file cannot be replaced, which happens on
+	 *         platforms that do not allow replacing a mapped file
+	 */
+	static MappedRegion create(final File file, final int slotCount) throws IOException {
+		if (slotCount <= 0 || fileBytes(slotCount) > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("slotCount must be positive and the file cannot exceed 2 GB, was " + slotCount);
+		}
+		File created = File.createTempFile(file.getName() + ".new", null, file.getAbsoluteFile().getParentFile());
+		boolean replaced = false;
+		try {
+			MappedByteBuffer buffer;
+			RandomAccessFile raf = new RandomAccessFile(created, "rw");
+			try {
+				raf.setLength(fileBytes(slotCount)); // the new length is filled with zeros
+				buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileBytes(slotCount));
+			} finally {
+				raf.close(); // the mapping stays valid, also after the rename
+			}
+			buffer.putInt(VERSION_OFFSET, VERSION);
+			buffer.putInt(SLOT_COUNT_OFFSET, slotCount);
+			buffer.putInt(DIRECTORY_ENTRY_BYTES_OFFSET, DIRECTORY_ENTRY_BYTES);
+			buffer.putInt(SLOT_BYTES_OFFSET, SLOT_BYTES);
+			buffer.putLong(CREATED_MILLIS_OFFSET, System.currentTimeMillis());
+			buffer.putInt(MAGIC_OFFSET, MAGIC); // last, a file with a magic number has a complete header
+			replaced = created.renameTo(file) || (file.delete() && created.renameTo(file)); // Windows cannot rename over a file
+			if (!replaced) {
+				throw new IOException("cannot replace " + file + " with " + created);
+			}
+			return new MappedRegion(buffer, slotCount);
+		} finally {
+			if (!replaced) {
+				created.delete();
+			}
+		}
+	}
+
+	/**
+	 * Maps an existing file read-only.
+	 *
+	 * @throws IOException if the file does not exist or is not in the {@link MappedLayout}
+	 */
+	static MappedRegion open(final File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long length = raf.length();
+			if (length < HEADER_BYTES) {
+				throw new IOException(file + " is too small to contain statistics");
+			}
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+				throw new IOException(file + " does not contain statistics");
+			}
+			if (buffer.getInt(VERSION_OFFSET) != VERSION) {
+				throw new IOException(file + " has unsupported version " + buffer.getInt(VERSION_OFFSET));
+			}
+			int slotCount = buffer.getInt(SLOT_COUNT_OFFSET);
+			if (buffer.getInt(DIRECTORY_ENTRY_BYTES_OFFSET) != DIRECTORY_ENTRY_BYTES || buffer.getInt(SLOT_BYTES_OFFSET) != SLOT_BYTES
+					|| slotCount <= 0 || fileBytes(slotCount) > length) {
+				throw new IOException(file + " has an invalid header");
+			}
+			return new MappedRegion(buffer, slotCount);
+		} finally {
+			raf.close();
+		}
+	}
+
+	int slotCount() {
+		return slotCount;
+	}
+
+	int usedSlots() {
+		return Math.min(buffer.getInt(USED_SLOTS_OFFSET), slotCount);
+	}
+
+	long createdMillis() {
+		return buffer.getLong(CREATED_MILLIS_OFFSET);
+	}
+
+	/**
+	 * Writes the directory entry of the next free slot and then includes it in the number of used slots. Callers must
+	 * make sure there is a free slot and that only one thread appends at a time.
+	 *
+	 * @return the appended slot
+	 */
+	int append(final byte kind, final byte[] name) {
+		int slot = buffer.getInt(USED_SLOTS_OFFSET);
+		int entry = directoryEntryOffset(slot);
+		buffer.put(entry, kind);
+		buffer.putShort(entry + 2, (short) name.length);
+		for (int i = 0; i < name.length; i++) {
+			buffer.put(entry + 4 + i, name[i]);
+		}
+		buffer.putInt(USED_SLOTS_OFFSET, slot + 1);
+		return slot;
+	}
+
+	byte kindOf(final int slot) {
+		return buffer.get(directoryEntryOffset(slot));
+	}
+
+	String nameOf(final int slot) {
+		int entry = directoryEntryOffset(slot);
+		int length = Math.min(buffer.getShort(entry + 2) & 0xFFFF, MAX_NAME_BYTES);
+		byte[] name = new byte[length];
+		for (int i = 0; i < length; i++) {
+			name[i] = buffer.get(entry + 4 + i);
+		}
+		return new String(name, UTF8);
+	}
+
+	/**
+	 * Copies the values of a slot. Writers must hold the lock of the slot.
+	 */
+	void get(final int slot, final long[] values) {
+		int offset = slotOffset(slotCount, slot) + 8;
+		for (int i = 0; i < SLOT_VALUES; i++) {
+			values[i] = buffer.getLong(offset + i * 8);
+		}
+	}
+
+	/**
+	 * Overwrites the values of a slot between two increments of its sequence number. Writers must hold the lock of the
+	 * slot.
+	 */
+	void put(final int slot, final long[] values) {
+		int offset = slotOffset(slotCount, slot);
+		long sequence = buffer.getLong(offset);
+		buffer.putLong(offset, sequence + 1);
+		for (int i = 0; i < SLOT_VALUES; i++) {
+			buffer.putLong(offset + 8 + i * 8, values[i]);
+		}
+		buffer.putLong(offset, sequence + 2);
+	}
+
+	/**
+	 * Copies the values of a slot without a lock, retrying while a writer is updating it. Used by readers in other
+	 * processes. After {@link #MAX_READ_ATTEMPTS} the last values read are returned, which may be inconsistent.
+	 */
+	void read(final int slot, final long[] values) {
+		int offset = slotOffset(slotCount, slot);
+		for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+			long before = buffer.getLong(offset);
+			get(slot, values);
+			if ((before & 1) == 0 && buffer.getLong(offset) == before) {
+				return;
+			}
+			Thread.yield();
+		}
+	}
+
+	void force() {
+		if (buffer instanceof MappedByteBuffer) {
+			((MappedByteBuffer) buffer).force();
+		}
+	}
+
+	/**
+	 * @return the distribution of the values of a sample or duration slot
+	 */
+	static StatisticalDistribution toDistribution(final byte kind, final long[] values) {
+		long count = values[0];
+		if (count == 0) {
+			return ImmutableStatisticalDistribution.createEmpty();
+		}
+		if (kind == KIND_DURATION) {
+			return ImmutableStatisticalDistribution.create(count, values[1] / NANOS_PER_MILLI, values[2] / NANOS_PER_MILLI,
+					values[3] / NANOS_PER_MILLI, values[4] / NANOS_PER_MILLI, values[5] / NANOS_PER_MILLI,
+					Double.longBitsToDouble(values[6]) / (NANOS_PER_MILLI * NANOS_PER_MILLI));
+		}
+		return ImmutableStatisticalDistribution.create(count, Double.longBitsToDouble(values[1]), Double.longBitsToDouble(values[2]),
+				Double.longBitsToDouble(values[3]), Double.longBitsToDouble(values[4]), Double.longBitsToDouble(values[5]),
+				Double.longBitsToDouble(values[6]));
+	}
+}
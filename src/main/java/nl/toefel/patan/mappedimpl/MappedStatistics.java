@@ -0,0 +1,500 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.mappedimpl;
+
+import nl.toefel.patan.api.*;
+import nl.toefel.patan.singlethreadedimpl.DetachedSnapshot;
+import nl.toefel.patan.singlethreadedimpl.DistinctCountStore;
+import nl.toefel.patan.singlethreadedimpl.ElapsedNanosRecorder;
+import nl.toefel.patan.singlethreadedimpl.ForeverRunningStopwatch;
+import nl.toefel.patan.singlethreadedimpl.ImmutableStatisticalDistribution;
+import nl.toefel.patan.singlethreadedimpl.SampleRecorderTimer;
+import nl.toefel.patan.singlethreadedimpl.TimerCache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static nl.toefel.patan.mappedimpl.MappedLayout.*;
+
+/**
+ * Thread-safe statistics implementation that keeps occurrences, samples and durations in a memory-mapped file, so
+ * external processes can read them with a {@link MappedStatisticsReader} without going through this JVM. The data
+ * survives a crash of the process, a post-mortem read shows the values of the moment it died.
+ * <p>
+ * Every name gets a fixed-size slot in the file when it is first recorded, the layout is described in
+ * {@link MappedLayout}. Slots are never released, a reset only clears their values. When all slots are in use, records
+ * under new names are dropped and counted, see {@link #getDroppedRecords()}. Records under names longer than
+ * {@link MappedLayout#MAX_NAME_BYTES} UTF-8 bytes do not fit in the directory, they are dropped and counted the same way
+ * instead of failing the caller. Truncating them could merge unrelated names into one slot.
+ * <p>
+ * Only one instance in one process may write to a file. Updates of a slot are guarded by one of a fixed number of
+ * locks, readers in this JVM take the same lock and always see consistent values. Readers in other processes rely on the
+ * sequence number of the slot, Java 6 has no memory fences for mapped buffers, so their reads are consistent on the
+ * usual platforms but not guaranteed by the memory model, like the hsperfdata files of the JVM itself.
+ * <p>
+ * Distinct counts are not stored in the file, their sketches are too large for a slot. They are kept on the heap and only
+ * appear in the snapshots of this instance.
+ */
+public class MappedStatistics implements Statistics, Closeable {
+
+	private static final int LOCK_STRIPES = 64;
+
+	private final File file;
+
+	private final MappedRegion region;
+
+	private final SlotLock[] locks = new SlotLock[LOCK_STRIPES];
+
+	private final ConcurrentMap<String, Integer> occurrenceSlots = new ConcurrentHashMap<String, Integer>();
+
+	private final ConcurrentMap<String, Integer> sampleSlots = new ConcurrentHashMap<String, Integer>();
+
+	private final ConcurrentMap<String, Integer> durationSlots = new ConcurrentHashMap<String, Integer>();
+
+	private final Object directoryLock = new Object();
+
+	/**
+	 * Set once all slots are in use, slots are never released. Records under new names are then dropped without
+	 * encoding the name or taking the directory lock.
+	 */
+	private volatile boolean directoryFull;
+
+	private final AtomicLong droppedRecords = new AtomicLong();
+
+	private final DistinctCountStore distinctStore = new DistinctCountStore();
+
+	private final TimerCache timerCache = new TimerCache(this);
+
+	/**
+	 * Creates the file with room for the given number of names. An existing file is replaced by a new file, it is never
+	 * truncated while other processes may still read it.
+	 *
+	 * @param file the file to write to
+	 * @param slotCount maximum number of names, the file takes {@link MappedLayout#fileBytes(int)} bytes
+	 * @throws IOException if the file cannot be created, mapped or replaced
+	 */
+	public MappedStatistics(final File file, final int slotCount) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("file cannot be null");
+		}
+		this.file = file;
+		this.region = MappedRegion.create(file, slotCount);
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			locks[i] = new SlotLock();
+		}
+	}
+
+	/**
+	 * Guards the slots with the same index modulo {@link #LOCK_STRIPES}, the values array is the scratch space of the
+	 * thread that holds the lock.
+	 */
+	private static final class SlotLock {
+		final long[] values = new long[MappedRegion.SLOT_VALUES];
+	}
+
+	@Override
+	public Stopwatch startStopwatch() {
+		return ForeverRunningStopwatch.startNewStopwatch();
+	}
+
+	@Override
+	public void recordElapsedTime(final String eventName, final Runnable runnable) {
+		timerCache.timer(eventName).recordElapsedTime(runnable);
+	}
+
+	@Override
+	public <T> T recordElapsedTime(final String eventName, final TimedTask<T> runnable) {
+		return timerCache.timer(eventName).recordElapsedTime(runnable);
+	}
+
+	@Override
+	public double recordElapsedTime(final String eventName, final Stopwatch stopwatch) {
+		long elapsedNanos = stopwatch.elapsedNanos();
+		addElapsedNanos(slotOf(durationSlots, KIND_DURATION, eventName), elapsedNanos);
+		return elapsedNanos / 1e6;
+	}
+
+	@Override
+	public long recordElapsedNanos(final String eventName, final long startNanos) {
+		long elapsedNanos = System.nanoTime() - startNanos;
+		addElapsedNanos(slotOf(durationSlots, KIND_DURATION, eventName), elapsedNanos);
+		return elapsedNanos;
+	}
+
+	@Override
+	public Timer timer(final String eventName) {
+		final int slot = slotOf(durationSlots, KIND_DURATION, eventName);
+		return new SampleRecorderTimer(this, eventName, new ElapsedNanosRecorder() {
+			@Override
+			public void recordElapsedNanos(final long elapsedNanos) {
+				addElapsedNanos(slot, elapsedNanos);
+			}
+		});
+	}
+
+	@Override
+	public StatisticalDistribution findDuration(final String name) {
+		return findDistribution(durationSlots, KIND_DURATION, name);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshot() {
+		return distributions(durationSlots, KIND_DURATION, false);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshotAndReset() {
+		return distributions(durationSlots, KIND_DURATION, true);
+	}
+
+	@Override
+	public void addOccurrence(final String eventName) {
+		addOccurrences(slotOf(occurrenceSlots, KIND_OCCURRENCE, eventName), 1);
+	}
+
+	@Override
+	public void addOccurrences(final String eventName, final long timesOccurred) {
+		addOccurrences(slotOf(occurrenceSlots, KIND_OCCURRENCE, eventName), timesOccurred);
+	}
+
+	@Override
+	public Counter counter(final String eventName) {
+		final int slot = slotOf(occurrenceSlots, KIND_OCCURRENCE, eventName);
+		return new Counter() {
+			@Override
+			public void increment() {
+				addOccurrences(slot, 1);
+			}
+
+			@Override
+			public void increment(final long timesOccurred) {
+				addOccurrences(slot, timesOccurred);
+			}
+		};
+	}
+
+	@Override
+	public void addSample(final String eventName, final double value) {
+		addSample(slotOf(sampleSlots, KIND_SAMPLE, eventName), value);
+	}
+
+	@Override
+	public SampleRecorder sampleRecorder(final String eventName) {
+		final int slot = slotOf(sampleSlots, KIND_SAMPLE, eventName);
+		return new SampleRecorder() {
+			@Override
+			public void record(final double value) {
+				addSample(slot, value);
+			}
+		};
+	}
+
+	@Override
+	public StatisticalDistribution findSampleDistribution(final String eventName) {
+		return findDistribution(sampleSlots, KIND_SAMPLE, eventName);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshot() {
+		return distributions(sampleSlots, KIND_SAMPLE, false);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshotAndReset() {
+		return distributions(sampleSlots, KIND_SAMPLE, true);
+	}
+
+	@Override
+	public long findOccurrence(final String eventName) {
+		Integer slot = occurrenceSlots.get(eventName);
+		if (slot == null) {
+			return 0;
+		}
+		SlotLock lock = lockOf(slot);
+		synchronized (lock) {
+			region.get(slot, lock.values);
+			return lock.values[0];
+		}
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshot() {
+		return occurrences(false);
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshotAndReset() {
+		return occurrences(true);
+	}
+
+	@Override
+	public void addDistinct(final String name, final long value) {
+		synchronized (distinctStore) {
+			distinctStore.addDistinct(name, value);
+		}
+	}
+
+	@Override
+	public void addDistinct(final String name, final String value) {
+		synchronized (distinctStore) {
+			distinctStore.addDistinct(name, value);
+		}
+	}
+
+	@Override
+	public DistinctCount findDistinctCount(final String name) {
+		synchronized (distinctStore) {
+			return distinctStore.findDistinctCount(name);
+		}
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshot() {
+		synchronized (distinctStore) {
+			return distinctStore.getAllDistinctCountsSnapshot();
+		}
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshotAndReset() {
+		synchronized (distinctStore) {
+			return distinctStore.getAllDistinctCountsSnapshotAndReset();
+		}
+	}
+
+	/**
+	 * Clears the values of all slots, the names keep their slots.
+	 */
+	@Override
+	public void reset() {
+		int usedSlots = region.usedSlots();
+		for (int slot = 0; slot < usedSlots; slot++) {
+			SlotLock lock = lockOf(slot);
+			synchronized (lock) {
+				Arrays.fill(lock.values, 0);
+				region.put(slot, lock.values);
+			}
+		}
+		synchronized (distinctStore) {
+			distinctStore.reset();
+		}
+	}
+
+	@Override
+	public Snapshot getSnapshot() {
+		return new DetachedSnapshot(getAllSamplesSnapshot(), getAllOccurrencesSnapshot(), getAllDurationsSnapshot(),
+				Collections.<String, MovingRates>emptyMap(), getAllDistinctCountsSnapshot());
+	}
+
+	@Override
+	public Snapshot getSnapshotAndReset() {
+		return new DetachedSnapshot(getAllSamplesSnapshotAndReset(), getAllOccurrencesSnapshotAndReset(), getAllDurationsSnapshotAndReset(),
+				Collections.<String, MovingRates>emptyMap(), getAllDistinctCountsSnapshotAndReset());
+	}
+
+	/**
+	 * @return the number of records that were dropped because all slots were in use or their name was too long
+	 */
+	public long getDroppedRecords() {
+		return droppedRecords.get();
+	}
+
+	/**
+	 * @return the file this instance writes to
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Writes the current values to the storage device. Not needed for readers, they see the values of the mapping
+	 * immediately; only useful to survive a crash of the operating system.
+	 */
+	public void force() {
+		region.force();
+	}
+
+	/**
+	 * Forces the values to the storage device. Java 6 cannot unmap a file, the mapping is released when this instance is
+	 * garbage collected, records after closing still end up in the file.
+	 */
+	@Override
+	public void close() {
+		force();
+	}
+
+	/**
+	 * @return the slot of the name, assigned on first use, or -1 if all slots are in use or the name is longer than
+	 * {@link MappedLayout#MAX_NAME_BYTES} UTF-8 bytes
+	 */
+	private int slotOf(final ConcurrentMap<String, Integer> slots, final byte kind, final String name) {
+		Integer slot = slots.get(name);
+		if (slot != null) {
+			return slot;
+		}
+		if (directoryFull || name.length() > MAX_NAME_BYTES) { // a char takes at least one byte
+			return -1;
+		}
+		byte[] bytes = name.getBytes(MappedRegion.UTF8);
+		if (bytes.length > MAX_NAME_BYTES) {
+			return -1;
+		}
+		synchronized (directoryLock) {
+			slot = slots.get(name);
+			if (slot == null) {
+				if (directoryFull) {
+					return -1;
+				}
+				slot = region.append(kind, bytes);
+				slots.put(name, slot);
+				directoryFull = region.usedSlots() == region.slotCount();
+			}
+			return slot;
+		}
+	}
+
+	private SlotLock lockOf(final int slot) {
+		return locks[slot & (LOCK_STRIPES - 1)];
+	}
+
+	private void addOccurrences(final int slot, final long timesOccurred) {
+		if (slot < 0) {
+			droppedRecords.incrementAndGet();
+			return;
+		}
+		SlotLock lock = lockOf(slot);
+		synchronized (lock) {
+			long[] values = lock.values;
+			region.get(slot, values);
+			values[0] += timesOccurred;
+			values[1] = 1; // present, also when the sum is zero
+			region.put(slot, values);
+		}
+	}
+
+	/**
+	 * Adds a sample, see {@link nl.toefel.patan.singlethreadedimpl.DistributionAccumulator} for the calculation.
+	 */
+	private void addSample(final int slot, final double value) {
+		if (slot < 0) {
+			droppedRecords.incrementAndGet();
+			return;
+		}
+		SlotLock lock = lockOf(slot);
+		synchronized (lock) {
+			long[] values = lock.values;
+			region.get(slot, values);
+			long count = values[0];
+			double minimum = count == 0 ? value : Math.min(value, Double.longBitsToDouble(values[1]));
+			double maximum = count == 0 ? value : Math.max(value, Double.longBitsToDouble(values[2]));
+			double shift = count == 0 ? value : Double.longBitsToDouble(values[4]);
+			values[0] = count + 1;
+			values[1] = Double.doubleToRawLongBits(minimum);
+			values[2] = Double.doubleToRawLongBits(maximum);
+			values[3] = Double.doubleToRawLongBits(Double.longBitsToDouble(values[3]) + value);
+			values[4] = Double.doubleToRawLongBits(shift);
+			values[5] = Double.doubleToRawLongBits(Double.longBitsToDouble(values[5]) + (value - shift));
+			values[6] = Double.doubleToRawLongBits(Double.longBitsToDouble(values[6]) + (value - shift) * (value - shift));
+			region.put(slot, values);
+		}
+	}
+
+	/**
+	 * Adds a duration, see {@link nl.toefel.patan.singlethreadedimpl.DurationAccumulator} for the calculation.
+	 */
+	private void addElapsedNanos(final int slot, final long elapsedNanos) {
+		if (slot < 0) {
+			droppedRecords.incrementAndGet();
+			return;
+		}
+		SlotLock lock = lockOf(slot);
+		synchronized (lock) {
+			long[] values = lock.values;
+			region.get(slot, values);
+			long count = values[0];
+			long shiftNanos = count == 0 ? elapsedNanos : values[4];
+			long shifted = elapsedNanos - shiftNanos;
+			values[0] = count + 1;
+			values[1] = count == 0 ? elapsedNanos : Math.min(elapsedNanos, values[1]);
+			values[2] = count == 0 ? elapsedNanos : Math.max(elapsedNanos, values[2]);
+			values[3] += elapsedNanos;
+			values[4] = shiftNanos;
+			values[5] += shifted;
+			values[6] = Double.doubleToRawLongBits(Double.longBitsToDouble(values[6]) + (double) shifted * shifted);
+			region.put(slot, values);
+		}
+	}
+
+	private StatisticalDistribution findDistribution(final ConcurrentMap<String, Integer> slots, final byte kind, final String name) {
+		Integer slot = slots.get(name);
+		if (slot == null) {
+			return ImmutableStatisticalDistribution.createEmpty();
+		}
+		SlotLock lock = lockOf(slot);
+		synchronized (lock) {
+			region.get(slot, lock.values);
+			return MappedRegion.toDistribution(kind, lock.values);
+		}
+	}
+
+	private SortedMap<String, StatisticalDistribution> distributions(final ConcurrentMap<String, Integer> slots, final byte kind, final boolean reset) {
+		SortedMap<String, StatisticalDistribution> snapshot = new TreeMap<String, StatisticalDistribution>();
+		for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+			int slot = entry.getValue();
+			SlotLock lock = lockOf(slot);
+			synchronized (lock) {
+				region.get(slot, lock.values);
+				if (lock.values[0] > 0) {
+					snapshot.put(entry.getKey(), MappedRegion.toDistribution(kind, lock.values));
+					if (reset) {
+						Arrays.fill(lock.values, 0);
+						region.put(slot, lock.values);
+					}
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	private SortedMap<String, Long> occurrences(final boolean reset) {
+		SortedMap<String, Long> snapshot = new TreeMap<String, Long>();
+		for (Map.Entry<String, Integer> entry : occurrenceSlots.entrySet()) {
+			int slot = entry.getValue();
+			SlotLock lock = lockOf(slot);
+			synchronized (lock) {
+				region.get(slot, lock.values);
+				if (lock.values[1] != 0) {
+					snapshot.put(entry.getKey(), lock.values[0]);
+					if (reset) {
+						Arrays.fill(lock.values, 0);
+						region.put(slot, lock.values);
+					}
+				}
+			}
+		}
+		return snapshot;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.mappedimpl;
+
+import nl.toefel.patan.api.DistinctCount;
+import nl.toefel.patan.api.MovingRates;
+import nl.toefel.patan.api.Snapshot;
+import nl.toefel.patan.api.StatisticalDistribution;
+import nl.toefel.patan.singlethreadedimpl.DetachedSnapshot;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static nl.toefel.patan.mappedimpl.MappedLayout.*;
+
+/**
+ * Reads the file of a {@link MappedStatistics}, typically written by another process, without locking it. The file is
+ * mapped once, every {@link #snapshot()} reads the current values. Names that are added after the reader was created
+ * are included in the next snapshot.
+ * <p>
+ * Snapshots contain the occurrences, samples and durations of the file, rates and distinct counts are always empty.
+ * Each value is consistent unless the writer died in the middle of an update, see {@link MappedStatistics}.
+ */
+public class MappedStatisticsReader implements Closeable {
+
+	private final MappedRegion region;
+
+	/**
+	 * @param file file written by a {@link MappedStatistics}
+	 * @throws IOException if the file does not exist, cannot be mapped or is not in the {@link MappedLayout}
+	 */
+	public MappedStatisticsReader(final File file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("file cannot be null");
+		}
+		this.region = MappedRegion.open(file);
+	}
+
+	/**
+	 * @return the current values in the file, names that were not recorded since the last reset are left out
+	 */
+	public Snapshot snapshot() {
+		SortedMap<String, Long> occurrences = new TreeMap<String, Long>();
+		SortedMap<String, StatisticalDistribution> samples = new TreeMap<String, StatisticalDistribution>();
+		SortedMap<String, StatisticalDistribution> durations = new TreeMap<String, StatisticalDistribution>();
+		long[] values = new long[MappedRegion.SLOT_VALUES];
+		int usedSlots = region.usedSlots();
+		for (int slot = 0; slot < usedSlots; slot++) {
+			byte kind = region.kindOf(slot);
+			region.read(slot, values);
+			if (kind == KIND_OCCURRENCE && values[1] != 0) {
+				occurrences.put(region.nameOf(slot), values[0]);
+			} else if (kind == KIND_SAMPLE && values[0] > 0) {
+				samples.put(region.nameOf(slot), MappedRegion.toDistribution(kind, values));
+			} else if (kind == KIND_DURATION && values[0] > 0) {
+				durations.put(region.nameOf(slot), MappedRegion.toDistribution(kind, values));
+			}
+		}
+		return new DetachedSnapshot(samples, occurrences, durations, Collections.<String, MovingRates>emptyMap(),
+				Collections.<String, DistinctCount>emptyMap());
+	}
+
+	/**
+	 * @return the time the writer created the file, in milliseconds since the epoch
+	 */
+	public long getCreatedMillis() {
+		return region.createdMillis();
+	}
+
+	/**
+	 * Java 6 cannot unmap a file, the mapping is released when this instance is garbage collected.
+	 */
+	@Override
+	public void close() {
+		// nothing to release explicitly
+	}
+}
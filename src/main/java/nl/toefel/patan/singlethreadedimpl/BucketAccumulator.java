@@ -0,0 +1,211 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.StatisticalDistribution;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations per bucket of a {@link BucketLayout}, in addition to the count, minimum, maximum, mean and standard
+ * deviation. Like a {@link DurationAccumulator} it keeps integral nanoseconds: the sum, minimum, maximum and shift are
+ * exact longs, the bucket of a duration is found among the upper bounds in nanoseconds, and the distribution in
+ * milliseconds is only derived in {@link #toDistribution()}. Samples in milliseconds are rounded to whole nanoseconds.
+ * <p>
+ * Recording increments a single slot of an {@link AtomicLongArray} and updates the sums with atomic adds and
+ * compare-and-set, so it is lock-free, does not allocate and can be shared by all recording threads. Like the other
+ * accumulators the sum of squares is kept shifted by the first duration, so the standard deviation of large durations
+ * close together stays accurate.
+ * <p>
+ * A duration is counted in its bucket after the sums, minimum and maximum have been updated. A distribution that is
+ * read while durations are recorded therefore has a valid minimum and maximum, its sum may already contain durations
+ * that are not counted yet.
+ */
+public final class BucketAccumulator implements ConcurrentSampleAccumulator {
+
+	private static final double NANOS_PER_MILLI = 1000 * 1000;
+
+	/**
+	 * Shift before the first duration, no duration is this long.
+	 */
+	private static final long NO_SHIFT = Long.MIN_VALUE;
+
+	private final BucketLayout layout;
+	private final AtomicLongArray counts;
+	private final AtomicLong sumNanos = new AtomicLong();
+	private final AtomicLong shiftNanos = new AtomicLong(NO_SHIFT);
+	private final AtomicLong shiftedSumNanos = new AtomicLong();
+	private final AtomicLong shiftedSumSqrBits = new AtomicLong(Double.doubleToRawLongBits(0));
+	private final AtomicLong minimumNanos = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong maximumNanos = new AtomicLong(Long.MIN_VALUE);
+
+	public BucketAccumulator(final BucketLayout layout) {
+		this.layout = layout;
+		this.counts = new AtomicLongArray(layout.length());
+	}
+
+	/**
+	 * @param layout the buckets of the created accumulators
+	 * @return factory of bucket accumulators that all use the given layout
+	 */
+	public static SampleAccumulatorFactory factory(final BucketLayout layout) {
+		if (layout == null) {
+			throw new IllegalArgumentException("layout cannot be null");
+		}
+		return new SampleAccumulatorFactory() {
+			@Override
+			public SampleAccumulator create(final String name) {
+				return new BucketAccumulator(layout);
+			}
+		};
+	}
+
+	/**
+	 * @param sampleValue duration in milliseconds, rounded to whole nanoseconds
+	 */
+	@Override
+	public void addSample(final double sampleValue) {
+		addElapsedNanos(Math.round(sampleValue * NANOS_PER_MILLI));
+	}
+
+	@Override
+	public void addElapsedNanos(final long elapsedNanos) {
+		long shifted = elapsedNanos - shift(elapsedNanos);
+		sumNanos.addAndGet(elapsedNanos);
+		shiftedSumNanos.addAndGet(shifted);
+		add(shiftedSumSqrBits, (double) shifted * shifted);
+		lower(minimumNanos, elapsedNanos);
+		raise(maximumNanos, elapsedNanos);
+		counts.incrementAndGet(layout.indexOfNanos(elapsedNanos));
+	}
+
+	/**
+	 * @param other bucket accumulator with the same layout
+	 * @throws IllegalArgumentException if the other accumulator has no buckets or another layout
+	 */
+	@Override
+	public void merge(final SampleAccumulator other) {
+		if (!(other instanceof BucketAccumulator) || !layout.equals(((BucketAccumulator) other).layout)) {
+			throw new IllegalArgumentException("can only merge bucket accumulators with layout " + layout);
+		}
+		BucketAccumulator that = (BucketAccumulator) other;
+		long otherShift = that.shiftNanos.get();
+		if (otherShift == NO_SHIFT) {
+			return; // no durations
+		}
+		long otherCount = that.getSampleCount();
+		long otherShiftedSum = that.shiftedSumNanos.get();
+		long delta = otherShift - shift(otherShift);
+		sumNanos.addAndGet(that.sumNanos.get());
+		add(shiftedSumSqrBits, Double.longBitsToDouble(that.shiftedSumSqrBits.get()) + 2d * delta * otherShiftedSum
+				+ (double) otherCount * delta * delta);
+		shiftedSumNanos.addAndGet(otherShiftedSum + otherCount * delta);
+		lower(minimumNanos, that.minimumNanos.get());
+		raise(maximumNanos, that.maximumNanos.get());
+		for (int i = 0; i < counts.length(); i++) {
+			long count = that.counts.get(i);
+			if (count != 0) {
+				counts.addAndGet(i, count);
+			}
+		}
+	}
+
+	/**
+	 * Not atomic, samples added concurrently may be partly removed.
+	 */
+	@Override
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0L);
+		}
+		sumNanos.set(0);
+		shiftNanos.set(NO_SHIFT);
+		shiftedSumNanos.set(0);
+		shiftedSumSqrBits.set(Double.doubleToRawLongBits(0));
+		minimumNanos.set(Long.MAX_VALUE);
+		maximumNanos.set(Long.MIN_VALUE);
+	}
+
+	@Override
+	public long getSampleCount() {
+		long sampleCount = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			sampleCount += counts.get(i);
+		}
+		return sampleCount;
+	}
+
+	@Override
+	public StatisticalDistribution toDistribution() {
+		long[] copy = new long[counts.length()];
+		long sampleCount = 0;
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = counts.get(i);
+			sampleCount += copy[i];
+		}
+		if (sampleCount == 0) {
+			return new BucketDistribution(layout, copy, ImmutableStatisticalDistribution.createEmpty());
+		}
+		StatisticalDistribution moments = ImmutableStatisticalDistribution.create(sampleCount,
+				minimumNanos.get() / NANOS_PER_MILLI, maximumNanos.get() / NANOS_PER_MILLI, sumNanos.get() / NANOS_PER_MILLI,
+				shiftNanos.get() / NANOS_PER_MILLI, shiftedSumNanos.get() / NANOS_PER_MILLI,
+				Double.longBitsToDouble(shiftedSumSqrBits.get()) / (NANOS_PER_MILLI * NANOS_PER_MILLI));
+		return new BucketDistribution(layout, copy, moments);
+	}
+
+	/**
+	 * Sets the shift to the given duration if no shift has been set yet.
+	 *
+	 * @return the shift, the same for all durations until the accumulator is reset
+	 */
+	private long shift(final long elapsedNanos) {
+		long current = shiftNanos.get();
+		if (current == NO_SHIFT) {
+			shiftNanos.compareAndSet(NO_SHIFT, elapsedNanos);
+			current = shiftNanos.get();
+		}
+		return current;
+	}
+
+	private static void add(final AtomicLong bits, final double delta) {
+		for (;;) {
+			long current = bits.get();
+			if (bits.compareAndSet(current, Double.doubleToRawLongBits(Double.longBitsToDouble(current) + delta))) {
+				return;
+			}
+		}
+	}
+
+	private static void lower(final AtomicLong nanos, final long value) {
+		for (;;) {
+			long current = nanos.get();
+			if (value >= current || nanos.compareAndSet(current, value)) {
+				return;
+			}
+		}
+	}
+
+	private static void raise(final AtomicLong nanos, final long value) {
+		for (;;) {
+			long current = nanos.get();
+			if (value <= current || nanos.compareAndSet(current, value)) {
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.PercentileDistribution;
+import nl.toefel.patan.api.StatisticalDistribution;
+
+/**
+ * Immutable distribution that keeps the counts per bucket of a {@link BucketLayout}. The count, minimum, maximum and
+ * mean are exact, percentiles are interpolated linearly within a bucket, like {@code histogram_quantile} of Prometheus.
+ * <p>
+ * Samples and durations recorded into a store that uses {@link BucketAccumulator#factory(BucketLayout)} are of this
+ * type, cast the result of a lookup or snapshot to read the cumulative bucket counts.
+ */
+public final class BucketDistribution implements PercentileDistribution {
+
+	private final BucketLayout layout;
+	private final long[] counts;
+	private final StatisticalDistribution moments;
+
+	BucketDistribution(final BucketLayout layout, final long[] counts, final StatisticalDistribution moments) {
+		this.layout = layout;
+		this.counts = counts;
+		this.moments = moments;
+	}
+
+	/**
+	 * @param percentile between 0 and 100, for example 99.9
+	 * @return the value at the percentile interpolated within its bucket and limited to the exact minimum and maximum,
+	 * 0 if the distribution is empty
+	 */
+	@Override
+	public double getPercentile(final double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile must be between 0 and 100 but was " + percentile);
+		}
+		long sampleCount = moments.getSampleCount();
+		if (sampleCount == 0) {
+			return 0;
+		}
+		double rank = percentile / 100 * sampleCount;
+		long cumulative = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] != 0 && cumulative + counts[i] >= rank) {
+				double lower = i == 0 ? moments.getMinimum() : layout.upperBoundOf(i - 1);
+				double upper = i == counts.length - 1 ? moments.getMaximum() : layout.upperBoundOf(i);
+				double value = lower + (upper - lower) * (rank - cumulative) / counts[i];
+				value = value > moments.getMaximum() ? moments.getMaximum() : value;
+				return value < moments.getMinimum() ? moments.getMinimum() : value;
+			}
+			cumulative += counts[i];
+		}
+		return moments.getMaximum();
+	}
+
+	/**
+	 * @return per bucket of the layout the number of samples less than or equal to its upper bound, the last element is
+	 * the total count, like the {@code le} buckets of Prometheus
+	 */
+	public long[] cumulativeCounts() {
+		long[] cumulative = new long[counts.length];
+		long total = 0;
+		for (int i = 0; i < counts.length; i++) {
+			total += counts[i];
+			cumulative[i] = total;
+		}
+		return cumulative;
+	}
+
+	/**
+	 * @return the layout of the buckets of this distribution
+	 */
+	public BucketLayout layout() {
+		return layout;
+	}
+
+	/**
+	 * @return the sum of all samples, the {@code _sum} of a Prometheus histogram
+	 */
+	public double getSum() {
+		return moments.getMean() * moments.getSampleCount();
+	}
+
+	@Override
+	public StatisticalDistribution newWithExtraSample(final double sampleValue) {
+		long[] newCounts = counts.clone();
+		newCounts[layout.indexOf(sampleValue)]++;
+		return new BucketDistribution(layout, newCounts, moments.newWithExtraSample(sampleValue));
+	}
+
+	/**
+	 * Adds up the buckets when the other distribution has the same layout, otherwise the result is a plain distribution
+	 * without buckets.
+	 */
+	@Override
+	public StatisticalDistribution newMergedWith(final StatisticalDistribution other) {
+		if (other.getSampleCount() == 0) {
+			return this;
+		} else if (getSampleCount() == 0) {
+			return other;
+		}
+		if (other instanceof BucketDistribution && layout.equals(((BucketDistribution) other).layout)) {
+			BucketDistribution that = (BucketDistribution) other;
+			long[] mergedCounts = counts.clone();
+			for (int i = 0; i < mergedCounts.length; i++) {
+				mergedCounts[i] += that.counts[i];
+			}
+			return new BucketDistribution(layout, mergedCounts, moments.newMergedWith(that.moments));
+		}
+		return moments.newMergedWith(other);
+	}
+
+	@Override
+	public long getSampleCount() {
+		return moments.getSampleCount();
+	}
+
+	@Override
+	public double getMinimum() {
+		return moments.getMinimum();
+	}
+
+	@Override
+	public double getMaximum() {
+		return moments.getMaximum();
+	}
+
+	@Override
+	public double getMean() {
+		return moments.getMean();
+	}
+
+	@Override
+	public double getStdDeviation() {
+		return moments.getStdDeviation();
+	}
+
+	@Override
+	public String toString() {
+		return "BucketDistribution [" +
+				"sampleCount=" + getSampleCount() +
+				", min=" + getMinimum() +
+				", max=" + getMaximum() +
+				", mean=" + getMean() +
+				", p50=" + getPercentile(50) +
+				", p99=" + getPercentile(99) +
+				']';
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import java.util.Arrays;
+
+/**
+ * Immutable, user-defined bucket boundaries, like the {@code le} buckets of a Prometheus histogram. Bucket i counts the
+ * values that are greater than upper bound i - 1 and less than or equal to upper bound i, the last bucket counts all
+ * values above the highest upper bound (and NaN).
+ * <p>
+ * Unlike {@link HistogramLayout} the buckets are chosen by the user, typically to match alerting thresholds.
+ * <p>
+ * The upper bounds are in milliseconds when recording durations, they are converted to whole nanoseconds once, see
+ * {@link #indexOfNanos(long)}.
+ */
+public final class BucketLayout {
+
+	/**
+	 * The default buckets of the Prometheus client libraries, 5 milliseconds up to 10 seconds, when recording
+	 * milliseconds.
+	 */
+	public static final BucketLayout DEFAULT_MILLIS = new BucketLayout(5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000);
+
+	private final double[] upperBounds;
+	private final long[] upperBoundNanos;
+
+	/**
+	 * @param upperBounds the inclusive upper bounds of the buckets, finite and strictly ascending, at least one
+	 */
+	public BucketLayout(final double... upperBounds) {
+		if (upperBounds == null || upperBounds.length == 0) {
+			throw new IllegalArgumentException("at least one upper bound is required");
+		}
+		for (int i = 0; i < upperBounds.length; i++) {
+			if (Double.isNaN(upperBounds[i]) || Double.isInfinite(upperBounds[i])) {
+				throw new IllegalArgumentException("upper bounds must be finite but was " + upperBounds[i]);
+			}
+			if (i > 0 && !(upperBounds[i] > upperBounds[i - 1])) {
+				throw new IllegalArgumentException("upper bounds must be strictly ascending but " + upperBounds[i] + " follows " + upperBounds[i - 1]);
+			}
+		}
+		this.upperBounds = upperBounds.clone();
+		this.upperBoundNanos = new long[upperBounds.length];
+		for (int i = 0; i < upperBounds.length; i++) {
+			// a whole number of nanoseconds is at most the bound if it is at most the bound rounded down
+			upperBoundNanos[i] = (long) Math.floor(upperBounds[i] * 1e6);
+		}
+	}
+
+	/**
+	 * @return the number of buckets, one more than the number of upper bounds
+	 */
+	public int length() {
+		return upperBounds.length + 1;
+	}
+
+	/**
+	 * Binary search over the upper bounds, the loop has a fixed number of iterations for a layout and its only branch
+	 * is the comparison that moves one of the ends.
+	 *
+	 * @param value the value to locate, does not need to be in range
+	 * @return index of the bucket that counts the value
+	 */
+	public int indexOf(final double value) {
+		if (!(value <= upperBounds[upperBounds.length - 1])) {
+			return upperBounds.length;
+		}
+		int low = 0;
+		int high = upperBounds.length - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (upperBounds[middle] < value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Same search as {@link #indexOf(double)} over the upper bounds in nanoseconds, for durations.
+	 *
+	 * @param nanos the duration in nanoseconds
+	 * @return index of the bucket that counts the duration
+	 */
+	public int indexOfNanos(final long nanos) {
+		if (nanos > upperBoundNanos[upperBoundNanos.length - 1]) {
+			return upperBoundNanos.length;
+		}
+		int low = 0;
+		int high = upperBoundNanos.length - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (upperBoundNanos[middle] < nanos) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param index index of a bucket
+	 * @return the inclusive upper bound of the bucket, positive infinity for the last bucket
+	 */
+	public double upperBoundOf(final int index) {
+		return index < upperBounds.length ? upperBounds[index] : Double.POSITIVE_INFINITY;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		return Arrays.equals(upperBounds, ((BucketLayout) o).upperBounds);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(upperBounds);
+	}
+
+	@Override
+	public String toString() {
+		return "BucketLayout [" +
+				"upperBounds=" + Arrays.toString(upperBounds) +
+				']';
+	}
+}
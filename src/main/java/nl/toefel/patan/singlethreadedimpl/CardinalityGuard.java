@@ -0,0 +1,92 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the names in a single store, see {@link CardinalityLimit}. Stores only ask the guard when they are
+ * about to add a new name, recording under a name that exists never touches it. Thread-safe.
+ */
+public final class CardinalityGuard {
+
+	/**
+	 * Estimated memory of a String with an empty value, the characters take two bytes each.
+	 */
+	private static final int STRING_BYTES = 40;
+
+	private final CardinalityLimit limit;
+	private final int entryBytes;
+	private final AtomicInteger names = new AtomicInteger();
+	private final AtomicLong bytes = new AtomicLong();
+
+	CardinalityGuard(final CardinalityLimit limit, final int entryBytes) {
+		this.limit = limit;
+		this.entryBytes = entryBytes;
+	}
+
+	/**
+	 * Admits a new name if the store has room for it. The overflow name is always admitted and does not take room.
+	 *
+	 * @param name a name that is not in the store yet
+	 * @return the name to record under, the overflow name if the name was rejected
+	 */
+	public String admit(final String name) {
+		if (isExempt(name)) {
+			return name;
+		}
+		long size = bytesOf(name);
+		int namesAfter = names.incrementAndGet();
+		long bytesAfter = bytes.addAndGet(size);
+		if (namesAfter <= limit.getMaxNames() && bytesAfter <= limit.getMaxBytes()) {
+			return name;
+		}
+		names.decrementAndGet();
+		bytes.addAndGet(-size);
+		limit.reject();
+		return limit.getOverflowName();
+	}
+
+	/**
+	 * Gives back the room of an admitted name that was not added or that was removed from the store.
+	 *
+	 * @param name the admitted name
+	 */
+	public void release(final String name) {
+		if (!isExempt(name)) {
+			names.decrementAndGet();
+			bytes.addAndGet(-bytesOf(name));
+		}
+	}
+
+	/**
+	 * Forgets all admitted names, called when the store is reset.
+	 */
+	public void clear() {
+		names.set(0);
+		bytes.set(0);
+	}
+
+	private boolean isExempt(final String name) {
+		return limit.isUnlimited() || name.equals(limit.getOverflowName());
+	}
+
+	private long bytesOf(final String name) {
+		return STRING_BYTES + 2L * name.length() + entryBytes;
+	}
+}
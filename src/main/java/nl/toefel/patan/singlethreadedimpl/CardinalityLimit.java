@@ -0,0 +1,106 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of names a store keeps, to protect the heap against names that accidentally contain ids. Every
+ * store that is created with the limit gets its own {@link CardinalityGuard}, so the limit applies per store. Once a
+ * store is full, values of new names are recorded under the overflow name instead and counted as rejected.
+ * <p>
+ * The byte budget is checked against an estimate of the memory of a name: the characters of the name and a fixed
+ * overhead per entry that depends on the store. It does not include the contents of accumulators that grow.
+ */
+public final class CardinalityLimit {
+
+	/**
+	 * No limit, stores keep every name.
+	 */
+	public static final CardinalityLimit NONE = new CardinalityLimit(Integer.MAX_VALUE, Long.MAX_VALUE, "overflow");
+
+	private final int maxNames;
+	private final long maxBytes;
+	private final String overflowName;
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * @param maxNames the maximum number of names per store, the overflow name not included, at least 1
+	 * @param overflowName the name under which values of rejected names are recorded
+	 */
+	public CardinalityLimit(final int maxNames, final String overflowName) {
+		this(maxNames, Long.MAX_VALUE, overflowName);
+	}
+
+	/**
+	 * @param maxNames the maximum number of names per store, the overflow name not included, at least 1
+	 * @param maxBytes the maximum estimated memory of the names per store, at least 1
+	 * @param overflowName the name under which values of rejected names are recorded
+	 */
+	public CardinalityLimit(final int maxNames, final long maxBytes, final String overflowName) {
+		if (maxNames < 1 || maxBytes < 1) {
+			throw new IllegalArgumentException("maxNames and maxBytes must be positive but were " + maxNames + " and " + maxBytes);
+		}
+		if (overflowName == null) {
+			throw new IllegalArgumentException("overflowName cannot be null");
+		}
+		this.maxNames = maxNames;
+		this.maxBytes = maxBytes;
+		this.overflowName = overflowName;
+	}
+
+	/**
+	 * @param entryBytes the estimated memory of an entry of the store, excluding its name
+	 * @return a new guard for a single store
+	 */
+	public CardinalityGuard newGuard(final int entryBytes) {
+		return new CardinalityGuard(this, entryBytes);
+	}
+
+	/**
+	 * @return the number of values that were recorded under the overflow name by all stores with this limit
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	int getMaxNames() {
+		return maxNames;
+	}
+
+	long getMaxBytes() {
+		return maxBytes;
+	}
+
+	String getOverflowName() {
+		return overflowName;
+	}
+
+	boolean isUnlimited() {
+		return this == NONE;
+	}
+
+	void reject() {
+		rejected.incrementAndGet();
+	}
+
+	@Override
+	public String toString() {
+		return "CardinalityLimit [maxNames=" + maxNames + ", maxBytes=" + maxBytes + ", overflowName=" + overflowName
+				+ ", rejected=" + rejected.get() + ']';
+	}
+}
@@ -18,52 +18,215 @@
 
 package nl.toefel.patan.singlethreadedimpl;
 
+import nl.toefel.patan.api.Counter;
+import nl.toefel.patan.api.Generation;
 import nl.toefel.patan.api.OccurrenceStore;
 
 import java.util.SortedMap;
-import java.util.TreeMap;
 
 /**
- * Holds counters in a more efficient manner than using locking.
+ * Holds counters in a more efficient manner than using locking. Counts are primitive longs in a {@link StringLongMap}
+ * that are incremented in place. A {@link NameIndex} keeps the names sorted, so the counters under a prefix are found
+ * without visiting all others.
+ * <p>
+ * Every record stamps the name with the current epoch, see {@link #getOccurrencesChangedAfter(long)}.
  */
 public class CounterStore implements OccurrenceStore {
 
-	private SortedMap<String, Long> counters = new TreeMap<String, Long>();
+	/**
+	 * Estimated memory of a counter without its name: two slots of the map at the highest load factor and the index.
+	 */
+	private static final int ENTRY_BYTES = 32 + NameIndex.ENTRY_BYTES;
+
+	private final CardinalityGuard guard;
+
+	private StringLongMap counters = new StringLongMap(0, true);
+
+	private NameIndex names = new NameIndex();
+
+	private long epoch = 1;
+
+	/**
+	 * The epoch of the last reset, zero if never reset.
+	 */
+	private long resetEpoch;
+
+	public CounterStore() {
+		this(CardinalityLimit.NONE);
+	}
+
+	/**
+	 * @param limit limits the number of counters, see {@link CardinalityLimit}
+	 */
+	public CounterStore(final CardinalityLimit limit) {
+		this.guard = limit.newGuard(ENTRY_BYTES);
+	}
 
 	@Override
 	public void addOccurrence(final String name) {
-		counters.put(name, findOccurrence(name) + 1);
+		addAt(slotFor(name), 1L);
 	}
 
 	@Override
 	public void addOccurrences(final String name, final long timesOccurred) {
-		counters.put(name, findOccurrence(name) + timesOccurred);
+		addAt(slotFor(name), timesOccurred);
+	}
+
+	@Override
+	public Counter counter(final String name) {
+		return new CounterHandle(name);
 	}
 
 	@Override
 	public long findOccurrence(final String name) {
-		Long counter = counters.get(name);
-		if (counter == null) {
-			return 0L;
-		} else {
-			return counter;
-		}
+		return counters.get(name);
 	}
 
 	@Override
 	public SortedMap<String, Long> getAllOccurrencesSnapshot() {
-		return new TreeMap<String, Long>(counters); //String and Long are immutable
+		return counters.toSortedMap();
 	}
 
 	@Override
 	public SortedMap<String, Long> getAllOccurrencesSnapshotAndReset() {
-		SortedMap<String, Long> snapshot = counters;
+		return detach().toSnapshot();
+	}
+
+	/**
+	 * @param prefix the prefix of the names, the empty prefix selects all names
+	 * @return the counters of the names that start with the prefix
+	 */
+	public SortedMap<String, Long> getAllOccurrencesSnapshot(final String prefix) {
+		String[] matching = names.withPrefix(prefix);
+		long[] values = new long[matching.length];
+		for (int i = 0; i < matching.length; i++) {
+			values[i] = counters.get(matching[i]);
+		}
+		return SortedLongMap.sort(matching, values, matching.length);
+	}
+
+	/**
+	 * Removes the counters of the names that start with the prefix, the other counters are not visited.
+	 *
+	 * @param prefix the prefix of the names, the empty prefix selects all names
+	 * @return the removed counters
+	 */
+	public SortedMap<String, Long> getAllOccurrencesSnapshotAndReset(final String prefix) {
+		String[] matching = names.withPrefix(prefix);
+		if (matching.length > 0) {
+			resetEpoch = epoch;
+		}
+		long[] values = new long[matching.length];
+		for (int i = 0; i < matching.length; i++) {
+			values[i] = counters.remove(matching[i]);
+			names.remove(matching[i]);
+			guard.release(matching[i]);
+		}
+		return SortedLongMap.sort(matching, values, matching.length);
+	}
+
+	/**
+	 * @param prefix the prefix of the names to remove, see {@link #getAllOccurrencesSnapshotAndReset(String)}
+	 */
+	public void reset(final String prefix) {
+		getAllOccurrencesSnapshotAndReset(prefix);
+	}
+
+	/**
+	 * Continues with an empty map of counters, the current map is converted to values when the returned generation is
+	 * read. Handles resolve their name again in the new map, so no increment is made to the detached counters.
+	 *
+	 * @return the detached counters
+	 */
+	public Generation<SortedMap<String, Long>> detach() {
+		final StringLongMap detached = counters;
 		reset();
-		return snapshot;
+		return new Generation<SortedMap<String, Long>>() {
+			@Override
+			public SortedMap<String, Long> toSnapshot() {
+				return detached.toSortedMap();
+			}
+		};
 	}
 
 	@Override
 	public void reset() {
-		counters = new TreeMap<String, Long>();
+		counters = new StringLongMap(counters.size() * 2, true); // room for the names of the previous period
+		names = new NameIndex();
+		guard.clear();
+		resetEpoch = epoch;
+	}
+
+	/**
+	 * Starts a new epoch, records after this call are stamped with a later epoch.
+	 *
+	 * @return the epoch of the records before this call
+	 */
+	public long advanceEpoch() {
+		return epoch++;
+	}
+
+	/**
+	 * @param since an epoch returned by {@link #advanceEpoch()}
+	 * @return true if the values were reset or names were removed after the epoch
+	 */
+	public boolean isResetAfter(final long since) {
+		return resetEpoch > since;
+	}
+
+	/**
+	 * @param since an epoch returned by {@link #advanceEpoch()}
+	 * @return the counters of the names that were recorded after the epoch
+	 */
+	public SortedMap<String, Long> getOccurrencesChangedAfter(final long since) {
+		return counters.toSortedMapStampedAbove(since);
+	}
+
+	private void addAt(final int slot, final long timesOccurred) {
+		counters.addAt(slot, timesOccurred);
+		counters.stampAt(slot, epoch);
+	}
+
+	private int slotFor(final String name) {
+		int slot = counters.slotOf(name);
+		if (slot < 0) {
+			String admitted = guard.admit(name);
+			if (!admitted.equals(name)) {
+				return slotFor(admitted);
+			}
+			slot = counters.insert(name);
+			names.add(name);
+		}
+		return slot;
+	}
+
+	/**
+	 * Caches the slot of its name, a reset replaces the map of counters and a growing map or a removed name moves the
+	 * slots, both make the handle resolve the name again.
+	 */
+	private final class CounterHandle implements Counter {
+		private final String name;
+		private StringLongMap resolvedIn;
+		private int resolvedMoves;
+		private int slot;
+
+		CounterHandle(final String name) {
+			this.name = name;
+		}
+
+		@Override
+		public void increment() {
+			increment(1L);
+		}
+
+		@Override
+		public void increment(final long timesOccurred) {
+			if (resolvedIn != counters || resolvedMoves != counters.moves()) {
+				slot = slotFor(name);
+				resolvedIn = counters;
+				resolvedMoves = counters.moves();
+			}
+			addAt(slot, timesOccurred);
+		}
 	}
 }
@@ -0,0 +1,210 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.Counter;
+import nl.toefel.patan.api.OccurrenceStore;
+
+import java.util.Arrays;
+import java.util.SortedMap;
+
+import static nl.toefel.patan.singlethreadedimpl.DenseDistributionStore.CHUNK_BITS;
+import static nl.toefel.patan.singlethreadedimpl.DenseDistributionStore.CHUNK_SIZE;
+
+/**
+ * Keeps the counter of every name in an array of primitive longs, indexed by the id of the name in a
+ * {@link SymbolTable}, see {@link DenseDistributionStore} for the layout. Ids stay valid forever, a reset clears the
+ * values. Not thread-safe, callers must guard concurrent access.
+ * <p>
+ * Every record stamps the name with the current epoch, see {@link #getOccurrencesChangedAfter(long)}.
+ */
+public class DenseCounterStore implements OccurrenceStore {
+
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final SymbolTable symbols = new SymbolTable();
+
+	private long[][] values = new long[0][];
+
+	/**
+	 * Whether a name was recorded since the last reset, a counter can be recorded with a sum of zero.
+	 */
+	private boolean[][] recorded = new boolean[0][];
+
+	/**
+	 * The epoch of the last record of every name.
+	 */
+	private long[][] stamps = new long[0][];
+
+	private long epoch = 1;
+
+	/**
+	 * The epoch of the last reset, zero if never reset.
+	 */
+	private long resetEpoch;
+
+	/**
+	 * @return the id of the name, assigned on first use
+	 */
+	public int idOf(final String name) {
+		int id = symbols.idOf(name);
+		if ((id >>> CHUNK_BITS) == values.length) {
+			values = Arrays.copyOf(values, values.length + 1);
+			values[values.length - 1] = new long[CHUNK_SIZE];
+			recorded = Arrays.copyOf(recorded, recorded.length + 1);
+			recorded[recorded.length - 1] = new boolean[CHUNK_SIZE];
+			stamps = Arrays.copyOf(stamps, stamps.length + 1);
+			stamps[stamps.length - 1] = new long[CHUNK_SIZE];
+		}
+		return id;
+	}
+
+	@Override
+	public void addOccurrence(final String name) {
+		addOccurrences(idOf(name), 1L);
+	}
+
+	@Override
+	public void addOccurrences(final String name, final long timesOccurred) {
+		addOccurrences(idOf(name), timesOccurred);
+	}
+
+	/**
+	 * @param id the id of the name, obtained with {@link #idOf(String)}
+	 * @param timesOccurred times the event occurred
+	 * @throws IllegalArgumentException if the id was not handed out by this store
+	 */
+	public void addOccurrences(final int id, final long timesOccurred) {
+		if (id < 0 || id >= symbols.size()) {
+			throw new IllegalArgumentException("unknown id " + id);
+		}
+		values[id >>> CHUNK_BITS][id & CHUNK_MASK] += timesOccurred;
+		recorded[id >>> CHUNK_BITS][id & CHUNK_MASK] = true;
+		stamps[id >>> CHUNK_BITS][id & CHUNK_MASK] = epoch;
+	}
+
+	/**
+	 * @return a handle that records by id, it stays valid after a reset
+	 */
+	@Override
+	public Counter counter(final String name) {
+		final int id = idOf(name);
+		return new Counter() {
+			@Override
+			public void increment() {
+				addOccurrences(id, 1L);
+			}
+
+			@Override
+			public void increment(final long timesOccurred) {
+				addOccurrences(id, timesOccurred);
+			}
+		};
+	}
+
+	@Override
+	public long findOccurrence(final String name) {
+		int id = symbols.find(name);
+		return id < 0 ? 0L : values[id >>> CHUNK_BITS][id & CHUNK_MASK];
+	}
+
+	@Override
+	public SortedMap<String, Long> getAllOccurrencesSnapshot() {
+		return snapshot(false);
+	}
+
+	@Override
+	public SortedMap<String, Long> getAllOccurrencesSnapshotAndReset() {
+		return snapshot(true);
+	}
+
+	/**
+	 * Clears the values of all names, they keep their id.
+	 */
+	@Override
+	public void reset() {
+		for (int chunk = 0; chunk < values.length; chunk++) {
+			Arrays.fill(values[chunk], 0L);
+			Arrays.fill(recorded[chunk], false);
+		}
+		resetEpoch = epoch;
+	}
+
+	/**
+	 * Starts a new epoch, records after this call are stamped with a later epoch.
+	 *
+	 * @return the epoch of the records before this call
+	 */
+	public long advanceEpoch() {
+		return epoch++;
+	}
+
+	/**
+	 * @param since an epoch returned by {@link #advanceEpoch()}
+	 * @return true if the values were reset after the epoch
+	 */
+	public boolean isResetAfter(final long since) {
+		return resetEpoch > since;
+	}
+
+	/**
+	 * @param since an epoch returned by {@link #advanceEpoch()}
+	 * @return the counters of the names that were recorded after the epoch
+	 */
+	public SortedMap<String, Long> getOccurrencesChangedAfter(final long since) {
+		int size = symbols.size();
+		String[] names = new String[16];
+		long[] counts = new long[16];
+		int changed = 0;
+		for (int id = 0; id < size; id++) {
+			int chunk = id >>> CHUNK_BITS;
+			int i = id & CHUNK_MASK;
+			if (stamps[chunk][i] > since && recorded[chunk][i]) {
+				if (changed == names.length) {
+					names = Arrays.copyOf(names, changed * 2);
+					counts = Arrays.copyOf(counts, changed * 2);
+				}
+				names[changed] = symbols.nameOf(id);
+				counts[changed++] = values[chunk][i];
+			}
+		}
+		return SortedLongMap.sort(names, counts, changed);
+	}
+
+	private SortedMap<String, Long> snapshot(final boolean reset) {
+		if (reset) {
+			resetEpoch = epoch;
+		}
+		int size = symbols.size();
+		String[] names = new String[size];
+		long[] counts = new long[size];
+		int recordedNames = 0;
+		for (int id = 0; id < size; id++) {
+			int chunk = id >>> CHUNK_BITS;
+			int i = id & CHUNK_MASK;
+			if (recorded[chunk][i]) {
+				names[recordedNames] = symbols.nameOf(id);
+				counts[recordedNames++] = values[chunk][i];
+				if (reset) {
+					values[chunk][i] = 0L;
+					recorded[chunk][i] = false;
+				}
+			}
+		}
+		return SortedLongMap.sort(names, counts, recordedNames);
+	}
+}
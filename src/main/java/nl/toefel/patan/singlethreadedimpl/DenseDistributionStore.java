@@ -0,0 +1,262 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.SampleRecorder;
+import nl.toefel.patan.api.SampleStore;
+import nl.toefel.patan.api.StatisticalDistribution;
+
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Keeps the count, minimum, maximum, sum and shifted sums of every name in parallel primitive arrays, indexed by the id
+ * of the name in a {@link SymbolTable}. A distribution takes 64 bytes plus its entry in the symbol table, there is no
+ * object per name. The arrays grow in chunks of {@link #CHUNK_SIZE} names, growing never copies values. The calculation
+ * is the one of {@link DistributionAccumulator}, durations are kept in a {@link DenseDurationStore}.
+ * <p>
+ * Recording by id, see {@link #idOf(String)} and {@link #addSample(int, double)}, skips the lookup of the name. Ids stay
+ * valid forever: a reset clears the values, names keep their id and are left out of snapshots until they are recorded
+ * again. The memory of a name is never released. Not thread-safe, callers must guard concurrent access.
+ * <p>
+ * Every record stamps the name with the current epoch, {@link #getSamplesChangedAfter(long)} only creates the
+ * distributions of the names stamped after an earlier epoch.
+ */
+public class DenseDistributionStore implements SampleStore {
+
+	static final int CHUNK_BITS = 8;
+	static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final SymbolTable symbols = new SymbolTable();
+
+	private long[][] counts = new long[0][];
+	private double[][] minimums = new double[0][];
+	private double[][] maximums = new double[0][];
+	private double[][] sums = new double[0][];
+	private double[][] shifts = new double[0][];
+	private double[][] shiftedSums = new double[0][];
+	private double[][] shiftedSumSqrs = new double[0][];
+
+	/**
+	 * The epoch of the last record of every name.
+	 */
+	private long[][] stamps = new long[0][];
+
+	private long epoch = 1;
+
+	/**
+	 * The epoch of the last reset, zero if never reset.
+	 */
+	private long resetEpoch;
+
+	/**
+	 * @return the id of the name, assigned on first use
+	 */
+	public int idOf(final String name) {
+		int id = symbols.idOf(name);
+		if ((id >>> CHUNK_BITS) == counts.length) {
+			addChunk();
+		}
+		return id;
+	}
+
+	@Override
+	public void addSample(final String name, final double value) {
+		addSample(idOf(name), value);
+	}
+
+	/**
+	 * Adds a sample, see {@link DistributionAccumulator#addSample(double)} for the calculation.
+	 *
+	 * @param id the id of the name, obtained with {@link #idOf(String)}
+	 * @param value the value to add
+	 * @throws IllegalArgumentException if the id was not handed out by this store
+	 */
+	public void addSample(final int id, final double value) {
+		if (id < 0 || id >= symbols.size()) {
+			throw new IllegalArgumentException("unknown id " + id);
+		}
+		int chunk = id >>> CHUNK_BITS;
+		int i = id & CHUNK_MASK;
+		long[] chunkCounts = counts[chunk];
+		double[] chunkMinimums = minimums[chunk];
+		double[] chunkMaximums = maximums[chunk];
+		double[] chunkShifts = shifts[chunk];
+		double[] chunkShiftedSums = shiftedSums[chunk];
+		double[] chunkShiftedSumSqrs = shiftedSumSqrs[chunk];
+		long count = chunkCounts[i];
+		if (count == 0) {
+			chunkMinimums[i] = value;
+			chunkMaximums[i] = value;
+			sums[chunk][i] = value;
+			chunkShifts[i] = value; // must be set only once
+			chunkShiftedSums[i] = 0;
+			chunkShiftedSumSqrs[i] = 0;
+			chunkCounts[i] = 1;
+			stamps[chunk][i] = epoch;
+			return;
+		}
+		double shifted = value - chunkShifts[i];
+		chunkCounts[i] = count + 1;
+		if (value < chunkMinimums[i]) {
+			chunkMinimums[i] = value;
+		}
+		if (value > chunkMaximums[i]) {
+			chunkMaximums[i] = value;
+		}
+		sums[chunk][i] += value;
+		chunkShiftedSums[i] += shifted;
+		chunkShiftedSumSqrs[i] += shifted * shifted;
+		stamps[chunk][i] = epoch;
+	}
+
+	/**
+	 * @return a handle that records by id, it stays valid after a reset
+	 */
+	@Override
+	public SampleRecorder sampleRecorder(final String name) {
+		final int id = idOf(name);
+		return new SampleRecorder() {
+			@Override
+			public void record(final double value) {
+				addSample(id, value);
+			}
+		};
+	}
+
+	@Override
+	public StatisticalDistribution findSampleDistribution(final String name) {
+		int id = symbols.find(name);
+		return id < 0 ? ImmutableStatisticalDistribution.createEmpty() : toDistribution(id);
+	}
+
+	@Override
+	public SortedMap<String, StatisticalDistribution> getAllSamplesSnapshot() {
+		return snapshot(false);
+	}
+
+	@Override
+	public SortedMap<String, StatisticalDistribution> getAllSamplesSnapshotAndReset() {
+		return snapshot(true);
+	}
+
+	/**
+	 * Clears the values of all names, they keep their id.
+	 */
+	@Override
+	public void reset() {
+		for (long[] chunk : counts) {
+			Arrays.fill(chunk, 0L);
+		}
+		resetEpoch = epoch;
+	}
+
+	/**
+	 * Starts a new epoch, records after this call are stamped with a later epoch.
+	 *
+	 * @return the epoch of the records before this call
+	 */
+	public long advanceEpoch() {
+		return epoch++;
+	}
+
+	/**
+	 * @param since an epoch returned by {@link #advanceEpoch()}
+	 * @return true if the values were reset after the epoch
+	 */
+	public boolean isResetAfter(final long since) {
+		return resetEpoch > since;
+	}
+
+	/**
+	 * Only scans the stamps of the names that did not change, their distributions are not created.
+	 *
+	 * @param since an epoch returned by {@link #advanceEpoch()}
+	 * @return the distributions of the names that were recorded after the epoch
+	 */
+	public SortedMap<String, StatisticalDistribution> getSamplesChangedAfter(final long since) {
+		SortedMap<String, StatisticalDistribution> changed = new TreeMap<String, StatisticalDistribution>();
+		int size = symbols.size();
+		for (int id = 0; id < size; id++) {
+			int chunk = id >>> CHUNK_BITS;
+			int i = id & CHUNK_MASK;
+			if (stamps[chunk][i] > since && counts[chunk][i] > 0) {
+				changed.put(symbols.nameOf(id), toDistribution(id));
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * @return the number of names that have an id
+	 */
+	public int size() {
+		return symbols.size();
+	}
+
+	/**
+	 * Scans the arrays in id order, names that were not recorded since the last reset are skipped.
+	 */
+	private SortedMap<String, StatisticalDistribution> snapshot(final boolean reset) {
+		if (reset) {
+			resetEpoch = epoch;
+		}
+		SortedMap<String, StatisticalDistribution> snapshot = new TreeMap<String, StatisticalDistribution>();
+		int size = symbols.size();
+		for (int id = 0; id < size; id++) {
+			if (counts[id >>> CHUNK_BITS][id & CHUNK_MASK] > 0) {
+				snapshot.put(symbols.nameOf(id), toDistribution(id));
+				if (reset) {
+					counts[id >>> CHUNK_BITS][id & CHUNK_MASK] = 0;
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	private StatisticalDistribution toDistribution(final int id) {
+		int chunk = id >>> CHUNK_BITS;
+		int i = id & CHUNK_MASK;
+		if (counts[chunk][i] == 0) {
+			return ImmutableStatisticalDistribution.createEmpty();
+		}
+		return ImmutableStatisticalDistribution.create(counts[chunk][i], minimums[chunk][i], maximums[chunk][i], sums[chunk][i],
+				shifts[chunk][i], shiftedSums[chunk][i], shiftedSumSqrs[chunk][i]);
+	}
+
+	private void addChunk() {
+		int chunks = counts.length + 1;
+		counts = Arrays.copyOf(counts, chunks);
+		counts[chunks - 1] = new long[CHUNK_SIZE];
+		minimums = withChunk(minimums);
+		maximums = withChunk(maximums);
+		sums = withChunk(sums);
+		shifts = withChunk(shifts);
+		shiftedSums = withChunk(shiftedSums);
+		shiftedSumSqrs = withChunk(shiftedSumSqrs);
+		stamps = Arrays.copyOf(stamps, chunks);
+		stamps[chunks - 1] = new long[CHUNK_SIZE];
+	}
+
+	private static double[][] withChunk(final double[][] column) {
+		double[][] grown = Arrays.copyOf(column, column.length + 1);
+		grown[column.length] = new double[CHUNK_SIZE];
+		return grown;
+	}
+}
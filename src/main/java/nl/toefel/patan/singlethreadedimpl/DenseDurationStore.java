@@ -0,0 +1,257 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.StatisticalDistribution;
+
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static nl.toefel.patan.singlethreadedimpl.DenseDistributionStore.CHUNK_BITS;
+import static nl.toefel.patan.singlethreadedimpl.DenseDistributionStore.CHUNK_SIZE;
+
+/**
+ * Keeps the durations of every name as integral nanoseconds in parallel primitive arrays, indexed by the id of the name
+ * in a {@link SymbolTable}, see {@link DenseDistributionStore} for the layout. The count, sum, minimum, maximum and
+ * shifted sum are longs, only the shifted sum of squares is a double. The calculation is the one of
+ * {@link DurationAccumulator}, the distribution in milliseconds is only derived when it is read.
+ * <p>
+ * Ids stay valid forever, a reset clears the values. Not thread-safe, callers must guard concurrent access.
+ * <p>
+ * Every record stamps the name with the current epoch, see {@link #getDurationsChangedAfter(long)}.
+ */
+public class DenseDurationStore {
+
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private static final double NANOS_PER_MILLI = 1000 * 1000;
+
+	private final SymbolTable symbols = new SymbolTable();
+
+	private long[][] counts = new long[0][];
+	private long[][] minimums = new long[0][];
+	private long[][] maximums = new long[0][];
+	private long[][] sums = new long[0][];
+	private long[][] shifts = new long[0][];
+	private long[][] shiftedSums = new long[0][];
+	private double[][] shiftedSumSqrs = new double[0][];
+
+	/**
+	 * The epoch of the last record of every name.
+	 */
+	private long[][] stamps = new long[0][];
+
+	private long epoch = 1;
+
+	/**
+	 * The epoch of the last reset, zero if never reset.
+	 */
+	private long resetEpoch;
+
+	/**
+	 * @return the id of the name, assigned on first use
+	 */
+	public int idOf(final String name) {
+		int id = symbols.idOf(name);
+		if ((id >>> CHUNK_BITS) == counts.length) {
+			counts = withChunk(counts);
+			minimums = withChunk(minimums);
+			maximums = withChunk(maximums);
+			sums = withChunk(sums);
+			shifts = withChunk(shifts);
+			shiftedSums = withChunk(shiftedSums);
+			shiftedSumSqrs = Arrays.copyOf(shiftedSumSqrs, shiftedSumSqrs.length + 1);
+			shiftedSumSqrs[shiftedSumSqrs.length - 1] = new double[CHUNK_SIZE];
+			stamps = withChunk(stamps);
+		}
+		return id;
+	}
+
+	/**
+	 * Adds a duration, recording by name costs an extra lookup of the id.
+	 */
+	public void addElapsedNanos(final String name, final long elapsedNanos) {
+		addElapsedNanos(idOf(name), elapsedNanos);
+	}
+
+	/**
+	 * Adds a duration, see {@link DurationAccumulator#addElapsedNanos(long)} for the calculation.
+	 *
+	 * @param id the id of the name, obtained with {@link #idOf(String)}
+	 * @param elapsedNanos the duration to add
+	 * @throws IllegalArgumentException if the id was not handed out by this store
+	 */
+	public void addElapsedNanos(final int id, final long elapsedNanos) {
+		if (id < 0 || id >= symbols.size()) {
+			throw new IllegalArgumentException("unknown id " + id);
+		}
+		int chunk = id >>> CHUNK_BITS;
+		int i = id & CHUNK_MASK;
+		long[] chunkCounts = counts[chunk];
+		long count = chunkCounts[i];
+		stamps[chunk][i] = epoch;
+		if (count == 0) {
+			minimums[chunk][i] = elapsedNanos;
+			maximums[chunk][i] = elapsedNanos;
+			sums[chunk][i] = elapsedNanos;
+			shifts[chunk][i] = elapsedNanos; // must be set only once
+			shiftedSums[chunk][i] = 0;
+			shiftedSumSqrs[chunk][i] = 0;
+			chunkCounts[i] = 1;
+			return;
+		}
+		long shifted = elapsedNanos - shifts[chunk][i];
+		chunkCounts[i] = count + 1;
+		if (elapsedNanos < minimums[chunk][i]) {
+			minimums[chunk][i] = elapsedNanos;
+		}
+		if (elapsedNanos > maximums[chunk][i]) {
+			maximums[chunk][i] = elapsedNanos;
+		}
+		sums[chunk][i] += elapsedNanos;
+		shiftedSums[chunk][i] += shifted;
+		shiftedSumSqrs[chunk][i] += (double) shifted * shifted;
+	}
+
+	/**
+	 * @return a handle that records durations by id, it stays valid after a reset
+	 */
+	public ElapsedNanosRecorder elapsedNanosRecorder(final String name) {
+		final int id = idOf(name);
+		return new ElapsedNanosRecorder() {
+			@Override
+			public void recordElapsedNanos(final long elapsedNanos) {
+				addElapsedNanos(id, elapsedNanos);
+			}
+		};
+	}
+
+	/**
+	 * @return the distribution of the durations of the name in milliseconds, empty if the name is unknown
+	 */
+	public StatisticalDistribution findDuration(final String name) {
+		int id = symbols.find(name);
+		return id < 0 ? ImmutableStatisticalDistribution.createEmpty() : toDistribution(id);
+	}
+
+	/**
+	 * @return the exact sum of the durations of the name in nanoseconds, 0 if the name is unknown
+	 */
+	public long findSumNanos(final String name) {
+		int id = symbols.find(name);
+		return id < 0 || counts[id >>> CHUNK_BITS][id & CHUNK_MASK] == 0 ? 0L : sums[id >>> CHUNK_BITS][id & CHUNK_MASK];
+	}
+
+	public SortedMap<String, StatisticalDistribution> getAllDurationsSnapshot() {
+		return snapshot(false);
+	}
+
+	public SortedMap<String, StatisticalDistribution> getAllDurationsSnapshotAndReset() {
+		return snapshot(true);
+	}
+
+	/**
+	 * Clears the values of all names, they keep their id.
+	 */
+	public void reset() {
+		for (long[] chunk : counts) {
+			Arrays.fill(chunk, 0L);
+		}
+		resetEpoch = epoch;
+	}
+
+	/**
+	 * Starts a new epoch, records after this call are stamped with a later epoch.
+	 *
+	 * @return the epoch of the records before this call
+	 */
+	public long advanceEpoch() {
+		return epoch++;
+	}
+
+	/**
+	 * @param since an epoch returned by {@link #advanceEpoch()}
+	 * @return true if the values were reset after the epoch
+	 */
+	public boolean isResetAfter(final long since) {
+		return resetEpoch > since;
+	}
+
+	/**
+	 * Only scans the stamps of the names that did not change, their distributions are not created.
+	 *
+	 * @param since an epoch returned by {@link #advanceEpoch()}
+	 * @return the distributions of the names that were recorded after the epoch
+	 */
+	public SortedMap<String, StatisticalDistribution> getDurationsChangedAfter(final long since) {
+		SortedMap<String, StatisticalDistribution> changed = new TreeMap<String, StatisticalDistribution>();
+		int size = symbols.size();
+		for (int id = 0; id < size; id++) {
+			int chunk = id >>> CHUNK_BITS;
+			int i = id & CHUNK_MASK;
+			if (stamps[chunk][i] > since && counts[chunk][i] > 0) {
+				changed.put(symbols.nameOf(id), toDistribution(id));
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * @return the number of names that have an id
+	 */
+	public int size() {
+		return symbols.size();
+	}
+
+	private SortedMap<String, StatisticalDistribution> snapshot(final boolean reset) {
+		if (reset) {
+			resetEpoch = epoch;
+		}
+		SortedMap<String, StatisticalDistribution> snapshot = new TreeMap<String, StatisticalDistribution>();
+		int size = symbols.size();
+		for (int id = 0; id < size; id++) {
+			if (counts[id >>> CHUNK_BITS][id & CHUNK_MASK] > 0) {
+				snapshot.put(symbols.nameOf(id), toDistribution(id));
+				if (reset) {
+					counts[id >>> CHUNK_BITS][id & CHUNK_MASK] = 0;
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Converts to milliseconds like {@link DurationAccumulator#toDistribution()}.
+	 */
+	private StatisticalDistribution toDistribution(final int id) {
+		int chunk = id >>> CHUNK_BITS;
+		int i = id & CHUNK_MASK;
+		if (counts[chunk][i] == 0) {
+			return ImmutableStatisticalDistribution.createEmpty();
+		}
+		return ImmutableStatisticalDistribution.create(counts[chunk][i], minimums[chunk][i] / NANOS_PER_MILLI,
+				maximums[chunk][i] / NANOS_PER_MILLI, sums[chunk][i] / NANOS_PER_MILLI, shifts[chunk][i] / NANOS_PER_MILLI,
+				shiftedSums[chunk][i] / NANOS_PER_MILLI, shiftedSumSqrs[chunk][i] / (NANOS_PER_MILLI * NANOS_PER_MILLI));
+	}
+
+	private static long[][] withChunk(final long[][] column) {
+		long[][] grown = Arrays.copyOf(column, column.length + 1);
+		grown[column.length] = new long[CHUNK_SIZE];
+		return grown;
+	}
+}
@@ -0,0 +1,319 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.*;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Statistics implementation for single-threaded applications with many names or hot paths that record by id. Every
+ * name gets a dense int id and its values live in parallel primitive arrays, see {@link DenseDistributionStore},
+ * {@link DenseDurationStore} and {@link DenseCounterStore}, so there is no object per name and snapshots scan the
+ * arrays in order.
+ * <pre>
+ *     int requests = statistics.occurrenceId("http.requests");
+ *     int latency = statistics.durationId("http.duration");
+ *     ...
+ *     long start = System.nanoTime();
+ *     handle(request);
+ *     statistics.addOccurrences(requests, 1);
+ *     statistics.recordElapsedNanos(latency, start);
+ * </pre>
+ * Recording by name costs an extra lookup of the id, use it for names that are recorded rarely.
+ * <p>
+ * Ids stay valid after a reset, which only clears the values, names are left out of snapshots until they are recorded
+ * again. Names are never released, do not use it for names with an unbounded cardinality. Durations are kept as
+ * integral nanoseconds like a {@link DurationAccumulator}. Distinct counts are kept in a {@link DistinctCountStore}.
+ * <p>
+ * Every record stamps the name with the current epoch, a {@link SnapshotToken} marks the end of an epoch, so
+ * {@link #getChangedSince(SnapshotToken)} only creates the values of the names stamped after the token. Finding them
+ * scans a primitive array per store, which costs about a nanosecond per unchanged name.
+ * <p>
+ * Not thread-safe, wrap it in a {@link nl.toefel.patan.SynchronizedIncrementalStatistics} to use the methods by name
+ * from multiple threads.
+ */
+public class DenseStatistics implements IncrementalStatistics {
+
+	private final DenseDistributionStore sampleStore = new DenseDistributionStore();
+
+	private final DenseDurationStore durationStore = new DenseDurationStore();
+
+	private final DenseCounterStore counterStore = new DenseCounterStore();
+
+	private final DistinctCountStore distinctStore = new DistinctCountStore();
+
+	private final TimerCache timerCache = new TimerCache(this);
+
+	/**
+	 * The epoch of the last value of every distinct count, the dense stores stamp their own names. All epochs advance
+	 * together, see {@link #newToken()}.
+	 */
+	private StringLongMap distinctStamps = new StringLongMap();
+
+	private long epoch = 1;
+
+	/**
+	 * The epoch of the last reset of the distinct counts, zero if never reset.
+	 */
+	private long distinctResetEpoch;
+
+	/**
+	 * @return the id to record occurrences of the name with {@link #addOccurrences(int, long)}
+	 */
+	public int occurrenceId(final String eventName) {
+		return counterStore.idOf(eventName);
+	}
+
+	/**
+	 * @param id the id of the name, obtained with {@link #occurrenceId(String)}
+	 * @param timesOccurred times the event occurred
+	 */
+	public void addOccurrences(final int id, final long timesOccurred) {
+		counterStore.addOccurrences(id, timesOccurred);
+	}
+
+	/**
+	 * @return the id to record samples of the name with {@link #addSample(int, double)}
+	 */
+	public int sampleId(final String eventName) {
+		return sampleStore.idOf(eventName);
+	}
+
+	/**
+	 * @param id the id of the name, obtained with {@link #sampleId(String)}
+	 * @param value the value to add
+	 */
+	public void addSample(final int id, final double value) {
+		sampleStore.addSample(id, value);
+	}
+
+	/**
+	 * @return the id to record durations of the name with {@link #recordElapsedNanos(int, long)}
+	 */
+	public int durationId(final String eventName) {
+		return durationStore.idOf(eventName);
+	}
+
+	/**
+	 * @param id the id of the name, obtained with {@link #durationId(String)}
+	 * @param startNanos the value of {@link System#nanoTime()} when the measured task started
+	 * @return the elapsed time in nanoseconds
+	 */
+	public long recordElapsedNanos(final int id, final long startNanos) {
+		long elapsedNanos = System.nanoTime() - startNanos;
+		durationStore.addElapsedNanos(id, elapsedNanos);
+		return elapsedNanos;
+	}
+
+	@Override
+	public Stopwatch startStopwatch() {
+		return ForeverRunningStopwatch.startNewStopwatch();
+	}
+
+	@Override
+	public void recordElapsedTime(final String eventName, final Runnable runnable) {
+		timerCache.timer(eventName).recordElapsedTime(runnable);
+	}
+
+	@Override
+	public <T> T recordElapsedTime(final String eventName, final TimedTask<T> runnable) {
+		return timerCache.timer(eventName).recordElapsedTime(runnable);
+	}
+
+	@Override
+	public double recordElapsedTime(final String eventName, final Stopwatch stopwatch) {
+		long elapsedNanos = stopwatch.elapsedNanos();
+		durationStore.addElapsedNanos(eventName, elapsedNanos);
+		return elapsedNanos / 1e6;
+	}
+
+	@Override
+	public long recordElapsedNanos(final String eventName, final long startNanos) {
+		long elapsedNanos = System.nanoTime() - startNanos;
+		durationStore.addElapsedNanos(eventName, elapsedNanos);
+		return elapsedNanos;
+	}
+
+	@Override
+	public Timer timer(final String eventName) {
+		return new SampleRecorderTimer(this, eventName, durationStore.elapsedNanosRecorder(eventName));
+	}
+
+	@Override
+	public StatisticalDistribution findDuration(final String name) {
+		return durationStore.findDuration(name);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshot() {
+		return durationStore.getAllDurationsSnapshot();
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshotAndReset() {
+		return durationStore.getAllDurationsSnapshotAndReset();
+	}
+
+	@Override
+	public void addOccurrence(final String eventName) {
+		counterStore.addOccurrence(eventName);
+	}
+
+	@Override
+	public void addOccurrences(final String eventName, final long timesOccurred) {
+		counterStore.addOccurrences(eventName, timesOccurred);
+	}
+
+	@Override
+	public Counter counter(final String eventName) {
+		return counterStore.counter(eventName);
+	}
+
+	@Override
+	public void addSample(final String eventName, final double value) {
+		sampleStore.addSample(eventName, value);
+	}
+
+	@Override
+	public SampleRecorder sampleRecorder(final String eventName) {
+		return sampleStore.sampleRecorder(eventName);
+	}
+
+	@Override
+	public StatisticalDistribution findSampleDistribution(final String eventName) {
+		return sampleStore.findSampleDistribution(eventName);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshot() {
+		return sampleStore.getAllSamplesSnapshot();
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshotAndReset() {
+		return sampleStore.getAllSamplesSnapshotAndReset();
+	}
+
+	@Override
+	public long findOccurrence(final String eventName) {
+		return counterStore.findOccurrence(eventName);
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshot() {
+		return counterStore.getAllOccurrencesSnapshot();
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshotAndReset() {
+		return counterStore.getAllOccurrencesSnapshotAndReset();
+	}
+
+	@Override
+	public void addDistinct(final String name, final long value) {
+		distinctStore.addDistinct(name, value);
+		stampDistinct(name);
+	}
+
+	@Override
+	public void addDistinct(final String name, final String value) {
+		distinctStore.addDistinct(name, value);
+		stampDistinct(name);
+	}
+
+	@Override
+	public DistinctCount findDistinctCount(final String name) {
+		return distinctStore.findDistinctCount(name);
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshot() {
+		return distinctStore.getAllDistinctCountsSnapshot();
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshotAndReset() {
+		resetDistinctStamps();
+		return distinctStore.getAllDistinctCountsSnapshotAndReset();
+	}
+
+	@Override
+	public void reset() {
+		counterStore.reset();
+		durationStore.reset();
+		sampleStore.reset();
+		distinctStore.reset();
+		resetDistinctStamps();
+	}
+
+	@Override
+	public Snapshot getSnapshot() {
+		return new DetachedSnapshot(getAllSamplesSnapshot(), getAllOccurrencesSnapshot(), getAllDurationsSnapshot(),
+				Collections.<String, MovingRates>emptyMap(), getAllDistinctCountsSnapshot());
+	}
+
+	@Override
+	public Snapshot getSnapshotAndReset() {
+		return new DetachedSnapshot(getAllSamplesSnapshotAndReset(), getAllOccurrencesSnapshotAndReset(), getAllDurationsSnapshotAndReset(),
+				Collections.<String, MovingRates>emptyMap(), getAllDistinctCountsSnapshotAndReset());
+	}
+
+	@Override
+	public IncrementalSnapshot getIncrementalSnapshot() {
+		return new DetachedIncrementalSnapshot(getAllSamplesSnapshot(), getAllOccurrencesSnapshot(), getAllDurationsSnapshot(),
+				getAllDistinctCountsSnapshot(), newToken(), true);
+	}
+
+	@Override
+	public IncrementalSnapshot getChangedSince(final SnapshotToken token) {
+		long since = EpochToken.epochOf(token, this);
+		if (sampleStore.isResetAfter(since) || durationStore.isResetAfter(since) || counterStore.isResetAfter(since)
+				|| distinctResetEpoch > since) {
+			return getIncrementalSnapshot();
+		}
+		SortedMap<String, DistinctCount> distinctCounts = new TreeMap<String, DistinctCount>();
+		for (String name : distinctStamps.keysAbove(since)) {
+			distinctCounts.put(name, distinctStore.findDistinctCount(name));
+		}
+		return new DetachedIncrementalSnapshot(sampleStore.getSamplesChangedAfter(since), counterStore.getOccurrencesChangedAfter(since),
+				durationStore.getDurationsChangedAfter(since), distinctCounts, newToken(), false);
+	}
+
+	/**
+	 * Ends the current epoch of all stores, they start with the same epoch and always advance together.
+	 */
+	private SnapshotToken newToken() {
+		sampleStore.advanceEpoch();
+		durationStore.advanceEpoch();
+		counterStore.advanceEpoch();
+		return new EpochToken(this, epoch++);
+	}
+
+	private void stampDistinct(final String name) {
+		int slot = distinctStamps.slotOf(name);
+		distinctStamps.setAt(slot < 0 ? distinctStamps.insert(name) : slot, epoch);
+	}
+
+	private void resetDistinctStamps() {
+		distinctStamps = new StringLongMap();
+		distinctResetEpoch = epoch;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.DistinctCount;
+import nl.toefel.patan.api.IncrementalSnapshot;
+import nl.toefel.patan.api.MovingRates;
+import nl.toefel.patan.api.SnapshotToken;
+import nl.toefel.patan.api.StatisticalDistribution;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A detached snapshot that carries the token to read the next changes with. None of the fields can be null.
+ */
+public class DetachedIncrementalSnapshot extends DetachedSnapshot implements IncrementalSnapshot {
+
+	private final SnapshotToken token;
+
+	private final boolean complete;
+
+	/**
+	 * @param samples cannot be null
+	 * @param occurrences cannot be null
+	 * @param durations cannot be null
+	 * @param distinctCounts cannot be null
+	 * @param token cannot be null
+	 * @param complete whether the snapshot contains all names, see {@link IncrementalSnapshot#isComplete()}
+	 */
+	public DetachedIncrementalSnapshot(final Map<String, StatisticalDistribution> samples, final Map<String, Long> occurrences,
+									   final Map<String, StatisticalDistribution> durations, final Map<String, DistinctCount> distinctCounts,
+									   final SnapshotToken token, final boolean complete) {
+		super(samples, occurrences, durations, Collections.<String, MovingRates>emptyMap(), distinctCounts);
+		if (token == null) {
+			throw new IllegalArgumentException("token cannot be null");
+		}
+		this.token = token;
+		this.complete = complete;
+	}
+
+	@Override
+	public SnapshotToken getToken() {
+		return token;
+	}
+
+	@Override
+	public boolean isComplete() {
+		return complete;
+	}
+}
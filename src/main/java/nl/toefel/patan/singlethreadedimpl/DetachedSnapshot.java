@@ -1,8 +1,11 @@
 package nl.toefel.patan.singlethreadedimpl;
 
+import nl.toefel.patan.api.DistinctCount;
+import nl.toefel.patan.api.MovingRates;
 import nl.toefel.patan.api.Snapshot;
 import nl.toefel.patan.api.StatisticalDistribution;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.Properties;
 
@@ -24,7 +27,14 @@ public class DetachedSnapshot implements Snapshot {
 	 * name of sample => Statistical distribution of all sampled values
 	 */
 	private final Map<String, StatisticalDistribution> samples;
-
+	/**
+	 * name of counter => moving rates
+	 */
+	private final Map<String, MovingRates> rates;
+	/**
+	 * name of distinct count => estimated number of distinct values
+	 */
+	private final Map<String, DistinctCount> distinctCounts;
 
 	/**
 	 * @param samples cannot be null
@@ -32,16 +42,45 @@ public class DetachedSnapshot implements Snapshot {
 	 * @param durations cannot be null
 	 */
 	public DetachedSnapshot(final Map<String, StatisticalDistribution> samples, final Map<String, Long> occurrences, final Map<String, StatisticalDistribution> durations) {
+		this(samples, occurrences, durations, Collections.<String, MovingRates>emptyMap());
+	}
+
+	/**
+	 * @param samples cannot be null
+	 * @param occurrences cannot be null
+	 * @param durations cannot be null
+	 * @param rates cannot be null
+	 */
+	public DetachedSnapshot(final Map<String, StatisticalDistribution> samples, final Map<String, Long> occurrences, final Map<String, StatisticalDistribution> durations,
+							final Map<String, MovingRates> rates) {
+		this(samples, occurrences, durations, rates, Collections.<String, DistinctCount>emptyMap());
+	}
+
+	/**
+	 * @param samples cannot be null
+	 * @param occurrences cannot be null
+	 * @param durations cannot be null
+	 * @param rates cannot be null
+	 * @param distinctCounts cannot be null
+	 */
+	public DetachedSnapshot(final Map<String, StatisticalDistribution> samples, final Map<String, Long> occurrences, final Map<String, StatisticalDistribution> durations,
+							final Map<String, MovingRates> rates, final Map<String, DistinctCount> distinctCounts) {
 		this.timestampTaken = System.currentTimeMillis();
 		this.samples = samples;
 		this.occurrences = occurrences;
 		this.durations = durations;
+		this.rates = rates;
+		this.distinctCounts = distinctCounts;
 		if (this.samples == null) {
 			throw new IllegalArgumentException("samples cannot be null");
 		} else if (this.occurrences == null) {
 			throw new IllegalArgumentException("occurrences cannot be null");
 		} else if (this.durations == null) {
 			throw new IllegalArgumentException("durations cannot be null");
+		} else if (this.rates == null) {
+			throw new IllegalArgumentException("rates cannot be null");
+		} else if (this.distinctCounts == null) {
+			throw new IllegalArgumentException("distinctCounts cannot be null");
 		}
 	}
 
@@ -71,6 +110,28 @@ public class DetachedSnapshot implements Snapshot {
 		return occurrenceCounter == null ? 0 : occurrenceCounter;
 	}
 
+	@Override
+	public Map<String, MovingRates> getRates() {
+		return rates;
+	}
+
+	@Override
+	public MovingRates findRates(final String name) {
+		MovingRates found = rates.get(name);
+		return found == null ? ImmutableMovingRates.createEmpty() : found;
+	}
+
+	@Override
+	public Map<String, DistinctCount> getDistinctCounts() {
+		return distinctCounts;
+	}
+
+	@Override
+	public DistinctCount findDistinctCount(final String name) {
+		DistinctCount found = distinctCounts.get(name);
+		return found == null ? ImmutableDistinctCount.createEmpty() : found;
+	}
+
 	@Override
 	public StatisticalDistribution findDuration(final String name) {
 		return getOrEmpty(durations.get(name));
@@ -0,0 +1,162 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.DistinctCount;
+import nl.toefel.patan.api.DistinctStore;
+import nl.toefel.patan.api.Generation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Keeps a {@link HyperLogLog} sketch per name in a hash map, a {@link NameIndex} keeps the names sorted so the counts
+ * under a prefix are found without visiting all others. Not thread-safe, callers must guard concurrent access.
+ */
+public class DistinctCountStore implements DistinctStore {
+
+	/**
+	 * Estimated memory of a distinct count without its name: the map entry, the sketch and the index.
+	 */
+	private static final int ENTRY_BYTES = 4200 + NameIndex.ENTRY_BYTES;
+
+	private final CardinalityGuard guard;
+
+	private Map<String, HyperLogLog> sketches = new HashMap<String, HyperLogLog>();
+
+	private NameIndex names = new NameIndex();
+
+	public DistinctCountStore() {
+		this(CardinalityLimit.NONE);
+	}
+
+	/**
+	 * @param limit limits the number of distinct counts, see {@link CardinalityLimit}
+	 */
+	public DistinctCountStore(final CardinalityLimit limit) {
+		this.guard = limit.newGuard(ENTRY_BYTES);
+	}
+
+	@Override
+	public void addDistinct(final String name, final long value) {
+		sketchFor(name).add(value);
+	}
+
+	@Override
+	public void addDistinct(final String name, final String value) {
+		sketchFor(name).add(value);
+	}
+
+	@Override
+	public DistinctCount findDistinctCount(final String name) {
+		HyperLogLog sketch = sketches.get(name);
+		return sketch == null ? ImmutableDistinctCount.createEmpty() : sketch.toDistinctCount();
+	}
+
+	@Override
+	public SortedMap<String, DistinctCount> getAllDistinctCountsSnapshot() {
+		return toCounts(sketches);
+	}
+
+	@Override
+	public SortedMap<String, DistinctCount> getAllDistinctCountsSnapshotAndReset() {
+		return detach().toSnapshot();
+	}
+
+	/**
+	 * @param prefix the prefix of the names, the empty prefix selects all names
+	 * @return the distinct counts of the names that start with the prefix
+	 */
+	public SortedMap<String, DistinctCount> getAllDistinctCountsSnapshot(final String prefix) {
+		SortedMap<String, DistinctCount> counts = new TreeMap<String, DistinctCount>();
+		for (String name : names.withPrefix(prefix)) {
+			counts.put(name, sketches.get(name).toDistinctCount());
+		}
+		return counts;
+	}
+
+	/**
+	 * Removes the distinct counts of the names that start with the prefix, the other counts are not visited.
+	 *
+	 * @param prefix the prefix of the names, the empty prefix selects all names
+	 * @return the removed distinct counts
+	 */
+	public SortedMap<String, DistinctCount> getAllDistinctCountsSnapshotAndReset(final String prefix) {
+		SortedMap<String, DistinctCount> counts = new TreeMap<String, DistinctCount>();
+		for (String name : names.withPrefix(prefix)) {
+			counts.put(name, sketches.remove(name).toDistinctCount());
+			names.remove(name);
+			guard.release(name);
+		}
+		return counts;
+	}
+
+	/**
+	 * @param prefix the prefix of the names to remove, see {@link #getAllDistinctCountsSnapshotAndReset(String)}
+	 */
+	public void reset(final String prefix) {
+		getAllDistinctCountsSnapshotAndReset(prefix);
+	}
+
+	/**
+	 * Continues with an empty map of sketches, the current map is converted to counts when the returned generation is
+	 * read.
+	 *
+	 * @return the detached sketches
+	 */
+	public Generation<SortedMap<String, DistinctCount>> detach() {
+		final Map<String, HyperLogLog> detached = sketches;
+		reset();
+		return new Generation<SortedMap<String, DistinctCount>>() {
+			@Override
+			public SortedMap<String, DistinctCount> toSnapshot() {
+				return toCounts(detached);
+			}
+		};
+	}
+
+	@Override
+	public void reset() {
+		sketches = new HashMap<String, HyperLogLog>();
+		names = new NameIndex();
+		guard.clear();
+	}
+
+	private HyperLogLog sketchFor(final String name) {
+		HyperLogLog sketch = sketches.get(name);
+		if (sketch == null) {
+			String admitted = guard.admit(name);
+			if (!admitted.equals(name)) {
+				return sketchFor(admitted);
+			}
+			sketch = new HyperLogLog();
+			sketches.put(name, sketch);
+			names.add(name);
+		}
+		return sketch;
+	}
+
+	private static SortedMap<String, DistinctCount> toCounts(final Map<String, HyperLogLog> sketches) {
+		SortedMap<String, DistinctCount> counts = new TreeMap<String, DistinctCount>();
+		for (Map.Entry<String, HyperLogLog> entry : sketches.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().toDistinctCount());
+		}
+		return counts;
+	}
+}
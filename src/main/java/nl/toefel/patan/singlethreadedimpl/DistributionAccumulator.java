@@ -0,0 +1,127 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.StatisticalDistribution;
+
+/**
+ * Mutable counterpart of {@link ImmutableStatisticalDistribution} that is updated in place, recording a sample does not
+ * allocate. An immutable {@link StatisticalDistribution} is only created when {@link #toDistribution()} is called.
+ * <p>
+ * Not thread-safe, callers must guard concurrent access.
+ */
+public final class DistributionAccumulator implements SampleAccumulator {
+
+	/**
+	 * Creates accumulators that keep the count, minimum, maximum, mean and standard deviation.
+	 */
+	public static final SampleAccumulatorFactory FACTORY = new SampleAccumulatorFactory() {
+		@Override
+		public SampleAccumulator create(final String name) {
+			return new DistributionAccumulator();
+		}
+	};
+
+	private long sampleCount;
+	private double minimum = Double.MAX_VALUE;
+	private double maximum = Double.MIN_VALUE;
+	private double sum;
+	private double shift;
+	private double shiftedSum;
+	private double shiftedSumSqr;
+
+	/**
+	 * Adds a sample, see {@link ImmutableStatisticalDistribution#newWithExtraSample(double)} for the calculation.
+	 *
+	 * @param sampleValue the value to add
+	 */
+	@Override
+	public void addSample(final double sampleValue) {
+		if (sampleCount == 0) {
+			shift = sampleValue; // must be set only once
+		}
+		sampleCount++;
+		minimum = sampleValue < minimum ? sampleValue : minimum;
+		maximum = sampleValue > maximum ? sampleValue : maximum;
+		sum += sampleValue;
+		shiftedSum += sampleValue - shift;
+		shiftedSumSqr += (sampleValue - shift) * (sampleValue - shift);
+	}
+
+	@Override
+	public void addElapsedNanos(final long elapsedNanos) {
+		addSample(elapsedNanos / 1e6);
+	}
+
+	/**
+	 * Adds all samples of the other accumulator to this one. The shifted sums of the other accumulator are re-based on
+	 * the shift of this accumulator, so the result is equal to having added all samples to this accumulator directly.
+	 *
+	 * @param other accumulator to merge into this one, is not modified
+	 * @throws IllegalArgumentException if the other accumulator is not a DistributionAccumulator
+	 */
+	@Override
+	public void merge(final SampleAccumulator other) {
+		if (!(other instanceof DistributionAccumulator)) {
+			throw new IllegalArgumentException("cannot merge " + other.getClass().getSimpleName() + " into a DistributionAccumulator");
+		}
+		merge((DistributionAccumulator) other);
+	}
+
+	private void merge(final DistributionAccumulator other) {
+		if (other.sampleCount == 0) {
+			return;
+		}
+		if (sampleCount == 0) {
+			shift = other.shift;
+		}
+		double delta = other.shift - shift;
+		shiftedSumSqr += other.shiftedSumSqr + 2 * delta * other.shiftedSum + other.sampleCount * delta * delta;
+		shiftedSum += other.shiftedSum + other.sampleCount * delta;
+		sampleCount += other.sampleCount;
+		sum += other.sum;
+		minimum = other.minimum < minimum ? other.minimum : minimum;
+		maximum = other.maximum > maximum ? other.maximum : maximum;
+	}
+
+	@Override
+	public void reset() {
+		sampleCount = 0;
+		minimum = Double.MAX_VALUE;
+		maximum = Double.MIN_VALUE;
+		sum = 0;
+		shift = 0;
+		shiftedSum = 0;
+		shiftedSumSqr = 0;
+	}
+
+	/**
+	 * @return the number of samples added so far
+	 */
+	@Override
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * @return an immutable copy of the current state
+	 */
+	@Override
+	public StatisticalDistribution toDistribution() {
+		return ImmutableStatisticalDistribution.create(sampleCount, minimum, maximum, sum, shift, shiftedSum, shiftedSumSqr);
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.StatisticalDistribution;
+
+/**
+ * Accumulates durations as integral nanoseconds, the default for durations. The count, sum, minimum and maximum are
+ * exact and recording a duration is integer arithmetic apart from the sum of squares. The distribution in milliseconds
+ * is only derived in {@link #toDistribution()}.
+ * <p>
+ * Samples in milliseconds, for example from a {@link nl.toefel.patan.api.Timer}, are rounded to whole nanoseconds.
+ * <p>
+ * Not thread-safe, callers must guard concurrent access.
+ */
+public final class DurationAccumulator implements SampleAccumulator {
+
+	/**
+	 * Creates accumulators that keep the count, minimum, maximum, mean and standard deviation of durations.
+	 */
+	public static final SampleAccumulatorFactory FACTORY = new SampleAccumulatorFactory() {
+		@Override
+		public SampleAccumulator create(final String name) {
+			return new DurationAccumulator();
+		}
+	};
+
+	private static final double NANOS_PER_MILLI = 1000 * 1000;
+
+	private long sampleCount;
+	private long minimumNanos = Long.MAX_VALUE;
+	private long maximumNanos = Long.MIN_VALUE;
+	private long sumNanos;
+	private long shiftNanos;
+	private long shiftedSumNanos;
+	private double shiftedSumSqrNanos;
+
+	/**
+	 * @param sampleValue duration in milliseconds, rounded to whole nanoseconds
+	 */
+	@Override
+	public void addSample(final double sampleValue) {
+		addElapsedNanos(Math.round(sampleValue * NANOS_PER_MILLI));
+	}
+
+	@Override
+	public void addElapsedNanos(final long elapsedNanos) {
+		if (sampleCount == 0) {
+			shiftNanos = elapsedNanos; // must be set only once
+		}
+		sampleCount++;
+		minimumNanos = elapsedNanos < minimumNanos ? elapsedNanos : minimumNanos;
+		maximumNanos = elapsedNanos > maximumNanos ? elapsedNanos : maximumNanos;
+		sumNanos += elapsedNanos;
+		long shifted = elapsedNanos - shiftNanos;
+		shiftedSumNanos += shifted;
+		shiftedSumSqrNanos += (double) shifted * shifted;
+	}
+
+	/**
+	 * @param other accumulator to merge into this one, is not modified
+	 * @throws IllegalArgumentException if the other accumulator is not a DurationAccumulator
+	 */
+	@Override
+	public void merge(final SampleAccumulator other) {
+		if (!(other instanceof DurationAccumulator)) {
+			throw new IllegalArgumentException("cannot merge " + other.getClass().getSimpleName() + " into a DurationAccumulator");
+		}
+		merge((DurationAccumulator) other);
+	}
+
+	private void merge(final DurationAccumulator other) {
+		if (other.sampleCount == 0) {
+			return;
+		}
+		if (sampleCount == 0) {
+			shiftNanos = other.shiftNanos;
+		}
+		long delta = other.shiftNanos - shiftNanos;
+		shiftedSumSqrNanos += other.shiftedSumSqrNanos + 2d * delta * other.shiftedSumNanos + (double) other.sampleCount * delta * delta;
+		shiftedSumNanos += other.shiftedSumNanos + other.sampleCount * delta;
+		sampleCount += other.sampleCount;
+		sumNanos += other.sumNanos;
+		minimumNanos = other.minimumNanos < minimumNanos ? other.minimumNanos : minimumNanos;
+		maximumNanos = other.maximumNanos > maximumNanos ? other.maximumNanos : maximumNanos;
+	}
+
+	@Override
+	public void reset() {
+		sampleCount = 0;
+		minimumNanos = Long.MAX_VALUE;
+		maximumNanos = Long.MIN_VALUE;
+		sumNanos = 0;
+		shiftNanos = 0;
+		shiftedSumNanos = 0;
+		shiftedSumSqrNanos = 0;
+	}
+
+	@Override
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * @return the exact sum of all durations in nanoseconds
+	 */
+	public long getSumNanos() {
+		return sumNanos;
+	}
+
+	/**
+	 * @return an immutable copy of the current state in milliseconds
+	 */
+	@Override
+	public StatisticalDistribution toDistribution() {
+		if (sampleCount == 0) {
+			return ImmutableStatisticalDistribution.createEmpty();
+		}
+		return ImmutableStatisticalDistribution.create(sampleCount, minimumNanos / NANOS_PER_MILLI, maximumNanos / NANOS_PER_MILLI,
+				sumNanos / NANOS_PER_MILLI, shiftNanos / NANOS_PER_MILLI, shiftedSumNanos / NANOS_PER_MILLI,
+				shiftedSumSqrNanos / (NANOS_PER_MILLI * NANOS_PER_MILLI));
+	}
+}
@@ -0,0 +1,31 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+/**
+ * Handle to a single duration distribution that records elapsed times in nanoseconds, so the duration keeps the
+ * precision of {@link System#nanoTime()} instead of passing through a double of milliseconds.
+ */
+public interface ElapsedNanosRecorder {
+
+	/**
+	 * Adds a duration, see {@link SampleAccumulator#addElapsedNanos(long)}.
+	 *
+	 * @param elapsedNanos the duration to add in nanoseconds
+	 */
+	void recordElapsedNanos(long elapsedNanos);
+}
@@ -0,0 +1,55 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.IncrementalStatistics;
+import nl.toefel.patan.api.SnapshotToken;
+
+/**
+ * Token of the incremental statistics in this package, marks the end of an epoch of the statistics that handed it out.
+ */
+final class EpochToken implements SnapshotToken {
+
+	private final IncrementalStatistics statistics;
+
+	private final long epoch;
+
+	EpochToken(final IncrementalStatistics statistics, final long epoch) {
+		this.statistics = statistics;
+		this.epoch = epoch;
+	}
+
+	/**
+	 * @param token a token passed to {@link IncrementalStatistics#getChangedSince(SnapshotToken)}
+	 * @param statistics the statistics it was passed to
+	 * @return the epoch of the token
+	 * @throws IllegalArgumentException if the token is null or was handed out by other statistics
+	 */
+	static long epochOf(final SnapshotToken token, final IncrementalStatistics statistics) {
+		if (token == null) {
+			throw new IllegalArgumentException("token cannot be null");
+		} else if (!(token instanceof EpochToken) || ((EpochToken) token).statistics != statistics) {
+			throw new IllegalArgumentException("token was not handed out by these statistics");
+		}
+		return ((EpochToken) token).epoch;
+	}
+
+	@Override
+	public String toString() {
+		return "EpochToken [" + epoch + ']';
+	}
+}
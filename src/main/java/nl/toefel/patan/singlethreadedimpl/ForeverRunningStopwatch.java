@@ -40,7 +40,8 @@ public class ForeverRunningStopwatch implements Stopwatch {
 		return elapsedNanos() / MEGA;
 	}
 
-	private long elapsedNanos() {
+	@Override
+	public long elapsedNanos() {
 		return System.nanoTime() - nanosAtStart; // see warning for numerical overflow at System.nanoTime()
 	}
 }
@@ -0,0 +1,99 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.StatisticalDistribution;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates samples into the fixed buckets of a {@link HistogramLayout}, in addition to the exact count, minimum,
+ * maximum, mean and standard deviation. Recording increments a single slot of a long array and does not allocate, the
+ * array is only copied when {@link #toDistribution()} is called.
+ * <p>
+ * Not thread-safe, callers must guard concurrent access.
+ */
+public final class HistogramAccumulator implements SampleAccumulator {
+
+	private final HistogramLayout layout;
+	private final long[] counts;
+	private final DistributionAccumulator moments = new DistributionAccumulator();
+
+	public HistogramAccumulator(final HistogramLayout layout) {
+		this.layout = layout;
+		this.counts = new long[layout.length()];
+	}
+
+	/**
+	 * @param layout the buckets of the created accumulators
+	 * @return factory of histogram accumulators that all use the given layout
+	 */
+	public static SampleAccumulatorFactory factory(final HistogramLayout layout) {
+		if (layout == null) {
+			throw new IllegalArgumentException("layout cannot be null");
+		}
+		return new SampleAccumulatorFactory() {
+			@Override
+			public SampleAccumulator create(final String name) {
+				return new HistogramAccumulator(layout);
+			}
+		};
+	}
+
+	@Override
+	public void addSample(final double sampleValue) {
+		moments.addSample(sampleValue);
+		counts[layout.indexOf(sampleValue)]++;
+	}
+
+	@Override
+	public void addElapsedNanos(final long elapsedNanos) {
+		addSample(elapsedNanos / 1e6);
+	}
+
+	/**
+	 * @param other histogram accumulator with the same layout
+	 * @throws IllegalArgumentException if the other accumulator is no histogram or has another layout
+	 */
+	@Override
+	public void merge(final SampleAccumulator other) {
+		if (!(other instanceof HistogramAccumulator) || !layout.equals(((HistogramAccumulator) other).layout)) {
+			throw new IllegalArgumentException("can only merge histograms with layout " + layout);
+		}
+		HistogramAccumulator that = (HistogramAccumulator) other;
+		moments.merge(that.moments);
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += that.counts[i];
+		}
+	}
+
+	@Override
+	public void reset() {
+		Arrays.fill(counts, 0L);
+		moments.reset();
+	}
+
+	@Override
+	public long getSampleCount() {
+		return moments.getSampleCount();
+	}
+
+	@Override
+	public StatisticalDistribution toDistribution() {
+		return new HistogramDistribution(layout, counts.clone(), moments.toDistribution());
+	}
+}
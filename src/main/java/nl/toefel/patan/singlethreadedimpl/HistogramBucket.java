@@ -0,0 +1,51 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+/**
+ * Immutable, non-empty bucket of a {@link HistogramDistribution}, counts the samples from the lower bound (inclusive) to
+ * the upper bound (exclusive).
+ */
+public final class HistogramBucket {
+
+	private final double lowerBound;
+	private final double upperBound;
+	private final long count;
+
+	HistogramBucket(final double lowerBound, final double upperBound, final long count) {
+		this.lowerBound = lowerBound;
+		this.upperBound = upperBound;
+		this.count = count;
+	}
+
+	public double getLowerBound() {
+		return lowerBound;
+	}
+
+	public double getUpperBound() {
+		return upperBound;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return "HistogramBucket [" + lowerBound + ", " + upperBound + ") count=" + count;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.PercentileDistribution;
+import nl.toefel.patan.api.StatisticalDistribution;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable distribution that keeps the counts per bucket of a {@link HistogramLayout}, so percentiles can be read. The
+ * count, minimum, maximum, mean and standard deviation are exact, percentiles are as precise as the layout.
+ * <p>
+ * Durations recorded into a store that uses {@link HistogramAccumulator#factory(HistogramLayout)} are of this type, cast
+ * the result of a lookup or snapshot to read the percentiles.
+ */
+public final class HistogramDistribution implements PercentileDistribution {
+
+	private final HistogramLayout layout;
+	private final long[] counts;
+	private final StatisticalDistribution moments;
+
+	HistogramDistribution(final HistogramLayout layout, final long[] counts, final StatisticalDistribution moments) {
+		this.layout = layout;
+		this.counts = counts;
+		this.moments = moments;
+	}
+
+	/**
+	 * Returns the value at or below which the given percentage of samples falls. Like HdrHistogram this is the highest
+	 * value that is equivalent to the bucket that contains the percentile, limited to the exact minimum and maximum.
+	 *
+	 * @param percentile between 0 and 100, for example 99.9
+	 * @return the value at the percentile, 0 if the distribution is empty
+	 */
+	@Override
+	public double getPercentile(final double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile must be between 0 and 100 but was " + percentile);
+		}
+		long sampleCount = moments.getSampleCount();
+		if (sampleCount == 0) {
+			return 0;
+		}
+		long countAtPercentile = (long) Math.ceil(percentile / 100 * sampleCount);
+		countAtPercentile = countAtPercentile < 1 ? 1 : countAtPercentile;
+		long cumulative = 0;
+		for (int i = 0; i < counts.length; i++) {
+			cumulative += counts[i];
+			if (cumulative >= countAtPercentile) {
+				double value = layout.upperBoundOf(i) - layout.getLowestDiscernibleValue();
+				value = value > moments.getMaximum() ? moments.getMaximum() : value;
+				return value < moments.getMinimum() ? moments.getMinimum() : value;
+			}
+		}
+		return moments.getMaximum();
+	}
+
+	/**
+	 * @return the buckets that counted at least one sample, in ascending order
+	 */
+	public List<HistogramBucket> nonEmptyBuckets() {
+		List<HistogramBucket> buckets = new ArrayList<HistogramBucket>();
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] != 0) {
+				buckets.add(new HistogramBucket(layout.lowerBoundOf(i), layout.upperBoundOf(i), counts[i]));
+			}
+		}
+		return buckets;
+	}
+
+	/**
+	 * @return the layout of the buckets of this distribution
+	 */
+	public HistogramLayout layout() {
+		return layout;
+	}
+
+	@Override
+	public StatisticalDistribution newWithExtraSample(final double sampleValue) {
+		long[] newCounts = counts.clone();
+		newCounts[layout.indexOf(sampleValue)]++;
+		return new HistogramDistribution(layout, newCounts, moments.newWithExtraSample(sampleValue));
+	}
+
+	/**
+	 * Adds up the buckets when the other distribution is a histogram with the same layout, otherwise the result is a
+	 * plain distribution without buckets.
+	 */
+	@Override
+	public StatisticalDistribution newMergedWith(final StatisticalDistribution other) {
+		if (other.getSampleCount() == 0) {
+			return this;
+		} else if (getSampleCount() == 0) {
+			return other;
+		}
+		if (other instanceof HistogramDistribution && layout.equals(((HistogramDistribution) other).layout)) {
+			HistogramDistribution that = (HistogramDistribution) other;
+			long[] mergedCounts = counts.clone();
+			for (int i = 0; i < mergedCounts.length; i++) {
+				mergedCounts[i] += that.counts[i];
+			}
+			return new HistogramDistribution(layout, mergedCounts, moments.newMergedWith(that.moments));
+		}
+		return moments.newMergedWith(other);
+	}
+
+	@Override
+	public long getSampleCount() {
+		return moments.getSampleCount();
+	}
+
+	@Override
+	public double getMinimum() {
+		return moments.getMinimum();
+	}
+
+	@Override
+	public double getMaximum() {
+		return moments.getMaximum();
+	}
+
+	@Override
+	public double getMean() {
+		return moments.getMean();
+	}
+
+	@Override
+	public double getStdDeviation() {
+		return moments.getStdDeviation();
+	}
+
+	@Override
+	public String toString() {
+		return "HistogramDistribution [" +
+				"sampleCount=" + getSampleCount() +
+				", min=" + getMinimum() +
+				", max=" + getMaximum() +
+				", mean=" + getMean() +
+				", p50=" + getPercentile(50) +
+				", p99=" + getPercentile(99) +
+				']';
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+/**
+ * Immutable description of the buckets of a log-linear histogram, as used by HdrHistogram. Values are divided into
+ * buckets whose width doubles with every power of two, each power of two is divided into linear sub-buckets so that the
+ * width of a bucket is at most a fixed fraction of its values. That fraction follows from the number of significant
+ * decimal digits: with 2 digits every value is known within 1%.
+ * <p>
+ * Values are stored as multiples of the lowest discernible value, smaller values and negative values end up in the first
+ * bucket, values larger than the highest trackable value end up in the last bucket. The memory used per histogram is
+ * fixed and depends only on the range and precision.
+ */
+public final class HistogramLayout {
+
+	/**
+	 * 1 microsecond up to 1 hour with 2 significant digits, when recording milliseconds.
+	 */
+	public static final HistogramLayout MILLIS_UP_TO_AN_HOUR = new HistogramLayout(0.001, 3600000, 2);
+
+	private final double lowestDiscernibleValue;
+	private final double highestTrackableValue;
+	private final int significantDigits;
+
+	private final long highestUnits;
+	private final int subBucketHalfCountMagnitude;
+	private final int subBucketHalfCount;
+	private final long subBucketMask;
+	private final int length;
+
+	/**
+	 * @param lowestDiscernibleValue the width of the smallest bucket, must be positive
+	 * @param highestTrackableValue the highest value that is recorded accurately, at least twice the lowest value
+	 * @param significantDigits the number of significant decimal digits that is kept, between 1 and 5
+	 */
+	public HistogramLayout(final double lowestDiscernibleValue, final double highestTrackableValue, final int significantDigits) {
+		if (!(lowestDiscernibleValue > 0)) {
+			throw new IllegalArgumentException("lowestDiscernibleValue must be positive but was " + lowestDiscernibleValue);
+		}
+		if (!(highestTrackableValue >= 2 * lowestDiscernibleValue) || highestTrackableValue / lowestDiscernibleValue > Long.MAX_VALUE / 4) {
+			throw new IllegalArgumentException("highestTrackableValue " + highestTrackableValue + " is out of range for lowestDiscernibleValue " + lowestDiscernibleValue);
+		}
+		if (significantDigits < 1 || significantDigits > 5) {
+			throw new IllegalArgumentException("significantDigits must be between 1 and 5 but was " + significantDigits);
+		}
+		this.lowestDiscernibleValue = lowestDiscernibleValue;
+		this.highestTrackableValue = highestTrackableValue;
+		this.significantDigits = significantDigits;
+		this.highestUnits = (long) Math.ceil(highestTrackableValue / lowestDiscernibleValue);
+
+		long largestValueWithSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+		int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros(largestValueWithSingleUnitResolution - 1);
+		this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+		this.subBucketHalfCount = 1 << subBucketHalfCountMagnitude;
+		this.subBucketMask = (1L << subBucketCountMagnitude) - 1;
+
+		int bucketCount = 1;
+		long smallestUntrackableValue = 1L << subBucketCountMagnitude;
+		while (smallestUntrackableValue <= highestUnits) {
+			smallestUntrackableValue <<= 1;
+			bucketCount++;
+		}
+		this.length = (bucketCount + 1) << subBucketHalfCountMagnitude;
+	}
+
+	/**
+	 * @return the number of buckets, the length of the count array of a histogram
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * @param value the value to locate, does not need to be in range
+	 * @return index of the bucket that counts the value
+	 */
+	public int indexOf(final double value) {
+		long units = value > 0 ? (long) (value / lowestDiscernibleValue) : 0;
+		if (units > highestUnits) {
+			units = highestUnits;
+		}
+		int bucketIndex = 63 - subBucketHalfCountMagnitude - Long.numberOfLeadingZeros(units | subBucketMask);
+		int subBucketIndex = (int) (units >>> bucketIndex);
+		return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + subBucketIndex - subBucketHalfCount;
+	}
+
+	/**
+	 * @param index index of a bucket
+	 * @return the lowest value counted by the bucket
+	 */
+	public double lowerBoundOf(final int index) {
+		return unitsAt(index) * lowestDiscernibleValue;
+	}
+
+	/**
+	 * @param index index of a bucket
+	 * @return the lowest value counted by the next bucket
+	 */
+	public double upperBoundOf(final int index) {
+		return (unitsAt(index) + widthInUnits(index)) * lowestDiscernibleValue;
+	}
+
+	private long unitsAt(final int index) {
+		int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+		long subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+		if (bucketIndex < 0) {
+			subBucketIndex -= subBucketHalfCount;
+			bucketIndex = 0;
+		}
+		return subBucketIndex << bucketIndex;
+	}
+
+	private long widthInUnits(final int index) {
+		int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+		return 1L << (bucketIndex < 0 ? 0 : bucketIndex);
+	}
+
+	public double getLowestDiscernibleValue() {
+		return lowestDiscernibleValue;
+	}
+
+	public double getHighestTrackableValue() {
+		return highestTrackableValue;
+	}
+
+	public int getSignificantDigits() {
+		return significantDigits;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		HistogramLayout that = (HistogramLayout) o;
+		return Double.compare(that.lowestDiscernibleValue, lowestDiscernibleValue) == 0
+				&& Double.compare(that.highestTrackableValue, highestTrackableValue) == 0
+				&& significantDigits == that.significantDigits;
+	}
+
+	@Override
+	public int hashCode() {
+		long bits = Double.doubleToLongBits(lowestDiscernibleValue) * 31 + Double.doubleToLongBits(highestTrackableValue);
+		return (int) (bits ^ (bits >>> 32)) * 31 + significantDigits;
+	}
+
+	@Override
+	public String toString() {
+		return "HistogramLayout [" +
+				"lowestDiscernibleValue=" + lowestDiscernibleValue +
+				", highestTrackableValue=" + highestTrackableValue +
+				", significantDigits=" + significantDigits +
+				", buckets=" + length +
+				']';
+	}
+}
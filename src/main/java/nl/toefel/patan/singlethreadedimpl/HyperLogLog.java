@@ -0,0 +1,143 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.DistinctCount;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * HyperLogLog sketch of Flajolet et al. that estimates the number of distinct values added to it, with 2^12 registers
+ * and a standard error of 1.04 / sqrt(4096), about 1.6%. The 64-bit hash of a value selects a register with its
+ * first 12 bits, the register keeps the highest position of the first one bit in the remaining bits.
+ * <p>
+ * Registers are 6 bits, they are stored as bytes packed four to an int, which makes the sketch 4 KB. Adding is
+ * lock-free and thread-safe: a register is only written with a CAS when the new value is higher, which becomes rare
+ * once the sketch has seen a few thousand values. Adding the same value again never changes the sketch.
+ */
+public final class HyperLogLog {
+
+	static final int PRECISION = 12;
+	static final int REGISTERS = 1 << PRECISION;
+
+	private final AtomicIntegerArray packedRegisters = new AtomicIntegerArray(REGISTERS / 4);
+
+	/**
+	 * @param value the value to count
+	 */
+	public void add(final long value) {
+		long hash = mix(value);
+		int register = (int) (hash >>> (64 - PRECISION));
+		// the one bit below the register bits bounds the rank to 64 - PRECISION + 1, which fits in 6 bits
+		int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+		raise(register, rank);
+	}
+
+	/**
+	 * @param value the value to count, cannot be null
+	 */
+	public void add(final String value) {
+		add(fingerprint(value));
+	}
+
+	/**
+	 * Converts a string into the long that is counted for it. Exposed so a string can be converted by the recording
+	 * thread and counted later, adding the fingerprint has the same effect as adding the string.
+	 *
+	 * @param value the string, cannot be null
+	 * @return the 64-bit FNV-1a hash of the characters of the string
+	 */
+	public static long fingerprint(final String value) {
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001B3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Adds the values of the other sketch to this sketch, the other sketch is not modified.
+	 *
+	 * @param other the sketch to merge into this one
+	 */
+	public void merge(final HyperLogLog other) {
+		for (int register = 0; register < REGISTERS; register++) {
+			raise(register, other.get(register));
+		}
+	}
+
+	/**
+	 * @return the current estimate, detached from this sketch
+	 */
+	public DistinctCount toDistinctCount() {
+		byte[] registers = new byte[REGISTERS];
+		for (int register = 0; register < REGISTERS; register++) {
+			registers[register] = (byte) get(register);
+		}
+		return new ImmutableDistinctCount(registers);
+	}
+
+	/**
+	 * Clears the registers one by one, values added concurrently may be partially kept.
+	 */
+	public void clear() {
+		for (int i = 0; i < packedRegisters.length(); i++) {
+			packedRegisters.set(i, 0);
+		}
+	}
+
+	private int get(final int register) {
+		return (packedRegisters.get(register >> 2) >>> shiftOf(register)) & 0xFF;
+	}
+
+	private void raise(final int register, final int rank) {
+		int index = register >> 2;
+		int shift = shiftOf(register);
+		for (;;) {
+			int packed = packedRegisters.get(index);
+			if (((packed >>> shift) & 0xFF) >= rank) {
+				return;
+			}
+			int raised = (packed & ~(0xFF << shift)) | (rank << shift);
+			if (packedRegisters.compareAndSet(index, packed, raised)) {
+				return;
+			}
+		}
+	}
+
+	private static int shiftOf(final int register) {
+		return (register & 3) << 3;
+	}
+
+	/**
+	 * Finalizer of MurmurHash3, spreads every bit of the value over the whole hash.
+	 */
+	private static long mix(final long value) {
+		long hash = value;
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		return hash ^ (hash >>> 33);
+	}
+
+	@Override
+	public String toString() {
+		return "HyperLogLog [estimate=" + toDistinctCount().getEstimate() + ']';
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.DistinctCount;
+
+/**
+ * Registers of a {@link HyperLogLog} as they were when a snapshot was taken. Merging takes the maximum of every register,
+ * so the merged count is the same as if all values were added to a single sketch.
+ */
+public final class ImmutableDistinctCount implements DistinctCount {
+
+	private static final DistinctCount NONE = new ImmutableDistinctCount(new byte[HyperLogLog.REGISTERS]);
+
+	private final byte[] registers;
+	private final long estimate;
+
+	/**
+	 * @return the count of a name that has no values
+	 */
+	public static DistinctCount createEmpty() {
+		return NONE;
+	}
+
+	/**
+	 * @param registers the registers, owned by the new instance
+	 */
+	ImmutableDistinctCount(final byte[] registers) {
+		this.registers = registers;
+		this.estimate = estimate(registers);
+	}
+
+	@Override
+	public long getEstimate() {
+		return estimate;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the other count is not an {@link ImmutableDistinctCount}
+	 */
+	@Override
+	public DistinctCount newMergedWith(final DistinctCount other) {
+		if (!(other instanceof ImmutableDistinctCount)) {
+			throw new IllegalArgumentException("cannot merge with " + other);
+		}
+		byte[] otherRegisters = ((ImmutableDistinctCount) other).registers;
+		byte[] merged = new byte[registers.length];
+		for (int i = 0; i < merged.length; i++) {
+			merged[i] = registers[i] >= otherRegisters[i] ? registers[i] : otherRegisters[i];
+		}
+		return new ImmutableDistinctCount(merged);
+	}
+
+	/**
+	 * The raw estimate of the HyperLogLog paper, with linear counting of the empty registers for small cardinalities.
+	 * A correction for large cardinalities is not needed with 64-bit hashes.
+	 */
+	private static long estimate(final byte[] registers) {
+		int m = registers.length;
+		double sum = 0;
+		int empty = 0;
+		for (byte register : registers) {
+			sum += Math.scalb(1d, -register);
+			if (register == 0) {
+				empty++;
+			}
+		}
+		double alpha = 0.7213 / (1 + 1.079 / m);
+		double raw = alpha * m * m / sum;
+		if (raw <= 2.5 * m && empty > 0) {
+			return Math.round(m * Math.log((double) m / empty));
+		}
+		return Math.round(raw);
+	}
+
+	@Override
+	public String toString() {
+		return "ImmutableDistinctCount [estimate=" + estimate + ']';
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.MovingRates;
+
+/**
+ * Rates as they were when a snapshot was taken.
+ */
+public final class ImmutableMovingRates implements MovingRates {
+
+	private static final MovingRates NONE = new ImmutableMovingRates(0d, 0d, 0d);
+
+	private final double oneMinuteRate;
+	private final double fiveMinuteRate;
+	private final double fifteenMinuteRate;
+
+	/**
+	 * @return rates of an occurrence that did not occur
+	 */
+	public static MovingRates createEmpty() {
+		return NONE;
+	}
+
+	public ImmutableMovingRates(final double oneMinuteRate, final double fiveMinuteRate, final double fifteenMinuteRate) {
+		this.oneMinuteRate = oneMinuteRate;
+		this.fiveMinuteRate = fiveMinuteRate;
+		this.fifteenMinuteRate = fifteenMinuteRate;
+	}
+
+	@Override
+	public double getOneMinuteRate() {
+		return oneMinuteRate;
+	}
+
+	@Override
+	public double getFiveMinuteRate() {
+		return fiveMinuteRate;
+	}
+
+	@Override
+	public double getFifteenMinuteRate() {
+		return fifteenMinuteRate;
+	}
+
+	@Override
+	public String toString() {
+		return "ImmutableMovingRates [oneMinuteRate=" + oneMinuteRate + ", fiveMinuteRate=" + fiveMinuteRate
+				+ ", fifteenMinuteRate=" + fifteenMinuteRate + ']';
+	}
+}
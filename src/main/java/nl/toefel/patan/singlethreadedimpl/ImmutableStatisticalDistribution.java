@@ -49,6 +49,14 @@ public final class ImmutableStatisticalDistribution implements StatisticalDistri
 		return new ImmutableStatisticalDistribution().newWithExtraSample(sampleValue);
 	}
 
+	/**
+	 * Creates a distribution from values accumulated elsewhere, see {@link DistributionAccumulator}.
+	 */
+	public static StatisticalDistribution create(final long sampleCount, final double minimum, final double maximum, final double sum,
+										  final double shift, final double shiftedSum, final double shiftedSumSqr) {
+		return new ImmutableStatisticalDistribution(sampleCount, minimum, maximum, sum, shift, shiftedSum, shiftedSumSqr);
+	}
+
 	/**
 	 * Creates a new statistical distribution object based on this distribution and the extra
 	 * value that is being added.
@@ -73,6 +81,44 @@ public final class ImmutableStatisticalDistribution implements StatisticalDistri
 		return newDist;
 	}
 
+	/**
+	 * Combines the shifted sums of both distributions, the shifted sums of the other distribution are re-based on the
+	 * shift of this distribution (see <a href="https://en.wikipedia.org/wiki/Algorithms_for_calculating_variance#Parallel_algorithm">parallel algorithm</a>).
+	 * The result is exact when the other distribution is an {@link ImmutableStatisticalDistribution}, other implementations
+	 * are combined through their mean and standard deviation.
+	 *
+	 * @param other the distribution to merge with this one
+	 * @return new, immutable, distribution
+	 */
+	@Override
+	public StatisticalDistribution newMergedWith(final StatisticalDistribution other) {
+		if (other.getSampleCount() == 0) {
+			return this;
+		} else if (sampleCount == 0) {
+			return other;
+		}
+		ImmutableStatisticalDistribution that = other instanceof ImmutableStatisticalDistribution
+				? (ImmutableStatisticalDistribution) other
+				: fromMoments(other);
+		double delta = that.shift - shift;
+		long mergedCount = sampleCount + that.sampleCount;
+		double mergedMinimum = that.minimum < minimum ? that.minimum : minimum;
+		double mergedMaximum = that.maximum > maximum ? that.maximum : maximum;
+		double mergedShiftedSum = shiftedSum + that.shiftedSum + that.sampleCount * delta;
+		double mergedShiftedSumSqr = shiftedSumSqr + that.shiftedSumSqr + 2 * delta * that.shiftedSum + that.sampleCount * delta * delta;
+		return new ImmutableStatisticalDistribution(mergedCount, mergedMinimum, mergedMaximum, sum + that.sum, shift, mergedShiftedSum, mergedShiftedSumSqr);
+	}
+
+	/**
+	 * Shifts by the mean, which makes the shifted sum zero and the shifted sum of squares the sum of squared deviations.
+	 */
+	private static ImmutableStatisticalDistribution fromMoments(final StatisticalDistribution other) {
+		long count = other.getSampleCount();
+		double mean = other.getMean();
+		double squaredDeviations = count > 1 ? other.getStdDeviation() * other.getStdDeviation() * (count - 1) : 0;
+		return new ImmutableStatisticalDistribution(count, other.getMinimum(), other.getMaximum(), mean * count, mean, 0, squaredDeviations);
+	}
+
 	/**
 	 * Private constructor to enforce immutability, use factory methods
 	 */
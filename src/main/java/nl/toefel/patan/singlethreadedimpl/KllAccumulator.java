@@ -0,0 +1,284 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.StatisticalDistribution;
+
+import java.util.Arrays;
+
+/**
+ * Quantile sketch after Karnin, Lang and Liberty (KLL), for samples whose range is not known up front. Samples are kept
+ * in a hierarchy of compactors, the items of level h each represent 2^h samples. When the sketch is full the lowest
+ * level over its capacity is sorted and every other item is promoted to the next level, starting at a random offset.
+ * Only the lowest level is sorted when compacting, the levels above it are kept sorted by merging the promoted items.
+ * <p>
+ * The capacity of the top level is k and shrinks by a factor 2/3 per level below it, so the sketch retains about 3k
+ * values regardless of the number of samples. The rank error of a percentile is about 1.7/k, roughly 1% for k=200.
+ * Recording appends to the lowest level and only allocates while the levels are still growing. The count, minimum,
+ * maximum, mean and standard deviation are exact.
+ * <p>
+ * Not thread-safe, callers must guard concurrent access.
+ */
+public final class KllAccumulator implements SampleAccumulator {
+
+	private static final double CAPACITY_DECAY = 2.0 / 3.0;
+	private static final int MIN_CAPACITY = 2;
+
+	private final int k;
+	private final DistributionAccumulator moments = new DistributionAccumulator();
+
+	private double[][] levels = new double[1][];
+	private int[] sizes = new int[1];
+	private int[] capacities = new int[1];
+	private int retained;
+	private int maxRetained;
+
+	private long randomState;
+
+	/**
+	 * @param k capacity of the top level, determines the accuracy and memory use, at least 8
+	 */
+	public KllAccumulator(final int k) {
+		if (k < 8 || k > 65536) {
+			throw new IllegalArgumentException("k must be between 8 and 65536 but was " + k);
+		}
+		this.k = k;
+		this.levels[0] = new double[k];
+		this.capacities[0] = capacity(0, 1);
+		this.maxRetained = capacities[0];
+		this.randomState = System.nanoTime() | 1;
+	}
+
+	/**
+	 * @param k capacity of the top level, see {@link #KllAccumulator(int)}
+	 * @return factory of sketches that all use the given k
+	 */
+	public static SampleAccumulatorFactory factory(final int k) {
+		new KllAccumulator(k); // validates k
+		return new SampleAccumulatorFactory() {
+			@Override
+			public SampleAccumulator create(final String name) {
+				return new KllAccumulator(k);
+			}
+		};
+	}
+
+	@Override
+	public void addSample(final double sampleValue) {
+		moments.addSample(sampleValue);
+		append(sampleValue);
+		if (++retained >= maxRetained) {
+			compress();
+		}
+	}
+
+	@Override
+	public void addElapsedNanos(final long elapsedNanos) {
+		addSample(elapsedNanos / 1e6);
+	}
+
+	/**
+	 * @param other sketch with the same k
+	 * @throws IllegalArgumentException if the other accumulator is no KLL sketch or has another k
+	 */
+	@Override
+	public void merge(final SampleAccumulator other) {
+		if (!(other instanceof KllAccumulator) || ((KllAccumulator) other).k != k) {
+			throw new IllegalArgumentException("can only merge KLL sketches with k=" + k);
+		}
+		KllAccumulator that = (KllAccumulator) other;
+		moments.merge(that.moments);
+		for (int i = 0; i < that.sizes[0]; i++) {
+			append(that.levels[0][i]);
+		}
+		for (int level = 1; level < that.levels.length; level++) {
+			mergeInto(level, that.levels[level], 0, 1, that.sizes[level]);
+		}
+		retained += that.retained;
+		while (retained >= maxRetained) {
+			compress();
+		}
+	}
+
+	/**
+	 * Keeps the buffer of the lowest level, the higher levels are dropped.
+	 */
+	@Override
+	public void reset() {
+		levels = new double[][]{levels[0]};
+		sizes = new int[1];
+		capacities = new int[]{capacity(0, 1)};
+		retained = 0;
+		maxRetained = capacities[0];
+		moments.reset();
+	}
+
+	@Override
+	public long getSampleCount() {
+		return moments.getSampleCount();
+	}
+
+	/**
+	 * @return the number of values kept by the sketch, bounded by about 3k
+	 */
+	public int getRetainedValues() {
+		return retained;
+	}
+
+	@Override
+	public StatisticalDistribution toDistribution() {
+		return new KllDistribution(copy());
+	}
+
+	int k() {
+		return k;
+	}
+
+	StatisticalDistribution moments() {
+		return moments.toDistribution();
+	}
+
+	/**
+	 * Fills the arrays with the retained values in ascending order and the number of samples each of them represents.
+	 *
+	 * @param values array of at least {@link #getRetainedValues()} elements
+	 * @param weights array of at least {@link #getRetainedValues()} elements
+	 */
+	void sortedValues(final double[] values, final long[] weights) {
+		int count = 0;
+		double[] sorted = new double[retained];
+		for (int level = 0; level < levels.length; level++) {
+			int size = sizes[level];
+			System.arraycopy(levels[level], 0, sorted, 0, size);
+			Arrays.sort(sorted, 0, size);
+			// merge the sorted level into the values collected so far, from the back
+			int i = count - 1;
+			int j = size - 1;
+			for (int target = count + size - 1; j >= 0; target--) {
+				if (i >= 0 && values[i] > sorted[j]) {
+					values[target] = values[i];
+					weights[target] = weights[i--];
+				} else {
+					values[target] = sorted[j--];
+					weights[target] = 1L << level;
+				}
+			}
+			count += size;
+		}
+	}
+
+	private void append(final double value) {
+		ensureCapacity(0, sizes[0] + 1);
+		levels[0][sizes[0]++] = value;
+	}
+
+	/**
+	 * Merges sorted items into a level above the lowest one, which is kept sorted.
+	 *
+	 * @param source sorted items, every stride-th item starting at offset is merged
+	 */
+	private void mergeInto(final int level, final double[] source, final int offset, final int stride, final int count) {
+		while (level >= levels.length) {
+			addLevel();
+		}
+		int size = sizes[level];
+		ensureCapacity(level, size + count);
+		double[] target = levels[level];
+		int i = size - 1;
+		int j = count - 1;
+		for (int t = size + count - 1; j >= 0; t--) {
+			double candidate = source[offset + j * stride];
+			if (i >= 0 && target[i] > candidate) {
+				target[t] = target[i--];
+			} else {
+				target[t] = candidate;
+				j--;
+			}
+		}
+		sizes[level] = size + count;
+	}
+
+	private void ensureCapacity(final int level, final int capacity) {
+		if (levels[level].length < capacity) {
+			levels[level] = Arrays.copyOf(levels[level], Math.max(capacity, levels[level].length * 2));
+		}
+	}
+
+	/**
+	 * Compacts every level that is over its capacity, from the bottom up. Compacting all of them, instead of stopping
+	 * as soon as the sketch fits, leaves room in the lowest level so the next compaction is many samples away.
+	 */
+	private void compress() {
+		for (int level = 0; level < levels.length; level++) {
+			if (sizes[level] >= capacities[level]) {
+				compact(level);
+			}
+		}
+	}
+
+	/**
+	 * Promotes every other item of the sorted level to the next level, an odd item out stays behind.
+	 */
+	private void compact(final int level) {
+		double[] items = levels[level];
+		int size = sizes[level];
+		if (level == 0) {
+			Arrays.sort(items, 0, size); // the levels above are already sorted
+		}
+		int first = size & 1; // the smallest item stays when the size is odd
+		int offset = first + (nextRandomBit() ? 1 : 0);
+		int promoted = (size - first) / 2;
+		mergeInto(level + 1, items, offset, 2, promoted);
+		sizes[level] = first;
+		retained -= promoted; // each pair of items became one
+	}
+
+	private void addLevel() {
+		int count = levels.length + 1;
+		levels = Arrays.copyOf(levels, count);
+		sizes = Arrays.copyOf(sizes, count);
+		capacities = Arrays.copyOf(capacities, count);
+		levels[count - 1] = new double[MIN_CAPACITY];
+		maxRetained = 0;
+		for (int level = 0; level < count; level++) {
+			capacities[level] = capacity(level, count);
+			maxRetained += capacities[level];
+		}
+	}
+
+	private int capacity(final int level, final int levelCount) {
+		int depth = levelCount - level - 1;
+		return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth))) + 1;
+	}
+
+	private boolean nextRandomBit() {
+		// xorshift, cheap and without contention between sketches
+		randomState ^= randomState << 13;
+		randomState ^= randomState >>> 7;
+		randomState ^= randomState << 17;
+		return (randomState & 1) != 0;
+	}
+
+	/**
+	 * @return an independent copy of this sketch
+	 */
+	KllAccumulator copy() {
+		KllAccumulator copy = new KllAccumulator(k);
+		copy.merge(this);
+		return copy;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.PercentileDistribution;
+import nl.toefel.patan.api.StatisticalDistribution;
+
+/**
+ * Immutable distribution backed by a frozen {@link KllAccumulator}, estimates percentiles of samples with an unknown
+ * range. The count, minimum, maximum, mean and standard deviation are exact.
+ */
+public final class KllDistribution implements PercentileDistribution {
+
+	private final KllAccumulator sketch;
+	private final StatisticalDistribution moments;
+	private final double[] values;
+	private final long[] cumulativeWeights;
+
+	/**
+	 * @param sketch sketch that is not modified afterwards
+	 */
+	KllDistribution(final KllAccumulator sketch) {
+		this.sketch = sketch;
+		this.moments = sketch.moments();
+		int retained = sketch.getRetainedValues();
+		this.values = new double[retained];
+		this.cumulativeWeights = new long[retained];
+		sketch.sortedValues(values, cumulativeWeights);
+		for (int i = 1; i < retained; i++) {
+			cumulativeWeights[i] += cumulativeWeights[i - 1];
+		}
+	}
+
+	/**
+	 * Returns the retained value at the rank of the percentile, limited to the exact minimum and maximum.
+	 *
+	 * @param percentile between 0 and 100, for example 99.9
+	 * @return the estimated value at the percentile, 0 if the distribution is empty
+	 */
+	@Override
+	public double getPercentile(final double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile must be between 0 and 100 but was " + percentile);
+		}
+		if (values.length == 0) {
+			return 0;
+		} else if (percentile == 0) {
+			return moments.getMinimum();
+		} else if (percentile == 100) {
+			return moments.getMaximum();
+		}
+		long totalWeight = cumulativeWeights[cumulativeWeights.length - 1];
+		long rank = (long) Math.ceil(percentile / 100 * totalWeight);
+		int low = 0;
+		int high = cumulativeWeights.length - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (cumulativeWeights[middle] < rank) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		double value = values[low];
+		value = value > moments.getMaximum() ? moments.getMaximum() : value;
+		return value < moments.getMinimum() ? moments.getMinimum() : value;
+	}
+
+	@Override
+	public StatisticalDistribution newWithExtraSample(final double sampleValue) {
+		KllAccumulator copy = sketch.copy();
+		copy.addSample(sampleValue);
+		return new KllDistribution(copy);
+	}
+
+	/**
+	 * Merges the sketches when the other distribution is a KLL sketch with the same k, otherwise the result is a plain
+	 * distribution without percentiles.
+	 */
+	@Override
+	public StatisticalDistribution newMergedWith(final StatisticalDistribution other) {
+		if (other.getSampleCount() == 0) {
+			return this;
+		} else if (getSampleCount() == 0) {
+			return other;
+		}
+		if (other instanceof KllDistribution && ((KllDistribution) other).sketch.k() == sketch.k()) {
+			KllAccumulator merged = sketch.copy();
+			merged.merge(((KllDistribution) other).sketch);
+			return new KllDistribution(merged);
+		}
+		return moments.newMergedWith(other);
+	}
+
+	@Override
+	public long getSampleCount() {
+		return moments.getSampleCount();
+	}
+
+	@Override
+	public double getMinimum() {
+		return moments.getMinimum();
+	}
+
+	@Override
+	public double getMaximum() {
+		return moments.getMaximum();
+	}
+
+	@Override
+	public double getMean() {
+		return moments.getMean();
+	}
+
+	@Override
+	public double getStdDeviation() {
+		return moments.getStdDeviation();
+	}
+
+	@Override
+	public String toString() {
+		return "KllDistribution [" +
+				"sampleCount=" + getSampleCount() +
+				", min=" + getMinimum() +
+				", max=" + getMaximum() +
+				", mean=" + getMean() +
+				", p50=" + getPercentile(50) +
+				", p99=" + getPercentile(99) +
+				']';
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Sorted set of the names in a store, kept next to the hash map that is used for recording so that the names under a
+ * prefix can be found without visiting all other names. The names under a prefix form a contiguous range of the set,
+ * finding them costs a logarithmic lookup plus the size of the range, independent of the number of other names.
+ * <p>
+ * Names are only added when they are new to the store, recording under an existing name never touches the index. Not
+ * thread-safe, callers must guard concurrent access.
+ */
+final class NameIndex {
+
+	/**
+	 * Estimated memory of a name in the index: the tree node, the name itself is shared with the map.
+	 */
+	static final int ENTRY_BYTES = 40;
+
+	private final TreeSet<String> names = new TreeSet<String>();
+
+	void add(final String name) {
+		names.add(name);
+	}
+
+	void remove(final String name) {
+		names.remove(name);
+	}
+
+	/**
+	 * @param prefix the prefix, the empty prefix selects all names
+	 * @return a sorted copy of the names that start with the prefix
+	 */
+	String[] withPrefix(final String prefix) {
+		if (prefix == null) {
+			throw new IllegalArgumentException("prefix cannot be null");
+		}
+		SortedSet<String> range = rangeOf(prefix);
+		return range.toArray(new String[range.size()]);
+	}
+
+	private SortedSet<String> rangeOf(final String prefix) {
+		String end = endOf(prefix);
+		return end == null ? names.tailSet(prefix) : names.subSet(prefix, end);
+	}
+
+	/**
+	 * @return the smallest string that is larger than all strings that start with the prefix, null if there is none
+	 */
+	static String endOf(final String prefix) {
+		int last = prefix.length() - 1;
+		while (last >= 0 && prefix.charAt(last) == Character.MAX_VALUE) {
+			last--;
+		}
+		if (last < 0) {
+			return null;
+		}
+		return prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.DurationStore;
+import nl.toefel.patan.api.Stopwatch;
+import nl.toefel.patan.api.TimedTask;
+import nl.toefel.patan.api.Timer;
+
+/**
+ * Base class of {@link Timer} handles that implements timing tasks. The timers for the '.ok' and '.failed' outcomes are
+ * resolved on first use and kept, so timing a task does not build names.
+ */
+public abstract class OutcomeTimer implements Timer {
+
+	private final DurationStore store;
+	private final String eventName;
+
+	// resolving twice when racing is harmless, both handles write into the same distribution
+	private Timer okTimer;
+	private Timer failedTimer;
+
+	/**
+	 * @param store the store that creates the stopwatches and the timers of the outcomes
+	 * @param eventName name of the timer
+	 */
+	protected OutcomeTimer(final DurationStore store, final String eventName) {
+		this.store = store;
+		this.eventName = eventName;
+	}
+
+	@Override
+	public final <T> T recordElapsedTime(final TimedTask<T> task) {
+		Stopwatch stopwatch = store.startStopwatch();
+		try {
+			T val = task.get();
+			okTimer().recordElapsedTime(stopwatch);
+			return val;
+		} catch (RuntimeException e) {
+			failedTimer().recordElapsedTime(stopwatch);
+			throw e;
+		}
+	}
+
+	@Override
+	public final void recordElapsedTime(final Runnable runnable) {
+		Stopwatch stopwatch = store.startStopwatch();
+		try {
+			runnable.run();
+			okTimer().recordElapsedTime(stopwatch);
+		} catch (RuntimeException e) {
+			failedTimer().recordElapsedTime(stopwatch);
+			throw e;
+		}
+	}
+
+	private Timer okTimer() {
+		Timer timer = okTimer;
+		if (timer == null) {
+			timer = store.timer(eventName + ".ok");
+			okTimer = timer;
+		}
+		return timer;
+	}
+
+	private Timer failedTimer() {
+		Timer timer = failedTimer;
+		if (timer == null) {
+			timer = store.timer(eventName + ".failed");
+			failedTimer = timer;
+		}
+		return timer;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Chooses the accumulator factory of a name by the longest registered prefix of that name, names without a registered
+ * prefix use the default factory. Instances are immutable, {@link #withPrefix(String, SampleAccumulatorFactory)}
+ * returns a new instance.
+ * <pre>
+ *     SampleAccumulatorFactory samples = new PrefixedAccumulatorFactory(DistributionAccumulator.FACTORY)
+ *             .withPrefix("payload.", KllAccumulator.factory(200))
+ *             .withPrefix("queue.depth", KllAccumulator.factory(100));
+ * </pre>
+ */
+public final class PrefixedAccumulatorFactory implements SampleAccumulatorFactory {
+
+	private final SampleAccumulatorFactory defaultFactory;
+	private final TreeMap<String, SampleAccumulatorFactory> factoriesByPrefix;
+
+	/**
+	 * @param defaultFactory used for names without a registered prefix
+	 */
+	public PrefixedAccumulatorFactory(final SampleAccumulatorFactory defaultFactory) {
+		this(defaultFactory, new TreeMap<String, SampleAccumulatorFactory>());
+	}
+
+	private PrefixedAccumulatorFactory(final SampleAccumulatorFactory defaultFactory, final TreeMap<String, SampleAccumulatorFactory> factoriesByPrefix) {
+		if (defaultFactory == null) {
+			throw new IllegalArgumentException("defaultFactory cannot be null");
+		}
+		this.defaultFactory = defaultFactory;
+		this.factoriesByPrefix = factoriesByPrefix;
+	}
+
+	/**
+	 * @param prefix names that start with this prefix use the given factory, unless a longer prefix matches
+	 * @param factory the factory for the names with the prefix
+	 * @return a new instance that also contains the given prefix
+	 */
+	public PrefixedAccumulatorFactory withPrefix(final String prefix, final SampleAccumulatorFactory factory) {
+		if (prefix == null || factory == null) {
+			throw new IllegalArgumentException("prefix and factory cannot be null");
+		}
+		TreeMap<String, SampleAccumulatorFactory> copy = new TreeMap<String, SampleAccumulatorFactory>(factoriesByPrefix);
+		copy.put(prefix, factory);
+		return new PrefixedAccumulatorFactory(defaultFactory, copy);
+	}
+
+	@Override
+	public SampleAccumulator create(final String name) {
+		return factoryFor(name).create(name);
+	}
+
+	/**
+	 * @return the factory registered under the longest prefix of the name, or the default factory
+	 */
+	SampleAccumulatorFactory factoryFor(final String name) {
+		SampleAccumulatorFactory longestMatch = defaultFactory;
+		int longestLength = -1;
+		for (Map.Entry<String, SampleAccumulatorFactory> entry : factoriesByPrefix.headMap(name, true).entrySet()) {
+			if (name.startsWith(entry.getKey()) && entry.getKey().length() > longestLength) {
+				longestMatch = entry.getValue();
+				longestLength = entry.getKey().length();
+			}
+		}
+		return longestMatch;
+	}
+}
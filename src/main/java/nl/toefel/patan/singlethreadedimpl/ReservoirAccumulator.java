@@ -0,0 +1,288 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.StatisticalDistribution;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a bounded random sample of the raw values, for offline analysis and percentiles of samples whose range is not
+ * known up front. Every sample gets a random key and the reservoir retains the samples with the smallest keys, in a
+ * max-heap of two primitive arrays of fixed size. Reservoirs with the same size and decay merge exactly, by keeping the
+ * smallest keys of both.
+ * <p>
+ * The uniform reservoir gives every sample the same chance to be retained. Once it is full, it computes how many samples
+ * to skip until the next one that replaces a retained value (Li's algorithm L), so recording costs O(1) amortized.
+ * <p>
+ * The forward-decaying reservoir (Cormode et al.) favours recent samples: the weight of a sample grows by a factor e
+ * every 1/decayPerSecond seconds and its chance to be retained is proportional to its weight. The keys are kept as
+ * logarithms measured from a landmark shared by all reservoirs in the JVM, so they never need rescaling. A new sample
+ * usually replaces a retained value, which costs O(log size).
+ * <p>
+ * The count, minimum, maximum, mean and standard deviation are exact. Not thread-safe, callers must guard concurrent
+ * access.
+ */
+public final class ReservoirAccumulator implements SampleAccumulator {
+
+	private static final long LANDMARK_NANOS = System.nanoTime();
+	private static final AtomicLong SEEDS = new AtomicLong(System.nanoTime());
+
+	private final int size;
+	private final double decayPerSecond;
+	private final DistributionAccumulator moments = new DistributionAccumulator();
+
+	// max-heap on keys, values[i] belongs to keys[i]
+	private final double[] keys;
+	private final double[] values;
+	private int retained;
+
+	/**
+	 * Number of the sample that will replace a retained value next, only used by the uniform reservoir.
+	 */
+	private long nextReplacement;
+
+	private long randomState;
+
+	/**
+	 * @param size the maximum number of retained values, between 1 and 1048576
+	 * @param decayPerSecond 0 for a uniform reservoir, otherwise the forward decay rate, for example 0.015 to favour
+	 *                       the samples of the last minutes
+	 */
+	public ReservoirAccumulator(final int size, final double decayPerSecond) {
+		if (size < 1 || size > 1048576) {
+			throw new IllegalArgumentException("size must be between 1 and 1048576 but was " + size);
+		}
+		if (!(decayPerSecond >= 0) || Double.isInfinite(decayPerSecond)) {
+			throw new IllegalArgumentException("decayPerSecond must be zero or positive but was " + decayPerSecond);
+		}
+		this.size = size;
+		this.decayPerSecond = decayPerSecond;
+		this.keys = new double[size];
+		this.values = new double[size];
+		this.randomState = (System.nanoTime() ^ SEEDS.addAndGet(0x9E3779B97F4A7C15L)) | 1;
+	}
+
+	/**
+	 * @param size the maximum number of retained values, see {@link #ReservoirAccumulator(int, double)}
+	 * @return factory of uniform reservoirs
+	 */
+	public static SampleAccumulatorFactory uniformFactory(final int size) {
+		return factory(size, 0d);
+	}
+
+	/**
+	 * @param size the maximum number of retained values, see {@link #ReservoirAccumulator(int, double)}
+	 * @param decayPerSecond forward decay rate, see {@link #ReservoirAccumulator(int, double)}
+	 * @return factory of reservoirs that favour recent samples
+	 */
+	public static SampleAccumulatorFactory forwardDecayingFactory(final int size, final double decayPerSecond) {
+		if (!(decayPerSecond > 0)) {
+			throw new IllegalArgumentException("decayPerSecond must be positive but was " + decayPerSecond);
+		}
+		return factory(size, decayPerSecond);
+	}
+
+	private static SampleAccumulatorFactory factory(final int size, final double decayPerSecond) {
+		new ReservoirAccumulator(size, decayPerSecond); // validates the arguments
+		return new SampleAccumulatorFactory() {
+			@Override
+			public SampleAccumulator create(final String name) {
+				return new ReservoirAccumulator(size, decayPerSecond);
+			}
+		};
+	}
+
+	@Override
+	public void addSample(final double sampleValue) {
+		moments.addSample(sampleValue);
+		if (decayPerSecond == 0) {
+			addUniform(sampleValue);
+		} else {
+			addDecaying(sampleValue, System.nanoTime());
+		}
+	}
+
+	@Override
+	public void addElapsedNanos(final long elapsedNanos) {
+		addSample(elapsedNanos / 1e6);
+	}
+
+	/**
+	 * @param nanoTime the {@link System#nanoTime()} at which the sample was taken, ignored by uniform reservoirs
+	 */
+	void addSample(final double sampleValue, final long nanoTime) {
+		moments.addSample(sampleValue);
+		if (decayPerSecond == 0) {
+			addUniform(sampleValue);
+		} else {
+			addDecaying(sampleValue, nanoTime);
+		}
+	}
+
+	private void addDecaying(final double sampleValue, final long nanoTime) {
+		offer(Math.log(nextRandom()) - decayPerSecond * ((nanoTime - LANDMARK_NANOS) / 1e9), sampleValue);
+	}
+
+	private void addUniform(final double sampleValue) {
+		long sampleNumber = moments.getSampleCount();
+		if (retained < size) {
+			insert(nextRandom(), sampleValue);
+			if (retained == size) {
+				scheduleNextReplacement(sampleNumber);
+			}
+		} else if (sampleNumber == nextReplacement) {
+			// the key of the replacing sample is uniform below the largest retained key
+			replaceLargest(keys[0] * nextRandom(), sampleValue);
+			scheduleNextReplacement(sampleNumber);
+		}
+	}
+
+	/**
+	 * Draws the number of samples until one has a key below the largest retained key, a geometric distribution.
+	 */
+	private void scheduleNextReplacement(final long sampleNumber) {
+		double skip = Math.floor(Math.log(nextRandom()) / Math.log1p(-keys[0]));
+		nextReplacement = skip >= Long.MAX_VALUE - sampleNumber ? Long.MAX_VALUE : sampleNumber + (long) skip + 1;
+	}
+
+	/**
+	 * @param other reservoir with the same size and decay
+	 * @throws IllegalArgumentException if the other accumulator is no reservoir or has another size or decay
+	 */
+	@Override
+	public void merge(final SampleAccumulator other) {
+		if (!isCompatible(other)) {
+			throw new IllegalArgumentException("can only merge reservoirs of size " + size + " and decay " + decayPerSecond);
+		}
+		ReservoirAccumulator that = (ReservoirAccumulator) other;
+		moments.merge(that.moments);
+		for (int i = 0; i < that.retained; i++) {
+			offer(that.keys[i], that.values[i]);
+		}
+		if (decayPerSecond == 0 && retained == size) {
+			scheduleNextReplacement(moments.getSampleCount());
+		}
+	}
+
+	boolean isCompatible(final SampleAccumulator other) {
+		return other instanceof ReservoirAccumulator && ((ReservoirAccumulator) other).size == size
+				&& Double.compare(((ReservoirAccumulator) other).decayPerSecond, decayPerSecond) == 0;
+	}
+
+	@Override
+	public void reset() {
+		retained = 0;
+		nextReplacement = 0;
+		moments.reset();
+	}
+
+	@Override
+	public long getSampleCount() {
+		return moments.getSampleCount();
+	}
+
+	/**
+	 * @return the number of values kept by the reservoir, at most its size
+	 */
+	public int getRetainedValues() {
+		return retained;
+	}
+
+	@Override
+	public StatisticalDistribution toDistribution() {
+		return new ReservoirDistribution(copy());
+	}
+
+	StatisticalDistribution moments() {
+		return moments.toDistribution();
+	}
+
+	/**
+	 * @return the retained values in ascending order
+	 */
+	double[] sortedValues() {
+		double[] sorted = Arrays.copyOf(values, retained);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * @return an independent copy of this reservoir
+	 */
+	ReservoirAccumulator copy() {
+		ReservoirAccumulator copy = new ReservoirAccumulator(size, decayPerSecond);
+		copy.merge(this);
+		return copy;
+	}
+
+	private void offer(final double key, final double value) {
+		if (retained < size) {
+			insert(key, value);
+		} else if (key < keys[0]) {
+			replaceLargest(key, value);
+		}
+	}
+
+	private void insert(final double key, final double value) {
+		int child = retained++;
+		while (child > 0) {
+			int parent = (child - 1) >>> 1;
+			if (keys[parent] >= key) {
+				break;
+			}
+			keys[child] = keys[parent];
+			values[child] = values[parent];
+			child = parent;
+		}
+		keys[child] = key;
+		values[child] = value;
+	}
+
+	private void replaceLargest(final double key, final double value) {
+		int parent = 0;
+		for (;;) {
+			int child = 2 * parent + 1;
+			if (child >= retained) {
+				break;
+			}
+			if (child + 1 < retained && keys[child + 1] > keys[child]) {
+				child++;
+			}
+			if (keys[child] <= key) {
+				break;
+			}
+			keys[parent] = keys[child];
+			values[parent] = values[child];
+			parent = child;
+		}
+		keys[parent] = key;
+		values[parent] = value;
+	}
+
+	/**
+	 * @return a uniform random number in (0, 1], never zero so its logarithm is finite
+	 */
+	private double nextRandom() {
+		// xorshift, cheap and without contention between reservoirs
+		randomState ^= randomState << 13;
+		randomState ^= randomState >>> 7;
+		randomState ^= randomState << 17;
+		return ((randomState >>> 11) + 1) * 0x1.0p-53;
+	}
+}
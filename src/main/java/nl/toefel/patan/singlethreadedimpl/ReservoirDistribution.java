@@ -0,0 +1,134 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.PercentileDistribution;
+import nl.toefel.patan.api.StatisticalDistribution;
+
+/**
+ * Immutable distribution backed by a frozen {@link ReservoirAccumulator}. Percentiles are those of the retained values,
+ * which are available for offline analysis with {@link #values()}. The count, minimum, maximum, mean and standard
+ * deviation are exact.
+ */
+public final class ReservoirDistribution implements PercentileDistribution {
+
+	private final ReservoirAccumulator reservoir;
+	private final StatisticalDistribution moments;
+	private final double[] sortedValues;
+
+	/**
+	 * @param reservoir reservoir that is not modified afterwards
+	 */
+	ReservoirDistribution(final ReservoirAccumulator reservoir) {
+		this.reservoir = reservoir;
+		this.moments = reservoir.moments();
+		this.sortedValues = reservoir.sortedValues();
+	}
+
+	/**
+	 * @return a copy of the retained values in ascending order
+	 */
+	public double[] values() {
+		return sortedValues.clone();
+	}
+
+	/**
+	 * Returns the retained value at the rank of the percentile, the minimum and maximum are exact.
+	 *
+	 * @param percentile between 0 and 100, for example 99.9
+	 * @return the estimated value at the percentile, 0 if the distribution is empty
+	 */
+	@Override
+	public double getPercentile(final double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile must be between 0 and 100 but was " + percentile);
+		}
+		if (sortedValues.length == 0) {
+			return 0;
+		} else if (percentile == 0) {
+			return moments.getMinimum();
+		} else if (percentile == 100) {
+			return moments.getMaximum();
+		}
+		int rank = (int) Math.ceil(percentile / 100 * sortedValues.length);
+		return sortedValues[Math.max(rank, 1) - 1];
+	}
+
+	@Override
+	public StatisticalDistribution newWithExtraSample(final double sampleValue) {
+		ReservoirAccumulator copy = reservoir.copy();
+		copy.addSample(sampleValue);
+		return new ReservoirDistribution(copy);
+	}
+
+	/**
+	 * Merges the reservoirs when the other distribution is a reservoir with the same size and decay, otherwise the
+	 * result is a plain distribution without percentiles.
+	 */
+	@Override
+	public StatisticalDistribution newMergedWith(final StatisticalDistribution other) {
+		if (other.getSampleCount() == 0) {
+			return this;
+		} else if (getSampleCount() == 0) {
+			return other;
+		}
+		if (other instanceof ReservoirDistribution && reservoir.isCompatible(((ReservoirDistribution) other).reservoir)) {
+			ReservoirAccumulator merged = reservoir.copy();
+			merged.merge(((ReservoirDistribution) other).reservoir);
+			return new ReservoirDistribution(merged);
+		}
+		return moments.newMergedWith(other);
+	}
+
+	@Override
+	public long getSampleCount() {
+		return moments.getSampleCount();
+	}
+
+	@Override
+	public double getMinimum() {
+		return moments.getMinimum();
+	}
+
+	@Override
+	public double getMaximum() {
+		return moments.getMaximum();
+	}
+
+	@Override
+	public double getMean() {
+		return moments.getMean();
+	}
+
+	@Override
+	public double getStdDeviation() {
+		return moments.getStdDeviation();
+	}
+
+	@Override
+	public String toString() {
+		return "ReservoirDistribution [" +
+				"sampleCount=" + getSampleCount() +
+				", retained=" + sortedValues.length +
+				", min=" + getMinimum() +
+				", max=" + getMaximum() +
+				", mean=" + getMean() +
+				", p50=" + getPercentile(50) +
+				", p99=" + getPercentile(99) +
+				']';
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.StatisticalDistribution;
+
+/**
+ * Mutable state of a single sample or duration name that is updated in place, an immutable
+ * {@link StatisticalDistribution} is only created when {@link #toDistribution()} is called.
+ * <p>
+ * Implementations are not thread-safe, callers must guard concurrent access, unless they implement
+ * {@link ConcurrentSampleAccumulator}.
+ */
+public interface SampleAccumulator {
+
+	/**
+	 * Adds a sample, must not allocate.
+	 *
+	 * @param sampleValue the value to add
+	 */
+	void addSample(double sampleValue);
+
+	/**
+	 * Adds a duration measured in nanoseconds, must not allocate. Accumulators that keep milliseconds add it as a sample
+	 * of elapsedNanos / 1000000.
+	 *
+	 * @param elapsedNanos the duration to add
+	 */
+	void addElapsedNanos(long elapsedNanos);
+
+	/**
+	 * Adds all samples of the other accumulator to this one.
+	 *
+	 * @param other accumulator created by the same {@link SampleAccumulatorFactory}, is not modified
+	 * @throws IllegalArgumentException if the other accumulator cannot be merged into this one
+	 */
+	void merge(SampleAccumulator other);
+
+	/**
+	 * Removes all samples, afterwards the accumulator behaves like a new one. Lets owners reuse an accumulator instead
+	 * of creating a new one, must not allocate more than creating one would.
+	 */
+	void reset();
+
+	/**
+	 * @return the number of samples added so far
+	 */
+	long getSampleCount();
+
+	/**
+	 * @return an immutable copy of the current state
+	 */
+	StatisticalDistribution toDistribution();
+}
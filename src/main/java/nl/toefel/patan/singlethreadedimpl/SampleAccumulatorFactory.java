@@ -0,0 +1,34 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+/**
+ * Creates the {@link SampleAccumulator} of a new sample or duration name, determines what kind of distribution a store
+ * keeps. See {@link DistributionAccumulator#FACTORY}, {@link HistogramAccumulator#factory(HistogramLayout)},
+ * {@link KllAccumulator#factory(int)}, {@link BucketAccumulator#factory(BucketLayout)} and
+ * {@link PrefixedAccumulatorFactory} to choose per name.
+ */
+public interface SampleAccumulatorFactory {
+
+	/**
+	 * Called once per name and store, every accumulator of a name must be mergeable with the others of that name.
+	 *
+	 * @param name the name of the sample or duration
+	 * @return a new, empty, accumulator
+	 */
+	SampleAccumulator create(String name);
+}
@@ -0,0 +1,46 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.DurationStore;
+import nl.toefel.patan.api.Stopwatch;
+
+/**
+ * {@link nl.toefel.patan.api.Timer} that records elapsed times in nanoseconds through the {@link ElapsedNanosRecorder} handle
+ * of a duration store.
+ */
+public final class SampleRecorderTimer extends OutcomeTimer {
+
+	private final ElapsedNanosRecorder durations;
+
+	/**
+	 * @param store the store that creates the stopwatches and the timers of the outcomes
+	 * @param eventName name of the timer
+	 * @param durations handle to the durations of the event name
+	 */
+	public SampleRecorderTimer(final DurationStore store, final String eventName, final ElapsedNanosRecorder durations) {
+		super(store, eventName);
+		this.durations = durations;
+	}
+
+	@Override
+	public double recordElapsedTime(final Stopwatch stopwatch) {
+		long elapsedNanos = stopwatch.elapsedNanos();
+		durations.recordElapsedNanos(elapsedNanos);
+		return elapsedNanos / 1e6;
+	}
+}
@@ -18,18 +18,79 @@ package nl.toefel.patan.singlethreadedimpl;
 
 import nl.toefel.patan.api.*;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * Statistics implementation suitable for single-threaded applications.
+ * <p>
+ * Every record stamps the name with the current epoch, like in {@link DenseStatistics}, so
+ * {@link #getChangedSince(SnapshotToken)} only creates the values of the names stamped after the token. Removing the
+ * names under a prefix counts as a reset.
  */
-public class SingleThreadedStatisticsFacade implements Statistics {
+public class SingleThreadedStatisticsFacade implements GenerationalStatistics, HierarchicalStatistics, IncrementalStatistics {
 
-	private final StatisticDistributionStore sampleStore = new StatisticDistributionStore();
+	private final StatisticDistributionStore sampleStore;
 
-	private final StatisticDistributionStore durationStore = new StatisticDistributionStore();
+	private final StatisticDistributionStore durationStore;
 
-	private final CounterStore counterStore = new CounterStore();
+	private final CounterStore counterStore;
+
+	private final DistinctCountStore distinctStore;
+
+	private final TimerCache timerCache = new TimerCache(this);
+
+	/**
+	 * The epoch of the last value of every distinct count, the other stores stamp their own names. All epochs advance
+	 * together, see {@link #newToken()}.
+	 */
+	private StringLongMap distinctStamps = new StringLongMap();
+
+	private long epoch = 1;
+
+	/**
+	 * The epoch of the last reset of the distinct counts, zero if never reset.
+	 */
+	private long distinctResetEpoch;
+
+	public SingleThreadedStatisticsFacade() {
+		this(DurationAccumulator.FACTORY);
+	}
+
+	/**
+	 * @param durationAccumulators creates the accumulator of every new duration name, for example
+	 *                             {@link HistogramAccumulator#factory(HistogramLayout)} to keep percentiles
+	 */
+	public SingleThreadedStatisticsFacade(final SampleAccumulatorFactory durationAccumulators) {
+		this(DistributionAccumulator.FACTORY, durationAccumulators);
+	}
+
+	/**
+	 * @param sampleAccumulators creates the accumulator of every new sample name, for example
+	 *                           {@link KllAccumulator#factory(int)} to keep percentiles of samples with an unknown range
+	 * @param durationAccumulators creates the accumulator of every new duration name
+	 */
+	public SingleThreadedStatisticsFacade(final SampleAccumulatorFactory sampleAccumulators, final SampleAccumulatorFactory durationAccumulators) {
+		this(sampleAccumulators, durationAccumulators, CardinalityLimit.NONE);
+	}
+
+	/**
+	 * @param sampleAccumulators creates the accumulator of every new sample name
+	 * @param durationAccumulators creates the accumulator of every new duration name
+	 * @param limit limits the number of names of each kind, see {@link CardinalityLimit}
+	 */
+	public SingleThreadedStatisticsFacade(final SampleAccumulatorFactory sampleAccumulators, final SampleAccumulatorFactory durationAccumulators,
+										  final CardinalityLimit limit) {
+		if (limit == null) {
+			throw new IllegalArgumentException("limit cannot be null");
+		}
+		this.sampleStore = new StatisticDistributionStore(sampleAccumulators, limit);
+		this.durationStore = new StatisticDistributionStore(durationAccumulators, limit);
+		this.counterStore = new CounterStore(limit);
+		this.distinctStore = new DistinctCountStore(limit);
+	}
 
 	@Override
 	public Stopwatch startStopwatch() {
@@ -38,34 +99,31 @@ public class SingleThreadedStatisticsFacade implements Statistics {
 
 	@Override
 	public void recordElapsedTime(final String eventName, final Runnable runnable) {
-		Stopwatch stopwatch = startStopwatch();
-		try {
-			runnable.run();
-			recordElapsedTime(eventName + ".ok", stopwatch);
-		} catch (RuntimeException e) {
-			recordElapsedTime(eventName + ".failed", stopwatch);
-			throw e;
-		}
+		timerCache.timer(eventName).recordElapsedTime(runnable);
 	}
 
 	@Override
 	public <T> T recordElapsedTime(final String eventName, final TimedTask<T> runnable) {
-		Stopwatch stopwatch = startStopwatch();
-		try {
-			T val = runnable.get();
-			recordElapsedTime(eventName + ".ok", stopwatch);
-			return val;
-		} catch (RuntimeException e) {
-			recordElapsedTime(eventName + ".failed", stopwatch);
-			throw e;
-		}
+		return timerCache.timer(eventName).recordElapsedTime(runnable);
 	}
 
 	@Override
 	public double recordElapsedTime(final String eventName, final Stopwatch stopwatch) {
-		double elapsedMillis = stopwatch.elapsedMillis();
-		durationStore.addSample(eventName, elapsedMillis);
-		return elapsedMillis;
+		long elapsedNanos = stopwatch.elapsedNanos();
+		durationStore.addElapsedNanos(eventName, elapsedNanos);
+		return elapsedNanos / 1e6;
+	}
+
+	@Override
+	public long recordElapsedNanos(final String eventName, final long startNanos) {
+		long elapsedNanos = System.nanoTime() - startNanos;
+		durationStore.addElapsedNanos(eventName, elapsedNanos);
+		return elapsedNanos;
+	}
+
+	@Override
+	public Timer timer(final String eventName) {
+		return new SampleRecorderTimer(this, eventName, durationStore.elapsedNanosRecorder(eventName));
 	}
 
 	@Override
@@ -93,11 +151,21 @@ public class SingleThreadedStatisticsFacade implements Statistics {
 		counterStore.addOccurrences(eventName, timesOccurred);
 	}
 
+	@Override
+	public Counter counter(final String eventName) {
+		return counterStore.counter(eventName);
+	}
+
 	@Override
 	public void addSample(final String eventName, final double value) {
 		sampleStore.addSample(eventName, value);
 	}
 
+	@Override
+	public SampleRecorder sampleRecorder(final String eventName) {
+		return sampleStore.sampleRecorder(eventName);
+	}
+
 	@Override
 	public StatisticalDistribution findSampleDistribution(final String eventName) {
 		return sampleStore.findSampleDistribution(eventName);
@@ -128,21 +196,145 @@ public class SingleThreadedStatisticsFacade implements Statistics {
 		return counterStore.getAllOccurrencesSnapshotAndReset();
 	}
 
+	@Override
+	public void addDistinct(final String name, final long value) {
+		distinctStore.addDistinct(name, value);
+		stampDistinct(name);
+	}
+
+	@Override
+	public void addDistinct(final String name, final String value) {
+		distinctStore.addDistinct(name, value);
+		stampDistinct(name);
+	}
+
+	@Override
+	public DistinctCount findDistinctCount(final String name) {
+		return distinctStore.findDistinctCount(name);
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshot() {
+		return distinctStore.getAllDistinctCountsSnapshot();
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshotAndReset() {
+		resetDistinctStamps();
+		return distinctStore.getAllDistinctCountsSnapshotAndReset();
+	}
+
 	@Override
 	public void reset() {
 		counterStore.reset();
 		durationStore.reset();
 		sampleStore.reset();
+		distinctStore.reset();
+		resetDistinctStamps();
 	}
 
 	@Override
 	public Snapshot getSnapshot() {
-		return new DetachedSnapshot(getAllSamplesSnapshot(), getAllOccurrencesSnapshot(), getAllDurationsSnapshot());
+		return new DetachedSnapshot(getAllSamplesSnapshot(), getAllOccurrencesSnapshot(), getAllDurationsSnapshot(),
+				Collections.<String, MovingRates>emptyMap(), getAllDistinctCountsSnapshot());
+	}
+
+	@Override
+	public Generation<SortedMap<String, Long>> detachOccurrences() {
+		return counterStore.detach();
+	}
+
+	@Override
+	public Generation<SortedMap<String, StatisticalDistribution>> detachSamples() {
+		return sampleStore.detach();
+	}
+
+	@Override
+	public Generation<SortedMap<String, StatisticalDistribution>> detachDurations() {
+		return durationStore.detach();
+	}
+
+	@Override
+	public Generation<SortedMap<String, DistinctCount>> detachDistinctCounts() {
+		resetDistinctStamps();
+		return distinctStore.detach();
 	}
 
 	@Override
 	public Snapshot getSnapshotAndReset() {
-		return new DetachedSnapshot(getAllSamplesSnapshotAndReset(), getAllOccurrencesSnapshotAndReset(), getAllDurationsSnapshotAndReset());
+		return new DetachedSnapshot(getAllSamplesSnapshotAndReset(), getAllOccurrencesSnapshotAndReset(), getAllDurationsSnapshotAndReset(),
+				Collections.<String, MovingRates>emptyMap(), getAllDistinctCountsSnapshotAndReset());
+	}
+
+	@Override
+	public Snapshot getSnapshot(final String prefix) {
+		return new DetachedSnapshot(sampleStore.getAllSamplesSnapshot(prefix), counterStore.getAllOccurrencesSnapshot(prefix),
+				durationStore.getAllSamplesSnapshot(prefix), Collections.<String, MovingRates>emptyMap(),
+				distinctStore.getAllDistinctCountsSnapshot(prefix));
+	}
+
+	@Override
+	public Snapshot getSnapshotAndReset(final String prefix) {
+		return new DetachedSnapshot(sampleStore.getAllSamplesSnapshotAndReset(prefix), counterStore.getAllOccurrencesSnapshotAndReset(prefix),
+				durationStore.getAllSamplesSnapshotAndReset(prefix), Collections.<String, MovingRates>emptyMap(),
+				distinctCountsSnapshotAndReset(prefix));
+	}
+
+	@Override
+	public void reset(final String prefix) {
+		counterStore.reset(prefix);
+		durationStore.reset(prefix);
+		sampleStore.reset(prefix);
+		distinctCountsSnapshotAndReset(prefix);
+	}
+
+	@Override
+	public IncrementalSnapshot getIncrementalSnapshot() {
+		return new DetachedIncrementalSnapshot(sampleStore.getAllSamplesSnapshot(), counterStore.getAllOccurrencesSnapshot(),
+				durationStore.getAllSamplesSnapshot(), distinctStore.getAllDistinctCountsSnapshot(), newToken(), true);
+	}
+
+	@Override
+	public IncrementalSnapshot getChangedSince(final SnapshotToken token) {
+		long since = EpochToken.epochOf(token, this);
+		if (sampleStore.isResetAfter(since) || durationStore.isResetAfter(since) || counterStore.isResetAfter(since)
+				|| distinctResetEpoch > since) {
+			return getIncrementalSnapshot();
+		}
+		SortedMap<String, DistinctCount> distinctCounts = new TreeMap<String, DistinctCount>();
+		for (String name : distinctStamps.keysAbove(since)) {
+			distinctCounts.put(name, distinctStore.findDistinctCount(name));
+		}
+		return new DetachedIncrementalSnapshot(sampleStore.getSamplesChangedAfter(since), counterStore.getOccurrencesChangedAfter(since),
+				durationStore.getSamplesChangedAfter(since), distinctCounts, newToken(), false);
+	}
+
+	/**
+	 * Ends the current epoch of all stores, they start with the same epoch and always advance together.
+	 */
+	private SnapshotToken newToken() {
+		sampleStore.advanceEpoch();
+		durationStore.advanceEpoch();
+		counterStore.advanceEpoch();
+		return new EpochToken(this, epoch++);
+	}
+
+	private SortedMap<String, DistinctCount> distinctCountsSnapshotAndReset(final String prefix) {
+		SortedMap<String, DistinctCount> removed = distinctStore.getAllDistinctCountsSnapshotAndReset(prefix);
+		if (!removed.isEmpty()) {
+			resetDistinctStamps();
+		}
+		return removed;
+	}
+
+	private void stampDistinct(final String name) {
+		int slot = distinctStamps.slotOf(name);
+		distinctStamps.setAt(slot < 0 ? distinctStamps.insert(name) : slot, epoch);
+	}
+
+	private void resetDistinctStamps() {
+		distinctStamps = new StringLongMap();
+		distinctResetEpoch = epoch;
 	}
 
 }
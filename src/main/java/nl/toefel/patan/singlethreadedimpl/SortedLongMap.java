@@ -0,0 +1,332 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Sorted map from names to counts that is backed by a sorted array of names and a parallel array of primitive longs.
+ * Counter snapshots are returned as this map, a {@link Long} is only created when a value is read. Lookups use a binary
+ * search, sub maps share the arrays of this map.
+ * <p>
+ * Snapshots can be modified like before: the first modification copies the arrays into a {@link TreeMap}, from then on
+ * the map and all its sub maps are views of that copy.
+ */
+public final class SortedLongMap extends AbstractMap<String, Long> implements SortedMap<String, Long> {
+
+	private final Backing backing;
+	private final String fromKey; // inclusive, null if the map has no lower bound
+	private final String toKey; // exclusive, null if the map has no upper bound
+
+	private SortedLongMap(final Backing backing, final String fromKey, final String toKey) {
+		this.backing = backing;
+		this.fromKey = fromKey;
+		this.toKey = toKey;
+	}
+
+	/**
+	 * Sorts the arrays in place and wraps them, the arrays must not be modified afterwards.
+	 *
+	 * @param keys distinct names in any order
+	 * @param values the value of every name, at the same index as the name
+	 * @param size the number of names, the arrays may be longer
+	 * @return a map of the first size names and values
+	 */
+	public static SortedLongMap sort(final String[] keys, final long[] values, final int size) {
+		if (size > 1) {
+			mergeSort(keys, values, 0, size, new String[size], new long[size]);
+		}
+		return new SortedLongMap(new Backing(keys, values, size), null, null);
+	}
+
+	/**
+	 * @return the value of the key without boxing, zero if the key is not in the map
+	 */
+	public long getLong(final String key) {
+		if (backing.copy != null) {
+			Long value = view().get(key);
+			return value == null ? 0L : value;
+		}
+		int index = indexOfKey(key);
+		return index >= 0 ? backing.values[index] : 0L;
+	}
+
+	@Override
+	public Long get(final Object key) {
+		if (backing.copy != null) {
+			return view().get(key);
+		}
+		if (!(key instanceof String)) {
+			return null;
+		}
+		int index = indexOfKey((String) key);
+		return index >= 0 ? Long.valueOf(backing.values[index]) : null;
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		if (backing.copy != null) {
+			return view().containsKey(key);
+		}
+		return key instanceof String && indexOfKey((String) key) >= 0;
+	}
+
+	@Override
+	public int size() {
+		if (backing.copy != null) {
+			return view().size();
+		}
+		return to() - from();
+	}
+
+	@Override
+	public Long put(final String key, final Long value) {
+		return modifiableView().put(key, value);
+	}
+
+	@Override
+	public Long remove(final Object key) {
+		return containsKey(key) ? modifiableView().remove(key) : null;
+	}
+
+	@Override
+	public void clear() {
+		modifiableView().clear();
+	}
+
+	@Override
+	public Set<Map.Entry<String, Long>> entrySet() {
+		return new AbstractSet<Map.Entry<String, Long>>() {
+			@Override
+			public Iterator<Map.Entry<String, Long>> iterator() {
+				if (backing.copy != null) {
+					return view().entrySet().iterator();
+				}
+				return new ArrayIterator(from(), to());
+			}
+
+			@Override
+			public int size() {
+				return SortedLongMap.this.size();
+			}
+		};
+	}
+
+	@Override
+	public Comparator<? super String> comparator() {
+		return null;
+	}
+
+	@Override
+	public SortedMap<String, Long> subMap(final String fromKey, final String toKey) {
+		if (fromKey.compareTo(toKey) > 0) {
+			throw new IllegalArgumentException("fromKey " + fromKey + " is greater than toKey " + toKey);
+		}
+		if (backing.copy != null) {
+			return view().subMap(fromKey, toKey);
+		}
+		return new SortedLongMap(backing, max(this.fromKey, fromKey), min(this.toKey, toKey));
+	}
+
+	@Override
+	public SortedMap<String, Long> headMap(final String toKey) {
+		if (backing.copy != null) {
+			return view().headMap(toKey);
+		}
+		return new SortedLongMap(backing, fromKey, min(this.toKey, toKey));
+	}
+
+	@Override
+	public SortedMap<String, Long> tailMap(final String fromKey) {
+		if (backing.copy != null) {
+			return view().tailMap(fromKey);
+		}
+		return new SortedLongMap(backing, max(this.fromKey, fromKey), toKey);
+	}
+
+	@Override
+	public String firstKey() {
+		if (backing.copy != null) {
+			return view().firstKey();
+		}
+		int from = from();
+		if (from == to()) {
+			throw new NoSuchElementException();
+		}
+		return backing.keys[from];
+	}
+
+	@Override
+	public String lastKey() {
+		if (backing.copy != null) {
+			return view().lastKey();
+		}
+		int to = to();
+		if (from() == to) {
+			throw new NoSuchElementException();
+		}
+		return backing.keys[to - 1];
+	}
+
+	/**
+	 * @return the part of the copy within the bounds of this map, the map must have been copied
+	 */
+	private SortedMap<String, Long> view() {
+		TreeMap<String, Long> copy = backing.copy;
+		if (fromKey == null) {
+			return toKey == null ? copy : copy.headMap(toKey);
+		}
+		return toKey == null ? copy.tailMap(fromKey) : copy.subMap(fromKey, toKey);
+	}
+
+	private SortedMap<String, Long> modifiableView() {
+		if (backing.copy == null) {
+			backing.copy = new TreeMap<String, Long>(new SortedLongMap(backing, null, null)); // linear, the keys are sorted
+		}
+		return view();
+	}
+
+	private int from() {
+		return fromKey == null ? 0 : indexOf(fromKey);
+	}
+
+	private int to() {
+		return toKey == null ? backing.size : Math.max(from(), indexOf(toKey));
+	}
+
+	/**
+	 * @return the index of the key within the bounds of this map, negative if it is not in the map
+	 */
+	private int indexOfKey(final String key) {
+		if ((fromKey != null && key.compareTo(fromKey) < 0) || (toKey != null && key.compareTo(toKey) >= 0)) {
+			return -1;
+		}
+		return Arrays.binarySearch(backing.keys, 0, backing.size, key);
+	}
+
+	/**
+	 * @return the index of the first key that is greater than or equal to the given key
+	 */
+	private int indexOf(final String key) {
+		int index = Arrays.binarySearch(backing.keys, 0, backing.size, key);
+		return index >= 0 ? index : -index - 1;
+	}
+
+	private static String max(final String current, final String bound) {
+		return current == null || bound.compareTo(current) > 0 ? bound : current;
+	}
+
+	private static String min(final String current, final String bound) {
+		return current == null || bound.compareTo(current) < 0 ? bound : current;
+	}
+
+	private static void mergeSort(final String[] keys, final long[] values, final int from, final int to,
+								  final String[] keyBuffer, final long[] valueBuffer) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		mergeSort(keys, values, from, middle, keyBuffer, valueBuffer);
+		mergeSort(keys, values, middle, to, keyBuffer, valueBuffer);
+		if (keys[middle - 1].compareTo(keys[middle]) <= 0) {
+			return; // already in order
+		}
+		System.arraycopy(keys, from, keyBuffer, from, to - from);
+		System.arraycopy(values, from, valueBuffer, from, to - from);
+		int left = from;
+		int right = middle;
+		for (int i = from; i < to; i++) {
+			if (right >= to || (left < middle && keyBuffer[left].compareTo(keyBuffer[right]) <= 0)) {
+				keys[i] = keyBuffer[left];
+				values[i] = valueBuffer[left++];
+			} else {
+				keys[i] = keyBuffer[right];
+				values[i] = valueBuffer[right++];
+			}
+		}
+	}
+
+	/**
+	 * The sorted arrays shared by a map and its sub maps, and the copy that replaces them once the map is modified.
+	 */
+	private static final class Backing {
+		private final String[] keys;
+		private final long[] values;
+		private final int size;
+		private TreeMap<String, Long> copy;
+
+		Backing(final String[] keys, final long[] values, final int size) {
+			this.keys = keys;
+			this.values = values;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Iterates over the arrays, removing an entry or setting its value copies the map first.
+	 */
+	private final class ArrayIterator implements Iterator<Map.Entry<String, Long>> {
+		private final int to;
+		private int next;
+		private String last;
+
+		ArrayIterator(final int from, final int to) {
+			this.next = from;
+			this.to = to;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < to;
+		}
+
+		@Override
+		public Map.Entry<String, Long> next() {
+			if (next >= to) {
+				throw new NoSuchElementException();
+			}
+			last = backing.keys[next];
+			Map.Entry<String, Long> entry = new AbstractMap.SimpleEntry<String, Long>(last, backing.values[next]) {
+				@Override
+				public Long setValue(final Long value) {
+					modifiableView().put(getKey(), value);
+					return super.setValue(value);
+				}
+			};
+			next++;
+			return entry;
+		}
+
+		@Override
+		public void remove() {
+			if (last == null) {
+				throw new IllegalStateException();
+			}
+			modifiableView().remove(last);
+			last = null;
+		}
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.Counter;
+import nl.toefel.patan.api.OccurrenceStore;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Bounded counter store for names with a high cardinality, like customer ids or URLs, after the Space-Saving algorithm
+ * of Metwally, Agrawal and El Abbadi. A fixed number of counters is monitored. When a name that is not monitored
+ * occurs and all counters are taken, it takes over the counter with the lowest count and inherits that count as its
+ * error. Counts therefore never underestimate and overestimate by at most N / capacity, where N is the total number of
+ * occurrences. Every name that occurred more than N / capacity times is guaranteed to be monitored.
+ * <p>
+ * Snapshots report the k names with the highest counts and, under the name of the 'other' counter, the total of all
+ * remaining occurrences if there are any, so the snapshot always adds up to N. Recording is O(log capacity), the counters are kept in a
+ * min-heap of parallel arrays and the heap index of every name in a {@link StringLongMap}, so recording does not box.
+ * <p>
+ * Occurrences cannot be negative. Not thread-safe, callers must guard concurrent access.
+ */
+public class SpaceSavingCounterStore implements OccurrenceStore {
+
+	private final int k;
+	private final int capacity;
+	private final String otherName;
+
+	// min-heap on counts, names[i], counts[i] and errors[i] belong to the same counter
+	private final String[] names;
+	private final long[] counts;
+	private final long[] errors;
+	/** heap index of every monitored name, has room for all names without growing */
+	private StringLongMap slotsByName;
+	private int size;
+	private long total;
+
+	/**
+	 * @param k the number of names reported in snapshots, at least 1
+	 * @param capacity the number of monitored counters, at least k, determines the error bound
+	 * @param otherName the name under which snapshots report the occurrences of all other names
+	 */
+	public SpaceSavingCounterStore(final int k, final int capacity, final String otherName) {
+		if (k < 1 || capacity < k) {
+			throw new IllegalArgumentException("k must be positive and capacity at least k but were " + k + " and " + capacity);
+		}
+		if (otherName == null) {
+			throw new IllegalArgumentException("otherName cannot be null");
+		}
+		this.k = k;
+		this.capacity = capacity;
+		this.otherName = otherName;
+		this.names = new String[capacity];
+		this.counts = new long[capacity];
+		this.errors = new long[capacity];
+		this.slotsByName = new StringLongMap(capacity * 2);
+	}
+
+	@Override
+	public void addOccurrence(final String name) {
+		addOccurrences(name, 1L);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if timesOccurred is negative
+	 */
+	@Override
+	public void addOccurrences(final String name, final long timesOccurred) {
+		if (timesOccurred < 0) {
+			throw new IllegalArgumentException("timesOccurred cannot be negative but was " + timesOccurred);
+		}
+		total += timesOccurred;
+		int entry = slotsByName.slotOf(name);
+		if (entry >= 0) {
+			int slot = (int) slotsByName.valueAt(entry);
+			counts[slot] += timesOccurred;
+			siftDown(slot);
+		} else if (size < capacity) {
+			names[size] = name;
+			counts[size] = timesOccurred;
+			errors[size] = 0;
+			slotsByName.setAt(slotsByName.insert(name), size);
+			siftUp(size++);
+		} else {
+			slotsByName.remove(names[0]);
+			names[0] = name;
+			errors[0] = counts[0];
+			counts[0] += timesOccurred;
+			slotsByName.setAt(slotsByName.insert(name), 0);
+			siftDown(0);
+		}
+	}
+
+	@Override
+	public Counter counter(final String name) {
+		return new Counter() {
+			@Override
+			public void increment() {
+				addOccurrences(name, 1L);
+			}
+
+			@Override
+			public void increment(final long timesOccurred) {
+				addOccurrences(name, timesOccurred);
+			}
+		};
+	}
+
+	/**
+	 * @return the estimated count of a monitored name, the total of the names outside the top k for the 'other' name,
+	 * zero otherwise
+	 */
+	@Override
+	public long findOccurrence(final String name) {
+		int entry = slotsByName.slotOf(name);
+		if (entry >= 0) {
+			return counts[(int) slotsByName.valueAt(entry)];
+		} else if (name.equals(otherName)) {
+			Long other = getAllOccurrencesSnapshot().get(otherName);
+			return other == null ? 0L : other;
+		} else {
+			return 0L;
+		}
+	}
+
+	/**
+	 * @return the maximum overestimation of the count of a name, zero if the name is not monitored
+	 */
+	public long findError(final String name) {
+		int entry = slotsByName.slotOf(name);
+		return entry < 0 ? 0L : errors[(int) slotsByName.valueAt(entry)];
+	}
+
+	/**
+	 * @return the total number of occurrences of all names
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return the k names with the highest counts and the 'other' total if it is not zero
+	 */
+	@Override
+	public SortedMap<String, Long> getAllOccurrencesSnapshot() {
+		SortedMap<String, Long> snapshot = new TreeMap<String, Long>();
+		if (size == 0) {
+			return snapshot;
+		}
+		Integer[] slots = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			slots[i] = i;
+		}
+		Arrays.sort(slots, new Comparator<Integer>() {
+			@Override
+			public int compare(final Integer left, final Integer right) {
+				long difference = counts[right] - counts[left];
+				return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+			}
+		});
+		long reported = 0;
+		for (int i = 0; i < Math.min(k, size); i++) {
+			snapshot.put(names[slots[i]], counts[slots[i]]);
+			reported += counts[slots[i]];
+		}
+		if (total != reported) {
+			snapshot.put(otherName, total - reported);
+		}
+		return snapshot;
+	}
+
+	@Override
+	public SortedMap<String, Long> getAllOccurrencesSnapshotAndReset() {
+		SortedMap<String, Long> snapshot = getAllOccurrencesSnapshot();
+		reset();
+		return snapshot;
+	}
+
+	@Override
+	public void reset() {
+		Arrays.fill(names, null);
+		slotsByName = new StringLongMap(capacity * 2);
+		size = 0;
+		total = 0;
+	}
+
+	private void siftUp(final int slot) {
+		int child = slot;
+		while (child > 0) {
+			int parent = (child - 1) >>> 1;
+			if (counts[parent] <= counts[child]) {
+				break;
+			}
+			swap(parent, child);
+			child = parent;
+		}
+	}
+
+	private void siftDown(final int slot) {
+		int parent = slot;
+		for (;;) {
+			int child = 2 * parent + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && counts[child + 1] < counts[child]) {
+				child++;
+			}
+			if (counts[parent] <= counts[child]) {
+				break;
+			}
+			swap(parent, child);
+			parent = child;
+		}
+	}
+
+	private void swap(final int first, final int second) {
+		String name = names[first];
+		long count = counts[first];
+		long error = errors[first];
+		names[first] = names[second];
+		counts[first] = counts[second];
+		errors[first] = errors[second];
+		names[second] = name;
+		counts[second] = count;
+		errors[second] = error;
+		slotsByName.setAt(slotsByName.slotOf(names[first]), first);
+		slotsByName.setAt(slotsByName.slotOf(names[second]), second);
+	}
+}
@@ -16,50 +16,288 @@
 
 package nl.toefel.patan.singlethreadedimpl;
 
+import nl.toefel.patan.api.Generation;
+import nl.toefel.patan.api.SampleRecorder;
 import nl.toefel.patan.api.SampleStore;
 import nl.toefel.patan.api.StatisticalDistribution;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
+/**
+ * Holds a {@link SampleAccumulator} per name that is updated in place, immutable distributions are only created when
+ * they are looked up or a snapshot is taken. Accumulators are looked up in a hash map, a {@link NameIndex} keeps the
+ * names sorted so the distributions under a prefix are found without visiting all others.
+ * <p>
+ * Every record stamps the name with the current epoch in a {@link StringLongMap}, see
+ * {@link #getSamplesChangedAfter(long)}. Handles cache the slot of their stamp next to their accumulator.
+ */
 public class StatisticDistributionStore implements SampleStore {
 
-	private SortedMap<String, StatisticalDistribution> distributionsByName = new TreeMap<String, StatisticalDistribution>();
+	/**
+	 * Estimated memory of a distribution without its name: the map entry, an accumulator of fixed size, the stamp and
+	 * the index.
+	 */
+	private static final int ENTRY_BYTES = 160 + NameIndex.ENTRY_BYTES;
+
+	private final SampleAccumulatorFactory accumulatorFactory;
+
+	private final CardinalityGuard guard;
+
+	private Map<String, SampleAccumulator> distributionsByName = new HashMap<String, SampleAccumulator>();
+
+	private NameIndex names = new NameIndex();
+
+	/**
+	 * The epoch of the last record of every name, a name removed by a prefix moves the slots of the others.
+	 */
+	private StringLongMap stamps = new StringLongMap();
+
+	private long epoch = 1;
+
+	/**
+	 * The epoch of the last reset, zero if never reset.
+	 */
+	private long resetEpoch;
+
+	/**
+	 * Creates a store that keeps a {@link DistributionAccumulator} per name.
+	 */
+	public StatisticDistributionStore() {
+		this(DistributionAccumulator.FACTORY);
+	}
+
+	/**
+	 * @param accumulatorFactory creates the accumulator of every new name
+	 */
+	public StatisticDistributionStore(final SampleAccumulatorFactory accumulatorFactory) {
+		this(accumulatorFactory, CardinalityLimit.NONE);
+	}
+
+	/**
+	 * @param accumulatorFactory creates the accumulator of every new name
+	 * @param limit limits the number of distributions, see {@link CardinalityLimit}
+	 */
+	public StatisticDistributionStore(final SampleAccumulatorFactory accumulatorFactory, final CardinalityLimit limit) {
+		if (accumulatorFactory == null) {
+			throw new IllegalArgumentException("accumulatorFactory cannot be null");
+		}
+		this.accumulatorFactory = accumulatorFactory;
+		this.guard = limit.newGuard(ENTRY_BYTES);
+	}
 
 	@Override
 	public void addSample(String name, double value) {
-		if (distributionsByName.containsKey(name)) {
-			distributionsByName.put(name, distributionsByName.get(name).newWithExtraSample(value));
-		} else {
-			distributionsByName.put(name, ImmutableStatisticalDistribution.createWithSingleSample(value));
-		}
+		accumulatorAt(stampedSlotFor(name)).addSample(value);
+	}
+
+	/**
+	 * Adds a duration measured in nanoseconds, see {@link SampleAccumulator#addElapsedNanos(long)}.
+	 *
+	 * @param name the name of the duration
+	 * @param elapsedNanos the duration to add
+	 */
+	public void addElapsedNanos(final String name, final long elapsedNanos) {
+		accumulatorAt(stampedSlotFor(name)).addElapsedNanos(elapsedNanos);
+	}
+
+	@Override
+	public SampleRecorder sampleRecorder(final String name) {
+		return new AccumulatorHandle(name);
+	}
+
+	/**
+	 * @param name the name of the duration
+	 * @return a handle that adds durations measured in nanoseconds, it stays valid after a reset
+	 */
+	public ElapsedNanosRecorder elapsedNanosRecorder(final String name) {
+		return new AccumulatorHandle(name);
 	}
 
 	@Override
 	public StatisticalDistribution findSampleDistribution(final String name) {
-		StatisticalDistribution statisticalDistribution = distributionsByName.get(name);
-		if (statisticalDistribution == null) {
+		SampleAccumulator accumulator = distributionsByName.get(name);
+		if (accumulator == null) {
 			return ImmutableStatisticalDistribution.createEmpty();
 		} else {
-			return statisticalDistribution;
+			return accumulator.toDistribution();
 		}
 	}
 
 	@Override
 	public SortedMap<String, StatisticalDistribution> getAllSamplesSnapshot() {
-		return new TreeMap<String, StatisticalDistribution>(distributionsByName);
+		return toDistributions(distributionsByName);
 	}
 
 	@Override
 	public SortedMap<String, StatisticalDistribution> getAllSamplesSnapshotAndReset() {
-		SortedMap<String, StatisticalDistribution> snapshot = distributionsByName; // we can
+		return detach().toSnapshot();
+	}
+
+	/**
+	 * Continues with an empty map of accumulators, the current map is converted to distributions when the returned
+	 * generation is read. Handles resolve their name again in the new map, so no sample is added to the detached
+	 * accumulators.
+	 *
+	 * @return the detached accumulators
+	 */
+	public Generation<SortedMap<String, StatisticalDistribution>> detach() {
+		final Map<String, SampleAccumulator> detached = distributionsByName;
 		reset();
+		return new Generation<SortedMap<String, StatisticalDistribution>>() {
+			@Override
+			public SortedMap<String, StatisticalDistribution> toSnapshot() {
+				return toDistributions(detached);
+			}
+		};
+	}
+
+	/**
+	 * @param prefix the prefix of the names, the empty prefix selects all names
+	 * @return the distributions of the names that start with the prefix
+	 */
+	public SortedMap<String, StatisticalDistribution> getAllSamplesSnapshot(final String prefix) {
+		SortedMap<String, StatisticalDistribution> snapshot = new TreeMap<String, StatisticalDistribution>();
+		for (String name : names.withPrefix(prefix)) {
+			snapshot.put(name, distributionsByName.get(name).toDistribution());
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Removes the distributions of the names that start with the prefix, the other distributions are not visited.
+	 *
+	 * @param prefix the prefix of the names, the empty prefix selects all names
+	 * @return the removed distributions
+	 */
+	public SortedMap<String, StatisticalDistribution> getAllSamplesSnapshotAndReset(final String prefix) {
+		SortedMap<String, StatisticalDistribution> snapshot = new TreeMap<String, StatisticalDistribution>();
+		for (String name : names.withPrefix(prefix)) {
+			snapshot.put(name, distributionsByName.remove(name).toDistribution());
+			names.remove(name);
+			stamps.remove(name);
+			guard.release(name);
+			resetEpoch = epoch;
+		}
 		return snapshot;
 	}
 
+	/**
+	 * @param prefix the prefix of the names to remove, see {@link #getAllSamplesSnapshotAndReset(String)}
+	 */
+	public void reset(final String prefix) {
+		getAllSamplesSnapshotAndReset(prefix);
+	}
+
+	private static SortedMap<String, StatisticalDistribution> toDistributions(Map<String, SampleAccumulator> accumulators) {
+		SortedMap<String, StatisticalDistribution> snapshot = new TreeMap<String, StatisticalDistribution>();
+		for (Map.Entry<String, SampleAccumulator> entry : accumulators.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().toDistribution());
+		}
+		return snapshot;
+	}
 
 	@Override
 	public void reset() {
-		distributionsByName = new TreeMap<String, StatisticalDistribution>();
+		distributionsByName = new HashMap<String, SampleAccumulator>();
+		names = new NameIndex();
+		stamps = new StringLongMap(stamps.size() * 2); // room for the names of the previous period
+		guard.clear();
+		resetEpoch = epoch;
+	}
+
+	/**
+	 * Starts a new epoch, records after this call are stamped with a later epoch.
+	 *
+	 * @return the epoch of the records before this call
+	 */
+	public long advanceEpoch() {
+		return epoch++;
+	}
+
+	/**
+	 * @param since an epoch returned by {@link #advanceEpoch()}
+	 * @return true if the values were reset or names were removed after the epoch
+	 */
+	public boolean isResetAfter(final long since) {
+		return resetEpoch > since;
+	}
+
+	/**
+	 * @param since an epoch returned by {@link #advanceEpoch()}
+	 * @return the distributions of the names that were recorded after the epoch
+	 */
+	public SortedMap<String, StatisticalDistribution> getSamplesChangedAfter(final long since) {
+		SortedMap<String, StatisticalDistribution> changed = new TreeMap<String, StatisticalDistribution>();
+		for (String name : stamps.keysAbove(since)) {
+			changed.put(name, distributionsByName.get(name).toDistribution());
+		}
+		return changed;
+	}
+
+	/**
+	 * @return the slot of the stamp of the name, the name is added on first use and stamped with the current epoch
+	 */
+	private int stampedSlotFor(final String name) {
+		int slot = slotFor(name);
+		stamps.setAt(slot, epoch);
+		return slot;
+	}
+
+	private int slotFor(final String name) {
+		int slot = stamps.slotOf(name);
+		if (slot < 0) {
+			String admitted = guard.admit(name);
+			if (!admitted.equals(name)) {
+				return slotFor(admitted);
+			}
+			distributionsByName.put(name, accumulatorFactory.create(name));
+			names.add(name);
+			slot = stamps.insert(name);
+		}
+		return slot;
+	}
+
+	private SampleAccumulator accumulatorAt(final int slot) {
+		return distributionsByName.get(stamps.keyAt(slot));
+	}
+
+	/**
+	 * Caches the accumulator of its name and the slot of its stamp, a reset replaces the map of stamps and a growing map
+	 * or a reset of a prefix moves the slots, both make the handle resolve the name again.
+	 */
+	private final class AccumulatorHandle implements SampleRecorder, ElapsedNanosRecorder {
+		private final String name;
+		private StringLongMap resolvedIn;
+		private int resolvedMoves;
+		private int slot;
+		private SampleAccumulator accumulator;
+
+		AccumulatorHandle(final String name) {
+			this.name = name;
+		}
+
+		@Override
+		public void record(final double value) {
+			resolve().addSample(value);
+		}
+
+		@Override
+		public void recordElapsedNanos(final long elapsedNanos) {
+			resolve().addElapsedNanos(elapsedNanos);
+		}
+
+		private SampleAccumulator resolve() {
+			if (resolvedIn != stamps || resolvedMoves != stamps.moves()) {
+				slot = slotFor(name);
+				accumulator = accumulatorAt(slot);
+				resolvedIn = stamps;
+				resolvedMoves = stamps.moves();
+			}
+			stamps.setAt(slot, epoch);
+			return accumulator;
+		}
 	}
 }
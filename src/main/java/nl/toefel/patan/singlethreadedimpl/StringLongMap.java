@@ -0,0 +1,261 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Open-addressing hash map from names to primitive longs, used by {@link CounterStore}. Keys and values are kept in
+ * parallel arrays and found with linear probing, so incrementing a counter updates a slot of a long array in place:
+ * no boxing and no entry object per name.
+ * <p>
+ * Removed keys are not replaced by a marker, the keys after it in the same run of slots are shifted back instead, so
+ * lookups never probe past removed keys. Not thread-safe, callers must guard concurrent access.
+ * <p>
+ * A stamped map keeps a third column with a stamp per key, like the epoch of its last change, that moves along with
+ * the key.
+ */
+final class StringLongMap {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private String[] keys;
+	private long[] values;
+	private long[] stamps; // null if the map is not stamped
+	private int size;
+	private int moves;
+
+	StringLongMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param capacity the initial number of slots, rounded up to a power of two
+	 */
+	StringLongMap(final int capacity) {
+		this(capacity, false);
+	}
+
+	/**
+	 * @param capacity the initial number of slots, rounded up to a power of two
+	 * @param stamped true to keep a stamp per key, see {@link #stampAt(int, long)}
+	 */
+	StringLongMap(final int capacity, final boolean stamped) {
+		int slots = MIN_CAPACITY;
+		while (slots < capacity) {
+			slots <<= 1;
+		}
+		this.keys = new String[slots];
+		this.values = new long[slots];
+		this.stamps = stamped ? new long[slots] : null;
+	}
+
+	/**
+	 * @return the slot of the key, -1 if the key is not in the map
+	 */
+	int slotOf(final String key) {
+		int mask = keys.length - 1;
+		for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+			String existing = keys[slot];
+			if (existing == null) {
+				return -1;
+			} else if (existing.equals(key)) {
+				return slot;
+			}
+		}
+	}
+
+	/**
+	 * Adds the key with a value of zero. Slots of other keys stay valid until the map grows, see {@link #moves()}.
+	 *
+	 * @param key a key that is not in the map yet
+	 * @return the slot of the new key
+	 */
+	int insert(final String key) {
+		if (size >= keys.length - (keys.length >> 2)) {
+			grow();
+		}
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != null) {
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		size++;
+		return slot;
+	}
+
+	void addAt(final int slot, final long delta) {
+		values[slot] += delta;
+	}
+
+	long valueAt(final int slot) {
+		return values[slot];
+	}
+
+	void setAt(final int slot, final long value) {
+		values[slot] = value;
+	}
+
+	String keyAt(final int slot) {
+		return keys[slot];
+	}
+
+	/**
+	 * Only for a stamped map.
+	 */
+	void stampAt(final int slot, final long stamp) {
+		stamps[slot] = stamp;
+	}
+
+	/**
+	 * @return the value of the key, zero if the key is not in the map
+	 */
+	long get(final String key) {
+		int slot = slotOf(key);
+		return slot < 0 ? 0L : values[slot];
+	}
+
+	/**
+	 * Removes the key and shifts the keys that were probed past it back towards their first slot.
+	 *
+	 * @return the value of the key, zero if the key is not in the map
+	 */
+	long remove(final String key) {
+		int hole = slotOf(key);
+		if (hole < 0) {
+			return 0L;
+		}
+		long value = values[hole];
+		int mask = keys.length - 1;
+		for (int slot = (hole + 1) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+			int first = hash(keys[slot]) & mask;
+			if (((slot - first) & mask) >= ((slot - hole) & mask)) { // the hole is on the probe path of this key
+				keys[hole] = keys[slot];
+				values[hole] = values[slot];
+				if (stamps != null) {
+					stamps[hole] = stamps[slot];
+				}
+				hole = slot;
+			}
+		}
+		keys[hole] = null;
+		values[hole] = 0L;
+		size--;
+		moves++;
+		return value;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of times slots have moved because the map has grown or a key was removed, slots that were
+	 * looked up before are no longer valid
+	 */
+	int moves() {
+		return moves;
+	}
+
+	/**
+	 * @return a sorted copy of the map, values are only boxed when they are read
+	 */
+	SortedLongMap toSortedMap() {
+		String[] keyCopy = new String[size];
+		long[] valueCopy = new long[size];
+		int index = 0;
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] != null) {
+				keyCopy[index] = keys[slot];
+				valueCopy[index] = values[slot];
+				index++;
+			}
+		}
+		return SortedLongMap.sort(keyCopy, valueCopy, size);
+	}
+
+	/**
+	 * Only for a stamped map.
+	 *
+	 * @return a sorted copy of the keys with a stamp above the minimum
+	 */
+	SortedLongMap toSortedMapStampedAbove(final long minimum) {
+		String[] keyCopy = new String[16];
+		long[] valueCopy = new long[16];
+		int index = 0;
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] != null && stamps[slot] > minimum) {
+				if (index == keyCopy.length) {
+					keyCopy = Arrays.copyOf(keyCopy, index * 2);
+					valueCopy = Arrays.copyOf(valueCopy, index * 2);
+				}
+				keyCopy[index] = keys[slot];
+				valueCopy[index] = values[slot];
+				index++;
+			}
+		}
+		return SortedLongMap.sort(keyCopy, valueCopy, index);
+	}
+
+	/**
+	 * @return the keys with a value above the minimum, in no particular order
+	 */
+	List<String> keysAbove(final long minimum) {
+		List<String> above = new ArrayList<String>();
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] != null && values[slot] > minimum) {
+				above.add(keys[slot]);
+			}
+		}
+		return above;
+	}
+
+	private void grow() {
+		String[] oldKeys = keys;
+		long[] oldValues = values;
+		long[] oldStamps = stamps;
+		keys = new String[oldKeys.length << 1];
+		values = new long[oldKeys.length << 1];
+		stamps = oldStamps == null ? null : new long[oldKeys.length << 1];
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				int slot = hash(oldKeys[i]) & mask;
+				while (keys[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+				if (stamps != null) {
+					stamps[slot] = oldStamps[i];
+				}
+			}
+		}
+		moves++;
+	}
+
+	/**
+	 * Spreads the hash code of the key, the low bits select the first slot.
+	 */
+	static int hash(final String key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import java.util.Arrays;
+
+/**
+ * Assigns every name a dense int id: the first name gets 0, the next 1 and so on. Ids never change and are never
+ * reused, stores use them as the index into arrays of primitive values. Names are found in a {@link StringLongMap}, so
+ * a name costs two slots of that map and a reference in the array of names. Not thread-safe, callers must guard
+ * concurrent access.
+ */
+public final class SymbolTable {
+
+	private final StringLongMap ids = new StringLongMap();
+
+	private String[] names = new String[16];
+
+	private int size;
+
+	/**
+	 * @return the id of the name, a new id if the name was not known yet
+	 */
+	public int idOf(final String name) {
+		int slot = ids.slotOf(name);
+		if (slot >= 0) {
+			return (int) ids.valueAt(slot);
+		}
+		if (size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+		}
+		ids.addAt(ids.insert(name), size);
+		names[size] = name;
+		return size++;
+	}
+
+	/**
+	 * @return the id of the name, -1 if the name is not known
+	 */
+	public int find(final String name) {
+		int slot = ids.slotOf(name);
+		return slot < 0 ? -1 : (int) ids.valueAt(slot);
+	}
+
+	/**
+	 * @param id an id returned by {@link #idOf(String)}
+	 * @return the name of the id
+	 */
+	public String nameOf(final int id) {
+		return names[id];
+	}
+
+	/**
+	 * @return the number of names, which is also the next id
+	 */
+	public int size() {
+		return size;
+	}
+}
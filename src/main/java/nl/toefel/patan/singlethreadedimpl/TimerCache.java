@@ -0,0 +1,92 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.DurationStore;
+import nl.toefel.patan.api.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a {@link Timer} per event name, used to implement {@link DurationStore#recordElapsedTime(String, Runnable)} and
+ * {@link DurationStore#recordElapsedTime(String, nl.toefel.patan.api.TimedTask)} without building the '.ok' and '.failed' names on every
+ * invocation. Timers stay valid when the store is reset, so the cache is never cleared.
+ * <p>
+ * The cache keeps at most {@link #DEFAULT_MAX_TIMERS} timers, the first event names that are timed this way. Timers of
+ * later names are created for a single invocation and not kept, so event names that are built dynamically do not leak
+ * memory. Their durations are still recorded: timers resolve the '.ok' and '.failed' names through the store, which
+ * applies its {@link CardinalityLimit}. Thread-safe.
+ */
+public final class TimerCache {
+
+	public static final int DEFAULT_MAX_TIMERS = 1024;
+
+	private final DurationStore store;
+
+	private final int maxTimers;
+
+	private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+
+	private final AtomicInteger size = new AtomicInteger();
+
+	public TimerCache(final DurationStore store) {
+		this(store, DEFAULT_MAX_TIMERS);
+	}
+
+	/**
+	 * @param store the store that creates the timers
+	 * @param maxTimers the maximum number of timers to keep
+	 */
+	public TimerCache(final DurationStore store, final int maxTimers) {
+		if (maxTimers < 0) {
+			throw new IllegalArgumentException("maxTimers cannot be negative");
+		}
+		this.store = store;
+		this.maxTimers = maxTimers;
+	}
+
+	/**
+	 * @param eventName name of the timer
+	 * @return the cached timer of the event name, resolved through the store on first use, or a new timer when the
+	 * cache is full
+	 */
+	public Timer timer(final String eventName) {
+		Timer timer = timers.get(eventName);
+		if (timer == null) {
+			timer = store.timer(eventName);
+			if (size.get() >= maxTimers) {
+				return timer;
+			}
+			Timer existing = timers.putIfAbsent(eventName, timer);
+			if (existing != null) {
+				timer = existing;
+			} else {
+				size.incrementAndGet();
+			}
+		}
+		return timer;
+	}
+
+	/**
+	 * @return the number of cached timers
+	 */
+	int size() {
+		return size.get();
+	}
+}
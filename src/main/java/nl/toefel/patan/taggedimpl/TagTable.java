@@ -0,0 +1,133 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.taggedimpl;
+
+import nl.toefel.patan.singlethreadedimpl.CardinalityGuard;
+import nl.toefel.patan.singlethreadedimpl.CardinalityLimit;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Intern table of {@link Tags}, an open addressing hash table that only grows. Lookups compare the raw keys and values
+ * with the tag sets in the table, so finding a kept combination builds nothing and takes no lock. Adding takes the
+ * lock of the table and is limited by a {@link CardinalityLimit}, tag sets over the limit are not added.
+ */
+final class TagTable {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Estimated memory of a tag set next to its text: the object, the key and value arrays and their strings.
+	 */
+	private static final int ENTRY_BYTES = 160;
+
+	private final CardinalityGuard guard;
+	private volatile AtomicReferenceArray<Tags> slots = new AtomicReferenceArray<Tags>(INITIAL_CAPACITY);
+	private int size; // guarded by this
+
+	TagTable(final CardinalityLimit limit) {
+		this.guard = limit.newGuard(ENTRY_BYTES);
+	}
+
+	/**
+	 * @param hash the hash of the pairs, see {@link Tags#pairHash(String, String)}
+	 * @param key2 null to find a tag set with a single tag
+	 * @return the tag set with exactly the given tags, null if it is not in the table
+	 */
+	Tags find(final int hash, final String key1, final String value1, final String key2, final String value2) {
+		AtomicReferenceArray<Tags> current = slots;
+		int mask = current.length() - 1;
+		for (int i = hash & mask; ; i = (i + 1) & mask) {
+			Tags tags = current.get(i);
+			if (tags == null || tags.hashCode() == hash && tags.matches(key1, value1, key2, value2)) {
+				return tags;
+			}
+		}
+	}
+
+	/**
+	 * @param hash the hash of the pairs, see {@link Tags#pairHash(String, String)}
+	 * @return the tag set with exactly the given alternating keys and values, null if it is not in the table
+	 */
+	Tags find(final int hash, final String[] keysAndValues) {
+		AtomicReferenceArray<Tags> current = slots;
+		int mask = current.length() - 1;
+		for (int i = hash & mask; ; i = (i + 1) & mask) {
+			Tags tags = current.get(i);
+			if (tags == null || tags.hashCode() == hash && tags.matches(keysAndValues)) {
+				return tags;
+			}
+		}
+	}
+
+	/**
+	 * @return the tag set in the table that equals the given one, null if there is none
+	 */
+	Tags find(final Tags tags) {
+		AtomicReferenceArray<Tags> current = slots;
+		int mask = current.length() - 1;
+		for (int i = tags.hashCode() & mask; ; i = (i + 1) & mask) {
+			Tags existing = current.get(i);
+			if (existing == null || existing.equals(tags)) {
+				return existing;
+			}
+		}
+	}
+
+	/**
+	 * @return the tag set in the table that equals the given one, the given one if it was added, null if the limit
+	 * rejected it
+	 */
+	synchronized Tags intern(final Tags tags) {
+		AtomicReferenceArray<Tags> current = slots;
+		int mask = current.length() - 1;
+		int i = tags.hashCode() & mask;
+		for (Tags existing; (existing = current.get(i)) != null; i = (i + 1) & mask) {
+			if (existing.equals(tags)) {
+				return existing;
+			}
+		}
+		String text = tags.toString();
+		if (!guard.admit(text).equals(text)) {
+			return null;
+		}
+		if (2 * (size + 1) > current.length()) {
+			AtomicReferenceArray<Tags> grown = new AtomicReferenceArray<Tags>(2 * current.length());
+			for (int j = 0; j < current.length(); j++) {
+				Tags existing = current.get(j);
+				if (existing != null) {
+					put(grown, existing);
+				}
+			}
+			put(grown, tags);
+			slots = grown; // published only when complete, readers of the old table that miss retry under the lock
+		} else {
+			current.set(i, tags);
+		}
+		size++;
+		return tags;
+	}
+
+	private static void put(final AtomicReferenceArray<Tags> table, final Tags tags) {
+		int mask = table.length() - 1;
+		int i = tags.hashCode() & mask;
+		while (table.get(i) != null) {
+			i = (i + 1) & mask;
+		}
+		table.set(i, tags);
+	}
+}
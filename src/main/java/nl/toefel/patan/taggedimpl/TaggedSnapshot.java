@@ -0,0 +1,141 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.taggedimpl;
+
+import nl.toefel.patan.api.Snapshot;
+import nl.toefel.patan.api.StatisticalDistribution;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Reads the tagged metrics of a {@link Snapshot}, see {@link Tags}. The findXxx(name) methods return the values of a
+ * name per tag set, the groupXxx(name, keys) methods aggregate them across all other dimensions: occurrences are summed
+ * and distributions are merged with {@link StatisticalDistribution#newMergedWith(StatisticalDistribution)}. A value
+ * recorded without tags belongs to {@link Tags#EMPTY}.
+ * <pre>
+ *     TaggedSnapshot snapshot = new TaggedSnapshot(statistics.getSnapshot());
+ *     snapshot.groupDurations("http.duration", "status"); // {status=200} and {status=500}, over all methods
+ *     snapshot.groupDurations("http.duration");           // {} over all methods and statuses
+ * </pre>
+ * When the snapshot maps are sorted, which they are for all statistics of this library, only the names of the requested
+ * metric are visited.
+ */
+public final class TaggedSnapshot {
+
+	private final Snapshot snapshot;
+
+	/**
+	 * @param snapshot a snapshot of statistics that were recorded with tags
+	 */
+	public TaggedSnapshot(final Snapshot snapshot) {
+		if (snapshot == null) {
+			throw new IllegalArgumentException("snapshot cannot be null");
+		}
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * @return the snapshot this instance reads from
+	 */
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return the occurrences of the name per tag set
+	 */
+	public SortedMap<Tags, Long> findOccurrences(final String name) {
+		return tagged(snapshot.getOccurrences(), name);
+	}
+
+	/**
+	 * @param keys the dimensions to keep, no keys sums all occurrences of the name
+	 * @return the summed occurrences of the name per combination of values of the given keys
+	 */
+	public SortedMap<Tags, Long> groupOccurrences(final String name, final String... keys) {
+		SortedMap<Tags, Long> groups = new TreeMap<Tags, Long>();
+		for (Map.Entry<Tags, Long> entry : findOccurrences(name).entrySet()) {
+			Tags group = entry.getKey().only(keys);
+			Long previous = groups.get(group);
+			groups.put(group, previous == null ? entry.getValue() : previous + entry.getValue());
+		}
+		return groups;
+	}
+
+	/**
+	 * @return the durations of the name per tag set
+	 */
+	public SortedMap<Tags, StatisticalDistribution> findDurations(final String name) {
+		return tagged(snapshot.getDurations(), name);
+	}
+
+	/**
+	 * @param keys the dimensions to keep, no keys merges all durations of the name
+	 * @return the merged durations of the name per combination of values of the given keys
+	 */
+	public SortedMap<Tags, StatisticalDistribution> groupDurations(final String name, final String... keys) {
+		return merged(findDurations(name), keys);
+	}
+
+	/**
+	 * @return the samples of the name per tag set
+	 */
+	public SortedMap<Tags, StatisticalDistribution> findSamples(final String name) {
+		return tagged(snapshot.getSamples(), name);
+	}
+
+	/**
+	 * @param keys the dimensions to keep, no keys merges all samples of the name
+	 * @return the merged samples of the name per combination of values of the given keys
+	 */
+	public SortedMap<Tags, StatisticalDistribution> groupSamples(final String name, final String... keys) {
+		return merged(findSamples(name), keys);
+	}
+
+	private static SortedMap<Tags, StatisticalDistribution> merged(final SortedMap<Tags, StatisticalDistribution> distributions,
+																   final String... keys) {
+		SortedMap<Tags, StatisticalDistribution> groups = new TreeMap<Tags, StatisticalDistribution>();
+		for (Map.Entry<Tags, StatisticalDistribution> entry : distributions.entrySet()) {
+			Tags group = entry.getKey().only(keys);
+			StatisticalDistribution previous = groups.get(group);
+			groups.put(group, previous == null ? entry.getValue() : previous.newMergedWith(entry.getValue()));
+		}
+		return groups;
+	}
+
+	/**
+	 * Qualified names of a metric start with the name followed by '{', in a sorted map they are the range up to the name
+	 * followed by '|', the next character.
+	 */
+	private static <T> SortedMap<Tags, T> tagged(final Map<String, T> values, final String name) {
+		SortedMap<Tags, T> tagged = new TreeMap<Tags, T>();
+		T untagged = values.get(name);
+		if (untagged != null) {
+			tagged.put(Tags.EMPTY, untagged);
+		}
+		Map<String, T> range = values instanceof SortedMap ? ((SortedMap<String, T>) values).subMap(name + '{', name + '|') : values;
+		for (Map.Entry<String, T> entry : range.entrySet()) {
+			String qualifiedName = entry.getKey();
+			if (qualifiedName.startsWith(name) && qualifiedName.length() > name.length() && qualifiedName.charAt(name.length()) == '{') {
+				tagged.put(Tags.parse(qualifiedName), entry.getValue());
+			}
+		}
+		return tagged;
+	}
+}
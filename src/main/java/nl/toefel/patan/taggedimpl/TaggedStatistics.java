@@ -0,0 +1,282 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.taggedimpl;
+
+import nl.toefel.patan.api.*;
+
+import java.util.Map;
+
+/**
+ * Decorator that records metrics with {@link Tags} into the given statistics, under the qualified name of the metric,
+ * for example http.duration{method=GET,status=200}. Metrics without tags are recorded as before.
+ * <pre>
+ *     TaggedStatistics statistics = new TaggedStatistics(StatisticsFactory.createConcurrentStatistics());
+ *     statistics.recordElapsedTime("http.duration", Tags.of("method", "GET", "status", "200"), stopwatch);
+ *     ...
+ *     new TaggedSnapshot(statistics.getSnapshot()).groupDurations("http.duration", "status");
+ * </pre>
+ * Recording with a kept tag set costs one extra hash lookup to find the qualified name, handles obtained with
+ * {@link #counter(String, Tags)}, {@link #sampleRecorder(String, Tags)} and {@link #timer(String, Tags)} cost nothing
+ * extra. Use {@link TaggedSnapshot} to read snapshots per tag set or aggregated across dimensions.
+ * <p>
+ * Thread-safe when the delegate is thread-safe.
+ */
+public class TaggedStatistics implements Statistics {
+
+	private final Statistics statistics;
+
+	/**
+	 * @param statistics the statistics that record the qualified names
+	 */
+	public TaggedStatistics(final Statistics statistics) {
+		if (statistics == null) {
+			throw new IllegalArgumentException("statistics cannot be null");
+		}
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Adds an occurrence of the name with the tags, see {@link OccurrenceStore#addOccurrence(String)}.
+	 */
+	public void addOccurrence(final String eventName, final Tags tags) {
+		statistics.addOccurrence(tags.qualify(eventName));
+	}
+
+	/**
+	 * Adds occurrences of the name with the tags, see {@link OccurrenceStore#addOccurrences(String, long)}.
+	 */
+	public void addOccurrences(final String eventName, final Tags tags, final long timesOccurred) {
+		statistics.addOccurrences(tags.qualify(eventName), timesOccurred);
+	}
+
+	/**
+	 * @return a handle to the counter of the name with the tags, see {@link OccurrenceStore#counter(String)}
+	 */
+	public Counter counter(final String eventName, final Tags tags) {
+		return statistics.counter(tags.qualify(eventName));
+	}
+
+	/**
+	 * @return the occurrences of the name with exactly these tags
+	 */
+	public long findOccurrence(final String eventName, final Tags tags) {
+		return statistics.findOccurrence(tags.qualify(eventName));
+	}
+
+	/**
+	 * Adds a sample to the name with the tags, see {@link SampleStore#addSample(String, double)}.
+	 */
+	public void addSample(final String eventName, final Tags tags, final double value) {
+		statistics.addSample(tags.qualify(eventName), value);
+	}
+
+	/**
+	 * @return a handle to the samples of the name with the tags, see {@link SampleStore#sampleRecorder(String)}
+	 */
+	public SampleRecorder sampleRecorder(final String eventName, final Tags tags) {
+		return statistics.sampleRecorder(tags.qualify(eventName));
+	}
+
+	/**
+	 * @return the samples of the name with exactly these tags
+	 */
+	public StatisticalDistribution findSampleDistribution(final String eventName, final Tags tags) {
+		return statistics.findSampleDistribution(tags.qualify(eventName));
+	}
+
+	/**
+	 * Records the elapsed time of the stopwatch under the name with the tags, see {@link DurationStore#recordElapsedTime(String, Stopwatch)}.
+	 */
+	public double recordElapsedTime(final String eventName, final Tags tags, final Stopwatch stopwatch) {
+		return statistics.recordElapsedTime(tags.qualify(eventName), stopwatch);
+	}
+
+	/**
+	 * Records the time since startNanos under the name with the tags, see {@link DurationStore#recordElapsedNanos(String, long)}.
+	 */
+	public long recordElapsedNanos(final String eventName, final Tags tags, final long startNanos) {
+		return statistics.recordElapsedNanos(tags.qualify(eventName), startNanos);
+	}
+
+	/**
+	 * @return a timer of the name with the tags, see {@link DurationStore#timer(String)}
+	 */
+	public Timer timer(final String eventName, final Tags tags) {
+		return statistics.timer(tags.qualify(eventName));
+	}
+
+	/**
+	 * @return the durations of the name with exactly these tags
+	 */
+	public StatisticalDistribution findDuration(final String eventName, final Tags tags) {
+		return statistics.findDuration(tags.qualify(eventName));
+	}
+
+	/**
+	 * @return the current values, readable per tag set
+	 */
+	public TaggedSnapshot getTaggedSnapshot() {
+		return new TaggedSnapshot(statistics.getSnapshot());
+	}
+
+	/**
+	 * @return the current values, readable per tag set, the statistics are reset
+	 */
+	public TaggedSnapshot getTaggedSnapshotAndReset() {
+		return new TaggedSnapshot(statistics.getSnapshotAndReset());
+	}
+
+	@Override
+	public Stopwatch startStopwatch() {
+		return statistics.startStopwatch();
+	}
+
+	@Override
+	public void recordElapsedTime(final String eventName, final Runnable runnable) {
+		statistics.recordElapsedTime(eventName, runnable);
+	}
+
+	@Override
+	public <T> T recordElapsedTime(final String eventName, final TimedTask<T> runnable) {
+		return statistics.recordElapsedTime(eventName, runnable);
+	}
+
+	@Override
+	public double recordElapsedTime(final String eventName, final Stopwatch stopwatch) {
+		return statistics.recordElapsedTime(eventName, stopwatch);
+	}
+
+	@Override
+	public long recordElapsedNanos(final String eventName, final long startNanos) {
+		return statistics.recordElapsedNanos(eventName, startNanos);
+	}
+
+	@Override
+	public Timer timer(final String eventName) {
+		return statistics.timer(eventName);
+	}
+
+	@Override
+	public StatisticalDistribution findDuration(final String eventName) {
+		return statistics.findDuration(eventName);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshot() {
+		return statistics.getAllDurationsSnapshot();
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshotAndReset() {
+		return statistics.getAllDurationsSnapshotAndReset();
+	}
+
+	@Override
+	public void addOccurrence(final String eventName) {
+		statistics.addOccurrence(eventName);
+	}
+
+	@Override
+	public void addOccurrences(final String eventName, final long timesOccurred) {
+		statistics.addOccurrences(eventName, timesOccurred);
+	}
+
+	@Override
+	public Counter counter(final String eventName) {
+		return statistics.counter(eventName);
+	}
+
+	@Override
+	public void addSample(final String eventName, final double value) {
+		statistics.addSample(eventName, value);
+	}
+
+	@Override
+	public SampleRecorder sampleRecorder(final String eventName) {
+		return statistics.sampleRecorder(eventName);
+	}
+
+	@Override
+	public StatisticalDistribution findSampleDistribution(final String eventName) {
+		return statistics.findSampleDistribution(eventName);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshot() {
+		return statistics.getAllSamplesSnapshot();
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshotAndReset() {
+		return statistics.getAllSamplesSnapshotAndReset();
+	}
+
+	@Override
+	public long findOccurrence(final String eventName) {
+		return statistics.findOccurrence(eventName);
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshot() {
+		return statistics.getAllOccurrencesSnapshot();
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshotAndReset() {
+		return statistics.getAllOccurrencesSnapshotAndReset();
+	}
+
+	@Override
+	public void addDistinct(final String name, final long value) {
+		statistics.addDistinct(name, value);
+	}
+
+	@Override
+	public void addDistinct(final String name, final String value) {
+		statistics.addDistinct(name, value);
+	}
+
+	@Override
+	public DistinctCount findDistinctCount(final String name) {
+		return statistics.findDistinctCount(name);
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshot() {
+		return statistics.getAllDistinctCountsSnapshot();
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshotAndReset() {
+		return statistics.getAllDistinctCountsSnapshotAndReset();
+	}
+
+	@Override
+	public void reset() {
+		statistics.reset();
+	}
+
+	@Override
+	public Snapshot getSnapshot() {
+		return statistics.getSnapshot();
+	}
+
+	@Override
+	public Snapshot getSnapshotAndReset() {
+		return statistics.getSnapshotAndReset();
+	}
+}
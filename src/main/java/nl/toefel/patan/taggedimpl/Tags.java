@@ -0,0 +1,358 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.taggedimpl;
+
+import nl.toefel.patan.singlethreadedimpl.CardinalityLimit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable set of dimensions of a metric, like method=GET and status=200. Tags are sorted by key and interned: two
+ * tag sets with the same keys and values are the same instance. Create them once and keep them, for example in a
+ * constant, recording with a kept instance then needs no string building:
+ * <pre>
+ *     static final Tags GET_OK = Tags.of("method", "GET", "status", "200");
+ *     ...
+ *     statistics.addOccurrence("http.requests", GET_OK);
+ * </pre>
+ * A metric with tags is recorded under its qualified name, the name followed by the tags in braces:
+ * http.requests{method=GET,status=200}. Every tag set caches up to {@value #MAX_CACHED_NAMES} of the qualified names
+ * it was used with, so a repeated combination resolves with a single hash lookup.
+ * <p>
+ * {@link #of(String, String)} and its overloads find a combination that was interned before by the hash of the given
+ * keys and values, without building anything. New combinations are interned up to {@link #INTERN_LIMIT}, like
+ * interned strings they are kept for the lifetime of the class. Once the limit is reached new combinations return
+ * {@link #OVERFLOW} and are counted as rejected by the limit, so values with an unbounded cardinality like user ids
+ * cannot exhaust the heap. Keys and values cannot contain '{', '}', '=' or ','. Thread-safe.
+ */
+public final class Tags implements Comparable<Tags> {
+
+	/**
+	 * Limits the number of interned tag sets, new combinations over the limit are replaced by {@link #OVERFLOW}.
+	 */
+	public static final CardinalityLimit INTERN_LIMIT = new CardinalityLimit(10000, "{overflow=true}");
+
+	private static final TagTable INTERNED = new TagTable(INTERN_LIMIT);
+
+	private static final int MAX_CACHED_NAMES = 64;
+
+	/**
+	 * The tag set without tags, metrics with these tags are recorded under their plain name.
+	 */
+	public static final Tags EMPTY = INTERNED.intern(new Tags(new String[0], new String[0]));
+
+	/**
+	 * The tag set overflow=true, returned for new combinations once {@link #INTERN_LIMIT} is reached.
+	 */
+	public static final Tags OVERFLOW = INTERNED.intern(new Tags(new String[]{"overflow"}, new String[]{"true"}));
+
+	private final String[] keys;
+	private final String[] values;
+	private final String text;
+	private final int hash;
+	private volatile ConcurrentMap<String, String> qualifiedNames;
+
+	private Tags(final String[] keys, final String[] values) {
+		this.keys = keys;
+		this.values = values;
+		StringBuilder builder = new StringBuilder();
+		int pairsHash = 0;
+		for (int i = 0; i < keys.length; i++) {
+			builder.append(i == 0 ? '{' : ',').append(keys[i]).append('=').append(values[i]);
+			pairsHash += pairHash(keys[i], values[i]);
+		}
+		this.text = keys.length == 0 ? "" : builder.append('}').toString();
+		this.hash = pairsHash;
+	}
+
+	/**
+	 * @return the interned tag set with a single tag, {@link #OVERFLOW} if it is new and {@link #INTERN_LIMIT} is reached
+	 * @throws IllegalArgumentException if the key or value is null or contains a reserved character
+	 */
+	public static Tags of(final String key, final String value) {
+		if (key != null && value != null) {
+			Tags found = INTERNED.find(pairHash(key, value), key, value, null, null);
+			if (found != null) {
+				return found;
+			}
+		}
+		return create(new String[]{key, value}, true);
+	}
+
+	/**
+	 * @return the interned tag set with two tags, {@link #OVERFLOW} if it is new and {@link #INTERN_LIMIT} is reached
+	 * @throws IllegalArgumentException if a key or value is null, contains a reserved character or the keys are equal
+	 */
+	public static Tags of(final String key1, final String value1, final String key2, final String value2) {
+		if (key1 != null && value1 != null && key2 != null && value2 != null && !key1.equals(key2)) {
+			Tags found = INTERNED.find(pairHash(key1, value1) + pairHash(key2, value2), key1, value1, key2, value2);
+			if (found != null) {
+				return found;
+			}
+		}
+		return create(new String[]{key1, value1, key2, value2}, true);
+	}
+
+	/**
+	 * @param keysAndValues alternating keys and values, keys must be unique
+	 * @return the interned tag set, {@link #OVERFLOW} if it is new and {@link #INTERN_LIMIT} is reached
+	 * @throws IllegalArgumentException if a key or value is null, contains a reserved character or a key is repeated
+	 */
+	public static Tags of(final String... keysAndValues) {
+		Tags found = find(keysAndValues);
+		return found != null ? found : create(keysAndValues, true);
+	}
+
+	/**
+	 * @return the interned tag set with the extra tag, a tag with the same key is replaced
+	 */
+	public Tags and(final String key, final String value) {
+		List<String> keysAndValues = new ArrayList<String>();
+		for (int i = 0; i < keys.length; i++) {
+			if (!keys[i].equals(key)) {
+				keysAndValues.add(keys[i]);
+				keysAndValues.add(values[i]);
+			}
+		}
+		keysAndValues.add(key);
+		keysAndValues.add(value);
+		return of(keysAndValues.toArray(new String[keysAndValues.size()]));
+	}
+
+	/**
+	 * @param keys the keys to keep, keys that are not in this tag set are ignored
+	 * @return the tag set with only the tags of the given keys, the interned one if the combination was interned
+	 */
+	public Tags only(final String... keys) {
+		List<String> keptKeys = new ArrayList<String>();
+		List<String> keptValues = new ArrayList<String>();
+		List<String> kept = Arrays.asList(keys);
+		for (int i = 0; i < this.keys.length; i++) {
+			if (kept.contains(this.keys[i])) {
+				keptKeys.add(this.keys[i]);
+				keptValues.add(values[i]);
+			}
+		}
+		if (keptKeys.size() == this.keys.length) {
+			return this;
+		}
+		Tags tags = new Tags(keptKeys.toArray(new String[keptKeys.size()]), keptValues.toArray(new String[keptValues.size()]));
+		Tags interned = INTERNED.find(tags);
+		return interned != null ? interned : tags;
+	}
+
+	/**
+	 * @return the value of the key, null if this tag set has no such key
+	 */
+	public String get(final String key) {
+		int index = Arrays.binarySearch(keys, key);
+		return index < 0 ? null : values[index];
+	}
+
+	/**
+	 * @return the number of tags
+	 */
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * @param name the name of the metric
+	 * @return the name under which the metric with these tags is recorded, the name itself for {@link #EMPTY}
+	 * @throws IllegalArgumentException if the name contains a '{'
+	 */
+	public String qualify(final String name) {
+		ConcurrentMap<String, String> cache = qualifiedNames;
+		String qualified = cache == null ? null : cache.get(name);
+		if (qualified == null) {
+			if (name.indexOf('{') >= 0) {
+				throw new IllegalArgumentException("name cannot contain '{': " + name);
+			}
+			if (keys.length == 0) {
+				return name;
+			}
+			qualified = name + text;
+			cache = cache == null ? qualifiedNamesCache() : cache;
+			if (cache.size() < MAX_CACHED_NAMES) { // names with ids are built on every call instead of kept forever
+				cache.putIfAbsent(name, qualified);
+			}
+		}
+		return qualified;
+	}
+
+	private synchronized ConcurrentMap<String, String> qualifiedNamesCache() {
+		if (qualifiedNames == null) {
+			qualifiedNames = new ConcurrentHashMap<String, String>(16, 0.75f, 1);
+		}
+		return qualifiedNames;
+	}
+
+	/**
+	 * @param qualifiedName a name created by {@link #qualify(String)}
+	 * @return the tags of the qualified name, {@link #EMPTY} if it has none, the interned tag set if the combination was
+	 * interned
+	 */
+	static Tags parse(final String qualifiedName) {
+		int start = qualifiedName.indexOf('{');
+		if (start < 0 || !qualifiedName.endsWith("}")) {
+			return EMPTY;
+		}
+		String[] pairs = qualifiedName.substring(start + 1, qualifiedName.length() - 1).split(",");
+		String[] keysAndValues = new String[pairs.length * 2];
+		for (int i = 0; i < pairs.length; i++) {
+			int separator = pairs[i].indexOf('=');
+			if (separator < 0) {
+				throw new IllegalArgumentException("not a qualified name: " + qualifiedName);
+			}
+			keysAndValues[2 * i] = pairs[i].substring(0, separator);
+			keysAndValues[2 * i + 1] = pairs[i].substring(separator + 1);
+		}
+		Tags found = find(keysAndValues);
+		return found != null ? found : create(keysAndValues, false);
+	}
+
+	/**
+	 * Hash of a single tag, the hash of a tag set is the sum of the hashes of its tags so that it does not depend on the
+	 * order in which the tags are given.
+	 */
+	static int pairHash(final String key, final String value) {
+		int h = (key.hashCode() * 31 + value.hashCode()) * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return true if this tag set consists of exactly the given tags, false if it does not or a key is repeated
+	 */
+	boolean matches(final String key1, final String value1, final String key2, final String value2) {
+		return key2 == null
+				? keys.length == 1 && has(key1, value1)
+				: keys.length == 2 && has(key1, value1) && has(key2, value2) && !key1.equals(key2);
+	}
+
+	/**
+	 * @return true if this tag set consists of exactly the given alternating keys and values, false if it does not or
+	 * a key is repeated
+	 */
+	boolean matches(final String[] keysAndValues) {
+		if (keysAndValues.length != 2 * keys.length) {
+			return false;
+		}
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			if (!has(keysAndValues[i], keysAndValues[i + 1])) {
+				return false;
+			}
+			for (int j = 0; j < i; j += 2) {
+				if (keysAndValues[j].equals(keysAndValues[i])) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean has(final String key, final String value) {
+		int index = Arrays.binarySearch(keys, key);
+		return index >= 0 && values[index].equals(value);
+	}
+
+	/**
+	 * @return the interned tag set with the given alternating keys and values, null if it is not interned or the
+	 * arguments are not valid
+	 */
+	private static Tags find(final String[] keysAndValues) {
+		if (keysAndValues == null || keysAndValues.length % 2 != 0) {
+			return null;
+		}
+		int pairsHash = 0;
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			if (keysAndValues[i] == null || keysAndValues[i + 1] == null) {
+				return null;
+			}
+			pairsHash += pairHash(keysAndValues[i], keysAndValues[i + 1]);
+		}
+		return INTERNED.find(pairsHash, keysAndValues);
+	}
+
+	private static Tags create(final String[] keysAndValues, final boolean intern) {
+		if (keysAndValues == null || keysAndValues.length % 2 != 0) {
+			throw new IllegalArgumentException("keysAndValues must contain pairs of keys and values");
+		}
+		int size = keysAndValues.length / 2;
+		String[] keys = new String[size];
+		String[] values = new String[size];
+		for (int pair = 0; pair < size; pair++) {
+			String key = validated(keysAndValues[2 * pair], "key");
+			String value = validated(keysAndValues[2 * pair + 1], "value");
+			if (key.isEmpty()) {
+				throw new IllegalArgumentException("key cannot be empty");
+			}
+			int i = pair;
+			for (; i > 0 && keys[i - 1].compareTo(key) > 0; i--) { // insertion sort, tag sets are small
+				keys[i] = keys[i - 1];
+				values[i] = values[i - 1];
+			}
+			if (i > 0 && keys[i - 1].equals(key)) {
+				throw new IllegalArgumentException("key " + key + " occurs more than once");
+			}
+			keys[i] = key;
+			values[i] = value;
+		}
+		Tags tags = new Tags(keys, values);
+		if (!intern) {
+			return tags;
+		}
+		Tags interned = INTERNED.intern(tags);
+		return interned != null ? interned : OVERFLOW;
+	}
+
+	private static String validated(final String text, final String role) {
+		if (text == null) {
+			throw new IllegalArgumentException(role + " cannot be null");
+		}
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '{' || c == '}' || c == '=' || c == ',') {
+				throw new IllegalArgumentException(role + " cannot contain '" + c + "': " + text);
+			}
+		}
+		return text;
+	}
+
+	@Override
+	public int compareTo(final Tags other) {
+		return text.compareTo(other.text);
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		return this == other || other instanceof Tags && text.equals(((Tags) other).text);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return keys.length == 0 ? "{}" : text;
+	}
+}
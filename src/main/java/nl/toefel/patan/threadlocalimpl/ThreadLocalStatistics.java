@@ -0,0 +1,438 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.threadlocalimpl;
+
+import nl.toefel.patan.api.*;
+import nl.toefel.patan.concurrentimpl.ConcurrentDistinctCountStore;
+import nl.toefel.patan.singlethreadedimpl.DetachedSnapshot;
+import nl.toefel.patan.singlethreadedimpl.DistributionAccumulator;
+import nl.toefel.patan.singlethreadedimpl.DurationAccumulator;
+import nl.toefel.patan.singlethreadedimpl.ElapsedNanosRecorder;
+import nl.toefel.patan.singlethreadedimpl.ForeverRunningStopwatch;
+import nl.toefel.patan.singlethreadedimpl.ImmutableStatisticalDistribution;
+import nl.toefel.patan.singlethreadedimpl.SampleAccumulatorFactory;
+import nl.toefel.patan.singlethreadedimpl.SampleRecorderTimer;
+import nl.toefel.patan.singlethreadedimpl.TimerCache;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Thread-safe statistics implementation where every thread records into its own private stores, recording threads
+ * never write to shared memory. Reading merges the stores of all threads, distributions are combined with
+ * {@link StatisticalDistribution#newMergedWith(StatisticalDistribution)}.
+ * <p>
+ * The stores of threads that died are folded into a shared remainder when a snapshot is taken, so their values are
+ * neither lost nor kept in memory per thread.
+ * <p>
+ * Distinct counts are the exception, they are recorded into a single lock-free {@link ConcurrentDistinctCountStore}.
+ * Their sketches are only written when a value raises a register, which becomes rare after the first few thousand
+ * values, and a sketch per name per thread would take a lot of memory.
+ * <p>
+ * Reading is more expensive than with the other implementations, it is meant for many threads that record at a high
+ * rate and a reader that takes snapshots periodically.
+ */
+public class ThreadLocalStatistics implements Statistics {
+
+	private final SampleAccumulatorFactory sampleAccumulators;
+	private final SampleAccumulatorFactory durationAccumulators;
+
+	private final List<ThreadRecorder> recorders = new CopyOnWriteArrayList<ThreadRecorder>();
+
+	private final ThreadLocal<ThreadRecorder> recorderOfThread = new ThreadLocal<ThreadRecorder>() {
+		@Override
+		protected ThreadRecorder initialValue() {
+			ThreadRecorder recorder = new ThreadRecorder(Thread.currentThread(), sampleAccumulators, durationAccumulators);
+			recorders.add(recorder);
+			return recorder;
+		}
+	};
+
+	/**
+	 * Serializes readers, so that folding the stores of dead threads is never observed halfway. Writers never take it.
+	 */
+	private final Object mergeLock = new Object();
+
+	// values of threads that died, guarded by mergeLock
+	private SortedMap<String, Long> retiredOccurrences = new TreeMap<String, Long>();
+	private SortedMap<String, StatisticalDistribution> retiredSamples = new TreeMap<String, StatisticalDistribution>();
+	private SortedMap<String, StatisticalDistribution> retiredDurations = new TreeMap<String, StatisticalDistribution>();
+
+	private final ConcurrentDistinctCountStore distinctStore = new ConcurrentDistinctCountStore();
+
+	private final TimerCache timerCache = new TimerCache(this);
+
+	public ThreadLocalStatistics() {
+		this(DurationAccumulator.FACTORY);
+	}
+
+	/**
+	 * @param durationAccumulators creates the accumulator of every new duration name, per thread
+	 */
+	public ThreadLocalStatistics(final SampleAccumulatorFactory durationAccumulators) {
+		this(DistributionAccumulator.FACTORY, durationAccumulators);
+	}
+
+	/**
+	 * @param sampleAccumulators creates the accumulator of every new sample name, per thread
+	 * @param durationAccumulators creates the accumulator of every new duration name, per thread
+	 */
+	public ThreadLocalStatistics(final SampleAccumulatorFactory sampleAccumulators, final SampleAccumulatorFactory durationAccumulators) {
+		if (sampleAccumulators == null || durationAccumulators == null) {
+			throw new IllegalArgumentException("sampleAccumulators and durationAccumulators cannot be null");
+		}
+		this.sampleAccumulators = sampleAccumulators;
+		this.durationAccumulators = durationAccumulators;
+	}
+
+	@Override
+	public Stopwatch startStopwatch() {
+		return ForeverRunningStopwatch.startNewStopwatch();
+	}
+
+	@Override
+	public void recordElapsedTime(final String eventName, final Runnable runnable) {
+		timerCache.timer(eventName).recordElapsedTime(runnable);
+	}
+
+	@Override
+	public <T> T recordElapsedTime(final String eventName, final TimedTask<T> runnable) {
+		return timerCache.timer(eventName).recordElapsedTime(runnable);
+	}
+
+	@Override
+	public double recordElapsedTime(final String eventName, final Stopwatch stopwatch) {
+		long elapsedNanos = stopwatch.elapsedNanos();
+		addElapsedNanos(eventName, elapsedNanos);
+		return elapsedNanos / 1e6;
+	}
+
+	@Override
+	public long recordElapsedNanos(final String eventName, final long startNanos) {
+		long elapsedNanos = System.nanoTime() - startNanos;
+		addElapsedNanos(eventName, elapsedNanos);
+		return elapsedNanos;
+	}
+
+	private void addElapsedNanos(final String eventName, final long elapsedNanos) {
+		ThreadRecorder recorder = recorderOfThread.get();
+		synchronized (recorder) {
+			recorder.durations.addElapsedNanos(eventName, elapsedNanos);
+		}
+	}
+
+	@Override
+	public Timer timer(final String eventName) {
+		final ThreadLocal<ElapsedNanosRecorder> durationRecorders = new ThreadLocal<ElapsedNanosRecorder>() {
+			@Override
+			protected ElapsedNanosRecorder initialValue() {
+				return recorderOfThread.get().durationRecorder(eventName);
+			}
+		};
+		return new SampleRecorderTimer(this, eventName, new ElapsedNanosRecorder() {
+			@Override
+			public void recordElapsedNanos(final long elapsedNanos) {
+				durationRecorders.get().recordElapsedNanos(elapsedNanos);
+			}
+		});
+	}
+
+	@Override
+	public void addOccurrence(final String eventName) {
+		ThreadRecorder recorder = recorderOfThread.get();
+		synchronized (recorder) {
+			recorder.occurrences.addOccurrence(eventName);
+		}
+	}
+
+	@Override
+	public void addOccurrences(final String eventName, final long timesOccurred) {
+		ThreadRecorder recorder = recorderOfThread.get();
+		synchronized (recorder) {
+			recorder.occurrences.addOccurrences(eventName, timesOccurred);
+		}
+	}
+
+	@Override
+	public Counter counter(final String eventName) {
+		final ThreadLocal<Counter> counters = new ThreadLocal<Counter>() {
+			@Override
+			protected Counter initialValue() {
+				return recorderOfThread.get().counter(eventName);
+			}
+		};
+		return new Counter() {
+			@Override
+			public void increment() {
+				counters.get().increment();
+			}
+
+			@Override
+			public void increment(final long timesOccurred) {
+				counters.get().increment(timesOccurred);
+			}
+		};
+	}
+
+	@Override
+	public void addSample(final String eventName, final double value) {
+		ThreadRecorder recorder = recorderOfThread.get();
+		synchronized (recorder) {
+			recorder.samples.addSample(eventName, value);
+		}
+	}
+
+	@Override
+	public SampleRecorder sampleRecorder(final String eventName) {
+		final ThreadLocal<SampleRecorder> sampleRecorders = new ThreadLocal<SampleRecorder>() {
+			@Override
+			protected SampleRecorder initialValue() {
+				return recorderOfThread.get().sampleRecorder(eventName);
+			}
+		};
+		return new SampleRecorder() {
+			@Override
+			public void record(final double value) {
+				sampleRecorders.get().record(value);
+			}
+		};
+	}
+
+	@Override
+	public long findOccurrence(final String eventName) {
+		synchronized (mergeLock) {
+			Long retired = retiredOccurrences.get(eventName);
+			long total = retired == null ? 0L : retired;
+			for (ThreadRecorder recorder : recorders) {
+				synchronized (recorder) {
+					total += recorder.occurrences.findOccurrence(eventName);
+				}
+			}
+			return total;
+		}
+	}
+
+	@Override
+	public StatisticalDistribution findSampleDistribution(final String eventName) {
+		synchronized (mergeLock) {
+			StatisticalDistribution total = getOrEmpty(retiredSamples.get(eventName));
+			for (ThreadRecorder recorder : recorders) {
+				synchronized (recorder) {
+					total = total.newMergedWith(recorder.samples.findSampleDistribution(eventName));
+				}
+			}
+			return total;
+		}
+	}
+
+	@Override
+	public StatisticalDistribution findDuration(final String eventName) {
+		synchronized (mergeLock) {
+			StatisticalDistribution total = getOrEmpty(retiredDurations.get(eventName));
+			for (ThreadRecorder recorder : recorders) {
+				synchronized (recorder) {
+					total = total.newMergedWith(recorder.durations.findSampleDistribution(eventName));
+				}
+			}
+			return total;
+		}
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshot() {
+		synchronized (mergeLock) {
+			foldDeadRecorders();
+			SortedMap<String, Long> snapshot = new TreeMap<String, Long>(retiredOccurrences);
+			for (ThreadRecorder recorder : recorders) {
+				synchronized (recorder) {
+					mergeOccurrences(snapshot, recorder.occurrences.getAllOccurrencesSnapshot());
+				}
+			}
+			return snapshot;
+		}
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshotAndReset() {
+		synchronized (mergeLock) {
+			foldDeadRecorders();
+			SortedMap<String, Long> snapshot = retiredOccurrences;
+			retiredOccurrences = new TreeMap<String, Long>();
+			for (ThreadRecorder recorder : recorders) {
+				synchronized (recorder) {
+					mergeOccurrences(snapshot, recorder.occurrences.getAllOccurrencesSnapshotAndReset());
+				}
+			}
+			return snapshot;
+		}
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshot() {
+		synchronized (mergeLock) {
+			foldDeadRecorders();
+			SortedMap<String, StatisticalDistribution> snapshot = new TreeMap<String, StatisticalDistribution>(retiredSamples);
+			for (ThreadRecorder recorder : recorders) {
+				synchronized (recorder) {
+					mergeDistributions(snapshot, recorder.samples.getAllSamplesSnapshot());
+				}
+			}
+			return snapshot;
+		}
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshotAndReset() {
+		synchronized (mergeLock) {
+			foldDeadRecorders();
+			SortedMap<String, StatisticalDistribution> snapshot = retiredSamples;
+			retiredSamples = new TreeMap<String, StatisticalDistribution>();
+			for (ThreadRecorder recorder : recorders) {
+				synchronized (recorder) {
+					mergeDistributions(snapshot, recorder.samples.getAllSamplesSnapshotAndReset());
+				}
+			}
+			return snapshot;
+		}
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshot() {
+		synchronized (mergeLock) {
+			foldDeadRecorders();
+			SortedMap<String, StatisticalDistribution> snapshot = new TreeMap<String, StatisticalDistribution>(retiredDurations);
+			for (ThreadRecorder recorder : recorders) {
+				synchronized (recorder) {
+					mergeDistributions(snapshot, recorder.durations.getAllSamplesSnapshot());
+				}
+			}
+			return snapshot;
+		}
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshotAndReset() {
+		synchronized (mergeLock) {
+			foldDeadRecorders();
+			SortedMap<String, StatisticalDistribution> snapshot = retiredDurations;
+			retiredDurations = new TreeMap<String, StatisticalDistribution>();
+			for (ThreadRecorder recorder : recorders) {
+				synchronized (recorder) {
+					mergeDistributions(snapshot, recorder.durations.getAllSamplesSnapshotAndReset());
+				}
+			}
+			return snapshot;
+		}
+	}
+
+	@Override
+	public void addDistinct(final String name, final long value) {
+		distinctStore.addDistinct(name, value);
+	}
+
+	@Override
+	public void addDistinct(final String name, final String value) {
+		distinctStore.addDistinct(name, value);
+	}
+
+	@Override
+	public DistinctCount findDistinctCount(final String name) {
+		return distinctStore.findDistinctCount(name);
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshot() {
+		return distinctStore.getAllDistinctCountsSnapshot();
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshotAndReset() {
+		return distinctStore.getAllDistinctCountsSnapshotAndReset();
+	}
+
+	@Override
+	public void reset() {
+		synchronized (mergeLock) {
+			distinctStore.reset();
+			foldDeadRecorders();
+			retiredOccurrences = new TreeMap<String, Long>();
+			retiredSamples = new TreeMap<String, StatisticalDistribution>();
+			retiredDurations = new TreeMap<String, StatisticalDistribution>();
+			for (ThreadRecorder recorder : recorders) {
+				synchronized (recorder) {
+					recorder.occurrences.reset();
+					recorder.samples.reset();
+					recorder.durations.reset();
+				}
+			}
+		}
+	}
+
+	@Override
+	public Snapshot getSnapshot() {
+		synchronized (mergeLock) {
+			return new DetachedSnapshot(getAllSamplesSnapshot(), getAllOccurrencesSnapshot(), getAllDurationsSnapshot(),
+					Collections.<String, MovingRates>emptyMap(), getAllDistinctCountsSnapshot());
+		}
+	}
+
+	@Override
+	public Snapshot getSnapshotAndReset() {
+		synchronized (mergeLock) {
+			return new DetachedSnapshot(getAllSamplesSnapshotAndReset(), getAllOccurrencesSnapshotAndReset(), getAllDurationsSnapshotAndReset(),
+					Collections.<String, MovingRates>emptyMap(), getAllDistinctCountsSnapshotAndReset());
+		}
+	}
+
+	/**
+	 * Moves the values of threads that died into the retired maps and forgets their recorders. Must hold mergeLock.
+	 */
+	private void foldDeadRecorders() {
+		for (ThreadRecorder recorder : recorders) {
+			if (!recorder.isOwnerAlive()) {
+				synchronized (recorder) {
+					mergeOccurrences(retiredOccurrences, recorder.occurrences.getAllOccurrencesSnapshotAndReset());
+					mergeDistributions(retiredSamples, recorder.samples.getAllSamplesSnapshotAndReset());
+					mergeDistributions(retiredDurations, recorder.durations.getAllSamplesSnapshotAndReset());
+				}
+				recorders.remove(recorder);
+			}
+		}
+	}
+
+	private static void mergeOccurrences(final SortedMap<String, Long> target, final Map<String, Long> source) {
+		for (Map.Entry<String, Long> entry : source.entrySet()) {
+			Long current = target.get(entry.getKey());
+			target.put(entry.getKey(), current == null ? entry.getValue() : current + entry.getValue());
+		}
+	}
+
+	private static void mergeDistributions(final SortedMap<String, StatisticalDistribution> target, final Map<String, StatisticalDistribution> source) {
+		for (Map.Entry<String, StatisticalDistribution> entry : source.entrySet()) {
+			StatisticalDistribution current = target.get(entry.getKey());
+			target.put(entry.getKey(), current == null ? entry.getValue() : current.newMergedWith(entry.getValue()));
+		}
+	}
+
+	private static StatisticalDistribution getOrEmpty(final StatisticalDistribution distribution) {
+		return distribution == null ? ImmutableStatisticalDistribution.createEmpty() : distribution;
+	}
+}
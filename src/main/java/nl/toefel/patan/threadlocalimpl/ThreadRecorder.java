@@ -0,0 +1,97 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.threadlocalimpl;
+
+import nl.toefel.patan.api.Counter;
+import nl.toefel.patan.api.SampleRecorder;
+import nl.toefel.patan.singlethreadedimpl.CounterStore;
+import nl.toefel.patan.singlethreadedimpl.ElapsedNanosRecorder;
+import nl.toefel.patan.singlethreadedimpl.SampleAccumulatorFactory;
+import nl.toefel.patan.singlethreadedimpl.StatisticDistributionStore;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * The private stores of a single recording thread. All access to the stores must be synchronized on the recorder, the
+ * owning thread is the only writer so it only contends with threads that take a snapshot.
+ */
+final class ThreadRecorder {
+
+	final CounterStore occurrences = new CounterStore();
+	final StatisticDistributionStore samples;
+	final StatisticDistributionStore durations;
+
+	private final WeakReference<Thread> owner;
+
+	ThreadRecorder(final Thread owner, final SampleAccumulatorFactory sampleAccumulators, final SampleAccumulatorFactory durationAccumulators) {
+		this.owner = new WeakReference<Thread>(owner);
+		this.samples = new StatisticDistributionStore(sampleAccumulators);
+		this.durations = new StatisticDistributionStore(durationAccumulators);
+	}
+
+	/**
+	 * @return false if the owning thread has died, no more values will be recorded
+	 */
+	boolean isOwnerAlive() {
+		Thread thread = owner.get();
+		return thread != null && thread.isAlive();
+	}
+
+	Counter counter(final String name) {
+		final Counter counter = occurrences.counter(name); // creating a handle does not touch the store
+		return new Counter() {
+			@Override
+			public void increment() {
+				increment(1L);
+			}
+
+			@Override
+			public void increment(final long timesOccurred) {
+				synchronized (ThreadRecorder.this) {
+					counter.increment(timesOccurred);
+				}
+			}
+		};
+	}
+
+	SampleRecorder sampleRecorder(final String name) {
+		return lockedRecorder(samples.sampleRecorder(name));
+	}
+
+	ElapsedNanosRecorder durationRecorder(final String name) {
+		final ElapsedNanosRecorder recorder = durations.elapsedNanosRecorder(name);
+		return new ElapsedNanosRecorder() {
+			@Override
+			public void recordElapsedNanos(final long elapsedNanos) {
+				synchronized (ThreadRecorder.this) {
+					recorder.recordElapsedNanos(elapsedNanos);
+				}
+			}
+		};
+	}
+
+	private SampleRecorder lockedRecorder(final SampleRecorder recorder) {
+		return new SampleRecorder() {
+			@Override
+			public void record(final double value) {
+				synchronized (ThreadRecorder.this) {
+					recorder.record(value);
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,307 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.topkimpl;
+
+import nl.toefel.patan.api.*;
+import nl.toefel.patan.singlethreadedimpl.DetachedSnapshot;
+import nl.toefel.patan.singlethreadedimpl.SpaceSavingCounterStore;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Decorator that counts the occurrences of configured name prefixes in a bounded {@link SpaceSavingCounterStore} per
+ * prefix, all other names and all samples and durations are recorded by the given statistics. Use it for families of
+ * names with an unbounded cardinality, like counters per customer or URL, to keep memory and snapshots bounded.
+ * <pre>
+ *     Statistics statistics = new TopKStatistics(StatisticsFactory.createConcurrentStatistics())
+ *             .withPrefix("customer.", 20)
+ *             .withPrefix("url.", 50, 1000);
+ * </pre>
+ * Snapshots contain the top k names of every prefix with their estimated counts, and the occurrences of all other
+ * names of the prefix under 'prefix.other'. A name uses the sketch of the longest prefix it starts with.
+ * <p>
+ * Thread-safe when the delegate is thread-safe, every sketch is guarded by its own monitor. Prefixes should be
+ * configured before recording starts, occurrences recorded before a prefix is added stay in the delegate.
+ */
+public class TopKStatistics implements Statistics {
+
+	private static final int DEFAULT_CAPACITY_PER_K = 4;
+
+	private final Statistics statistics;
+
+	// copied on write, prefixes are rarely added
+	private volatile TreeMap<String, SpaceSavingCounterStore> sketchesByPrefix = new TreeMap<String, SpaceSavingCounterStore>();
+
+	/**
+	 * @param statistics the statistics that record everything that is not counted by a sketch
+	 */
+	public TopKStatistics(final Statistics statistics) {
+		if (statistics == null) {
+			throw new IllegalArgumentException("statistics cannot be null");
+		}
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Counts the names with the given prefix in a sketch that monitors 4k names.
+	 *
+	 * @param prefix names that start with this prefix are counted by the sketch, unless a longer prefix matches
+	 * @param k the number of names of the prefix that snapshots report
+	 * @return this instance
+	 */
+	public TopKStatistics withPrefix(final String prefix, final int k) {
+		return withPrefix(prefix, k, k * DEFAULT_CAPACITY_PER_K);
+	}
+
+	/**
+	 * @param prefix names that start with this prefix are counted by the sketch, unless a longer prefix matches
+	 * @param k the number of names of the prefix that snapshots report
+	 * @param capacity the number of names the sketch monitors, counts overestimate by at most total / capacity
+	 * @return this instance
+	 */
+	public synchronized TopKStatistics withPrefix(final String prefix, final int k, final int capacity) {
+		if (prefix == null || prefix.isEmpty()) {
+			throw new IllegalArgumentException("prefix cannot be null or empty");
+		}
+		String otherName = prefix.endsWith(".") ? prefix + "other" : prefix + ".other";
+		TreeMap<String, SpaceSavingCounterStore> copy = new TreeMap<String, SpaceSavingCounterStore>(sketchesByPrefix);
+		copy.put(prefix, new SpaceSavingCounterStore(k, capacity, otherName));
+		sketchesByPrefix = copy;
+		return this;
+	}
+
+	/**
+	 * @param eventName name of a monitored occurrence
+	 * @return the maximum overestimation of {@link #findOccurrence(String)}, zero for names that are counted exactly
+	 */
+	public long findOccurrenceError(final String eventName) {
+		SpaceSavingCounterStore sketch = sketchFor(eventName);
+		if (sketch == null) {
+			return 0L;
+		}
+		synchronized (sketch) {
+			return sketch.findError(eventName);
+		}
+	}
+
+	@Override
+	public Stopwatch startStopwatch() {
+		return statistics.startStopwatch();
+	}
+
+	@Override
+	public void recordElapsedTime(final String eventName, final Runnable runnable) {
+		statistics.recordElapsedTime(eventName, runnable);
+	}
+
+	@Override
+	public <T> T recordElapsedTime(final String eventName, final TimedTask<T> runnable) {
+		return statistics.recordElapsedTime(eventName, runnable);
+	}
+
+	@Override
+	public double recordElapsedTime(final String eventName, final Stopwatch stopwatch) {
+		return statistics.recordElapsedTime(eventName, stopwatch);
+	}
+
+	@Override
+	public long recordElapsedNanos(final String eventName, final long startNanos) {
+		return statistics.recordElapsedNanos(eventName, startNanos);
+	}
+
+	@Override
+	public Timer timer(final String eventName) {
+		return statistics.timer(eventName);
+	}
+
+	@Override
+	public StatisticalDistribution findDuration(final String eventName) {
+		return statistics.findDuration(eventName);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshot() {
+		return statistics.getAllDurationsSnapshot();
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshotAndReset() {
+		return statistics.getAllDurationsSnapshotAndReset();
+	}
+
+	@Override
+	public void addOccurrence(final String eventName) {
+		addOccurrences(eventName, 1L);
+	}
+
+	@Override
+	public void addOccurrences(final String eventName, final long timesOccurred) {
+		SpaceSavingCounterStore sketch = sketchFor(eventName);
+		if (sketch == null) {
+			statistics.addOccurrences(eventName, timesOccurred);
+		} else {
+			synchronized (sketch) {
+				sketch.addOccurrences(eventName, timesOccurred);
+			}
+		}
+	}
+
+	@Override
+	public Counter counter(final String eventName) {
+		final SpaceSavingCounterStore sketch = sketchFor(eventName);
+		if (sketch == null) {
+			return statistics.counter(eventName);
+		}
+		return new Counter() {
+			@Override
+			public void increment() {
+				increment(1L);
+			}
+
+			@Override
+			public void increment(final long timesOccurred) {
+				synchronized (sketch) {
+					sketch.addOccurrences(eventName, timesOccurred);
+				}
+			}
+		};
+	}
+
+	@Override
+	public void addSample(final String eventName, final double value) {
+		statistics.addSample(eventName, value);
+	}
+
+	@Override
+	public SampleRecorder sampleRecorder(final String eventName) {
+		return statistics.sampleRecorder(eventName);
+	}
+
+	@Override
+	public StatisticalDistribution findSampleDistribution(final String eventName) {
+		return statistics.findSampleDistribution(eventName);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshot() {
+		return statistics.getAllSamplesSnapshot();
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshotAndReset() {
+		return statistics.getAllSamplesSnapshotAndReset();
+	}
+
+	@Override
+	public long findOccurrence(final String eventName) {
+		SpaceSavingCounterStore sketch = sketchFor(eventName);
+		if (sketch == null) {
+			return statistics.findOccurrence(eventName);
+		}
+		synchronized (sketch) {
+			return sketch.findOccurrence(eventName);
+		}
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshot() {
+		return withSketches(statistics.getAllOccurrencesSnapshot(), false);
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshotAndReset() {
+		return withSketches(statistics.getAllOccurrencesSnapshotAndReset(), true);
+	}
+
+	@Override
+	public void addDistinct(final String name, final long value) {
+		statistics.addDistinct(name, value);
+	}
+
+	@Override
+	public void addDistinct(final String name, final String value) {
+		statistics.addDistinct(name, value);
+	}
+
+	@Override
+	public DistinctCount findDistinctCount(final String name) {
+		return statistics.findDistinctCount(name);
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshot() {
+		return statistics.getAllDistinctCountsSnapshot();
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshotAndReset() {
+		return statistics.getAllDistinctCountsSnapshotAndReset();
+	}
+
+	@Override
+	public void reset() {
+		statistics.reset();
+		for (SpaceSavingCounterStore sketch : sketchesByPrefix.values()) {
+			synchronized (sketch) {
+				sketch.reset();
+			}
+		}
+	}
+
+	@Override
+	public Snapshot getSnapshot() {
+		Snapshot snapshot = statistics.getSnapshot();
+		return new DetachedSnapshot(snapshot.getSamples(), withSketches(snapshot.getOccurrences(), false), snapshot.getDurations(), snapshot.getRates(),
+				snapshot.getDistinctCounts());
+	}
+
+	@Override
+	public Snapshot getSnapshotAndReset() {
+		Snapshot snapshot = statistics.getSnapshotAndReset();
+		return new DetachedSnapshot(snapshot.getSamples(), withSketches(snapshot.getOccurrences(), true), snapshot.getDurations(), snapshot.getRates(),
+				snapshot.getDistinctCounts());
+	}
+
+	private SortedMap<String, Long> withSketches(final Map<String, Long> occurrences, final boolean reset) {
+		SortedMap<String, Long> snapshot = new TreeMap<String, Long>(occurrences);
+		for (SpaceSavingCounterStore sketch : sketchesByPrefix.values()) {
+			synchronized (sketch) {
+				snapshot.putAll(reset ? sketch.getAllOccurrencesSnapshotAndReset() : sketch.getAllOccurrencesSnapshot());
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return the sketch of the longest prefix of the name, null if the name is counted by the delegate
+	 */
+	private SpaceSavingCounterStore sketchFor(final String eventName) {
+		TreeMap<String, SpaceSavingCounterStore> sketches = sketchesByPrefix;
+		if (sketches.isEmpty()) {
+			return null;
+		}
+		// a longer prefix of the name sorts after a shorter one, the first prefix found going down is the longest
+		for (Map.Entry<String, SpaceSavingCounterStore> entry : sketches.headMap(eventName, true).descendingMap().entrySet()) {
+			if (eventName.startsWith(entry.getKey())) {
+				return entry.getValue();
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.windowedimpl;
+
+/**
+ * Ring of occurrence counts of a single name, one count per time bucket. A bucket is reused for a later time by the
+ * write that finds it outdated, so recording never scans the ring. Guarded by its own monitor.
+ * <p>
+ * A ring whose buckets have all expired can be retired, see {@link #retireIfExpired(long)}. Writes into a retired ring
+ * are refused, so the writer can record into the ring that replaced it.
+ */
+final class CountRing {
+
+	private final long bucketMillis;
+	private final long[] counts;
+	private final long[] bucketTimes;
+
+	/** the latest bucket time that was written, -1 if none since the last clear */
+	private long latestBucketTime = -1;
+	private boolean retired;
+
+	CountRing(final long bucketMillis, final int bucketCount) {
+		this.bucketMillis = bucketMillis;
+		this.counts = new long[bucketCount];
+		this.bucketTimes = new long[bucketCount];
+		clear();
+	}
+
+	/**
+	 * @return false if the ring is retired, the occurrences were not added
+	 */
+	synchronized boolean add(final long nowMillis, final long timesOccurred) {
+		if (retired) {
+			return false;
+		}
+		long bucketTime = nowMillis / bucketMillis;
+		int index = (int) (bucketTime % counts.length);
+		if (bucketTimes[index] != bucketTime) {
+			bucketTimes[index] = bucketTime;
+			counts[index] = 0;
+		}
+		counts[index] += timesOccurred;
+		if (bucketTime > latestBucketTime) {
+			latestBucketTime = bucketTime;
+		}
+		return true;
+	}
+
+	/**
+	 * @param bucketsBack the number of buckets to add up, including the current one
+	 */
+	synchronized long sum(final long nowMillis, final int bucketsBack) {
+		long currentBucketTime = nowMillis / bucketMillis;
+		long total = 0;
+		for (int back = 0; back < bucketsBack; back++) {
+			long bucketTime = currentBucketTime - back;
+			if (bucketTime < 0) {
+				break;
+			}
+			int index = (int) (bucketTime % counts.length);
+			if (bucketTimes[index] == bucketTime) {
+				total += counts[index];
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Retires the ring when none of its buckets is within the longest window anymore.
+	 *
+	 * @return true if the ring is retired and can be removed
+	 */
+	synchronized boolean retireIfExpired(final long nowMillis) {
+		if (latestBucketTime <= nowMillis / bucketMillis - counts.length) {
+			retired = true;
+		}
+		return retired;
+	}
+
+	synchronized void clear() {
+		for (int i = 0; i < bucketTimes.length; i++) {
+			bucketTimes[i] = -1;
+		}
+		latestBucketTime = -1;
+	}
+}
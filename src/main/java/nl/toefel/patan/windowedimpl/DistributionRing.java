@@ -0,0 +1,134 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.windowedimpl;
+
+import nl.toefel.patan.api.StatisticalDistribution;
+import nl.toefel.patan.singlethreadedimpl.SampleAccumulator;
+import nl.toefel.patan.singlethreadedimpl.SampleAccumulatorFactory;
+
+/**
+ * Ring of sample accumulators of a single name, one accumulator per time bucket. A bucket is reset and reused for a
+ * later time by the write that finds it outdated, so recording never scans the ring and rotating does not allocate.
+ * Guarded by its own monitor.
+ * <p>
+ * A ring whose buckets have all expired can be retired, see {@link #retireIfExpired(long)}. Writes into a retired ring
+ * are refused, so the writer can record into the ring that replaced it.
+ */
+final class DistributionRing {
+
+	private final SampleAccumulatorFactory accumulatorFactory;
+	private final String name;
+	private final long bucketMillis;
+	private final SampleAccumulator[] buckets;
+	private final long[] bucketTimes;
+
+	/** the latest bucket time that was written, -1 if none since the last clear */
+	private long latestBucketTime = -1;
+	private boolean retired;
+
+	DistributionRing(final SampleAccumulatorFactory accumulatorFactory, final String name, final long bucketMillis, final int bucketCount) {
+		this.accumulatorFactory = accumulatorFactory;
+		this.name = name;
+		this.bucketMillis = bucketMillis;
+		this.buckets = new SampleAccumulator[bucketCount];
+		this.bucketTimes = new long[bucketCount];
+		clear();
+	}
+
+	/**
+	 * @return false if the ring is retired, the value was not added
+	 */
+	synchronized boolean add(final long nowMillis, final double value) {
+		if (retired) {
+			return false;
+		}
+		currentBucket(nowMillis).addSample(value);
+		return true;
+	}
+
+	/**
+	 * @return false if the ring is retired, the duration was not added
+	 */
+	synchronized boolean addElapsedNanos(final long nowMillis, final long elapsedNanos) {
+		if (retired) {
+			return false;
+		}
+		currentBucket(nowMillis).addElapsedNanos(elapsedNanos);
+		return true;
+	}
+
+	/**
+	 * @return the bucket of the current time, reset if it still holds an older bucket
+	 */
+	private SampleAccumulator currentBucket(final long nowMillis) {
+		long bucketTime = nowMillis / bucketMillis;
+		int index = (int) (bucketTime % buckets.length);
+		if (bucketTimes[index] != bucketTime) {
+			if (buckets[index] == null) {
+				buckets[index] = accumulatorFactory.create(name);
+			} else {
+				buckets[index].reset();
+			}
+			bucketTimes[index] = bucketTime;
+		}
+		if (bucketTime > latestBucketTime) {
+			latestBucketTime = bucketTime;
+		}
+		return buckets[index];
+	}
+
+	/**
+	 * @param bucketsBack the number of buckets to merge, including the current one
+	 */
+	synchronized StatisticalDistribution merge(final long nowMillis, final int bucketsBack) {
+		long currentBucketTime = nowMillis / bucketMillis;
+		SampleAccumulator total = accumulatorFactory.create(name);
+		for (int back = 0; back < bucketsBack; back++) {
+			long bucketTime = currentBucketTime - back;
+			if (bucketTime < 0) {
+				break;
+			}
+			int index = (int) (bucketTime % buckets.length);
+			if (bucketTimes[index] == bucketTime) {
+				total.merge(buckets[index]);
+			}
+		}
+		return total.toDistribution();
+	}
+
+	/**
+	 * Retires the ring when none of its buckets is within the longest window anymore.
+	 *
+	 * @return true if the ring is retired and can be removed
+	 */
+	synchronized boolean retireIfExpired(final long nowMillis) {
+		if (latestBucketTime <= nowMillis / bucketMillis - buckets.length) {
+			retired = true;
+		}
+		return retired;
+	}
+
+	/**
+	 * Clears all buckets, the accumulators are kept to be reused.
+	 */
+	synchronized void clear() {
+		for (int i = 0; i < bucketTimes.length; i++) {
+			bucketTimes[i] = -1;
+		}
+		latestBucketTime = -1;
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.windowedimpl;
+
+import nl.toefel.patan.api.MovingRates;
+import nl.toefel.patan.singlethreadedimpl.ImmutableMovingRates;
+
+/**
+ * Exponentially-weighted moving 1, 5 and 15 minute rates of a single occurrence name. Marking only adds to a
+ * {@link StripedLong}, the averages are updated by the reader for every tick of 5 seconds that passed since the previous
+ * read. All ticks that passed are applied at once, as if the occurrences were spread evenly over them.
+ * <p>
+ * A meter whose rates all decayed below {@link #IDLE_RATE} is detached by the reader, see
+ * {@link #ratesOrDetach(long)}. Marks that race with detaching are left in the meter, the writer that finds it detached
+ * moves them to the meter that replaced it with {@link #drain()}.
+ */
+final class RateMeter {
+
+	static final long TICK_MILLIS = 5000;
+
+	private static final double TICK_SECONDS = TICK_MILLIS / 1000d;
+	private static final double[] DECAYS = {decayPerTick(1), decayPerTick(5), decayPerTick(15)};
+
+	/**
+	 * Rate per second below which a meter is idle, fewer than one occurrence per 16 minutes.
+	 */
+	static final double IDLE_RATE = 0.001;
+
+	private final StripedLong uncounted = new StripedLong();
+
+	private volatile boolean detached;
+
+	// guarded by this
+	private final double[] rates = new double[DECAYS.length];
+	private boolean initialized;
+	private long lastTickMillis;
+
+	/**
+	 * The name under which the meter is kept.
+	 */
+	final String name;
+
+	RateMeter(final String name, final long nowMillis) {
+		this.name = name;
+		this.lastTickMillis = nowMillis;
+	}
+
+	private static double decayPerTick(final int minutes) {
+		return Math.exp(-TICK_SECONDS / (minutes * 60d));
+	}
+
+	/**
+	 * @return false if the meter is detached, the occurrences must be drained into the meter that replaced it
+	 */
+	boolean mark(final long timesOccurred) {
+		uncounted.add(timesOccurred);
+		return !detached; // read after adding, so a mark that sees false is drained by the reader that detached it
+	}
+
+	synchronized MovingRates rates(final long nowMillis) {
+		tick(nowMillis);
+		return new ImmutableMovingRates(rates[0], rates[1], rates[2]);
+	}
+
+	/**
+	 * Detaches the meter when all its rates decayed below {@link #IDLE_RATE}.
+	 *
+	 * @return the current rates, null if the meter is detached
+	 */
+	synchronized MovingRates ratesOrDetach(final long nowMillis) {
+		tick(nowMillis);
+		if (detached || initialized && rates[0] < IDLE_RATE && rates[1] < IDLE_RATE && rates[2] < IDLE_RATE) {
+			detached = true;
+			return null;
+		}
+		return new ImmutableMovingRates(rates[0], rates[1], rates[2]);
+	}
+
+	/**
+	 * @return the occurrences that were marked but not counted yet, they are taken out of the meter
+	 */
+	long drain() {
+		return uncounted.sumThenReset();
+	}
+
+	synchronized void clear(final long nowMillis) {
+		uncounted.sumThenReset();
+		for (int i = 0; i < rates.length; i++) {
+			rates[i] = 0d;
+		}
+		initialized = false;
+		lastTickMillis = nowMillis;
+	}
+
+	private void tick(final long nowMillis) {
+		long ticks = (nowMillis - lastTickMillis) / TICK_MILLIS;
+		if (ticks <= 0) {
+			return;
+		}
+		lastTickMillis += ticks * TICK_MILLIS;
+		double instantRate = uncounted.sumThenReset() / (ticks * TICK_SECONDS);
+		for (int i = 0; i < rates.length; i++) {
+			if (initialized) {
+				rates[i] = instantRate + (rates[i] - instantRate) * Math.pow(DECAYS[i], ticks);
+			} else {
+				rates[i] = instantRate;
+			}
+		}
+		initialized = true;
+	}
+}
@@ -0,0 +1,347 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.windowedimpl;
+
+import nl.toefel.patan.api.*;
+import nl.toefel.patan.singlethreadedimpl.CardinalityGuard;
+import nl.toefel.patan.singlethreadedimpl.CardinalityLimit;
+import nl.toefel.patan.singlethreadedimpl.DetachedSnapshot;
+import nl.toefel.patan.singlethreadedimpl.ImmutableMovingRates;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decorator that tracks the exponentially-weighted moving 1, 5 and 15 minute rates of every occurrence name. Dashboards
+ * no longer need to diff counters to compute rates, which does not work once anything resets them: rates are not
+ * affected by the xxxSnapshotAndReset() methods. Snapshots contain the rates alongside the counters, see
+ * {@link Snapshot#getRates()}.
+ * <p>
+ * Recording an occurrence adds to the delegate and to a striped sum of the name, the averages are only updated when the
+ * rates are read. Reading all rates drops the meters of names whose rates decayed to almost zero, they are left out of
+ * snapshots until the name occurs again. Names are admitted by a {@link CardinalityLimit}, pass the limit of the
+ * delegate so the rates of rejected names are kept under the same overflow name as their counters.
+ * <p>
+ * Thread-safe when the delegate is thread-safe.
+ */
+public class RateStatistics implements Statistics {
+
+	private final Statistics statistics;
+	private final Clock clock;
+
+	private final CardinalityGuard guard;
+
+	private final ConcurrentMap<String, RateMeter> meters = new ConcurrentHashMap<String, RateMeter>();
+
+	/**
+	 * Estimated memory of a meter and its map entry, excluding the name.
+	 */
+	private static final int METER_BYTES = 160;
+
+	/**
+	 * @param statistics the statistics that keep the counters and distributions
+	 */
+	public RateStatistics(final Statistics statistics) {
+		this(statistics, CardinalityLimit.NONE);
+	}
+
+	/**
+	 * @param statistics the statistics that keep the counters and distributions
+	 * @param limit limits the number of names with a meter, usually the limit of the statistics
+	 */
+	public RateStatistics(final Statistics statistics, final CardinalityLimit limit) {
+		this(statistics, Clock.SYSTEM, limit);
+	}
+
+	/**
+	 * @param statistics the statistics that keep the counters and distributions
+	 * @param clock source of the current time
+	 */
+	public RateStatistics(final Statistics statistics, final Clock clock) {
+		this(statistics, clock, CardinalityLimit.NONE);
+	}
+
+	/**
+	 * @param statistics the statistics that keep the counters and distributions
+	 * @param clock source of the current time
+	 * @param limit limits the number of names with a meter, usually the limit of the statistics
+	 */
+	public RateStatistics(final Statistics statistics, final Clock clock, final CardinalityLimit limit) {
+		if (statistics == null || clock == null || limit == null) {
+			throw new IllegalArgumentException("statistics, clock and limit cannot be null");
+		}
+		this.statistics = statistics;
+		this.clock = clock;
+		this.guard = limit.newGuard(METER_BYTES);
+	}
+
+	/**
+	 * @param eventName name of the occurrence
+	 * @return the current rates of the occurrence, rates of zero if it never occurred
+	 */
+	public MovingRates findRates(final String eventName) {
+		RateMeter meter = meters.get(eventName);
+		return meter == null ? ImmutableMovingRates.createEmpty() : meter.rates(clock.currentTimeMillis());
+	}
+
+	/**
+	 * Drops the meters of names whose rates all decayed below {@link RateMeter#IDLE_RATE}.
+	 *
+	 * @return the current rates of all occurrences by their name
+	 */
+	public SortedMap<String, MovingRates> getAllRatesSnapshot() {
+		long now = clock.currentTimeMillis();
+		SortedMap<String, MovingRates> snapshot = new TreeMap<String, MovingRates>();
+		for (Map.Entry<String, RateMeter> entry : meters.entrySet()) {
+			RateMeter meter = entry.getValue();
+			MovingRates rates = meter.ratesOrDetach(now);
+			if (rates != null) {
+				snapshot.put(entry.getKey(), rates);
+			} else {
+				remove(meter);
+				long late = meter.drain();
+				if (late != 0) {
+					mark(meter.name, meter(meter.name), late);
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return the number of names that have a meter
+	 */
+	int meterCount() {
+		return meters.size();
+	}
+
+	@Override
+	public Stopwatch startStopwatch() {
+		return statistics.startStopwatch();
+	}
+
+	@Override
+	public void recordElapsedTime(final String eventName, final Runnable runnable) {
+		statistics.recordElapsedTime(eventName, runnable);
+	}
+
+	@Override
+	public <T> T recordElapsedTime(final String eventName, final TimedTask<T> runnable) {
+		return statistics.recordElapsedTime(eventName, runnable);
+	}
+
+	@Override
+	public double recordElapsedTime(final String eventName, final Stopwatch stopwatch) {
+		return statistics.recordElapsedTime(eventName, stopwatch);
+	}
+
+	@Override
+	public long recordElapsedNanos(final String eventName, final long startNanos) {
+		return statistics.recordElapsedNanos(eventName, startNanos);
+	}
+
+	@Override
+	public Timer timer(final String eventName) {
+		return statistics.timer(eventName);
+	}
+
+	@Override
+	public StatisticalDistribution findDuration(final String eventName) {
+		return statistics.findDuration(eventName);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshot() {
+		return statistics.getAllDurationsSnapshot();
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshotAndReset() {
+		return statistics.getAllDurationsSnapshotAndReset();
+	}
+
+	@Override
+	public void addOccurrence(final String eventName) {
+		addOccurrences(eventName, 1L);
+	}
+
+	@Override
+	public void addOccurrences(final String eventName, final long timesOccurred) {
+		statistics.addOccurrences(eventName, timesOccurred);
+		mark(eventName, meter(eventName), timesOccurred);
+	}
+
+	@Override
+	public Counter counter(final String eventName) {
+		final Counter counter = statistics.counter(eventName);
+		return new Counter() {
+			private volatile RateMeter meter = meter(eventName);
+
+			@Override
+			public void increment() {
+				increment(1L);
+			}
+
+			@Override
+			public void increment(final long timesOccurred) {
+				counter.increment(timesOccurred);
+				meter = mark(eventName, meter, timesOccurred);
+			}
+		};
+	}
+
+	@Override
+	public void addSample(final String eventName, final double value) {
+		statistics.addSample(eventName, value);
+	}
+
+	@Override
+	public SampleRecorder sampleRecorder(final String eventName) {
+		return statistics.sampleRecorder(eventName);
+	}
+
+	@Override
+	public StatisticalDistribution findSampleDistribution(final String eventName) {
+		return statistics.findSampleDistribution(eventName);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshot() {
+		return statistics.getAllSamplesSnapshot();
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshotAndReset() {
+		return statistics.getAllSamplesSnapshotAndReset();
+	}
+
+	@Override
+	public long findOccurrence(final String eventName) {
+		return statistics.findOccurrence(eventName);
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshot() {
+		return statistics.getAllOccurrencesSnapshot();
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshotAndReset() {
+		return statistics.getAllOccurrencesSnapshotAndReset();
+	}
+
+	@Override
+	public void addDistinct(final String name, final long value) {
+		statistics.addDistinct(name, value);
+	}
+
+	@Override
+	public void addDistinct(final String name, final String value) {
+		statistics.addDistinct(name, value);
+	}
+
+	@Override
+	public DistinctCount findDistinctCount(final String name) {
+		return statistics.findDistinctCount(name);
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshot() {
+		return statistics.getAllDistinctCountsSnapshot();
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshotAndReset() {
+		return statistics.getAllDistinctCountsSnapshotAndReset();
+	}
+
+	/**
+	 * Resets the delegate and the rates. Meters are cleared in place, so handles stay valid.
+	 */
+	@Override
+	public void reset() {
+		statistics.reset();
+		long now = clock.currentTimeMillis();
+		for (RateMeter meter : meters.values()) {
+			meter.clear(now);
+		}
+	}
+
+	@Override
+	public Snapshot getSnapshot() {
+		return withRates(statistics.getSnapshot());
+	}
+
+	/**
+	 * Resets the delegate, the rates are kept.
+	 */
+	@Override
+	public Snapshot getSnapshotAndReset() {
+		return withRates(statistics.getSnapshotAndReset());
+	}
+
+	private Snapshot withRates(final Snapshot snapshot) {
+		return new DetachedSnapshot(snapshot.getSamples(), snapshot.getOccurrences(), snapshot.getDurations(), getAllRatesSnapshot(),
+				snapshot.getDistinctCounts());
+	}
+
+	/**
+	 * @return the meter of the name, the meter of the overflow name if the limit rejects a new name
+	 */
+	private RateMeter meter(final String eventName) {
+		RateMeter meter = meters.get(eventName);
+		if (meter == null) {
+			String admitted = guard.admit(eventName);
+			if (!admitted.equals(eventName) && (meter = meters.get(admitted)) != null) {
+				return meter;
+			}
+			RateMeter created = new RateMeter(admitted, clock.currentTimeMillis());
+			meter = meters.putIfAbsent(admitted, created);
+			if (meter == null) {
+				return created;
+			}
+			guard.release(admitted);
+		}
+		return meter;
+	}
+
+	/**
+	 * Removes a detached meter, both the reader that detached it and writers that find it detached try.
+	 */
+	private void remove(final RateMeter meter) {
+		if (meters.remove(meter.name, meter)) {
+			guard.release(meter.name);
+		}
+	}
+
+	/**
+	 * @return the meter that took the occurrences, the replacement if the given one was detached
+	 */
+	private RateMeter mark(final String eventName, final RateMeter meter, final long timesOccurred) {
+		RateMeter current = meter;
+		long pending = timesOccurred;
+		while (!current.mark(pending)) {
+			remove(current);
+			pending = current.drain();
+			current = meter(eventName);
+		}
+		return current;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.windowedimpl;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sum that is spread over several cells so threads adding at the same time rarely update the same cell. Until two threads
+ * are seen adding at the same time all values go to a single base value, so names that are rarely recorded cost only a
+ * few bytes. The first failed update allocates the cells, from then on a thread adds to the cell picked by its id, the
+ * cells are a cache line apart to avoid false sharing.
+ */
+final class StripedLong {
+
+	/**
+	 * Number of longs between two cells, 64 bytes.
+	 */
+	private static final int PADDING = 8;
+	private static final int MAX_STRIPES = 64;
+	private static final int STRIPES = stripes();
+
+	private final AtomicLong base = new AtomicLong();
+	private volatile AtomicLongArray cells;
+
+	private static int stripes() {
+		int stripes = 1;
+		while (stripes < Runtime.getRuntime().availableProcessors() && stripes < MAX_STRIPES) {
+			stripes <<= 1;
+		}
+		return stripes;
+	}
+
+	void add(final long delta) {
+		AtomicLongArray current = cells;
+		if (current == null) {
+			long value = base.get();
+			if (base.compareAndSet(value, value + delta)) {
+				return;
+			}
+			current = inflate();
+		}
+		current.getAndAdd(index(), delta);
+	}
+
+	/**
+	 * Takes the sum and resets the cells to zero, values added concurrently end up in either this or the next sum.
+	 *
+	 * @return the sum of all values added since the previous call
+	 */
+	long sumThenReset() {
+		long sum = base.getAndSet(0L);
+		AtomicLongArray current = cells;
+		if (current != null) {
+			for (int i = 0; i < current.length(); i += PADDING) {
+				sum += current.getAndSet(i, 0L);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * @return whether contention was seen and the cells are allocated
+	 */
+	boolean isStriped() {
+		return cells != null;
+	}
+
+	/**
+	 * Allocates the cells once, they are never replaced so a value added to them is never lost. Values already in the base
+	 * stay there and are picked up by the next sum.
+	 */
+	private synchronized AtomicLongArray inflate() {
+		if (cells == null) {
+			cells = new AtomicLongArray(STRIPES * PADDING);
+		}
+		return cells;
+	}
+
+	private static int index() {
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return ((hash >>> 16) & (STRIPES - 1)) * PADDING;
+	}
+}
@@ -0,0 +1,480 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.windowedimpl;
+
+import nl.toefel.patan.api.*;
+import nl.toefel.patan.singlethreadedimpl.DistributionAccumulator;
+import nl.toefel.patan.singlethreadedimpl.DurationAccumulator;
+import nl.toefel.patan.singlethreadedimpl.ImmutableStatisticalDistribution;
+import nl.toefel.patan.singlethreadedimpl.OutcomeTimer;
+import nl.toefel.patan.singlethreadedimpl.SampleAccumulatorFactory;
+import nl.toefel.patan.singlethreadedimpl.TimerCache;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorator that records everything into the given statistics and additionally into a ring of fixed time buckets per
+ * name, so the values of a recent time window can be read without resetting anything. Any number of consumers can read
+ * windows, the regular methods and their xxxSnapshotAndReset() variants keep operating on the delegate only.
+ * <p>
+ * A window is rounded up to whole buckets and includes the current, partially filled, bucket. With buckets of 5 seconds
+ * the window of the last minute therefore covers between 55 and 60 seconds. Buckets are rotated lazily by the first
+ * write in a new bucket, recording never scans the ring. Reading a window merges only the buckets within it.
+ * <p>
+ * The ring of a name that was not recorded during the longest window is removed, at most once per longest window
+ * the rings are checked when a new ring is created or a window snapshot is taken. Handles of a removed name create a
+ * new ring on their next record.
+ * <p>
+ * Thread-safe when the delegate is thread-safe, every ring is guarded by its own monitor.
+ */
+public class WindowedStatistics implements Statistics {
+
+	public static final long ONE_MINUTE = 60 * 1000L;
+	public static final long FIVE_MINUTES = 5 * ONE_MINUTE;
+	public static final long FIFTEEN_MINUTES = 15 * ONE_MINUTE;
+
+	private final Statistics statistics;
+	private final long bucketMillis;
+	private final int bucketCount;
+	private final SampleAccumulatorFactory sampleAccumulators;
+	private final SampleAccumulatorFactory durationAccumulators;
+	private final Clock clock;
+
+	private final ConcurrentMap<String, CountRing> occurrenceRings = new ConcurrentHashMap<String, CountRing>();
+	private final ConcurrentMap<String, DistributionRing> sampleRings = new ConcurrentHashMap<String, DistributionRing>();
+	private final ConcurrentMap<String, DistributionRing> durationRings = new ConcurrentHashMap<String, DistributionRing>();
+
+	private final TimerCache timerCache = new TimerCache(this);
+
+	/** the time at which the rings are checked for expired names next */
+	private final AtomicLong nextSweepMillis = new AtomicLong();
+
+	/**
+	 * Keeps windows of up to 15 minutes in buckets of 5 seconds.
+	 *
+	 * @param statistics the statistics that keep the values since the last reset
+	 */
+	public WindowedStatistics(final Statistics statistics) {
+		this(statistics, 5000, 180, DistributionAccumulator.FACTORY, DurationAccumulator.FACTORY, Clock.SYSTEM);
+	}
+
+	/**
+	 * @param statistics the statistics that keep the values since the last reset
+	 * @param bucketMillis the width of a bucket, the granularity of windows
+	 * @param bucketCount the number of buckets per name, the longest window is bucketMillis * bucketCount
+	 * @param sampleAccumulators creates the accumulator of a sample name per bucket
+	 * @param durationAccumulators creates the accumulator of a duration name per bucket
+	 * @param clock source of the current time
+	 */
+	public WindowedStatistics(final Statistics statistics, final long bucketMillis, final int bucketCount,
+							  final SampleAccumulatorFactory sampleAccumulators, final SampleAccumulatorFactory durationAccumulators,
+							  final Clock clock) {
+		if (statistics == null || sampleAccumulators == null || durationAccumulators == null || clock == null) {
+			throw new IllegalArgumentException("statistics, accumulator factories and clock cannot be null");
+		}
+		if (bucketMillis <= 0 || bucketCount <= 0) {
+			throw new IllegalArgumentException("bucketMillis and bucketCount must be positive");
+		}
+		this.statistics = statistics;
+		this.bucketMillis = bucketMillis;
+		this.bucketCount = bucketCount;
+		this.sampleAccumulators = sampleAccumulators;
+		this.durationAccumulators = durationAccumulators;
+		this.clock = clock;
+	}
+
+	/**
+	 * @param eventName name of the occurrence
+	 * @param windowMillis length of the window, at most bucketMillis * bucketCount
+	 * @return the number of occurrences within the window
+	 */
+	public long findOccurrence(final String eventName, final long windowMillis) {
+		int bucketsBack = bucketsIn(windowMillis);
+		CountRing ring = occurrenceRings.get(eventName);
+		return ring == null ? 0L : ring.sum(clock.currentTimeMillis(), bucketsBack);
+	}
+
+	/**
+	 * @param eventName name of the sample
+	 * @param windowMillis length of the window, at most bucketMillis * bucketCount
+	 * @return the distribution of the samples within the window
+	 */
+	public StatisticalDistribution findSampleDistribution(final String eventName, final long windowMillis) {
+		return merge(sampleRings.get(eventName), bucketsIn(windowMillis));
+	}
+
+	/**
+	 * @param eventName name of the duration
+	 * @param windowMillis length of the window, at most bucketMillis * bucketCount
+	 * @return the distribution of the durations within the window
+	 */
+	public StatisticalDistribution findDuration(final String eventName, final long windowMillis) {
+		return merge(durationRings.get(eventName), bucketsIn(windowMillis));
+	}
+
+	/**
+	 * @param windowMillis length of the window, at most bucketMillis * bucketCount
+	 * @return the occurrences within the window of all names that occurred in it
+	 */
+	public SortedMap<String, Long> getAllOccurrencesSnapshot(final long windowMillis) {
+		int bucketsBack = bucketsIn(windowMillis);
+		long now = clock.currentTimeMillis();
+		sweepIfDue(now);
+		SortedMap<String, Long> snapshot = new TreeMap<String, Long>();
+		for (Map.Entry<String, CountRing> entry : occurrenceRings.entrySet()) {
+			long count = entry.getValue().sum(now, bucketsBack);
+			if (count != 0) {
+				snapshot.put(entry.getKey(), count);
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @param windowMillis length of the window, at most bucketMillis * bucketCount
+	 * @return the distributions within the window of all sample names that were recorded in it
+	 */
+	public SortedMap<String, StatisticalDistribution> getAllSamplesSnapshot(final long windowMillis) {
+		return mergeAll(sampleRings, bucketsIn(windowMillis));
+	}
+
+	/**
+	 * @param windowMillis length of the window, at most bucketMillis * bucketCount
+	 * @return the distributions within the window of all duration names that were recorded in it
+	 */
+	public SortedMap<String, StatisticalDistribution> getAllDurationsSnapshot(final long windowMillis) {
+		return mergeAll(durationRings, bucketsIn(windowMillis));
+	}
+
+	@Override
+	public Stopwatch startStopwatch() {
+		return statistics.startStopwatch();
+	}
+
+	@Override
+	public void recordElapsedTime(final String eventName, final Runnable runnable) {
+		timerCache.timer(eventName).recordElapsedTime(runnable);
+	}
+
+	@Override
+	public <T> T recordElapsedTime(final String eventName, final TimedTask<T> runnable) {
+		return timerCache.timer(eventName).recordElapsedTime(runnable);
+	}
+
+	@Override
+	public double recordElapsedTime(final String eventName, final Stopwatch stopwatch) {
+		double elapsedMillis = statistics.recordElapsedTime(eventName, stopwatch);
+		addSampleToWindow(durationRings, durationAccumulators, durationRing(eventName), eventName, elapsedMillis);
+		return elapsedMillis;
+	}
+
+	@Override
+	public long recordElapsedNanos(final String eventName, final long startNanos) {
+		long elapsedNanos = statistics.recordElapsedNanos(eventName, startNanos);
+		addNanosToWindow(durationRing(eventName), eventName, elapsedNanos);
+		return elapsedNanos;
+	}
+
+	@Override
+	public Timer timer(final String eventName) {
+		final Timer timer = statistics.timer(eventName);
+		return new OutcomeTimer(this, eventName) {
+			private DistributionRing ring = durationRing(eventName);
+
+			@Override
+			public double recordElapsedTime(final Stopwatch stopwatch) {
+				double elapsedMillis = timer.recordElapsedTime(stopwatch);
+				ring = addSampleToWindow(durationRings, durationAccumulators, ring, eventName, elapsedMillis);
+				return elapsedMillis;
+			}
+		};
+	}
+
+	@Override
+	public StatisticalDistribution findDuration(final String eventName) {
+		return statistics.findDuration(eventName);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshot() {
+		return statistics.getAllDurationsSnapshot();
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllDurationsSnapshotAndReset() {
+		return statistics.getAllDurationsSnapshotAndReset();
+	}
+
+	@Override
+	public void addOccurrence(final String eventName) {
+		addOccurrences(eventName, 1L);
+	}
+
+	@Override
+	public void addOccurrences(final String eventName, final long timesOccurred) {
+		statistics.addOccurrences(eventName, timesOccurred);
+		addOccurrencesToWindow(occurrenceRing(eventName), eventName, timesOccurred);
+	}
+
+	@Override
+	public Counter counter(final String eventName) {
+		final Counter counter = statistics.counter(eventName);
+		return new Counter() {
+			private CountRing ring = occurrenceRing(eventName);
+
+			@Override
+			public void increment() {
+				increment(1L);
+			}
+
+			@Override
+			public void increment(final long timesOccurred) {
+				counter.increment(timesOccurred);
+				ring = addOccurrencesToWindow(ring, eventName, timesOccurred);
+			}
+		};
+	}
+
+	@Override
+	public void addSample(final String eventName, final double value) {
+		statistics.addSample(eventName, value);
+		addSampleToWindow(sampleRings, sampleAccumulators, sampleRing(eventName), eventName, value);
+	}
+
+	@Override
+	public SampleRecorder sampleRecorder(final String eventName) {
+		final SampleRecorder recorder = statistics.sampleRecorder(eventName);
+		return new SampleRecorder() {
+			private DistributionRing ring = sampleRing(eventName);
+
+			@Override
+			public void record(final double value) {
+				recorder.record(value);
+				ring = addSampleToWindow(sampleRings, sampleAccumulators, ring, eventName, value);
+			}
+		};
+	}
+
+	@Override
+	public StatisticalDistribution findSampleDistribution(final String eventName) {
+		return statistics.findSampleDistribution(eventName);
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshot() {
+		return statistics.getAllSamplesSnapshot();
+	}
+
+	@Override
+	public Map<String, StatisticalDistribution> getAllSamplesSnapshotAndReset() {
+		return statistics.getAllSamplesSnapshotAndReset();
+	}
+
+	@Override
+	public long findOccurrence(final String eventName) {
+		return statistics.findOccurrence(eventName);
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshot() {
+		return statistics.getAllOccurrencesSnapshot();
+	}
+
+	@Override
+	public Map<String, Long> getAllOccurrencesSnapshotAndReset() {
+		return statistics.getAllOccurrencesSnapshotAndReset();
+	}
+
+	@Override
+	public void addDistinct(final String name, final long value) {
+		statistics.addDistinct(name, value);
+	}
+
+	@Override
+	public void addDistinct(final String name, final String value) {
+		statistics.addDistinct(name, value);
+	}
+
+	@Override
+	public DistinctCount findDistinctCount(final String name) {
+		return statistics.findDistinctCount(name);
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshot() {
+		return statistics.getAllDistinctCountsSnapshot();
+	}
+
+	@Override
+	public Map<String, DistinctCount> getAllDistinctCountsSnapshotAndReset() {
+		return statistics.getAllDistinctCountsSnapshotAndReset();
+	}
+
+	/**
+	 * Resets the delegate and clears all windows. Rings are cleared in place, so handles stay valid.
+	 */
+	@Override
+	public void reset() {
+		statistics.reset();
+		for (CountRing ring : occurrenceRings.values()) {
+			ring.clear();
+		}
+		for (DistributionRing ring : sampleRings.values()) {
+			ring.clear();
+		}
+		for (DistributionRing ring : durationRings.values()) {
+			ring.clear();
+		}
+	}
+
+	@Override
+	public Snapshot getSnapshot() {
+		return statistics.getSnapshot();
+	}
+
+	@Override
+	public Snapshot getSnapshotAndReset() {
+		return statistics.getSnapshotAndReset();
+	}
+
+	private int bucketsIn(final long windowMillis) {
+		if (windowMillis <= 0 || windowMillis > bucketMillis * bucketCount) {
+			throw new IllegalArgumentException("window must be between 1 and " + bucketMillis * bucketCount + " millis but was " + windowMillis);
+		}
+		return (int) ((windowMillis + bucketMillis - 1) / bucketMillis);
+	}
+
+	private StatisticalDistribution merge(final DistributionRing ring, final int bucketsBack) {
+		return ring == null ? ImmutableStatisticalDistribution.createEmpty() : ring.merge(clock.currentTimeMillis(), bucketsBack);
+	}
+
+	private SortedMap<String, StatisticalDistribution> mergeAll(final ConcurrentMap<String, DistributionRing> rings, final int bucketsBack) {
+		long now = clock.currentTimeMillis();
+		sweepIfDue(now);
+		SortedMap<String, StatisticalDistribution> snapshot = new TreeMap<String, StatisticalDistribution>();
+		for (Map.Entry<String, DistributionRing> entry : rings.entrySet()) {
+			StatisticalDistribution distribution = entry.getValue().merge(now, bucketsBack);
+			if (distribution.getSampleCount() != 0) {
+				snapshot.put(entry.getKey(), distribution);
+			}
+		}
+		return snapshot;
+	}
+
+	private CountRing occurrenceRing(final String eventName) {
+		CountRing ring = occurrenceRings.get(eventName);
+		if (ring == null) {
+			sweepIfDue(clock.currentTimeMillis());
+			CountRing created = new CountRing(bucketMillis, bucketCount);
+			ring = occurrenceRings.putIfAbsent(eventName, created);
+			ring = ring == null ? created : ring;
+		}
+		return ring;
+	}
+
+	private DistributionRing sampleRing(final String eventName) {
+		return distributionRing(sampleRings, sampleAccumulators, eventName);
+	}
+
+	private DistributionRing durationRing(final String eventName) {
+		return distributionRing(durationRings, durationAccumulators, eventName);
+	}
+
+	private DistributionRing distributionRing(final ConcurrentMap<String, DistributionRing> rings, final SampleAccumulatorFactory factory, final String eventName) {
+		DistributionRing ring = rings.get(eventName);
+		if (ring == null) {
+			sweepIfDue(clock.currentTimeMillis());
+			DistributionRing created = new DistributionRing(factory, eventName, bucketMillis, bucketCount);
+			ring = rings.putIfAbsent(eventName, created);
+			ring = ring == null ? created : ring;
+		}
+		return ring;
+	}
+
+	/**
+	 * @return the ring that took the occurrences, a new ring if the given one was retired
+	 */
+	private CountRing addOccurrencesToWindow(final CountRing ring, final String eventName, final long timesOccurred) {
+		long now = clock.currentTimeMillis();
+		CountRing current = ring;
+		while (!current.add(now, timesOccurred)) {
+			occurrenceRings.remove(eventName, current);
+			current = occurrenceRing(eventName);
+		}
+		return current;
+	}
+
+	/**
+	 * @return the ring that took the sample, a new ring if the given one was retired
+	 */
+	private DistributionRing addSampleToWindow(final ConcurrentMap<String, DistributionRing> rings, final SampleAccumulatorFactory factory,
+											   final DistributionRing ring, final String eventName, final double value) {
+		long now = clock.currentTimeMillis();
+		DistributionRing current = ring;
+		while (!current.add(now, value)) {
+			rings.remove(eventName, current);
+			current = distributionRing(rings, factory, eventName);
+		}
+		return current;
+	}
+
+	private void addNanosToWindow(final DistributionRing ring, final String eventName, final long elapsedNanos) {
+		long now = clock.currentTimeMillis();
+		DistributionRing current = ring;
+		while (!current.addElapsedNanos(now, elapsedNanos)) {
+			durationRings.remove(eventName, current);
+			current = durationRing(eventName);
+		}
+	}
+
+	/**
+	 * Removes the rings of names that were not recorded during the longest window, at most once per longest window.
+	 */
+	private void sweepIfDue(final long nowMillis) {
+		long due = nextSweepMillis.get();
+		if (nowMillis < due || !nextSweepMillis.compareAndSet(due, nowMillis + bucketMillis * bucketCount)) {
+			return;
+		}
+		for (Map.Entry<String, CountRing> entry : occurrenceRings.entrySet()) {
+			if (entry.getValue().retireIfExpired(nowMillis)) {
+				occurrenceRings.remove(entry.getKey(), entry.getValue());
+			}
+		}
+		sweep(sampleRings, nowMillis);
+		sweep(durationRings, nowMillis);
+	}
+
+	private static void sweep(final ConcurrentMap<String, DistributionRing> rings, final long nowMillis) {
+		for (Map.Entry<String, DistributionRing> entry : rings.entrySet()) {
+			if (entry.getValue().retireIfExpired(nowMillis)) {
+				rings.remove(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * @return the number of names that have a ring
+	 */
+	int ringCount() {
+		return occurrenceRings.size() + sampleRings.size() + durationRings.size();
+	}
+}
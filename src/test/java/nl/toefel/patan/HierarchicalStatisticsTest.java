@@ -0,0 +1,120 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan;
+
+import nl.toefel.patan.api.Counter;
+import nl.toefel.patan.api.HierarchicalStatistics;
+import nl.toefel.patan.api.SampleRecorder;
+import nl.toefel.patan.api.Snapshot;
+import nl.toefel.patan.singlethreadedimpl.CardinalityLimit;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HierarchicalStatisticsTest {
+
+    private HierarchicalStatistics statistics;
+
+    @Before
+    public void setUp() {
+        statistics = (HierarchicalStatistics) StatisticsFactory.createThreadsafeStatistics();
+        statistics.addOccurrence("jms.message.received");
+        statistics.addOccurrences("jms.message.sent", 2);
+        statistics.addOccurrence("jmx.calls");
+        statistics.addOccurrence("http.requests");
+        statistics.addSample("jms.queue.depth", 10);
+        statistics.addSample("http.payload.size", 100);
+        statistics.recordElapsedNanos("jms.message.received.duration", System.nanoTime());
+        statistics.addDistinct("jms.senders", 1);
+        statistics.addDistinct("http.clients", 1);
+    }
+
+    @Test
+    public void testSnapshotOfPrefix() {
+        Snapshot snapshot = statistics.getSnapshot("jms.");
+        assertThat(snapshot.getOccurrences()).containsOnlyKeys("jms.message.received", "jms.message.sent");
+        assertThat(snapshot.findOccurrence("jms.message.sent")).isEqualTo(2);
+        assertThat(snapshot.getSamples()).containsOnlyKeys("jms.queue.depth");
+        assertThat(snapshot.getDurations()).containsOnlyKeys("jms.message.received.duration");
+        assertThat(snapshot.getDistinctCounts()).containsOnlyKeys("jms.senders");
+        assertThat(statistics.getSnapshot().getOccurrences()).hasSize(4);
+    }
+
+    @Test
+    public void testPrefixIsNotLimitedToSegments() {
+        assertThat(statistics.getSnapshot("jm").getOccurrences()).containsOnlyKeys("jms.message.received", "jms.message.sent", "jmx.calls");
+        assertThat(statistics.getSnapshot("").getOccurrences()).hasSize(4);
+        assertThat(statistics.getSnapshot("ftp.").getOccurrences()).isEmpty();
+    }
+
+    @Test
+    public void testSnapshotAndResetOfPrefix() {
+        Snapshot removed = statistics.getSnapshotAndReset("jms.");
+        assertThat(removed.getOccurrences()).containsOnlyKeys("jms.message.received", "jms.message.sent");
+        assertThat(removed.getSamples()).containsOnlyKeys("jms.queue.depth");
+        assertThat(removed.getDistinctCounts()).containsOnlyKeys("jms.senders");
+
+        Snapshot remaining = statistics.getSnapshot();
+        assertThat(remaining.getOccurrences()).containsOnlyKeys("jmx.calls", "http.requests");
+        assertThat(remaining.getSamples()).containsOnlyKeys("http.payload.size");
+        assertThat(remaining.getDurations()).isEmpty();
+        assertThat(remaining.getDistinctCounts()).containsOnlyKeys("http.clients");
+        assertThat(statistics.findOccurrence("jms.message.sent")).isZero();
+    }
+
+    @Test
+    public void testHandlesRecordAfterResetOfPrefix() {
+        Counter counter = statistics.counter("jms.message.sent");
+        SampleRecorder recorder = statistics.sampleRecorder("jms.queue.depth");
+        counter.increment();
+        recorder.record(20);
+        statistics.reset("jms.");
+        counter.increment();
+        recorder.record(30);
+        assertThat(statistics.findOccurrence("jms.message.sent")).isEqualTo(1);
+        assertThat(statistics.findSampleDistribution("jms.queue.depth").getSampleCount()).isEqualTo(1);
+        assertThat(statistics.findSampleDistribution("jms.queue.depth").getMaximum()).isEqualTo(30d);
+        assertThat(statistics.getSnapshot("jms.").getOccurrences()).containsOnlyKeys("jms.message.sent");
+    }
+
+    @Test
+    public void testResetOfPrefixReleasesCardinality() {
+        CardinalityLimit limit = new CardinalityLimit(2, "overflow");
+        HierarchicalStatistics limited = (HierarchicalStatistics) StatisticsFactory.createThreadsafeStatistics(limit);
+        limited.addOccurrence("a.1");
+        limited.addOccurrence("a.2");
+        limited.reset("a.");
+        limited.addOccurrence("b.1");
+        limited.addOccurrence("b.2");
+        assertThat(limited.getSnapshot().getOccurrences()).containsOnlyKeys("b.1", "b.2");
+        assertThat(limit.getRejectedCount()).isZero();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullPrefix() {
+        statistics.getSnapshot(null);
+    }
+
+    @Test
+    public void testOnlyHierarchicalStatisticsAreGuardedAsHierarchical() {
+        assertThat(statistics).isInstanceOf(SynchronizedHierarchicalStatistics.class);
+        assertThat(new SynchronizedStatistics(StatisticsFactory.createConcurrentStatistics())).isNotInstanceOf(HierarchicalStatistics.class);
+    }
+}
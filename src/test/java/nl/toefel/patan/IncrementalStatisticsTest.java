@@ -0,0 +1,160 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan;
+
+import nl.toefel.patan.api.HierarchicalStatistics;
+import nl.toefel.patan.api.IncrementalSnapshot;
+import nl.toefel.patan.api.IncrementalStatistics;
+import nl.toefel.patan.api.SnapshotToken;
+import nl.toefel.patan.api.StatisticalDistribution;
+import nl.toefel.patan.singlethreadedimpl.SingleThreadedStatisticsFacade;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IncrementalStatisticsTest {
+
+    protected IncrementalStatistics statistics;
+
+    protected IncrementalStatistics createStatistics() {
+        return new SynchronizedIncrementalStatistics(StatisticsFactory.createDenseStatistics());
+    }
+
+    @Before
+    public void setUp() {
+        statistics = createStatistics();
+        statistics.addOccurrence("jms.message.received");
+        statistics.addOccurrences("jms.message.sent", 2);
+        statistics.addSample("jms.queue.depth", 10);
+        statistics.addSample("http.payload.size", 100);
+        statistics.recordElapsedNanos("jms.message.received.duration", System.nanoTime());
+        statistics.addDistinct("jms.senders", 1);
+        statistics.addDistinct("http.clients", 1);
+    }
+
+    @Test
+    public void testFirstSnapshotIsComplete() {
+        IncrementalSnapshot snapshot = statistics.getIncrementalSnapshot();
+        assertThat(snapshot.isComplete()).isTrue();
+        assertThat(snapshot.getOccurrences()).containsOnlyKeys("jms.message.received", "jms.message.sent");
+        assertThat(snapshot.getSamples()).containsOnlyKeys("jms.queue.depth", "http.payload.size");
+        assertThat(snapshot.getDurations()).containsOnlyKeys("jms.message.received.duration");
+        assertThat(snapshot.getDistinctCounts()).containsOnlyKeys("jms.senders", "http.clients");
+    }
+
+    @Test
+    public void testOnlyChangedNames() {
+        SnapshotToken token = statistics.getIncrementalSnapshot().getToken();
+        statistics.addOccurrence("jms.message.sent");
+        statistics.addSample("jms.queue.depth", 20);
+        statistics.addDistinct("http.clients", 2);
+
+        IncrementalSnapshot changes = statistics.getChangedSince(token);
+        assertThat(changes.isComplete()).isFalse();
+        assertThat(changes.getOccurrences()).containsOnlyKeys("jms.message.sent");
+        assertThat(changes.findOccurrence("jms.message.sent")).isEqualTo(3);
+        assertThat(changes.getSamples()).containsOnlyKeys("jms.queue.depth");
+        assertThat(changes.findSampleDistribution("jms.queue.depth").getSampleCount()).isEqualTo(2);
+        assertThat(changes.getDurations()).isEmpty();
+        assertThat(changes.getDistinctCounts()).containsOnlyKeys("http.clients");
+
+        assertThat(statistics.getChangedSince(changes.getToken()).getOccurrences()).isEmpty();
+    }
+
+    @Test
+    public void testTokenCanBeReused() {
+        SnapshotToken token = statistics.getIncrementalSnapshot().getToken();
+        statistics.addOccurrence("jms.message.sent");
+        statistics.getChangedSince(token);
+        statistics.addOccurrence("jms.message.received");
+
+        assertThat(statistics.getChangedSince(token).getOccurrences()).containsOnlyKeys("jms.message.sent", "jms.message.received");
+    }
+
+    @Test
+    public void testResetMakesNextSnapshotComplete() {
+        SnapshotToken token = statistics.getIncrementalSnapshot().getToken();
+        statistics.getAllSamplesSnapshotAndReset();
+        statistics.addSample("http.payload.size", 200);
+
+        IncrementalSnapshot changes = statistics.getChangedSince(token);
+        assertThat(changes.isComplete()).isTrue();
+        assertThat(changes.getSamples()).containsOnlyKeys("http.payload.size");
+        assertThat(changes.getOccurrences()).containsOnlyKeys("jms.message.received", "jms.message.sent");
+        assertThat(statistics.getChangedSince(changes.getToken()).isComplete()).isFalse();
+    }
+
+    @Test
+    public void testResetBeforeTokenIsNotReported() {
+        statistics.reset();
+        SnapshotToken token = statistics.getIncrementalSnapshot().getToken();
+        statistics.addDistinct("http.clients", 1);
+
+        IncrementalSnapshot changes = statistics.getChangedSince(token);
+        assertThat(changes.isComplete()).isFalse();
+        assertThat(changes.getDistinctCounts()).containsOnlyKeys("http.clients");
+    }
+
+    @Test
+    public void testConsumerReconstructsFullSnapshot() {
+        IncrementalSnapshot snapshot = statistics.getIncrementalSnapshot();
+        Map<String, Long> occurrences = new TreeMap<String, Long>(snapshot.getOccurrences());
+        Map<String, StatisticalDistribution> samples = new TreeMap<String, StatisticalDistribution>(snapshot.getSamples());
+        Random random = new Random(3);
+        for (int export = 0; export < 20; export++) {
+            for (int i = 0; i < 10; i++) {
+                statistics.addOccurrence("name." + random.nextInt(100));
+                statistics.addSample("name." + random.nextInt(100), i);
+            }
+            snapshot = statistics.getChangedSince(snapshot.getToken());
+            if (snapshot.isComplete()) {
+                occurrences.clear();
+                samples.clear();
+            }
+            occurrences.putAll(snapshot.getOccurrences());
+            samples.putAll(snapshot.getSamples());
+        }
+        assertThat(occurrences).isEqualTo(statistics.getAllOccurrencesSnapshot());
+        assertThat(samples.toString()).isEqualTo(statistics.getAllSamplesSnapshot().toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTokenOfOtherStatistics() {
+        SnapshotToken token = StatisticsFactory.createDenseStatistics().getIncrementalSnapshot().getToken();
+        statistics.getChangedSince(token);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullToken() {
+        statistics.getChangedSince(null);
+    }
+
+    @Test
+    public void testOnlyIncrementalStatisticsAreGuardedAsIncremental() {
+        assertThat(new SynchronizedStatistics(StatisticsFactory.createDenseStatistics())).isNotInstanceOf(IncrementalStatistics.class);
+        assertThat(new SynchronizedHierarchicalStatistics(new SingleThreadedStatisticsFacade())).isNotInstanceOf(IncrementalStatistics.class);
+        assertThat(StatisticsFactory.createThreadsafeStatistics()).isInstanceOf(IncrementalStatistics.class)
+                .isInstanceOf(HierarchicalStatistics.class);
+    }
+}
@@ -94,6 +94,19 @@ public abstract class StatisticsApiTestBase {
 		assertClose("testRecordElapsedTime", 1d, 100d, elapsedMillis);
 	}
 
+	@Test
+	public void testRecordElapsedNanos() {
+		long startNanos = System.nanoTime();
+		TimingHelper.expensiveMethodTakingMillis(100);
+		long elapsedNanos = stats.recordElapsedNanos("test.duration", startNanos);
+
+		StatisticalDistribution record = stats.findDuration("test.duration");
+		assertThat(record.getMinimum())
+				.isEqualTo(elapsedNanos / 1e6)
+				.isEqualTo(record.getMaximum());
+		assertRecordHasParametersWithin(record, 1, 100, 100, 100, 20);
+	}
+
 	// This test asserts ForeverRunningStopwatch.elapsedNanos() is safe for numerical overflow.
 	@Test
 	public void testNanosOverflowOK() {
@@ -240,6 +253,107 @@ public abstract class StatisticsApiTestBase {
 		assertThat(stats.findOccurrence("test.occurrences")).isEqualTo(5);
 	}
 
+	@Test
+	public void testCounterHandle() {
+		Counter counter = stats.counter("test.occurrence");
+		assertThat(stats.getAllOccurrencesSnapshot()).as("no counter before first increment").isEmpty();
+		counter.increment();
+		counter.increment(4);
+		stats.addOccurrence("test.occurrence");
+		assertThat(stats.findOccurrence("test.occurrence")).isEqualTo(6);
+	}
+
+	@Test
+	public void testCounterHandleValidAfterReset() {
+		Counter counter = stats.counter("test.occurrence");
+		counter.increment();
+		assertThat(stats.getSnapshotAndReset().findOccurrence("test.occurrence")).isEqualTo(1);
+		counter.increment();
+		stats.reset();
+		counter.increment(2);
+		assertThat(stats.findOccurrence("test.occurrence")).isEqualTo(2);
+	}
+
+	@Test
+	public void testSampleRecorderHandle() {
+		SampleRecorder recorder = stats.sampleRecorder("test.sample");
+		recorder.record(5);
+		recorder.record(15);
+		assertRecordHasParametersWithin(stats.findSampleDistribution("test.sample"), 2, 5, 15, 10, 0);
+	}
+
+	@Test
+	public void testSampleRecorderHandleValidAfterReset() {
+		SampleRecorder recorder = stats.sampleRecorder("test.sample");
+		recorder.record(5);
+		assertThat(stats.getAllSamplesSnapshotAndReset().get("test.sample").getSampleCount()).isEqualTo(1);
+		recorder.record(7);
+		assertRecordHasExactParameters(stats.findSampleDistribution("test.sample"), 1, 7, 7, 7, 0, Double.NaN);
+	}
+
+	@Test
+	public void testTimerHandle() {
+		Timer timer = stats.timer("test.duration");
+		double elapsedMillis = timer.recordElapsedTime(stats.startStopwatch());
+		stats.reset();
+		timer.recordElapsedTime(stats.startStopwatch());
+		StatisticalDistribution record = stats.findDuration("test.duration");
+		assertThat(record.getSampleCount()).isEqualTo(1);
+		assertThat(elapsedMillis).isLessThan(100);
+	}
+
+	@Test
+	public void testTimerHandleRecordsOutcomes() {
+		Timer timer = stats.timer("test.duration");
+		timer.recordElapsedTime(new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+		String retValue = timer.recordElapsedTime(new TimedTask<String>() {
+			@Override
+			public String get() {
+				return "hi";
+			}
+		});
+		try {
+			timer.recordElapsedTime(new Runnable() {
+				@Override
+				public void run() {
+					throw new IllegalArgumentException();
+				}
+			});
+			fail("should raise exception");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertThat(retValue).isEqualTo("hi");
+		assertThat(stats.getAllDurationsSnapshot()).containsOnlyKeys("test.duration.ok", "test.duration.failed");
+		assertThat(stats.findDuration("test.duration.ok").getSampleCount()).isEqualTo(2);
+		assertThat(stats.findDuration("test.duration.failed").getSampleCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testTimerHandleKeepsNanosPrecision() {
+		Stopwatch stopwatch = new Stopwatch() {
+			@Override
+			public double elapsedMillis() {
+				throw new UnsupportedOperationException("the timer must read the nanoseconds");
+			}
+
+			@Override
+			public long elapsedNanos() {
+				return 1234567L;
+			}
+		};
+		double elapsedMillis = stats.timer("test.duration").recordElapsedTime(stopwatch);
+		StatisticalDistribution record = stats.findDuration("test.duration");
+		assertThat(elapsedMillis).isEqualTo(1.234567);
+		assertThat(record.getSampleCount()).isEqualTo(1);
+		assertThat(record.getMinimum()).isEqualTo(1.234567);
+		assertThat(record.getMaximum()).isEqualTo(1.234567);
+	}
+
 	@Test
 	public void testAddSample() {
 		stats.addSample("test.sample", 5);
@@ -393,4 +507,35 @@ public abstract class StatisticsApiTestBase {
 		assertThat(occurrences).isNotNull().containsOnlyKeys("test.test").containsValues(1L);
 		assertThat(stats.getAllOccurrencesSnapshot()).isNotNull().isEmpty();
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testAddDistinct() {
+		for (int i = 0; i < 1000; i++) {
+			stats.addDistinct("test.users", i % 100);
+			stats.addDistinct("test.tenants", "tenant-" + (i % 10));
+		}
+		assertThat(stats.findDistinctCount("test.users").getEstimate()).isBetween(98L, 102L);
+		assertThat(stats.findDistinctCount("test.tenants").getEstimate()).isEqualTo(10);
+		assertThat(stats.findDistinctCount("test.unknown").getEstimate()).isZero();
+		Snapshot snapshot = stats.getSnapshot();
+		assertThat(snapshot.getDistinctCounts()).containsOnlyKeys("test.users", "test.tenants");
+		assertThat(snapshot.findDistinctCount("test.users").getEstimate()).isBetween(98L, 102L);
+	}
+
+	@Test
+	public void testGetAllDistinctCountsSnapshotAndReset() {
+		stats.addDistinct("test.users", 1);
+		stats.addDistinct("test.users", 2);
+		Map<String, DistinctCount> first = stats.getAllDistinctCountsSnapshotAndReset();
+		assertThat(first).containsOnlyKeys("test.users");
+		assertThat(stats.getAllDistinctCountsSnapshot()).isEmpty();
+		stats.addDistinct("test.users", 2);
+		stats.addDistinct("test.users", 3);
+		DistinctCount second = stats.getSnapshotAndReset().findDistinctCount("test.users");
+		assertThat(second.getEstimate()).isEqualTo(2);
+		assertThat(first.get("test.users").newMergedWith(second).getEstimate()).isEqualTo(3);
+		stats.addDistinct("test.users", 4);
+		stats.reset();
+		assertEmpty(stats.getSnapshot());
+	}
+}
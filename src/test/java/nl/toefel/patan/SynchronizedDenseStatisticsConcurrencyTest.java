@@ -0,0 +1,102 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan;
+
+import nl.toefel.patan.api.Counter;
+import nl.toefel.patan.api.SampleRecorder;
+import nl.toefel.patan.api.Statistics;
+import nl.toefel.patan.api.Timer;
+import nl.toefel.patan.concurrencytest.ConcurrencyTestBase;
+import nl.toefel.patan.singlethreadedimpl.DenseStatistics;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SynchronizedDenseStatisticsConcurrencyTest extends ConcurrencyTestBase {
+    private static final int THREADS = 8;
+    private static final int NAMES = 2000;
+
+    @Override
+    protected Statistics createStatistics() {
+        return new SynchronizedIncrementalStatistics(new DenseStatistics());
+    }
+
+    @Test
+    public void testConcurrencyOneThreadEach() {
+        runConcurrencyTest(1, 50000);
+    }
+
+    @Test
+    public void testConcurrencyTenThreadsEach() {
+        runConcurrencyTest(10, 30000);
+    }
+
+    @Test
+    public void testConcurrencyHundredThreadsEach() {
+        runConcurrencyTest(100, 20000);
+    }
+
+    @Test
+    public void testResetTenWritersTenResetters() {
+        runResetTest(10, 10, 100000, 25000);
+    }
+
+    @Test
+    public void testHandlesOfNewNamesAreResolvedConcurrently() throws InterruptedException {
+        final Statistics statistics = createStatistics();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; t++) {
+            final String prefix = "t" + t + ".n";
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int n = 0; n < NAMES; n++) {
+                            Counter counter = statistics.counter(prefix + n);
+                            SampleRecorder recorder = statistics.sampleRecorder(prefix + n);
+                            Timer timer = statistics.timer(prefix + n);
+                            counter.increment();
+                            recorder.record(n);
+                            timer.recordElapsedTime(statistics.startStopwatch());
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(failure.get()).isNull();
+        Map<String, Long> occurrences = statistics.getAllOccurrencesSnapshot();
+        assertThat(occurrences).hasSize(THREADS * NAMES);
+        assertThat(occurrences.values()).containsOnly(1L);
+        assertThat(statistics.getAllSamplesSnapshot()).hasSize(THREADS * NAMES);
+        assertThat(statistics.getAllDurationsSnapshot()).hasSize(THREADS * NAMES);
+    }
+}
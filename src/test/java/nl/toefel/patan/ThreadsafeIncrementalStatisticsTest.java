@@ -0,0 +1,66 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan;
+
+import nl.toefel.patan.api.HierarchicalStatistics;
+import nl.toefel.patan.api.IncrementalSnapshot;
+import nl.toefel.patan.api.IncrementalStatistics;
+import nl.toefel.patan.api.SnapshotToken;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the incremental snapshot tests against the thread-safe statistics of the factory.
+ */
+public class ThreadsafeIncrementalStatisticsTest extends IncrementalStatisticsTest {
+
+    @Override
+    protected IncrementalStatistics createStatistics() {
+        return (IncrementalStatistics) StatisticsFactory.createThreadsafeStatistics();
+    }
+
+    @Test
+    public void testHandlesStampTheirNames() {
+        SnapshotToken token = statistics.getIncrementalSnapshot().getToken();
+        statistics.counter("jms.message.sent").increment();
+        statistics.sampleRecorder("jms.queue.depth").record(30);
+        statistics.timer("jms.message.received.duration").recordElapsedTime(statistics.startStopwatch());
+
+        IncrementalSnapshot changes = statistics.getChangedSince(token);
+        assertThat(changes.isComplete()).isFalse();
+        assertThat(changes.getOccurrences()).containsOnlyKeys("jms.message.sent");
+        assertThat(changes.getSamples()).containsOnlyKeys("jms.queue.depth");
+        assertThat(changes.getDurations()).containsOnlyKeys("jms.message.received.duration");
+    }
+
+    @Test
+    public void testResetOfPrefixMakesNextSnapshotComplete() {
+        SnapshotToken token = statistics.getIncrementalSnapshot().getToken();
+        ((HierarchicalStatistics) statistics).reset("http.");
+
+        IncrementalSnapshot changes = statistics.getChangedSince(token);
+        assertThat(changes.isComplete()).isTrue();
+        assertThat(changes.getSamples()).containsOnlyKeys("jms.queue.depth");
+        assertThat(changes.getDistinctCounts()).containsOnlyKeys("jms.senders");
+
+        ((HierarchicalStatistics) statistics).reset("unknown.");
+        assertThat(statistics.getChangedSince(changes.getToken()).isComplete()).isFalse();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan.asyncimpl;
+
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.Statistics;
+import nl.toefel.patan.concurrencytest.ConcurrencyTestBase;
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncStatisticsConcurrencyTest extends ConcurrencyTestBase {
+    private int bufferSize = 65536;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.SYNCHRONOUS;
+    private AsyncStatistics created;
+
+    @Override
+    protected Statistics createStatistics() {
+        created = StatisticsFactory.createAsyncStatistics(bufferSize, overflowPolicy);
+        return created;
+    }
+
+    @After
+    public void shutdown() {
+        if (created != null) {
+            created.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrencyTenThreadsEachSmallBlockingBuffer() {
+        bufferSize = 16;
+        overflowPolicy = OverflowPolicy.BLOCK;
+        runConcurrencyTest(10, 30000);
+    }
+
+    @Test
+    public void testConcurrencyOneThreadEach() {
+        runConcurrencyTest(1, 50000);
+    }
+
+    @Test
+    public void testConcurrencyTwoThreadEach() {
+        runConcurrencyTest(2, 40000);
+    }
+
+    @Test
+    public void testConcurrencyTenThreadsEach() {
+        runConcurrencyTest(10, 30000);
+    }
+
+    @Test
+    public void testConcurrencyHundredThreadsEach() {
+        runConcurrencyTest(100, 20000);
+    }
+
+    @Test
+    public void testConcurrencyFiveHundredThreadsEach() {
+        runConcurrencyTest(500, 10000);
+    }
+
+    @Test
+    public void testResetTenWritersTenResetters() {
+        runResetTest(10, 10, 100000, 25000);
+    }
+
+    @Test
+    public void testResetFiftyWritersTenResetters() {
+        runResetTest(50, 10, 100000, 25000);
+    }
+}
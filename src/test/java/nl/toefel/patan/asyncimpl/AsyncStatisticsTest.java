@@ -0,0 +1,121 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan.asyncimpl;
+
+import nl.toefel.patan.StatisticsApiTestBase;
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.Statistics;
+import nl.toefel.patan.singlethreadedimpl.SingleThreadedStatisticsFacade;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncStatisticsTest extends StatisticsApiTestBase {
+    private AsyncStatistics created;
+
+    @Override
+    protected Statistics createStatistics() {
+        created = StatisticsFactory.createAsyncStatistics();
+        return created;
+    }
+
+    @After
+    public void shutdown() {
+        created.shutdown();
+    }
+
+    @Test
+    public void testBufferSizeRoundedUpToPowerOfTwo() {
+        AsyncStatistics stats = new AsyncStatistics(1000, OverflowPolicy.DROP);
+        stats.shutdown();
+        assertThat(stats.getBufferSize()).isEqualTo(1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBufferSize() {
+        new AsyncStatistics(0, OverflowPolicy.DROP);
+    }
+
+    @Test
+    public void testDropWhenFull() {
+        AsyncStatistics stats = new AsyncStatistics(4, OverflowPolicy.DROP);
+        stats.shutdown(); // nothing drains the buffer anymore
+        for (int i = 0; i < 10; i++) {
+            stats.addOccurrence("event");
+        }
+        assertThat(stats.getDroppedRecords()).isEqualTo(6);
+        assertThat(stats.findOccurrence("event")).isEqualTo(4);
+    }
+
+    @Test
+    public void testSynchronousWhenFull() {
+        AsyncStatistics stats = new AsyncStatistics(4, OverflowPolicy.SYNCHRONOUS);
+        stats.shutdown();
+        for (int i = 0; i < 10; i++) {
+            stats.addSample("sample", i);
+        }
+        assertThat(stats.getDroppedRecords()).isEqualTo(0);
+        assertThat(stats.findSampleDistribution("sample").getSampleCount()).isEqualTo(10);
+    }
+
+    @Test
+    public void testBlockWhenFull() {
+        AsyncStatistics stats = new AsyncStatistics(4, OverflowPolicy.BLOCK);
+        for (int i = 0; i < 10000; i++) {
+            stats.addOccurrence("event");
+        }
+        stats.flush();
+        assertThat(stats.getAllOccurrencesSnapshot().get("event")).isEqualTo(10000L);
+        stats.shutdown();
+    }
+
+    @Test
+    public void testIdleAggregatorWakesUpOnRecord() throws InterruptedException {
+        AsyncStatistics stats = new AsyncStatistics(4, OverflowPolicy.DROP);
+        for (int batch = 0; batch < 5; batch++) {
+            Thread.sleep(50); // long enough for the aggregator to fall asleep
+            for (int i = 0; i < 4; i++) {
+                stats.addOccurrence("event");
+            }
+        }
+        Thread.sleep(50);
+        assertThat(stats.getDroppedRecords()).isEqualTo(0);
+        assertThat(stats.findOccurrence("event")).isEqualTo(20);
+        stats.shutdown();
+    }
+
+    @Test
+    public void testConsumedSlotsDoNotKeepNames() {
+        RecordRingBuffer buffer = new RecordRingBuffer(4);
+        String name = new String("event");
+        WeakReference<String> reference = new WeakReference<String>(name);
+        buffer.offer(RecordRingBuffer.OCCURRENCES, name, 1, 0);
+        name = null;
+        Statistics target = new SingleThreadedStatisticsFacade();
+        buffer.drainClaimed(target);
+        target.reset();
+        for (int i = 0; i < 10 && reference.get() != null; i++) {
+            System.gc();
+        }
+        assertThat(reference.get()).isNull();
+    }
+}
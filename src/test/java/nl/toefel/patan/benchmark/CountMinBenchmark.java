@@ -0,0 +1,162 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan.benchmark;
+
+import nl.toefel.patan.api.OccurrenceStore;
+import nl.toefel.patan.concurrentimpl.ConcurrentCounterStore;
+import nl.toefel.patan.concurrentimpl.CountMinCounterStore;
+import nl.toefel.patan.singlethreadedimpl.CounterStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the exact counter stores with a Count-Min sketch for a million distinct names: the retained heap after
+ * recording, the cost of recording an occurrence with one and with all threads, and the overestimation of the sketch.
+ * <p>
+ * Run it with enough heap for the exact stores, for example: java -Xmx2g -cp target/classes:target/test-classes nl.toefel.patan.benchmark.CountMinBenchmark
+ */
+public class CountMinBenchmark {
+
+	private static final int NAMES = 1000000;
+	private static final int OCCURRENCES = 5000000;
+
+	public static void main(String[] args) throws InterruptedException {
+		String[] names = new String[NAMES];
+		for (int i = 0; i < NAMES; i++) {
+			names[i] = "user." + i + ".login";
+		}
+		// skewed like real traffic, a few users log in often and most only a couple of times
+		int[] stream = new int[OCCURRENCES];
+		Random random = new Random(11);
+		for (int i = 0; i < OCCURRENCES; i++) {
+			stream[i] = (int) Math.min(NAMES - 1, Math.abs(random.nextGaussian()) * NAMES / 3);
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		System.out.println(String.format("%-24s %12s %12s %16s", "store", "heap (MB)", "ns/op", "ns/op " + threads + " thr"));
+		report("CounterStore", new StoreFactory() {
+			@Override
+			public OccurrenceStore create() {
+				return new CounterStore();
+			}
+		}, names, stream, 0);
+		report("ConcurrentCounterStore", new StoreFactory() {
+			@Override
+			public OccurrenceStore create() {
+				return new ConcurrentCounterStore();
+			}
+		}, names, stream, threads);
+		report("Count-Min 2^16 x 4", new StoreFactory() {
+			@Override
+			public OccurrenceStore create() {
+				return new CountMinCounterStore(1 << 16, 4);
+			}
+		}, names, stream, threads);
+		report("Count-Min e=0.0001", new StoreFactory() {
+			@Override
+			public OccurrenceStore create() {
+				return CountMinCounterStore.forErrorBound(0.0001, 0.01);
+			}
+		}, names, stream, threads);
+
+		System.out.println();
+		System.out.println(String.format("%-24s %12s %12s %12s", "sketch", "mean error", "max error", "exact names"));
+		reportError("Count-Min 2^16 x 4", new CountMinCounterStore(1 << 16, 4), names, stream);
+		reportError("Count-Min e=0.0001", CountMinCounterStore.forErrorBound(0.0001, 0.01), names, stream);
+	}
+
+	private static void report(String name, StoreFactory factory, String[] names, int[] stream, int threads) throws InterruptedException {
+		long heapBefore = usedHeap();
+		OccurrenceStore store = null;
+		double nanosPerOp = 0;
+		for (int round = 0; round < 3; round++) { // warm up in the first rounds
+			store = factory.create();
+			long start = System.nanoTime();
+			for (int index : stream) {
+				store.addOccurrence(names[index]);
+			}
+			nanosPerOp = (double) (System.nanoTime() - start) / stream.length;
+		}
+		long heap = usedHeap() - heapBefore;
+		String concurrent = threads == 0 ? "-" : String.format("%.1f", measureConcurrent(store, names, stream, threads));
+		System.out.println(String.format("%-24s %12.1f %12.1f %16s", name, heap / 1048576.0, nanosPerOp, concurrent));
+	}
+
+	/**
+	 * @return the wall clock time per occurrence when all threads record a part of the stream at the same time
+	 */
+	private static double measureConcurrent(final OccurrenceStore store, final String[] names, final int[] stream, int threads) throws InterruptedException {
+		store.reset();
+		final int part = stream.length / threads;
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final int from = t * part;
+			workers.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = from; i < from + part; i++) {
+						store.addOccurrence(names[stream[i]]);
+					}
+				}
+			}));
+		}
+		long start = System.nanoTime();
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		return (double) (System.nanoTime() - start) / (part * threads);
+	}
+
+	private static void reportError(String name, CountMinCounterStore sketch, String[] names, int[] stream) {
+		long[] actual = new long[names.length];
+		for (int index : stream) {
+			actual[index]++;
+			sketch.addOccurrence(names[index]);
+		}
+		long totalError = 0;
+		long maxError = 0;
+		int exact = 0;
+		for (int i = 0; i < names.length; i++) {
+			long error = sketch.findOccurrence(names[i]) - actual[i];
+			totalError += error;
+			maxError = Math.max(maxError, error);
+			if (error == 0) {
+				exact++;
+			}
+		}
+		System.out.println(String.format("%-24s %12.2f %12d %12d", name, (double) totalError / names.length, maxError, exact));
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private interface StoreFactory {
+		OccurrenceStore create();
+	}
+}
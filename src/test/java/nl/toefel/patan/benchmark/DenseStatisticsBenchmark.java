@@ -0,0 +1,128 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan.benchmark;
+
+import nl.toefel.patan.api.Statistics;
+import nl.toefel.patan.singlethreadedimpl.DenseStatistics;
+import nl.toefel.patan.singlethreadedimpl.SingleThreadedStatisticsFacade;
+
+/**
+ * Compares the retained heap per name and the cost of recording of the single-threaded statistics, which keep an
+ * object per name, and the dense statistics, which keep the values of all names in primitive arrays. The dense
+ * statistics are measured by name and by id.
+ * <p>
+ * The heap is measured as the difference in used heap after a few garbage collections, start the JVM with a fixed heap
+ * and the serial collector (-Xms1g -Xmx1g -XX:+UseSerialGC) for stable numbers.
+ * <p>
+ * This is not a unit test, run it manually with: java -cp target/classes:target/test-classes nl.toefel.patan.benchmark.DenseStatisticsBenchmark
+ */
+public class DenseStatisticsBenchmark {
+
+	private static final int NAMES = 100000;
+	private static final int RECORDS = 10000000;
+
+	public static void main(String[] args) {
+		String[] names = new String[NAMES];
+		for (int i = 0; i < NAMES; i++) {
+			names[i] = "benchmark.metric." + i;
+		}
+		usedHeap(); // the first collections after start up do not free everything
+		System.out.println(String.format("%-24s %16s %12s", "impl", "bytes/name", "ns/op"));
+		reportSingleThreaded(names);
+		reportDenseByName(names);
+		reportDenseById(names);
+	}
+
+	private static void reportSingleThreaded(String[] names) {
+		long heapBefore = usedHeap();
+		Statistics statistics = new SingleThreadedStatisticsFacade();
+		fill(statistics, names);
+		long heap = usedHeap() - heapBefore;
+		double nanosPerOp = 0;
+		for (int round = 0; round < 3; round++) { // warm up in the first rounds
+			long start = System.nanoTime();
+			for (int i = 0; i < RECORDS; i++) {
+				String name = names[i % NAMES];
+				statistics.addOccurrence(name);
+				statistics.addSample(name, i);
+			}
+			nanosPerOp = (double) (System.nanoTime() - start) / (2L * RECORDS);
+		}
+		report("single-threaded", heap, nanosPerOp, statistics);
+	}
+
+	private static void reportDenseByName(String[] names) {
+		long heapBefore = usedHeap();
+		DenseStatistics statistics = new DenseStatistics();
+		fill(statistics, names);
+		long heap = usedHeap() - heapBefore;
+		double nanosPerOp = 0;
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < RECORDS; i++) {
+				String name = names[i % NAMES];
+				statistics.addOccurrence(name);
+				statistics.addSample(name, i);
+			}
+			nanosPerOp = (double) (System.nanoTime() - start) / (2L * RECORDS);
+		}
+		report("dense by name", heap, nanosPerOp, statistics);
+	}
+
+	private static void reportDenseById(String[] names) {
+		DenseStatistics statistics = new DenseStatistics();
+		int[] occurrenceIds = new int[NAMES];
+		int[] sampleIds = new int[NAMES];
+		for (int i = 0; i < NAMES; i++) {
+			occurrenceIds[i] = statistics.occurrenceId(names[i]);
+			sampleIds[i] = statistics.sampleId(names[i]);
+		}
+		double nanosPerOp = 0;
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < RECORDS; i++) {
+				int index = i % NAMES;
+				statistics.addOccurrences(occurrenceIds[index], 1);
+				statistics.addSample(sampleIds[index], i);
+			}
+			nanosPerOp = (double) (System.nanoTime() - start) / (2L * RECORDS);
+		}
+		report("dense by id", -1, nanosPerOp, statistics);
+	}
+
+	private static void fill(Statistics statistics, String[] names) {
+		for (String name : names) {
+			statistics.addOccurrence(name);
+			statistics.addSample(name, 1);
+		}
+	}
+
+	private static void report(String impl, long heap, double nanosPerOp, Statistics statistics) {
+		String bytesPerName = heap < 0 ? "-" : String.format("%.1f", (double) heap / statistics.getAllOccurrencesSnapshot().size());
+		System.out.println(String.format("%-24s %16s %12.1f", impl, bytesPerName, nanosPerOp));
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan.benchmark;
+
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.IncrementalSnapshot;
+import nl.toefel.patan.api.IncrementalStatistics;
+import nl.toefel.patan.api.Snapshot;
+import nl.toefel.patan.api.SnapshotToken;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares exporting the changes since the previous export with {@link IncrementalStatistics#getChangedSince(SnapshotToken)}
+ * against a full snapshot, for 20000 names of which an increasing fraction changes between exports. The time and the
+ * allocated bytes of an incremental export should shrink with the fraction of changed names.
+ * <p>
+ * This is not a unit test, run it manually with: java -cp target/classes:target/test-classes nl.toefel.patan.benchmark.IncrementalSnapshotBenchmark
+ */
+public class IncrementalSnapshotBenchmark {
+
+	private static final int NAMES = 20000;
+	private static final int ROUNDS = 200;
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) {
+		String[] names = new String[NAMES];
+		for (int i = 0; i < NAMES; i++) {
+			names[i] = "benchmark.metric." + i;
+		}
+		System.out.println(String.format("%-10s %14s %14s %14s %14s", "changed", "full us/op", "full KB/op", "changes us/op", "changes KB/op"));
+		for (double ratio : new double[]{0.001, 0.01, 0.1, 1.0}) {
+			IncrementalStatistics statistics = StatisticsFactory.createDenseStatistics();
+			for (String name : names) {
+				statistics.addOccurrence(name);
+				statistics.addSample(name, 1);
+			}
+			int changed = (int) (NAMES * ratio);
+			SnapshotToken token = statistics.getIncrementalSnapshot().getToken();
+			long blackhole = 0;
+			long fullNanos = 0;
+			long fullBytes = 0;
+			long changesNanos = 0;
+			long changesBytes = 0;
+			for (int round = 0; round < 3 * ROUNDS; round++) { // warm up in the first rounds
+				if (round == 2 * ROUNDS) {
+					fullNanos = fullBytes = changesNanos = changesBytes = 0;
+				}
+				for (int i = 0; i < changed; i++) {
+					String name = names[(round * changed + i) % NAMES];
+					statistics.addOccurrence(name);
+					statistics.addSample(name, i);
+				}
+				long bytes = allocatedBytes();
+				long start = System.nanoTime();
+				Snapshot snapshot = statistics.getSnapshot();
+				fullNanos += System.nanoTime() - start;
+				fullBytes += allocatedBytes() - bytes;
+				blackhole += snapshot.getOccurrences().size();
+
+				bytes = allocatedBytes();
+				start = System.nanoTime();
+				IncrementalSnapshot changes = statistics.getChangedSince(token);
+				changesNanos += System.nanoTime() - start;
+				changesBytes += allocatedBytes() - bytes;
+				token = changes.getToken();
+				blackhole += changes.getOccurrences().size();
+			}
+			System.out.println(String.format("%-10s %14.1f %14.1f %14.1f %14.1f %s", ratio * 100 + "%", fullNanos / 1000.0 / ROUNDS,
+					fullBytes / 1024.0 / ROUNDS, changesNanos / 1000.0 / ROUNDS, changesBytes / 1024.0 / ROUNDS, blackhole > 0 ? "" : "-"));
+		}
+	}
+
+	private static long allocatedBytes() {
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
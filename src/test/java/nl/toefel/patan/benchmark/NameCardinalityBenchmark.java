@@ -0,0 +1,95 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan.benchmark;
+
+import nl.toefel.patan.singlethreadedimpl.CounterStore;
+import nl.toefel.patan.singlethreadedimpl.StatisticDistributionStore;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Measures the cost of recording into the single-threaded stores for an increasing number of distinct names, next to
+ * a sorted map index like the stores used before, to show that the write cost no longer grows with the number of names.
+ * The cost of taking a snapshot, which is where names are sorted now, is reported as well.
+ * <p>
+ * Names are recorded round-robin, so with many names most lookups miss the CPU caches for all implementations.
+ * <p>
+ * This is not a unit test, run it manually with: java -cp target/classes:target/test-classes nl.toefel.patan.benchmark.NameCardinalityBenchmark
+ */
+public class NameCardinalityBenchmark {
+
+	private static final int OPERATIONS = 5000000;
+	private static final int[] NAME_COUNTS = {10, 1000, 100000};
+
+	public static void main(String[] args) {
+		System.out.println(String.format("%-10s %14s %14s %14s %16s", "names", "TreeMap ns/op", "counter ns/op", "sample ns/op", "snapshot ms"));
+		for (int nameCount : NAME_COUNTS) {
+			String[] names = new String[nameCount];
+			for (int i = 0; i < nameCount; i++) {
+				names[i] = "benchmark.name." + i;
+			}
+			double treeMap = 0;
+			double counter = 0;
+			double sample = 0;
+			double snapshot = 0;
+			for (int round = 0; round < 3; round++) { // warm up in the first rounds
+				treeMap = measureTreeMap(names);
+				CounterStore counters = new CounterStore();
+				counter = measureCounters(counters, names);
+				sample = measureSamples(new StatisticDistributionStore(), names);
+				long start = System.nanoTime();
+				counters.getAllOccurrencesSnapshot();
+				snapshot = (System.nanoTime() - start) / 1e6;
+			}
+			System.out.println(String.format("%-10d %14.1f %14.1f %14.1f %16.2f", nameCount, treeMap, counter, sample, snapshot));
+		}
+	}
+
+	private static double measureTreeMap(String[] names) {
+		Map<String, long[]> counts = new TreeMap<String, long[]>();
+		long start = System.nanoTime();
+		for (int i = 0; i < OPERATIONS; i++) {
+			String name = names[i % names.length];
+			long[] count = counts.get(name);
+			if (count == null) {
+				count = new long[1];
+				counts.put(name, count);
+			}
+			count[0]++;
+		}
+		return (double) (System.nanoTime() - start) / OPERATIONS;
+	}
+
+	private static double measureCounters(CounterStore store, String[] names) {
+		long start = System.nanoTime();
+		for (int i = 0; i < OPERATIONS; i++) {
+			store.addOccurrence(names[i % names.length]);
+		}
+		return (double) (System.nanoTime() - start) / OPERATIONS;
+	}
+
+	private static double measureSamples(StatisticDistributionStore store, String[] names) {
+		long start = System.nanoTime();
+		for (int i = 0; i < OPERATIONS; i++) {
+			store.addSample(names[i % names.length], i);
+		}
+		return (double) (System.nanoTime() - start) / OPERATIONS;
+	}
+}
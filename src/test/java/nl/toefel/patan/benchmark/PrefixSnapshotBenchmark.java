@@ -0,0 +1,66 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan.benchmark;
+
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.HierarchicalStatistics;
+import nl.toefel.patan.api.Snapshot;
+
+/**
+ * Compares reading the 100 counters under one prefix with {@link HierarchicalStatistics#getSnapshot(String)} against
+ * filtering a full snapshot, for an increasing total number of counters. The prefix snapshot should cost about the same
+ * regardless of the total.
+ * <p>
+ * This is not a unit test, run it manually with: java -cp target/classes:target/test-classes nl.toefel.patan.benchmark.PrefixSnapshotBenchmark
+ */
+public class PrefixSnapshotBenchmark {
+
+	private static final int ROUNDS = 200;
+
+	public static void main(String[] args) {
+		System.out.println(String.format("%-10s %16s %16s", "names", "prefix us/op", "filter us/op"));
+		for (int names : new int[]{1000, 10000, 100000}) {
+			HierarchicalStatistics statistics = (HierarchicalStatistics) StatisticsFactory.createThreadsafeStatistics();
+			for (int i = 0; i < names; i++) {
+				statistics.addOccurrence("service" + (i / 100) + ".calls." + i);
+			}
+			long blackhole = 0;
+			double prefixMicros = 0;
+			double filterMicros = 0;
+			for (int round = 0; round < 3; round++) { // warm up in the first rounds
+				long start = System.nanoTime();
+				for (int i = 0; i < ROUNDS; i++) {
+					blackhole += statistics.getSnapshot("service7.").getOccurrences().size();
+				}
+				prefixMicros = (System.nanoTime() - start) / 1000.0 / ROUNDS;
+				start = System.nanoTime();
+				for (int i = 0; i < ROUNDS; i++) {
+					Snapshot snapshot = statistics.getSnapshot();
+					for (String name : snapshot.getOccurrences().keySet()) {
+						if (name.startsWith("service7.")) {
+							blackhole++;
+						}
+					}
+				}
+				filterMicros = (System.nanoTime() - start) / 1000.0 / ROUNDS;
+			}
+			System.out.println(String.format("%-10d %16.1f %16.1f %s", names, prefixMicros, filterMicros, blackhole > 0 ? "" : "-"));
+		}
+	}
+}
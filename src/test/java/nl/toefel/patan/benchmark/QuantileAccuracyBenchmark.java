@@ -0,0 +1,132 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan.benchmark;
+
+import nl.toefel.patan.api.PercentileDistribution;
+import nl.toefel.patan.api.StatisticalDistribution;
+import nl.toefel.patan.singlethreadedimpl.DistributionAccumulator;
+import nl.toefel.patan.singlethreadedimpl.HistogramAccumulator;
+import nl.toefel.patan.singlethreadedimpl.HistogramLayout;
+import nl.toefel.patan.singlethreadedimpl.ImmutableStatisticalDistribution;
+import nl.toefel.patan.singlethreadedimpl.KllAccumulator;
+import nl.toefel.patan.singlethreadedimpl.ReservoirAccumulator;
+import nl.toefel.patan.singlethreadedimpl.SampleAccumulator;
+import nl.toefel.patan.singlethreadedimpl.SampleAccumulatorFactory;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the distributions that can be configured per sample name: the cost of recording a sample and, for those that
+ * keep percentiles, the rank error of the percentiles against the exact percentiles of the recorded data.
+ * <p>
+ * The rank error is the difference between the requested percentile and the true percentile of the reported value, a
+ * rank error of 0.5 for p99 means that the reported value is somewhere between the true p98.5 and p99.5.
+ * <p>
+ * This is not a unit test, run it manually with: java -cp target/classes:target/test-classes nl.toefel.patan.benchmark.QuantileAccuracyBenchmark
+ */
+public class QuantileAccuracyBenchmark {
+
+	private static final int SAMPLES = 1000000;
+	private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+	public static void main(String[] args) {
+		double[] uniform = new double[SAMPLES];
+		double[] logNormal = new double[SAMPLES];
+		Random random = new Random(42);
+		for (int i = 0; i < SAMPLES; i++) {
+			uniform[i] = random.nextDouble() * 1000;
+			logNormal[i] = Math.exp(random.nextGaussian() * 2 + 3); // long tail, like payload sizes
+		}
+
+		System.out.println(String.format("%-28s %12s", "distribution", "ns/sample"));
+		reportImmutableThroughput(uniform);
+		reportThroughput("DistributionAccumulator", DistributionAccumulator.FACTORY, uniform);
+		reportThroughput("Histogram 2 digits", HistogramAccumulator.factory(new HistogramLayout(0.001, 1000000, 2)), uniform);
+		reportThroughput("KLL k=100", KllAccumulator.factory(100), uniform);
+		reportThroughput("KLL k=200", KllAccumulator.factory(200), uniform);
+		reportThroughput("KLL k=400", KllAccumulator.factory(400), uniform);
+		reportThroughput("Uniform reservoir 1028", ReservoirAccumulator.uniformFactory(1028), uniform);
+		reportThroughput("Decaying reservoir 1028", ReservoirAccumulator.forwardDecayingFactory(1028, 0.015), uniform);
+
+		System.out.println();
+		System.out.println(String.format("%-28s %-10s %8s %8s %8s %8s", "distribution", "data", "p50", "p90", "p99", "p99.9"));
+		reportAccuracy("Histogram 2 digits", HistogramAccumulator.factory(new HistogramLayout(0.001, 1000000, 2)), "uniform", uniform);
+		reportAccuracy("Histogram 2 digits", HistogramAccumulator.factory(new HistogramLayout(0.001, 1000000, 2)), "lognormal", logNormal);
+		for (int k : new int[]{100, 200, 400}) {
+			reportAccuracy("KLL k=" + k, KllAccumulator.factory(k), "uniform", uniform);
+			reportAccuracy("KLL k=" + k, KllAccumulator.factory(k), "lognormal", logNormal);
+		}
+		reportAccuracy("Uniform reservoir 1028", ReservoirAccumulator.uniformFactory(1028), "uniform", uniform);
+		reportAccuracy("Uniform reservoir 1028", ReservoirAccumulator.uniformFactory(1028), "lognormal", logNormal);
+	}
+
+	private static void reportImmutableThroughput(double[] data) {
+		for (int round = 0; round < 3; round++) { // warm up in the first rounds
+			long start = System.nanoTime();
+			StatisticalDistribution distribution = ImmutableStatisticalDistribution.createEmpty();
+			for (double value : data) {
+				distribution = distribution.newWithExtraSample(value);
+			}
+			long elapsed = System.nanoTime() - start;
+			if (round == 2) {
+				System.out.println(String.format("%-28s %12.1f", "ImmutableStatisticalDist.", (double) elapsed / data.length));
+			}
+		}
+	}
+
+	private static void reportThroughput(String name, SampleAccumulatorFactory factory, double[] data) {
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			SampleAccumulator accumulator = factory.create("benchmark");
+			for (double value : data) {
+				accumulator.addSample(value);
+			}
+			long elapsed = System.nanoTime() - start;
+			if (round == 2) {
+				System.out.println(String.format("%-28s %12.1f", name, (double) elapsed / data.length));
+			}
+		}
+	}
+
+	private static void reportAccuracy(String name, SampleAccumulatorFactory factory, String dataName, double[] data) {
+		SampleAccumulator accumulator = factory.create("benchmark");
+		for (double value : data) {
+			accumulator.addSample(value);
+		}
+		PercentileDistribution distribution = (PercentileDistribution) accumulator.toDistribution();
+		double[] sorted = data.clone();
+		Arrays.sort(sorted);
+		StringBuilder line = new StringBuilder(String.format("%-28s %-10s", name, dataName));
+		for (double percentile : PERCENTILES) {
+			double estimate = distribution.getPercentile(percentile);
+			line.append(String.format(" %8.3f", Math.abs(trueRankOf(sorted, estimate) - percentile)));
+		}
+		System.out.println(line);
+	}
+
+	/**
+	 * @return the percentage of values that is at or below the given value
+	 */
+	private static double trueRankOf(double[] sorted, double value) {
+		int index = Arrays.binarySearch(sorted, value);
+		int atOrBelow = index >= 0 ? index + 1 : -index - 1;
+		return 100.0 * atOrBelow / sorted.length;
+	}
+}
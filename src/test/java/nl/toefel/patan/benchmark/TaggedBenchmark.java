@@ -0,0 +1,71 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan.benchmark;
+
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.Counter;
+import nl.toefel.patan.taggedimpl.TaggedStatistics;
+import nl.toefel.patan.taggedimpl.Tags;
+
+/**
+ * Compares recording an occurrence with dimensions encoded into a name that is built on every call, like
+ * "http." + method + "." + status, against a kept {@link Tags} instance and against a counter handle of a tag set.
+ * <p>
+ * This is not a unit test, run it manually with: java -cp target/classes:target/test-classes nl.toefel.patan.benchmark.TaggedBenchmark
+ */
+public class TaggedBenchmark {
+
+	private static final int OPERATIONS = 10000000;
+	private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE"};
+	private static final String[] STATUSES = {"200", "201", "404", "500"};
+
+	public static void main(String[] args) {
+		TaggedStatistics statistics = new TaggedStatistics(StatisticsFactory.createConcurrentStatistics());
+		Tags[] tags = new Tags[METHODS.length * STATUSES.length];
+		Counter[] counters = new Counter[tags.length];
+		for (int i = 0; i < tags.length; i++) {
+			tags[i] = Tags.of("method", METHODS[i / STATUSES.length], "status", STATUSES[i % STATUSES.length]);
+			counters[i] = statistics.counter("http.requests", tags[i]);
+		}
+		System.out.println(String.format("%-16s %10s", "recording", "ns/op"));
+		for (int round = 0; round < 3; round++) { // warm up in the first rounds
+			long start = System.nanoTime();
+			for (int i = 0; i < OPERATIONS; i++) {
+				int combination = i & (tags.length - 1);
+				statistics.addOccurrence("http." + METHODS[combination / STATUSES.length] + "." + STATUSES[combination % STATUSES.length]);
+			}
+			double concatenated = (double) (System.nanoTime() - start) / OPERATIONS;
+			start = System.nanoTime();
+			for (int i = 0; i < OPERATIONS; i++) {
+				statistics.addOccurrence("http.requests", tags[i & (tags.length - 1)]);
+			}
+			double tagged = (double) (System.nanoTime() - start) / OPERATIONS;
+			start = System.nanoTime();
+			for (int i = 0; i < OPERATIONS; i++) {
+				counters[i & (tags.length - 1)].increment();
+			}
+			double handle = (double) (System.nanoTime() - start) / OPERATIONS;
+			if (round == 2) {
+				System.out.println(String.format("%-16s %10.1f", "concatenated", concatenated));
+				System.out.println(String.format("%-16s %10.1f", "tags", tagged));
+				System.out.println(String.format("%-16s %10.1f", "tagged counter", handle));
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan.benchmark;
+
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.Statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the recording throughput of the thread-safe implementations for an increasing number of threads. Each thread
+ * records occurrences and samples under its own names, which is the case that should scale with the number of cores.
+ * <p>
+ * This is not a unit test, run it manually with: java -cp target/classes:target/test-classes nl.toefel.patan.benchmark.ThroughputBenchmark
+ */
+public class ThroughputBenchmark {
+
+	private static final long MEASURE_MILLIS = 2000;
+
+	public static void main(String[] args) throws InterruptedException {
+		int cores = Runtime.getRuntime().availableProcessors();
+		System.out.println(String.format("%-12s %8s %16s", "impl", "threads", "ops/sec"));
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			report("threadsafe", threads, measure(StatisticsFactory.createThreadsafeStatistics(), threads));
+			report("concurrent", threads, measure(StatisticsFactory.createConcurrentStatistics(), threads));
+		}
+	}
+
+	private static void report(String impl, int threads, long opsPerSecond) {
+		System.out.println(String.format("%-12s %8d %16d", impl, threads, opsPerSecond));
+	}
+
+	static long measure(final Statistics statistics, final int threads) throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(threads);
+		final AtomicLong totalOperations = new AtomicLong();
+		final long deadline = System.currentTimeMillis() + MEASURE_MILLIS;
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			final String occurrenceName = "benchmark.occurrence." + i;
+			final String sampleName = "benchmark.sample." + i;
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					started.countDown();
+					long operations = 0;
+					while (System.currentTimeMillis() < deadline) {
+						for (int j = 0; j < 1000; j++) {
+							statistics.addOccurrence(occurrenceName);
+							statistics.addSample(sampleName, j);
+						}
+						operations += 2000;
+					}
+					totalOperations.addAndGet(operations);
+				}
+			});
+			workers.add(worker);
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		return totalOperations.get() * 1000 / MEASURE_MILLIS;
+	}
+}
@@ -1,7 +1,11 @@
 package nl.toefel.patan.concurrencytest;
 
+import nl.toefel.patan.api.DistinctCount;
+import nl.toefel.patan.api.MovingRates;
 import nl.toefel.patan.api.StatisticalDistribution;
 import nl.toefel.patan.singlethreadedimpl.DetachedSnapshot;
+import nl.toefel.patan.singlethreadedimpl.HyperLogLog;
+import nl.toefel.patan.singlethreadedimpl.ImmutableMovingRates;
 import nl.toefel.patan.singlethreadedimpl.ImmutableStatisticalDistribution;
 import org.assertj.core.api.Assertions;
 import org.junit.Before;
@@ -45,6 +49,41 @@ public class DetachedSnapshotTest {
 		new DetachedSnapshot(samples, occurrences, null);
 	}
 
+	@Test (expected = IllegalArgumentException.class)
+	public void testConstructorRatesNull() {
+		new DetachedSnapshot(samples, occurrences, durations, null);
+	}
+
+	@Test
+	public void testFindRates() {
+		Map<String, MovingRates> rates = new TreeMap<String, MovingRates>();
+		rates.put("counter", new ImmutableMovingRates(1, 2, 3));
+		DetachedSnapshot snapshot = new DetachedSnapshot(samples, occurrences, durations, rates);
+		assertThat(snapshot.getRates()).isEqualTo(rates);
+		assertThat(snapshot.findRates("counter").getFiveMinuteRate()).isEqualTo(2d);
+		assertThat(snapshot.findRates("nonexisting").getOneMinuteRate()).isEqualTo(0d);
+		assertThat(new DetachedSnapshot(samples, occurrences, durations).getRates()).isEmpty();
+	}
+
+	@Test (expected = IllegalArgumentException.class)
+	public void testConstructorDistinctCountsNull() {
+		new DetachedSnapshot(samples, occurrences, durations, new TreeMap<String, MovingRates>(), null);
+	}
+
+	@Test
+	public void testFindDistinctCount() {
+		HyperLogLog sketch = new HyperLogLog();
+		sketch.add("a");
+		sketch.add("b");
+		Map<String, DistinctCount> distinctCounts = new TreeMap<String, DistinctCount>();
+		distinctCounts.put("users", sketch.toDistinctCount());
+		DetachedSnapshot snapshot = new DetachedSnapshot(samples, occurrences, durations, new TreeMap<String, MovingRates>(), distinctCounts);
+		assertThat(snapshot.getDistinctCounts()).isEqualTo(distinctCounts);
+		assertThat(snapshot.findDistinctCount("users").getEstimate()).isEqualTo(2);
+		assertThat(snapshot.findDistinctCount("nonexisting").getEstimate()).isZero();
+		assertThat(new DetachedSnapshot(samples, occurrences, durations).getDistinctCounts()).isEmpty();
+	}
+
 	@Test
 	public void testGetTimestampTaken() {
 		assertThat(new DetachedSnapshot(samples, occurrences, durations).getTimestampTaken()).isCloseTo(System.currentTimeMillis(), within(100L));
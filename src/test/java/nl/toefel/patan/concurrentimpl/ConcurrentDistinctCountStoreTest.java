@@ -0,0 +1,51 @@
+package nl.toefel.patan.concurrentimpl;
+
+import nl.toefel.patan.api.DistinctCount;
+import nl.toefel.patan.singlethreadedimpl.ImmutableDistinctCount;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConcurrentDistinctCountStoreTest {
+
+	@Test
+	public void testNoValuesLostDuringResets() throws InterruptedException {
+		final ConcurrentDistinctCountStore store = new ConcurrentDistinctCountStore();
+		List<Thread> writers = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final int thread = t;
+			writers.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 25000; i++) {
+						store.addDistinct("users", thread * 25000L + i);
+					}
+				}
+			}));
+		}
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		DistinctCount total = ImmutableDistinctCount.createEmpty();
+		while (isAnyAlive(writers)) {
+			DistinctCount last = store.getAllDistinctCountsSnapshotAndReset().get("users");
+			if (last != null) {
+				total = total.newMergedWith(last);
+			}
+		}
+		total = total.newMergedWith(store.findDistinctCount("users"));
+		assertThat(total.getEstimate()).isBetween(95000L, 105000L);
+	}
+
+	private static boolean isAnyAlive(final List<Thread> threads) {
+		for (Thread thread : threads) {
+			if (thread.isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
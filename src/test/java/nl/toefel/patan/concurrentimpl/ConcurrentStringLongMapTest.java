@@ -0,0 +1,136 @@
+package nl.toefel.patan.concurrentimpl;
+
+import nl.toefel.patan.api.Counter;
+import nl.toefel.patan.singlethreadedimpl.CardinalityLimit;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConcurrentStringLongMapTest {
+
+	private static final int THREADS = 4;
+	private static final int NAMES = 5000;
+
+	@Test
+	public void testInsertAndGrow() {
+		ConcurrentStringLongMap map = new ConcurrentStringLongMap();
+		for (int i = 0; i < NAMES; i++) {
+			assertThat(map.insert("name." + i, i)).isEqualTo(ConcurrentStringLongMap.INSERTED);
+		}
+		assertThat(map.insert("name.7", 1)).isEqualTo(ConcurrentStringLongMap.FOUND);
+		assertThat(map.addIfPresent("name.8", 2)).isTrue();
+		assertThat(map.addIfPresent("other", 2)).isFalse();
+		assertThat(map.get("name.7")).isEqualTo(8);
+		assertThat(map.get("name.8")).isEqualTo(10);
+		assertThat(map.get("other")).isZero();
+		assertThat(map.snapshot()).hasSize(NAMES);
+		assertThat(map.snapshotAndReset().get("name.4999")).isEqualTo(4999L);
+		assertThat(map.snapshot()).isEmpty();
+	}
+
+	@Test
+	public void testZeroValuesAreKept() {
+		ConcurrentStringLongMap map = new ConcurrentStringLongMap();
+		map.insert("zero", 0);
+		map.insert("balanced", 3);
+		map.addIfPresent("balanced", -3);
+		assertThat(map.get("zero")).isZero();
+		assertThat(map.snapshot()).containsEntry("zero", 0L).containsEntry("balanced", 0L);
+		assertThat(map.snapshotAndReset()).containsEntry("zero", 0L).containsEntry("balanced", 0L);
+		assertThat(map.snapshot()).isEmpty();
+	}
+
+	@Test
+	public void testExistingKeysAreCountedWhileTheMapGrows() throws InterruptedException {
+		final ConcurrentStringLongMap map = new ConcurrentStringLongMap();
+		for (int i = 0; i < 10; i++) {
+			map.insert("existing." + i, 0);
+		}
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 100000; i++) {
+						assertThat(map.addIfPresent("existing." + (i % 10), 1)).isTrue();
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (int i = 0; i < NAMES * 20; i++) {
+			map.insert("new." + i, 1);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long sum = 0;
+		for (int i = 0; i < 10; i++) {
+			sum += map.get("existing." + i);
+		}
+		assertThat(sum).isEqualTo(THREADS * 100000L);
+		assertThat(map.snapshot()).hasSize(NAMES * 20 + 10);
+	}
+
+	@Test
+	public void testConcurrentGrowthAndResetsLoseNothing() throws InterruptedException {
+		final CardinalityLimit limit = new CardinalityLimit(NAMES * 2, "overflow");
+		final ConcurrentCounterStore store = new ConcurrentCounterStore(limit);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++) {
+			final int offset = t;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Counter counter = store.counter("handle");
+					for (int i = 0; i < 200000; i++) {
+						store.addOccurrence("name." + ((i + offset * 7) % NAMES));
+						counter.increment();
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		long names = 0;
+		long handles = 0;
+		for (int i = 0; i < 200; i++) {
+			Map<String, Long> snapshot = store.getAllOccurrencesSnapshotAndReset();
+			assertThat(snapshot.values()).doesNotContain(0L); // names moved by the reset before their value was added
+			names += sumOfNames(snapshot);
+			handles += snapshot.containsKey("handle") ? snapshot.get("handle") : 0L;
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Map<String, Long> last = store.getAllOccurrencesSnapshotAndReset();
+		names += sumOfNames(last);
+		handles += last.containsKey("handle") ? last.get("handle") : 0L;
+		assertThat(names).isEqualTo(THREADS * 200000L);
+		assertThat(handles).isEqualTo(THREADS * 200000L);
+		assertThat(limit.getRejectedCount()).isZero();
+
+		// the last reset started a new period, exactly the limit is admitted again
+		for (int i = 0; i < NAMES * 2 + 10; i++) {
+			store.addOccurrence("fresh." + i);
+		}
+		assertThat(store.getAllOccurrencesSnapshot()).hasSize(NAMES * 2 + 1);
+		assertThat(store.findOccurrence("overflow")).isEqualTo(10);
+		assertThat(limit.getRejectedCount()).isEqualTo(10);
+	}
+
+	private static long sumOfNames(final Map<String, Long> snapshot) {
+		long sum = 0;
+		for (Map.Entry<String, Long> entry : snapshot.entrySet()) {
+			if (entry.getKey().startsWith("name.")) {
+				sum += entry.getValue();
+			}
+		}
+		return sum;
+	}
+}
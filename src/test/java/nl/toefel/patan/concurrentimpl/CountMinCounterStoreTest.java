@@ -0,0 +1,129 @@
+package nl.toefel.patan.concurrentimpl;
+
+import nl.toefel.patan.api.Counter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CountMinCounterStoreTest {
+
+	@Test
+	public void testExactWithoutCollisions() {
+		CountMinCounterStore store = new CountMinCounterStore(1024, 4);
+		store.addOccurrence("a");
+		store.addOccurrences("b", 5);
+		store.counter("c").increment(7);
+		assertThat(store.findOccurrence("a")).isEqualTo(1L);
+		assertThat(store.findOccurrence("b")).isEqualTo(5L);
+		assertThat(store.findOccurrence("c")).isEqualTo(7L);
+		assertThat(store.findOccurrence("d")).isZero();
+		assertThat(store.getAllOccurrencesSnapshot()).isEmpty();
+	}
+
+	@Test
+	public void testNamesWithEqualHashCodesDoNotShareCounters() {
+		assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+		CountMinCounterStore store = new CountMinCounterStore(1024, 4);
+		store.addOccurrences("Aa", 1000);
+		store.counter("AaAa").increment(10);
+		assertThat(store.findOccurrence("Aa")).isEqualTo(1000L);
+		assertThat(store.findOccurrence("BB")).isZero();
+		assertThat(store.findOccurrence("AaAa")).isEqualTo(10L);
+		assertThat(store.findOccurrence("BBBB")).isZero();
+	}
+
+	@Test
+	public void testErrorBoundWithManyNames() {
+		CountMinCounterStore store = CountMinCounterStore.forErrorBound(0.001, 0.01);
+		long[] actual = new long[100000];
+		Random random = new Random(5);
+		long total = 0;
+		for (int i = 0; i < 1000000; i++) {
+			int name = (int) Math.min(actual.length - 1, Math.abs(random.nextGaussian()) * 5000);
+			actual[name]++;
+			total++;
+			store.addOccurrence("user." + name + ".login");
+		}
+		int exceeded = 0;
+		for (int name = 0; name < actual.length; name++) {
+			long estimate = store.findOccurrence("user." + name + ".login");
+			assertThat(estimate).isGreaterThanOrEqualTo(actual[name]);
+			if (estimate - actual[name] > 0.001 * total) {
+				exceeded++;
+			}
+		}
+		assertThat(exceeded).isLessThan(actual.length / 100);
+		assertThat(store.getCounterCount()).isEqualTo(2000 * 5);
+	}
+
+	@Test
+	public void testMerge() {
+		CountMinCounterStore left = new CountMinCounterStore(256, 3);
+		CountMinCounterStore right = new CountMinCounterStore(256, 3);
+		left.addOccurrences("a", 3);
+		right.addOccurrences("a", 4);
+		right.addOccurrences("b", 2);
+		left.merge(right);
+		assertThat(left.findOccurrence("a")).isGreaterThanOrEqualTo(7L);
+		assertThat(left.findOccurrence("b")).isGreaterThanOrEqualTo(2L);
+		assertThat(right.findOccurrence("a")).isEqualTo(4L);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeOtherDimensions() {
+		new CountMinCounterStore(256, 3).merge(new CountMinCounterStore(128, 3));
+	}
+
+	@Test
+	public void testReset() {
+		CountMinCounterStore store = new CountMinCounterStore(64, 2);
+		Counter counter = store.counter("a");
+		counter.increment();
+		assertThat(store.getAllOccurrencesSnapshotAndReset()).isEmpty();
+		assertThat(store.findOccurrence("a")).isZero();
+		counter.increment();
+		assertThat(store.findOccurrence("a")).isEqualTo(1L);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeOccurrences() {
+		new CountMinCounterStore(64, 2).addOccurrences("a", -1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidErrorBound() {
+		CountMinCounterStore.forErrorBound(0, 0.01);
+	}
+
+	@Test
+	public void testConcurrentIncrementsOfDistinctNames() throws InterruptedException {
+		final CountMinCounterStore store = new CountMinCounterStore(4096, 4);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			final int thread = t;
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 100000; i++) {
+						store.addOccurrence("thread." + thread + ".name." + (i % 100));
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (int t = 0; t < 8; t++) {
+			for (int i = 0; i < 100; i++) {
+				assertThat(store.findOccurrence("thread." + t + ".name." + i)).isGreaterThanOrEqualTo(1000L);
+			}
+		}
+	}
+}
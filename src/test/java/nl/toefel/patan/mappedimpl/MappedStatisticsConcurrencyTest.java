@@ -0,0 +1,60 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan.mappedimpl;
+
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.Statistics;
+import nl.toefel.patan.concurrencytest.ConcurrencyTestBase;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class MappedStatisticsConcurrencyTest extends ConcurrencyTestBase {
+    @Override
+    protected Statistics createStatistics() {
+        try {
+            File file = File.createTempFile("patan", ".stats");
+            file.deleteOnExit();
+            return StatisticsFactory.createMappedStatistics(file, 4096);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void testConcurrencyOneThreadEach() {
+        runConcurrencyTest(1, 50000);
+    }
+
+    @Test
+    public void testConcurrencyTenThreadsEach() {
+        runConcurrencyTest(10, 30000);
+    }
+
+    @Test
+    public void testConcurrencyHundredThreadsEach() {
+        runConcurrencyTest(100, 20000);
+    }
+
+    @Test
+    public void testResetTenWritersTenResetters() {
+        runResetTest(10, 10, 100000, 25000);
+    }
+}
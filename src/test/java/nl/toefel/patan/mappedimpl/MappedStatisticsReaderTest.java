@@ -0,0 +1,160 @@
+package nl.toefel.patan.mappedimpl;
+
+import nl.toefel.patan.api.Snapshot;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static nl.toefel.patan.singlethreadedimpl.TimingHelper.assertClose;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedStatisticsReaderTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("patan", ".stats");
+		file.deleteOnExit();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testReaderSeesValuesOfWriter() throws IOException {
+		MappedStatistics statistics = new MappedStatistics(file, 16);
+		statistics.addOccurrences("orders.placed", 3);
+		statistics.addOccurrences("orders.empty", 0);
+		for (int i = 1; i <= 100; i++) {
+			statistics.addSample("queue.depth", i);
+			statistics.recordElapsedNanos("orders.duration", System.nanoTime() - i * 1000000L);
+		}
+		statistics.addDistinct("users", 1);
+
+		Snapshot written = statistics.getSnapshot();
+		Snapshot read = new MappedStatisticsReader(file).snapshot();
+		assertThat(read.getOccurrences()).isEqualTo(written.getOccurrences());
+		assertThat(read.getOccurrences()).containsEntry("orders.empty", 0L);
+		// distributions have no equals, they print all their values
+		assertThat(read.getSamples().toString()).isEqualTo(written.getSamples().toString());
+		assertThat(read.getDurations().toString()).isEqualTo(written.getDurations().toString());
+		assertThat(read.getDistinctCounts()).isEmpty();
+		assertClose("mean", 50.5, read.findSampleDistribution("queue.depth").getMean());
+		assertThat(read.findDuration("orders.duration").getMinimum()).isGreaterThanOrEqualTo(1d);
+	}
+
+	@Test
+	public void testReaderSeesNewNamesAndResets() throws IOException {
+		MappedStatistics statistics = new MappedStatistics(file, 16);
+		MappedStatisticsReader reader = new MappedStatisticsReader(file);
+		assertThat(reader.snapshot().getOccurrences()).isEmpty();
+
+		statistics.counter("requests").increment(5);
+		assertThat(reader.snapshot().findOccurrence("requests")).isEqualTo(5);
+
+		statistics.getSnapshotAndReset();
+		assertThat(reader.snapshot().getOccurrences()).isEmpty();
+		statistics.addOccurrence("requests");
+		assertThat(reader.snapshot().findOccurrence("requests")).isEqualTo(1);
+		statistics.reset();
+		assertThat(reader.snapshot().getOccurrences()).isEmpty();
+		assertThat(reader.getCreatedMillis()).isLessThanOrEqualTo(System.currentTimeMillis());
+	}
+
+	@Test
+	public void testCreatingReplacesTheFileWithoutTruncatingIt() throws IOException {
+		MappedStatistics previous = new MappedStatistics(file, 16);
+		previous.addOccurrences("requests", 7);
+		MappedStatisticsReader reader = new MappedStatisticsReader(file);
+
+		MappedStatistics statistics = new MappedStatistics(file, 16);
+		statistics.addOccurrence("restarted");
+		assertThat(reader.snapshot().getOccurrences()).containsOnlyKeys("requests");
+		assertThat(new MappedStatisticsReader(file).snapshot().getOccurrences()).containsOnlyKeys("restarted");
+		for (String name : file.getAbsoluteFile().getParentFile().list()) {
+			assertThat(name).doesNotStartWith(file.getName() + ".new");
+		}
+	}
+
+	@Test
+	public void testRecordsAreDroppedWhenFull() throws IOException {
+		MappedStatistics statistics = new MappedStatistics(file, 2);
+		statistics.addOccurrence("first");
+		statistics.addSample("second", 1);
+		statistics.addOccurrence("third");
+		statistics.addSample("fourth", 1);
+		statistics.addOccurrence("first");
+		assertThat(statistics.getDroppedRecords()).isEqualTo(2);
+		assertThat(statistics.findOccurrence("first")).isEqualTo(2);
+		assertThat(statistics.getAllOccurrencesSnapshot()).containsOnlyKeys("first");
+	}
+
+	@Test
+	public void testSameNameOfDifferentKindsUsesSeparateSlots() throws IOException {
+		MappedStatistics statistics = new MappedStatistics(file, 4);
+		statistics.addOccurrence("name");
+		statistics.addSample("name", 4);
+		Snapshot read = new MappedStatisticsReader(file).snapshot();
+		assertThat(read.findOccurrence("name")).isEqualTo(1);
+		assertThat(read.findSampleDistribution("name").getMaximum()).isEqualTo(4d);
+		assertThat(read.getDurations()).isEmpty();
+	}
+
+	@Test
+	public void testRecordsUnderTooLongNamesAreDropped() throws IOException {
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i <= MappedLayout.MAX_NAME_BYTES; i++) {
+			name.append('x');
+		}
+		String tooLong = name.toString();
+		String longest = tooLong.substring(1);
+		MappedStatistics statistics = new MappedStatistics(file, 4);
+		statistics.addOccurrence(tooLong);
+		statistics.counter(tooLong).increment();
+		statistics.addSample(tooLong, 1);
+		statistics.timer(tooLong).recordElapsedTime(statistics.startStopwatch());
+		statistics.addOccurrence(longest);
+		assertThat(statistics.getDroppedRecords()).isEqualTo(4);
+		assertThat(statistics.findOccurrence(tooLong)).isZero();
+		assertThat(new MappedStatisticsReader(file).snapshot().getOccurrences()).containsOnlyKeys(longest);
+	}
+
+	@Test
+	public void testNamesAreMeasuredInUtf8Bytes() throws IOException {
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i <= MappedLayout.MAX_NAME_BYTES / 2; i++) {
+			name.append('\u00e9'); // two bytes in UTF-8
+		}
+		String tooLong = name.toString();
+		String longest = tooLong.substring(1);
+		MappedStatistics statistics = new MappedStatistics(file, 4);
+		statistics.addOccurrence(tooLong);
+		statistics.addOccurrence(longest);
+		assertThat(statistics.getDroppedRecords()).isEqualTo(1);
+		assertThat(new MappedStatisticsReader(file).snapshot().getOccurrences()).containsOnlyKeys(longest);
+	}
+
+	@Test(expected = IOException.class)
+	public void testReaderRejectsOtherFiles() throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(new byte[MappedLayout.HEADER_BYTES]);
+		} finally {
+			out.close();
+		}
+		new MappedStatisticsReader(file);
+	}
+
+	@Test
+	public void testFileSize() throws IOException {
+		new MappedStatistics(file, 100).close();
+		assertThat(file.length()).isEqualTo(MappedLayout.fileBytes(100)).isEqualTo(64 + 100 * 192);
+	}
+}
@@ -57,6 +57,7 @@ public class AssertionHelper {
 		assertThat(snapshot.getOccurrences()).isNotNull().isEmpty();
 		assertThat(snapshot.getDurations()).isNotNull().isEmpty();
 		assertThat(snapshot.getSamples()).isNotNull().isEmpty();
+		assertThat(snapshot.getDistinctCounts()).isNotNull().isEmpty();
 		return snapshot;
 	}
 
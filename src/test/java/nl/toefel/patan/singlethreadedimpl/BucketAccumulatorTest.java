@@ -0,0 +1,217 @@
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.Snapshot;
+import nl.toefel.patan.api.StatisticalDistribution;
+import nl.toefel.patan.api.Statistics;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static nl.toefel.patan.singlethreadedimpl.TimingHelper.assertClose;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BucketAccumulatorTest {
+
+	private static final BucketLayout LAYOUT = new BucketLayout(5, 10, 25, 50, 100);
+
+	@Test
+	public void testUpperBoundsAreInclusive() {
+		assertThat(LAYOUT.length()).isEqualTo(6);
+		assertThat(LAYOUT.indexOf(-1)).isEqualTo(0);
+		assertThat(LAYOUT.indexOf(5)).isEqualTo(0);
+		assertThat(LAYOUT.indexOf(5.001)).isEqualTo(1);
+		assertThat(LAYOUT.indexOf(25)).isEqualTo(2);
+		assertThat(LAYOUT.indexOf(99)).isEqualTo(4);
+		assertThat(LAYOUT.indexOf(100)).isEqualTo(4);
+		assertThat(LAYOUT.indexOf(100.5)).isEqualTo(5);
+		assertThat(LAYOUT.indexOf(Double.NaN)).isEqualTo(5);
+		assertThat(LAYOUT.upperBoundOf(5)).isEqualTo(Double.POSITIVE_INFINITY);
+	}
+
+	@Test
+	public void testIndexMatchesLinearSearch() {
+		for (double value = -1; value < 12000; value += 0.5) {
+			int expected = 0;
+			while (expected < 11 && value > BucketLayout.DEFAULT_MILLIS.upperBoundOf(expected)) {
+				expected++;
+			}
+			assertThat(BucketLayout.DEFAULT_MILLIS.indexOf(value)).isEqualTo(expected);
+		}
+	}
+
+	@Test
+	public void testNanosUseTheBoundsInNanos() {
+		assertThat(LAYOUT.indexOfNanos(-1)).isEqualTo(0);
+		assertThat(LAYOUT.indexOfNanos(5000000)).isEqualTo(0);
+		assertThat(LAYOUT.indexOfNanos(5000001)).isEqualTo(1);
+		assertThat(LAYOUT.indexOfNanos(100000000)).isEqualTo(4);
+		assertThat(LAYOUT.indexOfNanos(100000001)).isEqualTo(5);
+		assertThat(new BucketLayout(0.0005).indexOfNanos(500)).isEqualTo(0);
+		assertThat(new BucketLayout(0.0005).indexOfNanos(501)).isEqualTo(1);
+		assertThat(new BucketLayout(1e20).indexOfNanos(Long.MAX_VALUE)).isEqualTo(0);
+	}
+
+	@Test
+	public void testDurationsAreExactNanos() {
+		BucketAccumulator accumulator = new BucketAccumulator(LAYOUT);
+		DurationAccumulator expected = new DurationAccumulator();
+		for (long i = 0; i < 1000; i++) {
+			long elapsedNanos = 86400000000007L + i * 3;
+			accumulator.addElapsedNanos(elapsedNanos);
+			expected.addElapsedNanos(elapsedNanos);
+		}
+		accumulator.addElapsedNanos(1);
+		expected.addElapsedNanos(1);
+		StatisticalDistribution distribution = accumulator.toDistribution();
+		StatisticalDistribution exact = expected.toDistribution();
+		assertThat(distribution.getMinimum()).isEqualTo(1e-6);
+		assertThat(distribution.getMaximum()).isEqualTo(exact.getMaximum());
+		assertThat(distribution.getMean()).isEqualTo(exact.getMean());
+		assertThat(distribution.getStdDeviation()).isEqualTo(exact.getStdDeviation());
+		assertThat(((BucketDistribution) distribution).cumulativeCounts()).containsExactly(1L, 1L, 1L, 1L, 1L, 1001L);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBoundsMustAscend() {
+		new BucketLayout(10, 5);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBoundsMustBeFinite() {
+		new BucketLayout(5, Double.POSITIVE_INFINITY);
+	}
+
+	@Test
+	public void testCumulativeCounts() {
+		BucketAccumulator accumulator = new BucketAccumulator(LAYOUT);
+		for (double value : new double[]{1, 5, 7, 30, 30, 200}) {
+			accumulator.addSample(value);
+		}
+		BucketDistribution distribution = (BucketDistribution) accumulator.toDistribution();
+		assertThat(distribution.cumulativeCounts()).containsExactly(2L, 3L, 3L, 5L, 5L, 6L);
+		assertThat(distribution.getSampleCount()).isEqualTo(6);
+		assertThat(distribution.getMinimum()).isEqualTo(1d);
+		assertThat(distribution.getMaximum()).isEqualTo(200d);
+		assertClose("sum", 273, distribution.getSum());
+	}
+
+	@Test
+	public void testPercentilesAreInterpolated() {
+		BucketAccumulator accumulator = new BucketAccumulator(LAYOUT);
+		for (int i = 1; i <= 100; i++) {
+			accumulator.addSample(i);
+		}
+		BucketDistribution distribution = (BucketDistribution) accumulator.toDistribution();
+		assertClose("p50", 50, distribution.getPercentile(50));
+		assertClose("p75", 75, distribution.getPercentile(75));
+		assertThat(distribution.getPercentile(0)).isEqualTo(1d);
+		assertThat(distribution.getPercentile(100)).isEqualTo(100d);
+		assertClose("stdDeviation", 1E-6, oneToHundred().getStdDeviation(), distribution.getStdDeviation());
+	}
+
+	@Test
+	public void testEmpty() {
+		BucketDistribution distribution = (BucketDistribution) new BucketAccumulator(LAYOUT).toDistribution();
+		assertThat(distribution.getSampleCount()).isZero();
+		assertThat(distribution.getPercentile(99)).isEqualTo(0d);
+		assertThat(distribution.cumulativeCounts()).containsOnly(0L);
+	}
+
+	@Test
+	public void testMergeEqualsRecordingIntoOne() {
+		BucketAccumulator all = new BucketAccumulator(LAYOUT);
+		BucketAccumulator even = new BucketAccumulator(LAYOUT);
+		BucketAccumulator odd = new BucketAccumulator(LAYOUT);
+		for (int i = 1; i <= 1000; i++) {
+			all.addSample(i % 150);
+			(i % 2 == 0 ? even : odd).addSample(i % 150);
+		}
+		BucketDistribution expected = (BucketDistribution) all.toDistribution();
+		BucketDistribution mergedDistributions = (BucketDistribution) even.toDistribution().newMergedWith(odd.toDistribution());
+		even.merge(odd);
+		BucketDistribution mergedAccumulators = (BucketDistribution) even.toDistribution();
+		assertThat(mergedDistributions.cumulativeCounts()).isEqualTo(expected.cumulativeCounts());
+		assertThat(mergedAccumulators.cumulativeCounts()).isEqualTo(expected.cumulativeCounts());
+		assertClose("mean", expected.getMean(), mergedAccumulators.getMean());
+		assertClose("stdDeviation", 1E-6, expected.getStdDeviation(), mergedAccumulators.getStdDeviation());
+	}
+
+	@Test
+	public void testStdDeviationOfLargeValuesCloseTogether() {
+		DistributionAccumulator expected = new DistributionAccumulator();
+		BucketAccumulator recorded = new BucketAccumulator(LAYOUT);
+		BucketAccumulator first = new BucketAccumulator(LAYOUT);
+		BucketAccumulator second = new BucketAccumulator(LAYOUT);
+		for (int i = 0; i < 1000; i++) {
+			double value = 1e9 + i % 3;
+			expected.addSample(value);
+			recorded.addSample(value);
+			(i % 2 == 0 ? first : second).addSample(value);
+		}
+		first.merge(second);
+		assertClose("stdDeviation", 1E-6, expected.toDistribution().getStdDeviation(), recorded.toDistribution().getStdDeviation());
+		assertClose("mergedMean", 1E-6, expected.toDistribution().getMean(), first.toDistribution().getMean());
+		assertClose("mergedStdDeviation", 1E-6, expected.toDistribution().getStdDeviation(), first.toDistribution().getStdDeviation());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeOtherLayout() {
+		new BucketAccumulator(LAYOUT).merge(new BucketAccumulator(BucketLayout.DEFAULT_MILLIS));
+	}
+
+	@Test
+	public void testConcurrentRecordingLosesNothing() throws InterruptedException {
+		final Statistics stats = StatisticsFactory.createConcurrentStatistics(BucketAccumulator.factory(LAYOUT));
+		final List<Snapshot> snapshots = new ArrayList<Snapshot>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 100000; i++) {
+						stats.recordElapsedNanos("request", System.nanoTime() - i % 200 * 1000000L);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (int i = 0; i < 20; i++) {
+			snapshots.add(stats.getSnapshotAndReset());
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		snapshots.add(stats.getSnapshotAndReset());
+		StatisticalDistribution total = ImmutableStatisticalDistribution.createEmpty();
+		for (Snapshot snapshot : snapshots) {
+			StatisticalDistribution durations = snapshot.getDurations().get("request");
+			if (durations != null) {
+				assertThat(durations).isInstanceOf(BucketDistribution.class);
+				total = total.newMergedWith(durations);
+			}
+		}
+		assertThat(total.getSampleCount()).isEqualTo(400000);
+		assertThat(((BucketDistribution) total).cumulativeCounts()[5]).isEqualTo(400000);
+	}
+
+	@Test
+	public void testPrefixedDurations() {
+		Statistics stats = StatisticsFactory.createThreadsafeStatistics(DistributionAccumulator.FACTORY,
+				new PrefixedAccumulatorFactory(DistributionAccumulator.FACTORY).withPrefix("http.", BucketAccumulator.factory(BucketLayout.DEFAULT_MILLIS)));
+		stats.recordElapsedNanos("http.get", System.nanoTime() - 7000000);
+		stats.recordElapsedNanos("db.query", System.nanoTime() - 7000000);
+		assertThat(stats.getSnapshot().getDurations().get("http.get")).isInstanceOf(BucketDistribution.class);
+		assertThat(stats.findDuration("db.query")).isNotInstanceOf(BucketDistribution.class);
+	}
+
+	private static StatisticalDistribution oneToHundred() {
+		StatisticalDistribution distribution = ImmutableStatisticalDistribution.createEmpty();
+		for (int i = 1; i <= 100; i++) {
+			distribution = distribution.newWithExtraSample(i);
+		}
+		return distribution;
+	}
+}
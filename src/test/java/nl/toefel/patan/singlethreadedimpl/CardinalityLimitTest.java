@@ -0,0 +1,93 @@
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.Statistics;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CardinalityLimitTest {
+
+	@Test
+	public void testNewNamesFoldIntoOverflow() {
+		CardinalityLimit limit = new CardinalityLimit(2, "overflow");
+		CounterStore store = new CounterStore(limit);
+		store.addOccurrence("a");
+		store.addOccurrence("b");
+		store.addOccurrence("request.1");
+		store.addOccurrences("request.2", 4);
+		store.counter("request.3").increment();
+		store.addOccurrence("a");
+		Map<String, Long> snapshot = store.getAllOccurrencesSnapshot();
+		assertThat(snapshot).containsOnlyKeys("a", "b", "overflow");
+		assertThat(snapshot.get("a")).isEqualTo(2L);
+		assertThat(snapshot.get("overflow")).isEqualTo(6L);
+		assertThat(limit.getRejectedCount()).isEqualTo(3);
+	}
+
+	@Test
+	public void testResetMakesRoom() {
+		CardinalityLimit limit = new CardinalityLimit(1, "overflow");
+		StatisticDistributionStore store = new StatisticDistributionStore(DistributionAccumulator.FACTORY, limit);
+		store.addSample("a", 1);
+		store.addSample("b", 1);
+		assertThat(store.getAllSamplesSnapshotAndReset()).containsOnlyKeys("a", "overflow");
+		store.addSample("b", 1);
+		assertThat(store.getAllSamplesSnapshot()).containsOnlyKeys("b");
+	}
+
+	@Test
+	public void testByteBudget() {
+		CardinalityLimit limit = new CardinalityLimit(1000, 1000, "overflow");
+		DistinctCountStore store = new DistinctCountStore(limit);
+		store.addDistinct("users", 1);
+		store.addDistinct("tenants", "a");
+		assertThat(store.getAllDistinctCountsSnapshot()).containsOnlyKeys("overflow");
+		assertThat(store.findDistinctCount("overflow").getEstimate()).isEqualTo(2);
+	}
+
+	@Test
+	public void testUnlimitedByDefault() {
+		CounterStore store = new CounterStore();
+		for (int i = 0; i < 10000; i++) {
+			store.addOccurrence("request." + i);
+		}
+		assertThat(store.getAllOccurrencesSnapshot()).hasSize(10000);
+		assertThat(CardinalityLimit.NONE.getRejectedCount()).isZero();
+	}
+
+	@Test
+	public void testThreadsafeStatistics() {
+		assertLimitedPerKind(StatisticsFactory.createThreadsafeStatistics(new CardinalityLimit(2, "overflow")));
+	}
+
+	@Test
+	public void testConcurrentStatistics() {
+		assertLimitedPerKind(StatisticsFactory.createConcurrentStatistics(new CardinalityLimit(2, "overflow")));
+	}
+
+	private static void assertLimitedPerKind(final Statistics stats) {
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < 5; i++) {
+				stats.addOccurrence("name." + i);
+				stats.addSample("name." + i, i);
+				stats.recordElapsedNanos("name." + i, System.nanoTime());
+				stats.addDistinct("name." + i, i);
+			}
+			assertThat(stats.getAllOccurrencesSnapshot()).containsOnlyKeys("name.0", "name.1", "overflow");
+			assertThat(stats.findOccurrence("overflow")).isEqualTo(3);
+			assertThat(stats.getAllSamplesSnapshot()).containsOnlyKeys("name.0", "name.1", "overflow");
+			assertThat(stats.getAllDurationsSnapshot()).containsOnlyKeys("name.0", "name.1", "overflow");
+			assertThat(stats.getAllDistinctCountsSnapshot()).containsOnlyKeys("name.0", "name.1", "overflow");
+			assertThat(stats.findDistinctCount("overflow").getEstimate()).isEqualTo(3);
+			stats.getSnapshotAndReset();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLimit() {
+		new CardinalityLimit(0, "overflow");
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.StatisticsApiTestBase;
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.StatisticalDistribution;
+import nl.toefel.patan.api.Statistics;
+import nl.toefel.patan.api.Stopwatch;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class DenseStatisticsTest extends StatisticsApiTestBase {
+    @Override
+    protected Statistics createStatistics() {
+        return StatisticsFactory.createDenseStatistics();
+    }
+
+    @Test
+    public void testRecordById() {
+        DenseStatistics stats = StatisticsFactory.createDenseStatistics();
+        int requests = stats.occurrenceId("requests");
+        int size = stats.sampleId("size");
+        stats.addOccurrences(requests, 2);
+        stats.addOccurrence("requests");
+        stats.addSample(size, 4);
+        stats.addSample("size", 8);
+
+        assertThat(stats.occurrenceId("requests")).isEqualTo(requests);
+        assertThat(stats.findOccurrence("requests")).isEqualTo(3);
+        assertThat(stats.findSampleDistribution("size").getSampleCount()).isEqualTo(2);
+        assertThat(stats.findSampleDistribution("size").getMean()).isEqualTo(6d);
+    }
+
+    @Test
+    public void testIdsAreStableAfterReset() {
+        DenseStatistics stats = new DenseStatistics();
+        int requests = stats.occurrenceId("requests");
+        int duration = stats.durationId("duration");
+        stats.addOccurrences(requests, 5);
+        stats.recordElapsedNanos(duration, System.nanoTime());
+        stats.reset();
+
+        assertThat(stats.getAllOccurrencesSnapshot()).isEmpty();
+        assertThat(stats.getAllDurationsSnapshot()).isEmpty();
+        stats.addOccurrences(requests, 1);
+        assertThat(stats.getAllOccurrencesSnapshotAndReset()).containsExactly(entry("requests", 1L));
+        assertThat(stats.occurrenceId("requests")).isEqualTo(requests);
+    }
+
+    @Test
+    public void testRecordedZeroIsPartOfSnapshot() {
+        DenseStatistics stats = new DenseStatistics();
+        stats.occurrenceId("registered");
+        stats.addOccurrences("zero", 0);
+
+        assertThat(stats.getAllOccurrencesSnapshot()).containsExactly(entry("zero", 0L));
+    }
+
+    @Test
+    public void testManyNamesMatchDistributionAccumulator() {
+        DenseStatistics stats = new DenseStatistics();
+        int names = 3 * DenseDistributionStore.CHUNK_SIZE + 7;
+        for (int i = 0; i < names; i++) {
+            int id = stats.sampleId("sample." + i);
+            for (int value = 0; value < 10; value++) {
+                stats.addSample(id, i + value * 1.5);
+            }
+        }
+        assertThat(stats.getAllSamplesSnapshot()).hasSize(names);
+        for (int i = 0; i < names; i += 97) {
+            DistributionAccumulator expected = new DistributionAccumulator();
+            for (int value = 0; value < 10; value++) {
+                expected.addSample(i + value * 1.5);
+            }
+            StatisticalDistribution actual = stats.findSampleDistribution("sample." + i);
+            assertThat(actual.toString()).isEqualTo(expected.toDistribution().toString());
+        }
+    }
+
+    @Test
+    public void testDurationsMatchDurationAccumulator() {
+        DenseStatistics stats = new DenseStatistics();
+        int id = stats.durationId("duration");
+        DenseDurationStore store = new DenseDurationStore();
+        DurationAccumulator expected = new DurationAccumulator();
+        for (long i = 0; i < 1000; i++) {
+            long elapsedNanos = 86400000000007L + i * 3;
+            stats.timer("duration").recordElapsedTime(new FixedStopwatch(elapsedNanos));
+            store.addElapsedNanos("duration", elapsedNanos);
+            expected.addElapsedNanos(elapsedNanos);
+        }
+        stats.recordElapsedTime("other", new FixedStopwatch(1));
+        assertThat(stats.findDuration("duration").toString()).isEqualTo(expected.toDistribution().toString());
+        assertThat(store.findDuration("duration").toString()).isEqualTo(expected.toDistribution().toString());
+        assertThat(store.findSumNanos("duration")).isEqualTo(expected.getSumNanos());
+        assertThat(stats.findDuration("other").getMinimum()).isEqualTo(1e-6);
+        assertThat(stats.durationId("duration")).isEqualTo(id);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownIdThrows() {
+        new DenseStatistics().addOccurrences(3, 1);
+    }
+
+    private static final class FixedStopwatch implements Stopwatch {
+
+        private final long elapsedNanos;
+
+        FixedStopwatch(final long elapsedNanos) {
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public double elapsedMillis() {
+            return elapsedNanos / 1e6;
+        }
+
+        @Override
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.StatisticalDistribution;
+import org.junit.Test;
+
+import static nl.toefel.patan.singlethreadedimpl.TimingHelper.assertClose;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DistributionAccumulatorTest {
+
+	@Test
+	public void testEmpty() {
+		StatisticalDistribution empty = new DistributionAccumulator().toDistribution();
+		assertThat(empty.getSampleCount()).isZero();
+		assertThat(empty.getMinimum()).isEqualTo(ImmutableStatisticalDistribution.createEmpty().getMinimum());
+		assertThat(empty.getMaximum()).isEqualTo(ImmutableStatisticalDistribution.createEmpty().getMaximum());
+	}
+
+	@Test
+	public void testSameResultAsImmutableDistribution() {
+		DistributionAccumulator accumulator = new DistributionAccumulator();
+		StatisticalDistribution expected = ImmutableStatisticalDistribution.createEmpty();
+		for (int i = 1; i <= 10; i++) {
+			accumulator.addSample(i * 1.5);
+			expected = expected.newWithExtraSample(i * 1.5);
+		}
+		StatisticalDistribution actual = accumulator.toDistribution();
+		assertThat(actual.getSampleCount()).isEqualTo(expected.getSampleCount());
+		assertThat(actual.getMinimum()).isEqualTo(expected.getMinimum());
+		assertThat(actual.getMaximum()).isEqualTo(expected.getMaximum());
+		assertThat(actual.getMean()).isEqualTo(expected.getMean());
+		assertThat(actual.getStdDeviation()).isEqualTo(expected.getStdDeviation());
+	}
+
+	@Test
+	public void testMergeEqualsAddingAllSamples() {
+		DistributionAccumulator all = new DistributionAccumulator();
+		DistributionAccumulator low = new DistributionAccumulator();
+		DistributionAccumulator high = new DistributionAccumulator();
+		for (int i = 1; i <= 10; i++) {
+			all.addSample(i);
+			(i <= 4 ? low : high).addSample(i);
+		}
+		DistributionAccumulator merged = new DistributionAccumulator();
+		merged.merge(high);
+		merged.merge(new DistributionAccumulator());
+		merged.merge(low);
+
+		StatisticalDistribution expected = all.toDistribution();
+		StatisticalDistribution actual = merged.toDistribution();
+		assertThat(actual.getSampleCount()).isEqualTo(10);
+		assertThat(actual.getMinimum()).isEqualTo(1);
+		assertThat(actual.getMaximum()).isEqualTo(10);
+		assertClose("mean", expected.getMean(), actual.getMean());
+		assertClose("stdDeviation", expected.getStdDeviation(), actual.getStdDeviation());
+	}
+
+	@Test
+	public void testMergeDoesNotModifyOther() {
+		DistributionAccumulator other = new DistributionAccumulator();
+		other.addSample(3);
+		DistributionAccumulator target = new DistributionAccumulator();
+		target.addSample(5);
+		target.merge(other);
+		assertThat(other.getSampleCount()).isEqualTo(1);
+		assertThat(target.getSampleCount()).isEqualTo(2);
+	}
+}
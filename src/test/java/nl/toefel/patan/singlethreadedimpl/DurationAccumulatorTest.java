@@ -0,0 +1,81 @@
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.StatisticalDistribution;
+import org.junit.Test;
+
+import static nl.toefel.patan.singlethreadedimpl.TimingHelper.assertClose;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DurationAccumulatorTest {
+
+	@Test
+	public void testEmpty() {
+		StatisticalDistribution empty = new DurationAccumulator().toDistribution();
+		assertThat(empty.getSampleCount()).isZero();
+		assertThat(empty.getMinimum()).isEqualTo(ImmutableStatisticalDistribution.createEmpty().getMinimum());
+	}
+
+	@Test
+	public void testSumIsExact() {
+		DurationAccumulator accumulator = new DurationAccumulator();
+		for (int i = 0; i < 1000000; i++) {
+			accumulator.addElapsedNanos(1234567891L + i);
+		}
+		assertThat(accumulator.getSumNanos()).isEqualTo(1000000L * 1234567891L + 999999L * 1000000L / 2);
+		StatisticalDistribution distribution = accumulator.toDistribution();
+		assertThat(distribution.getMinimum()).isEqualTo(1234.567891);
+		assertThat(distribution.getMaximum()).isEqualTo(1235.56789);
+	}
+
+	@Test
+	public void testSameResultAsDistributionAccumulator() {
+		DurationAccumulator durations = new DurationAccumulator();
+		DistributionAccumulator expected = new DistributionAccumulator();
+		for (int i = 1; i <= 10; i++) {
+			durations.addElapsedNanos(i * 1500000L);
+			expected.addSample(i * 1.5);
+		}
+		StatisticalDistribution actual = durations.toDistribution();
+		assertThat(actual.getSampleCount()).isEqualTo(10);
+		assertThat(actual.getMinimum()).isEqualTo(1.5);
+		assertThat(actual.getMaximum()).isEqualTo(15d);
+		assertClose("mean", expected.toDistribution().getMean(), actual.getMean());
+		assertClose("stdDeviation", expected.toDistribution().getStdDeviation(), actual.getStdDeviation());
+	}
+
+	@Test
+	public void testMillisAreRoundedToNanos() {
+		DurationAccumulator accumulator = new DurationAccumulator();
+		accumulator.addSample(1.0000004);
+		accumulator.addSample(2.5);
+		assertThat(accumulator.getSumNanos()).isEqualTo(3500000L);
+	}
+
+	@Test
+	public void testMergeEqualsAddingAllDurations() {
+		DurationAccumulator all = new DurationAccumulator();
+		DurationAccumulator low = new DurationAccumulator();
+		DurationAccumulator high = new DurationAccumulator();
+		for (int i = 1; i <= 10; i++) {
+			all.addElapsedNanos(i * 1000L);
+			(i <= 4 ? low : high).addElapsedNanos(i * 1000L);
+		}
+		DurationAccumulator merged = new DurationAccumulator();
+		merged.merge(high);
+		merged.merge(new DurationAccumulator());
+		merged.merge(low);
+
+		StatisticalDistribution expected = all.toDistribution();
+		StatisticalDistribution actual = merged.toDistribution();
+		assertThat(merged.getSumNanos()).isEqualTo(all.getSumNanos());
+		assertThat(actual.getMinimum()).isEqualTo(0.001);
+		assertThat(actual.getMaximum()).isEqualTo(0.01);
+		assertClose("mean", expected.getMean(), actual.getMean());
+		assertClose("stdDeviation", expected.getStdDeviation(), actual.getStdDeviation());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeOtherAccumulator() {
+		new DurationAccumulator().merge(new DistributionAccumulator());
+	}
+}
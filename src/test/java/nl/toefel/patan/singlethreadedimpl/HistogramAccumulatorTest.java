@@ -0,0 +1,164 @@
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.StatisticalDistribution;
+import nl.toefel.patan.api.Statistics;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static nl.toefel.patan.singlethreadedimpl.TimingHelper.assertClose;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HistogramAccumulatorTest {
+
+	private static final HistogramLayout LAYOUT = new HistogramLayout(1, 1000000, 2);
+
+	@Test
+	public void testBucketContainsValue() {
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			double value = random.nextDouble() * 1000000;
+			int index = LAYOUT.indexOf(value);
+			assertThat(index).isBetween(0, LAYOUT.length() - 1);
+			assertThat(LAYOUT.lowerBoundOf(index)).isLessThanOrEqualTo(Math.floor(value));
+			assertThat(LAYOUT.upperBoundOf(index)).isGreaterThan(Math.floor(value));
+			// two significant digits, the bucket is at most 1% of its values wide
+			assertThat(LAYOUT.upperBoundOf(index) - LAYOUT.lowerBoundOf(index)).isLessThanOrEqualTo(Math.max(1, value / 100));
+		}
+	}
+
+	@Test
+	public void testOutOfRangeValuesAreClamped() {
+		assertThat(LAYOUT.indexOf(-5)).isEqualTo(0);
+		assertThat(LAYOUT.indexOf(Double.MAX_VALUE)).isEqualTo(LAYOUT.indexOf(1000000));
+		assertThat(LAYOUT.indexOf(1000000)).isLessThan(LAYOUT.length());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSignificantDigits() {
+		new HistogramLayout(1, 1000, 6);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRange() {
+		new HistogramLayout(1, 1, 2);
+	}
+
+	@Test
+	public void testPercentiles() {
+		HistogramAccumulator accumulator = new HistogramAccumulator(LAYOUT);
+		for (int i = 1; i <= 10000; i++) {
+			accumulator.addSample(i);
+		}
+		HistogramDistribution histogram = (HistogramDistribution) accumulator.toDistribution();
+		assertThat(histogram.getSampleCount()).isEqualTo(10000);
+		assertThat(histogram.getMinimum()).isEqualTo(1d);
+		assertThat(histogram.getMaximum()).isEqualTo(10000d);
+		assertClose("mean", 5000.5, histogram.getMean());
+		assertThat(histogram.getPercentile(50)).isBetween(5000d, 5000 * 1.01);
+		assertThat(histogram.getPercentile(99)).isBetween(9900d, 9900 * 1.01);
+		assertThat(histogram.getPercentile(99.9)).isBetween(9990d, 10000d);
+		assertThat(histogram.getPercentile(100)).isEqualTo(10000d);
+		assertThat(histogram.getPercentile(0)).isEqualTo(1d);
+	}
+
+	@Test
+	public void testEmptyPercentile() {
+		HistogramDistribution histogram = (HistogramDistribution) new HistogramAccumulator(LAYOUT).toDistribution();
+		assertThat(histogram.getPercentile(99)).isEqualTo(0d);
+		assertThat(histogram.nonEmptyBuckets()).isEmpty();
+	}
+
+	@Test
+	public void testNonEmptyBuckets() {
+		HistogramAccumulator accumulator = new HistogramAccumulator(LAYOUT);
+		accumulator.addSample(3);
+		accumulator.addSample(3);
+		accumulator.addSample(500000);
+		List<HistogramBucket> buckets = ((HistogramDistribution) accumulator.toDistribution()).nonEmptyBuckets();
+		assertThat(buckets).hasSize(2);
+		assertThat(buckets.get(0).getLowerBound()).isEqualTo(3d);
+		assertThat(buckets.get(0).getCount()).isEqualTo(2);
+		assertThat(buckets.get(1).getLowerBound()).isLessThanOrEqualTo(500000d);
+		assertThat(buckets.get(1).getUpperBound()).isGreaterThan(500000d);
+		assertThat(buckets.get(1).getCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testMergeEqualsRecordingIntoOne() {
+		HistogramAccumulator all = new HistogramAccumulator(LAYOUT);
+		HistogramAccumulator even = new HistogramAccumulator(LAYOUT);
+		HistogramAccumulator odd = new HistogramAccumulator(LAYOUT);
+		for (int i = 1; i <= 1000; i++) {
+			all.addSample(i * 7);
+			(i % 2 == 0 ? even : odd).addSample(i * 7);
+		}
+		HistogramDistribution expected = (HistogramDistribution) all.toDistribution();
+		HistogramDistribution mergedDistributions = (HistogramDistribution) even.toDistribution().newMergedWith(odd.toDistribution());
+		even.merge(odd);
+		HistogramDistribution mergedAccumulators = (HistogramDistribution) even.toDistribution();
+		for (double percentile : new double[]{10, 50, 90, 99, 99.9}) {
+			assertThat(mergedDistributions.getPercentile(percentile)).isEqualTo(expected.getPercentile(percentile));
+			assertThat(mergedAccumulators.getPercentile(percentile)).isEqualTo(expected.getPercentile(percentile));
+		}
+		assertClose("stdDeviation", expected.getStdDeviation(), mergedAccumulators.getStdDeviation());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeOtherLayout() {
+		new HistogramAccumulator(LAYOUT).merge(new HistogramAccumulator(new HistogramLayout(1, 1000000, 3)));
+	}
+
+	@Test
+	public void testMergeWithPlainDistributionDropsBuckets() {
+		HistogramAccumulator accumulator = new HistogramAccumulator(LAYOUT);
+		accumulator.addSample(10);
+		StatisticalDistribution merged = accumulator.toDistribution().newMergedWith(ImmutableStatisticalDistribution.createWithSingleSample(20));
+		assertThat(merged).isNotInstanceOf(HistogramDistribution.class);
+		assertThat(merged.getSampleCount()).isEqualTo(2);
+		assertClose("mean", 15, merged.getMean());
+	}
+
+	@Test
+	public void testDurationsOfConcurrentStatistics() {
+		Statistics stats = StatisticsFactory.createConcurrentStatistics(HistogramAccumulator.factory(LAYOUT));
+		for (int i = 1; i <= 100; i++) {
+			stats.recordElapsedTime("duration", new FixedStopwatch(i));
+		}
+		HistogramDistribution durations = (HistogramDistribution) stats.findDuration("duration");
+		assertThat(durations.getPercentile(90)).isEqualTo(90d);
+		assertThat(stats.getAllDurationsSnapshot().get("duration")).isInstanceOf(HistogramDistribution.class);
+	}
+
+	private static final class FixedStopwatch implements nl.toefel.patan.api.Stopwatch {
+		private final double elapsedMillis;
+
+		FixedStopwatch(final double elapsedMillis) {
+			this.elapsedMillis = elapsedMillis;
+		}
+
+		@Override
+		public double elapsedMillis() {
+			return elapsedMillis;
+		}
+
+		@Override
+		public long elapsedNanos() {
+			return Math.round(elapsedMillis * 1e6);
+		}
+	}
+
+	@Test
+	public void testResetBehavesLikeNew() {
+		HistogramAccumulator histogram = new HistogramAccumulator(HistogramLayout.MILLIS_UP_TO_AN_HOUR);
+		histogram.addSample(500);
+		histogram.reset();
+		histogram.addSample(2);
+		HistogramDistribution distribution = (HistogramDistribution) histogram.toDistribution();
+		assertThat(distribution.getSampleCount()).isEqualTo(1);
+		assertThat(distribution.nonEmptyBuckets()).hasSize(1);
+		assertThat(distribution.getMaximum()).isEqualTo(2d);
+	}
+}
@@ -0,0 +1,112 @@
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.DistinctCount;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HyperLogLogTest {
+
+	@Test
+	public void testSmallCardinalitiesAreExact() {
+		HyperLogLog sketch = new HyperLogLog();
+		assertThat(sketch.toDistinctCount().getEstimate()).isZero();
+		for (int i = 0; i < 50; i++) {
+			sketch.add(i);
+			sketch.add(i);
+		}
+		assertThat(sketch.toDistinctCount().getEstimate()).isEqualTo(50);
+	}
+
+	@Test
+	public void testRelativeErrorOverCardinalities() {
+		for (int cardinality : new int[]{1000, 10000, 100000, 1000000}) {
+			HyperLogLog sketch = new HyperLogLog();
+			for (int i = 0; i < cardinality; i++) {
+				sketch.add("user." + i);
+			}
+			double error = Math.abs(sketch.toDistinctCount().getEstimate() - cardinality) / (double) cardinality;
+			assertThat(error).as("relative error at " + cardinality).isLessThan(0.05);
+		}
+	}
+
+	@Test
+	public void testFingerprintCountsAsString() {
+		HyperLogLog strings = new HyperLogLog();
+		HyperLogLog fingerprints = new HyperLogLog();
+		for (int i = 0; i < 10000; i++) {
+			strings.add("tenant-" + i);
+			fingerprints.add(HyperLogLog.fingerprint("tenant-" + i));
+		}
+		assertThat(strings.toDistinctCount().getEstimate()).isEqualTo(fingerprints.toDistinctCount().getEstimate());
+	}
+
+	@Test
+	public void testMerge() {
+		HyperLogLog left = new HyperLogLog();
+		HyperLogLog right = new HyperLogLog();
+		for (int i = 0; i < 20000; i++) {
+			left.add(i);
+			right.add(i + 10000);
+		}
+		DistinctCount merged = left.toDistinctCount().newMergedWith(right.toDistinctCount());
+		left.merge(right);
+		assertThat(left.toDistinctCount().getEstimate()).isEqualTo(merged.getEstimate());
+		assertThat(merged.getEstimate()).isBetween(28500L, 31500L);
+		assertThat(right.toDistinctCount().getEstimate()).isBetween(19000L, 21000L);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeOtherType() {
+		ImmutableDistinctCount.createEmpty().newMergedWith(new DistinctCount() {
+			@Override
+			public long getEstimate() {
+				return 1;
+			}
+
+			@Override
+			public DistinctCount newMergedWith(final DistinctCount other) {
+				return this;
+			}
+		});
+	}
+
+	@Test
+	public void testClear() {
+		HyperLogLog sketch = new HyperLogLog();
+		sketch.add(1);
+		sketch.clear();
+		assertThat(sketch.toDistinctCount().getEstimate()).isZero();
+	}
+
+	@Test
+	public void testConcurrentAdds() throws InterruptedException {
+		final HyperLogLog sketch = new HyperLogLog();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			final int thread = t;
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 50000; i++) {
+						sketch.add(thread * 50000L + i);
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		HyperLogLog sequential = new HyperLogLog();
+		for (long i = 0; i < 400000; i++) {
+			sequential.add(i);
+		}
+		assertThat(sketch.toDistinctCount().getEstimate()).isEqualTo(sequential.toDistinctCount().getEstimate());
+	}
+}
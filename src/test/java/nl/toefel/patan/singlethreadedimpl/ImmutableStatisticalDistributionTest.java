@@ -84,6 +84,56 @@ public class ImmutableStatisticalDistributionTest {
 		return dist;
 	}
 
+	@Test
+	public void testMergedWithEqualsSequential() {
+		StatisticalDistribution left = ImmutableStatisticalDistribution.createEmpty();
+		StatisticalDistribution right = ImmutableStatisticalDistribution.createEmpty();
+		for (int i = 1; i <= 4; i++) {
+			left = left.newWithExtraSample(i);
+		}
+		for (int i = 5; i <= 10; i++) {
+			right = right.newWithExtraSample(i * 1000);
+		}
+		StatisticalDistribution sequential = left;
+		for (int i = 5; i <= 10; i++) {
+			sequential = sequential.newWithExtraSample(i * 1000);
+		}
+		StatisticalDistribution merged = left.newMergedWith(right);
+		assertThat(merged.getSampleCount()).isEqualTo(10);
+		assertClose("min", sequential.getMinimum(), merged.getMinimum());
+		assertClose("max", sequential.getMaximum(), merged.getMaximum());
+		assertClose("mean", sequential.getMean(), merged.getMean());
+		assertClose("stdDeviation", sequential.getStdDeviation(), merged.getStdDeviation());
+	}
+
+	@Test
+	public void testMergedWithEmpty() {
+		StatisticalDistribution dist = createTestDistribution();
+		StatisticalDistribution empty = ImmutableStatisticalDistribution.createEmpty();
+		assertThat(dist.newMergedWith(empty)).isSameAs(dist);
+		assertThat(empty.newMergedWith(dist)).isSameAs(dist);
+		assertThat(empty.newMergedWith(empty).getSampleCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testMergedWithOtherImplementation() {
+		final StatisticalDistribution dist = createTestDistribution();
+		StatisticalDistribution foreign = new StatisticalDistribution() {
+			public long getSampleCount() { return dist.getSampleCount(); }
+			public double getMinimum() { return dist.getMinimum(); }
+			public double getMaximum() { return dist.getMaximum(); }
+			public double getMean() { return dist.getMean(); }
+			public double getStdDeviation() { return dist.getStdDeviation(); }
+			public StatisticalDistribution newWithExtraSample(double sampleValue) { throw new UnsupportedOperationException(); }
+			public StatisticalDistribution newMergedWith(StatisticalDistribution other) { throw new UnsupportedOperationException(); }
+		};
+		StatisticalDistribution merged = dist.newMergedWith(foreign);
+		assertThat(merged.getSampleCount()).isEqualTo(20);
+		assertClose("mean", 5.5d, merged.getMean());
+		final double expStdDev = Math.sqrt(dist.getStdDeviation() * dist.getStdDeviation() * 18 / 19);
+		assertClose("stdDeviation", expStdDev, merged.getStdDeviation());
+	}
+
 	/** JSON output should look nice. */
 	@Test
 	public void testToJson() throws JsonProcessingException {
@@ -0,0 +1,132 @@
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.PercentileDistribution;
+import nl.toefel.patan.api.StatisticalDistribution;
+import nl.toefel.patan.api.Statistics;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static nl.toefel.patan.singlethreadedimpl.TimingHelper.assertClose;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KllAccumulatorTest {
+
+	@Test
+	public void testSmallInputIsExact() {
+		KllAccumulator sketch = new KllAccumulator(200);
+		for (int i = 100; i >= 1; i--) {
+			sketch.addSample(i);
+		}
+		PercentileDistribution distribution = (PercentileDistribution) sketch.toDistribution();
+		assertThat(distribution.getPercentile(50)).isEqualTo(50d);
+		assertThat(distribution.getPercentile(99)).isEqualTo(99d);
+		assertThat(distribution.getPercentile(0)).isEqualTo(1d);
+		assertThat(distribution.getPercentile(100)).isEqualTo(100d);
+	}
+
+	@Test
+	public void testRankErrorAndBoundedMemory() {
+		KllAccumulator sketch = new KllAccumulator(200);
+		Random random = new Random(7);
+		for (int i = 0; i < 1000000; i++) {
+			sketch.addSample(random.nextDouble() * 1000);
+		}
+		assertThat(sketch.getRetainedValues()).isLessThan(3 * 200 + 100);
+		PercentileDistribution distribution = (PercentileDistribution) sketch.toDistribution();
+		assertThat(distribution.getSampleCount()).isEqualTo(1000000);
+		// uniform over [0, 1000), the value of percentile p is 10p, allow a rank error of 2%
+		assertThat(distribution.getPercentile(50)).isBetween(480d, 520d);
+		assertThat(distribution.getPercentile(90)).isBetween(880d, 920d);
+		assertThat(distribution.getPercentile(99)).isBetween(970d, 1000d);
+	}
+
+	@Test
+	public void testEmpty() {
+		PercentileDistribution distribution = (PercentileDistribution) new KllAccumulator(200).toDistribution();
+		assertThat(distribution.getSampleCount()).isZero();
+		assertThat(distribution.getPercentile(50)).isEqualTo(0d);
+	}
+
+	@Test
+	public void testMerge() {
+		KllAccumulator low = new KllAccumulator(100);
+		KllAccumulator high = new KllAccumulator(100);
+		for (int i = 0; i < 100000; i++) {
+			low.addSample(i % 1000);
+			high.addSample(1000 + i % 1000);
+		}
+		PercentileDistribution mergedDistributions = (PercentileDistribution) low.toDistribution().newMergedWith(high.toDistribution());
+		low.merge(high);
+		PercentileDistribution mergedAccumulators = (PercentileDistribution) low.toDistribution();
+		for (PercentileDistribution merged : new PercentileDistribution[]{mergedDistributions, mergedAccumulators}) {
+			assertThat(merged.getSampleCount()).isEqualTo(200000);
+			assertClose("mean", 999.5, merged.getMean());
+			assertThat(merged.getPercentile(25)).isBetween(450d, 550d);
+			assertThat(merged.getPercentile(75)).isBetween(1450d, 1550d);
+		}
+		assertThat(low.getRetainedValues()).isLessThan(3 * 100 + 100);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeOtherK() {
+		new KllAccumulator(100).merge(new KllAccumulator(200));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidK() {
+		KllAccumulator.factory(2);
+	}
+
+	@Test
+	public void testWithExtraSampleDoesNotModifyOriginal() {
+		KllAccumulator sketch = new KllAccumulator(100);
+		sketch.addSample(1);
+		StatisticalDistribution original = sketch.toDistribution();
+		StatisticalDistribution extended = original.newWithExtraSample(3);
+		assertThat(original.getSampleCount()).isEqualTo(1);
+		assertThat(extended.getSampleCount()).isEqualTo(2);
+		assertThat(((PercentileDistribution) extended).getPercentile(100)).isEqualTo(3d);
+	}
+
+	@Test
+	public void testPrefixedFactory() {
+		PrefixedAccumulatorFactory factory = new PrefixedAccumulatorFactory(DistributionAccumulator.FACTORY)
+				.withPrefix("payload.", KllAccumulator.factory(100))
+				.withPrefix("payload.size", HistogramAccumulator.factory(HistogramLayout.MILLIS_UP_TO_AN_HOUR));
+		assertThat(factory.create("payload.count")).isInstanceOf(KllAccumulator.class);
+		assertThat(factory.create("payload.size.max")).isInstanceOf(HistogramAccumulator.class);
+		assertThat(factory.create("payload")).isInstanceOf(DistributionAccumulator.class);
+		assertThat(factory.create("queue.depth")).isInstanceOf(DistributionAccumulator.class);
+	}
+
+	@Test
+	public void testSamplesOfConcurrentStatistics() {
+		Statistics stats = StatisticsFactory.createConcurrentStatistics(
+				new PrefixedAccumulatorFactory(DistributionAccumulator.FACTORY).withPrefix("queue.", KllAccumulator.factory(100)),
+				DistributionAccumulator.FACTORY);
+		for (int i = 1; i <= 100; i++) {
+			stats.addSample("queue.depth", i);
+			stats.addSample("other", i);
+		}
+		assertThat(((PercentileDistribution) stats.findSampleDistribution("queue.depth")).getPercentile(90)).isEqualTo(90d);
+		assertThat(stats.findSampleDistribution("other")).isNotInstanceOf(PercentileDistribution.class);
+	}
+
+	@Test
+	public void testResetBehavesLikeNew() {
+		KllAccumulator sketch = new KllAccumulator(100);
+		for (int i = 0; i < 100000; i++) {
+			sketch.addSample(1000 + i);
+		}
+		sketch.reset();
+		for (int i = 1; i <= 100; i++) {
+			sketch.addSample(i);
+		}
+		PercentileDistribution distribution = (PercentileDistribution) sketch.toDistribution();
+		assertThat(distribution.getSampleCount()).isEqualTo(100);
+		assertThat(distribution.getPercentile(100)).isEqualTo(100d);
+		assertThat(sketch.getRetainedValues()).isEqualTo(100);
+	}
+}
@@ -0,0 +1,133 @@
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.StatisticalDistribution;
+import nl.toefel.patan.api.Statistics;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReservoirAccumulatorTest {
+
+	private static final long SECOND = 1000000000L;
+
+	@Test
+	public void testKeepsAllValuesUntilFull() {
+		ReservoirAccumulator reservoir = new ReservoirAccumulator(100, 0);
+		for (int i = 50; i >= 1; i--) {
+			reservoir.addSample(i);
+		}
+		ReservoirDistribution distribution = (ReservoirDistribution) reservoir.toDistribution();
+		assertThat(distribution.values()).hasSize(50);
+		assertThat(distribution.values()[0]).isEqualTo(1d);
+		assertThat(distribution.getPercentile(50)).isEqualTo(25d);
+		assertThat(distribution.getPercentile(100)).isEqualTo(50d);
+	}
+
+	@Test
+	public void testUniformSampleOfALongStream() {
+		ReservoirAccumulator reservoir = new ReservoirAccumulator(1000, 0);
+		for (int i = 0; i < 1000000; i++) {
+			reservoir.addSample(i);
+		}
+		assertThat(reservoir.getRetainedValues()).isEqualTo(1000);
+		ReservoirDistribution distribution = (ReservoirDistribution) reservoir.toDistribution();
+		assertThat(distribution.getSampleCount()).isEqualTo(1000000);
+		assertThat(distribution.getMaximum()).isEqualTo(999999d);
+		// every position in the stream is equally likely to be retained
+		assertThat(distribution.getPercentile(50)).isBetween(440000d, 560000d);
+		assertThat(distribution.getPercentile(10)).isBetween(70000d, 130000d);
+	}
+
+	@Test
+	public void testForwardDecayFavoursRecentSamples() {
+		ReservoirAccumulator reservoir = new ReservoirAccumulator(100, 1);
+		long start = System.nanoTime();
+		for (int i = 0; i < 1000; i++) {
+			reservoir.addSample(0, start);
+		}
+		for (int i = 0; i < 1000; i++) {
+			reservoir.addSample(1, start + 10 * SECOND);
+		}
+		ReservoirDistribution distribution = (ReservoirDistribution) reservoir.toDistribution();
+		assertThat(distribution.getMean()).isEqualTo(0.5);
+		assertThat(distribution.getPercentile(5)).isEqualTo(1d);
+	}
+
+	@Test
+	public void testMergeWeighsBySampleCount() {
+		ReservoirAccumulator many = new ReservoirAccumulator(1000, 0);
+		ReservoirAccumulator few = new ReservoirAccumulator(1000, 0);
+		for (int i = 0; i < 90000; i++) {
+			many.addSample(0);
+		}
+		for (int i = 0; i < 10000; i++) {
+			few.addSample(1);
+		}
+		ReservoirDistribution merged = (ReservoirDistribution) many.toDistribution().newMergedWith(few.toDistribution());
+		assertThat(merged.getSampleCount()).isEqualTo(100000);
+		int ones = 0;
+		for (double value : merged.values()) {
+			ones += (int) value;
+		}
+		assertThat(merged.values()).hasSize(1000);
+		assertThat(ones).isBetween(60, 140);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeOtherSize() {
+		new ReservoirAccumulator(100, 0).merge(new ReservoirAccumulator(200, 0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeOtherDecay() {
+		new ReservoirAccumulator(100, 0).merge(new ReservoirAccumulator(100, 0.015));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSize() {
+		ReservoirAccumulator.uniformFactory(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidDecay() {
+		ReservoirAccumulator.forwardDecayingFactory(100, 0);
+	}
+
+	@Test
+	public void testWithExtraSampleDoesNotModifyOriginal() {
+		ReservoirAccumulator reservoir = new ReservoirAccumulator(10, 0);
+		reservoir.addSample(1);
+		StatisticalDistribution original = reservoir.toDistribution();
+		StatisticalDistribution extended = original.newWithExtraSample(3);
+		assertThat(original.getSampleCount()).isEqualTo(1);
+		assertThat(((ReservoirDistribution) extended).values()).containsExactly(1d, 3d);
+	}
+
+	@Test
+	public void testSamplesOfThreadsafeStatistics() {
+		Statistics stats = StatisticsFactory.createThreadsafeStatistics(
+				ReservoirAccumulator.forwardDecayingFactory(100, 0.015), DistributionAccumulator.FACTORY);
+		for (int i = 1; i <= 10; i++) {
+			stats.addSample("payload.size", i);
+		}
+		ReservoirDistribution distribution = (ReservoirDistribution) stats.getSnapshot().findSampleDistribution("payload.size");
+		assertThat(distribution.values()).containsExactly(1d, 2d, 3d, 4d, 5d, 6d, 7d, 8d, 9d, 10d);
+		assertThat(distribution.getPercentile(90)).isEqualTo(9d);
+	}
+
+	@Test
+	public void testResetBehavesLikeNew() {
+		ReservoirAccumulator reservoir = new ReservoirAccumulator(10, 0);
+		for (int i = 0; i < 1000; i++) {
+			reservoir.addSample(1000 + i);
+		}
+		reservoir.reset();
+		for (int i = 1; i <= 5; i++) {
+			reservoir.addSample(i);
+		}
+		assertThat(reservoir.getRetainedValues()).isEqualTo(5);
+		assertThat(reservoir.toDistribution().getSampleCount()).isEqualTo(5);
+		assertThat(reservoir.toDistribution().getMaximum()).isEqualTo(5d);
+	}
+}
@@ -20,11 +20,42 @@ package nl.toefel.patan.singlethreadedimpl;
 
 import nl.toefel.patan.StatisticsApiTestBase;
 import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.Counter;
+import nl.toefel.patan.api.Generation;
+import nl.toefel.patan.api.SampleRecorder;
+import nl.toefel.patan.api.StatisticalDistribution;
 import nl.toefel.patan.api.Statistics;
+import org.junit.Test;
+
+import java.util.SortedMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 public class SingleThreadedStatisticsFacadeTest extends StatisticsApiTestBase {
     @Override
     protected Statistics createStatistics() {
         return StatisticsFactory.createSingleThreadedStatistics();
     }
+
+    @Test
+    public void testDetachedGenerationIsNotChangedByLaterRecords() {
+        SingleThreadedStatisticsFacade stats = new SingleThreadedStatisticsFacade();
+        Counter counter = stats.counter("event");
+        SampleRecorder recorder = stats.sampleRecorder("sample");
+        counter.increment();
+        recorder.record(1);
+
+        Generation<SortedMap<String, Long>> occurrences = stats.detachOccurrences();
+        Generation<SortedMap<String, StatisticalDistribution>> samples = stats.detachSamples();
+        counter.increment(5);
+        recorder.record(2);
+        stats.addOccurrence("other");
+
+        assertThat(occurrences.toSnapshot()).containsOnlyKeys("event");
+        assertThat(occurrences.toSnapshot().get("event")).isEqualTo(1L);
+        assertThat(samples.toSnapshot().get("sample").getSampleCount()).isEqualTo(1);
+        assertThat(stats.findOccurrence("event")).isEqualTo(5L);
+        assertThat(stats.findSampleDistribution("sample").getSampleCount()).isEqualTo(1);
+        assertThat(stats.detachDurations().toSnapshot()).isEmpty();
+    }
 }
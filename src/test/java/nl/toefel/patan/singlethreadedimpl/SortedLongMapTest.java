@@ -0,0 +1,90 @@
+package nl.toefel.patan.singlethreadedimpl;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SortedLongMapTest {
+
+	@Test
+	public void testSortsLikeTreeMap() {
+		String[] keys = {"d", "a", "c", "e", "b"};
+		long[] values = {4, 1, 3, 5, 2};
+		SortedMap<String, Long> expected = new TreeMap<String, Long>();
+		for (int i = 0; i < keys.length; i++) {
+			expected.put(keys[i], values[i]);
+		}
+		SortedLongMap map = SortedLongMap.sort(keys, values, keys.length);
+		assertThat(map).isEqualTo(expected);
+		assertThat(map.toString()).isEqualTo(expected.toString());
+		assertThat(map.hashCode()).isEqualTo(expected.hashCode());
+		assertThat(map.keySet()).containsExactly("a", "b", "c", "d", "e");
+		assertThat(map.get("c")).isEqualTo(3L);
+		assertThat(map.getLong("c")).isEqualTo(3L);
+		assertThat(map.get("x")).isNull();
+		assertThat(map.getLong("x")).isZero();
+		assertThat(map.firstKey()).isEqualTo("a");
+		assertThat(map.lastKey()).isEqualTo("e");
+	}
+
+	@Test
+	public void testSubMaps() {
+		SortedLongMap map = SortedLongMap.sort(new String[]{"b", "d", "a", "c", null}, new long[]{2, 4, 1, 3, 0}, 4);
+		assertThat(map).hasSize(4);
+		assertThat(map.subMap("b", "d").keySet()).containsExactly("b", "c");
+		assertThat(map.headMap("c").keySet()).containsExactly("a", "b");
+		assertThat(map.tailMap("bb").keySet()).containsExactly("c", "d");
+		assertThat(map.tailMap("bb").headMap("d").keySet()).containsExactly("c");
+		assertThat(map.tailMap("x")).isEmpty();
+	}
+
+	@Test
+	public void testModificationsAreSeenBySubMaps() {
+		SortedLongMap map = SortedLongMap.sort(new String[]{"b", "d", "a", "c"}, new long[]{2, 4, 1, 3}, 4);
+		SortedMap<String, Long> tail = map.tailMap("b");
+		assertThat(map.put("bb", 5L)).isNull();
+		assertThat(map.remove("d")).isEqualTo(4L);
+		assertThat(tail.remove("x")).isNull();
+		assertThat(map.keySet()).containsExactly("a", "b", "bb", "c");
+		assertThat(tail.keySet()).containsExactly("b", "bb", "c");
+		assertThat(map.getLong("bb")).isEqualTo(5L);
+		tail.clear();
+		assertThat(map.keySet()).containsExactly("a");
+	}
+
+	@Test
+	public void testModificationsThroughEntries() {
+		SortedLongMap map = SortedLongMap.sort(new String[]{"b", "a", "c"}, new long[]{2, 1, 3}, 3);
+		Iterator<Map.Entry<String, Long>> entries = map.entrySet().iterator();
+		entries.next().setValue(10L);
+		entries.next();
+		entries.remove();
+		assertThat(entries.next().getKey()).isEqualTo("c");
+		assertThat(map).hasSize(2);
+		assertThat(map.get("a")).isEqualTo(10L);
+		assertThat(map.containsKey("b")).isFalse();
+	}
+
+	@Test
+	public void testCounterStoreGrowsAndKeepsHandles() {
+		CounterStore store = new CounterStore();
+		nl.toefel.patan.api.Counter first = store.counter("name.0");
+		for (int i = 0; i < 10000; i++) {
+			store.addOccurrences("name." + i, i);
+			first.increment();
+		}
+		assertThat(store.findOccurrence("name.0")).isEqualTo(10000);
+		assertThat(store.findOccurrence("name.9999")).isEqualTo(9999);
+		SortedMap<String, Long> snapshot = store.getAllOccurrencesSnapshotAndReset();
+		assertThat(snapshot).hasSize(10000);
+		assertThat(snapshot.get("name.5000")).isEqualTo(5000L);
+		first.increment();
+		assertThat(store.getAllOccurrencesSnapshot()).containsOnlyKeys("name.0");
+		assertThat(store.findOccurrence("name.0")).isEqualTo(1);
+	}
+}
@@ -0,0 +1,99 @@
+package nl.toefel.patan.singlethreadedimpl;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpaceSavingCounterStoreTest {
+
+	@Test
+	public void testExactWhileNamesFit() {
+		SpaceSavingCounterStore store = new SpaceSavingCounterStore(3, 10, "other");
+		for (int i = 1; i <= 5; i++) {
+			store.addOccurrences("name" + i, i);
+		}
+		Map<String, Long> snapshot = store.getAllOccurrencesSnapshot();
+		assertThat(snapshot).containsOnlyKeys("name5", "name4", "name3", "other");
+		assertThat(snapshot.get("name5")).isEqualTo(5L);
+		assertThat(snapshot.get("other")).isEqualTo(3L);
+		assertThat(store.findOccurrence("name1")).isEqualTo(1L);
+		assertThat(store.findOccurrence("other")).isEqualTo(3L);
+		assertThat(store.findError("name1")).isZero();
+	}
+
+	@Test
+	public void testFindsHeavyHittersInSkewedStream() {
+		SpaceSavingCounterStore store = new SpaceSavingCounterStore(3, 30, "other");
+		Random random = new Random(3);
+		long[] heavy = new long[3];
+		for (int i = 0; i < 300000; i++) {
+			int kind = random.nextInt(10);
+			if (kind < 3) {
+				heavy[kind]++;
+				store.addOccurrence("heavy" + kind);
+			} else {
+				store.addOccurrence("rare" + random.nextInt(100000));
+			}
+		}
+		Map<String, Long> snapshot = store.getAllOccurrencesSnapshot();
+		assertThat(snapshot).containsOnlyKeys("heavy0", "heavy1", "heavy2", "other");
+		for (int i = 0; i < 3; i++) {
+			long estimate = snapshot.get("heavy" + i);
+			assertThat(estimate).isBetween(heavy[i], heavy[i] + store.getTotal() / 30);
+			assertThat(estimate - store.findError("heavy" + i)).isLessThanOrEqualTo(heavy[i]);
+		}
+		long sum = 0;
+		for (long value : snapshot.values()) {
+			sum += value;
+		}
+		assertThat(sum).isEqualTo(300000L);
+	}
+
+	@Test
+	public void testSlotsStayConsistentUnderChurn() {
+		SpaceSavingCounterStore store = new SpaceSavingCounterStore(10, 400, "other");
+		Random random = new Random(5);
+		long[] exact = new long[5000];
+		for (int i = 0; i < 200000; i++) {
+			int name = random.nextInt(8) == 0 ? random.nextInt(20) : random.nextInt(exact.length);
+			exact[name]++;
+			store.addOccurrence("name" + name);
+		}
+		long reported = 0;
+		for (Map.Entry<String, Long> entry : store.getAllOccurrencesSnapshot().entrySet()) {
+			reported += entry.getValue();
+			if (!entry.getKey().equals("other")) {
+				long count = exact[Integer.parseInt(entry.getKey().substring(4))];
+				assertThat(store.findOccurrence(entry.getKey())).isEqualTo(entry.getValue());
+				assertThat(entry.getValue()).isGreaterThanOrEqualTo(count);
+				assertThat(entry.getValue() - store.findError(entry.getKey())).isLessThanOrEqualTo(count);
+			}
+		}
+		assertThat(reported).isEqualTo(store.getTotal()).isEqualTo(200000L);
+		store.reset();
+		store.addOccurrence("name1");
+		assertThat(store.findOccurrence("name1")).isEqualTo(1L);
+	}
+
+	@Test
+	public void testReset() {
+		SpaceSavingCounterStore store = new SpaceSavingCounterStore(1, 1, "other");
+		store.counter("a").increment(2);
+		assertThat(store.getAllOccurrencesSnapshotAndReset()).containsOnlyKeys("a");
+		assertThat(store.getAllOccurrencesSnapshot()).isEmpty();
+		assertThat(store.findOccurrence("other")).isZero();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeOccurrences() {
+		new SpaceSavingCounterStore(1, 1, "other").addOccurrences("a", -1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCapacitySmallerThanK() {
+		new SpaceSavingCounterStore(10, 5, "other");
+	}
+}
@@ -0,0 +1,76 @@
+package nl.toefel.patan.singlethreadedimpl;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StringLongMapTest {
+
+	@Test
+	public void testRemoveKeepsOtherKeysReachable() {
+		StringLongMap map = new StringLongMap();
+		Map<String, Long> expected = new HashMap<String, Long>();
+		Random random = new Random(3);
+		for (int i = 0; i < 100000; i++) {
+			String key = "name." + random.nextInt(500);
+			if (random.nextInt(3) == 0) {
+				Long removed = expected.remove(key);
+				assertThat(map.remove(key)).isEqualTo(removed == null ? 0L : removed);
+			} else {
+				int slot = map.slotOf(key);
+				if (slot < 0) {
+					slot = map.insert(key);
+				}
+				map.addAt(slot, i);
+				Long previous = expected.get(key);
+				expected.put(key, (previous == null ? 0L : previous) + i);
+			}
+		}
+		assertThat(map.size()).isEqualTo(expected.size());
+		assertThat(map.toSortedMap()).isEqualTo(expected);
+	}
+
+	@Test
+	public void testRemoveMovesSlots() {
+		StringLongMap map = new StringLongMap();
+		map.insert("a");
+		int moves = map.moves();
+		assertThat(map.remove("b")).isZero();
+		assertThat(map.moves()).isEqualTo(moves);
+		map.remove("a");
+		assertThat(map.moves()).isEqualTo(moves + 1);
+		assertThat(map.slotOf("a")).isNegative();
+	}
+
+	@Test
+	public void testStampsMoveWithTheirKeys() {
+		StringLongMap map = new StringLongMap(0, true);
+		Map<String, Long> stamped = new HashMap<String, Long>();
+		for (int i = 0; i < 1000; i++) {
+			int slot = map.insert("name." + i);
+			map.setAt(slot, i);
+			map.stampAt(slot, i % 2 + 1);
+			if (i % 2 == 1) {
+				stamped.put("name." + i, (long) i);
+			}
+		}
+		for (int i = 0; i < 1000; i += 3) {
+			map.remove("name." + i);
+			stamped.remove("name." + i);
+		}
+		assertThat(map.toSortedMapStampedAbove(1)).isEqualTo(stamped);
+		assertThat(map.toSortedMapStampedAbove(2)).isEmpty();
+	}
+
+	@Test
+	public void testEndOfPrefix() {
+		assertThat(NameIndex.endOf("jms.")).isEqualTo("jms/");
+		assertThat(NameIndex.endOf("a" + Character.MAX_VALUE)).isEqualTo("b");
+		assertThat(NameIndex.endOf("")).isNull();
+		assertThat(NameIndex.endOf(String.valueOf(Character.MAX_VALUE))).isNull();
+	}
+}
@@ -0,0 +1,48 @@
+package nl.toefel.patan.singlethreadedimpl;
+
+import nl.toefel.patan.api.Timer;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimerCacheTest {
+
+	@Test
+	public void testTimersAreCached() {
+		TimerCache cache = new TimerCache(new SingleThreadedStatisticsFacade());
+		Timer timer = cache.timer("task");
+		assertThat(cache.timer("task")).isSameAs(timer);
+		assertThat(cache.size()).isEqualTo(1);
+	}
+
+	@Test
+	public void testCacheIsBounded() {
+		SingleThreadedStatisticsFacade statistics = new SingleThreadedStatisticsFacade();
+		TimerCache cache = new TimerCache(statistics, 10);
+		for (int i = 0; i < 100; i++) {
+			cache.timer("task." + i).recordElapsedTime(new Runnable() {
+				@Override
+				public void run() {
+				}
+			});
+		}
+		assertThat(cache.size()).isEqualTo(10);
+		assertThat(cache.timer("task.50")).isNotSameAs(cache.timer("task.50"));
+		assertThat(statistics.getAllDurationsSnapshot()).hasSize(100).containsKey("task.99.ok");
+	}
+
+	@Test
+	public void testUncachedTimersRespectCardinalityLimit() {
+		SingleThreadedStatisticsFacade statistics = new SingleThreadedStatisticsFacade(DistributionAccumulator.FACTORY, DistributionAccumulator.FACTORY,
+				new CardinalityLimit(5, "overflow"));
+		TimerCache cache = new TimerCache(statistics, 0);
+		for (int i = 0; i < 100; i++) {
+			cache.timer("task." + i).recordElapsedTime(new Runnable() {
+				@Override
+				public void run() {
+				}
+			});
+		}
+		assertThat(statistics.getAllDurationsSnapshot()).hasSize(6).containsKey("overflow");
+	}
+}
@@ -0,0 +1,162 @@
+package nl.toefel.patan.taggedimpl;
+
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.StatisticalDistribution;
+import nl.toefel.patan.singlethreadedimpl.CardinalityLimit;
+import org.junit.Test;
+
+import java.util.SortedMap;
+
+import static nl.toefel.patan.singlethreadedimpl.TimingHelper.assertClose;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class TagsTest {
+
+	private static final Tags GET_OK = Tags.of("method", "GET", "status", "200");
+	private static final Tags POST_OK = Tags.of("status", "200", "method", "POST");
+	private static final Tags GET_ERROR = Tags.of("method", "GET", "status", "500");
+
+	@Test
+	public void testTagsAreSortedAndInterned() {
+		assertThat(Tags.of("status", "200", "method", "GET")).isSameAs(GET_OK);
+		assertThat(GET_OK.toString()).isEqualTo("{method=GET,status=200}");
+		assertThat(GET_OK.get("status")).isEqualTo("200");
+		assertThat(GET_OK.get("host")).isNull();
+		assertThat(GET_OK.size()).isEqualTo(2);
+		assertThat(Tags.of()).isSameAs(Tags.EMPTY);
+		assertThat(Tags.EMPTY.toString()).isEqualTo("{}");
+		assertThat(Tags.of("method", "GET").and("status", "200")).isSameAs(GET_OK);
+		assertThat(GET_OK.and("status", "500")).isSameAs(GET_ERROR);
+		assertThat(GET_OK.only("status")).isEqualTo(Tags.of("status", "200"));
+		assertThat(GET_OK.only("status")).isSameAs(Tags.of("status", "200"));
+		assertThat(GET_OK.only("method", "status", "host")).isSameAs(GET_OK);
+		assertThat(GET_OK.only()).isSameAs(Tags.EMPTY);
+	}
+
+	@Test
+	public void testQualifiedNames() {
+		assertThat(GET_OK.qualify("http.requests")).isEqualTo("http.requests{method=GET,status=200}");
+		assertThat(GET_OK.qualify("http.requests")).isSameAs(GET_OK.qualify("http.requests"));
+		assertThat(Tags.EMPTY.qualify("http.requests")).isEqualTo("http.requests");
+		assertThat(Tags.parse("http.requests{method=GET,status=200}")).isSameAs(GET_OK);
+		assertThat(Tags.parse("http.requests")).isSameAs(Tags.EMPTY);
+		for (int i = 0; i < 100; i++) {
+			assertThat(GET_OK.qualify("http.requests." + i)).isEqualTo("http.requests." + i + "{method=GET,status=200}");
+		}
+	}
+
+	@Test
+	public void testReadingDoesNotIntern() {
+		Tags parsed = Tags.parse("http.requests{read=parsed}");
+		Tags grouped = Tags.parse("http.requests{method=GET,read=grouped}").only("read");
+		assertThat(Tags.of("read", "parsed")).isEqualTo(parsed).isNotSameAs(parsed);
+		assertThat(Tags.of("read", "grouped")).isEqualTo(grouped).isNotSameAs(grouped);
+		assertThat(Tags.parse("http.requests{read=parsed}")).isSameAs(Tags.of("read", "parsed"));
+	}
+
+	@Test
+	public void testInternTableIsLimited() {
+		CardinalityLimit limit = new CardinalityLimit(2, "{overflow=true}");
+		TagTable table = new TagTable(limit);
+		Tags a = Tags.parse("n{a=1}");
+		Tags b = Tags.parse("n{b=2,c=3}");
+		assertThat(table.intern(a)).isSameAs(a);
+		assertThat(table.intern(b)).isSameAs(b);
+		assertThat(table.intern(Tags.parse("n{a=1}"))).isSameAs(a);
+		assertThat(table.intern(Tags.parse("n{d=4}"))).isNull();
+		assertThat(limit.getRejectedCount()).isEqualTo(1);
+		assertThat(table.intern(Tags.OVERFLOW)).isSameAs(Tags.OVERFLOW);
+		assertThat(table.find(Tags.pairHash("a", "1"), "a", "1", null, null)).isSameAs(a);
+		assertThat(table.find(Tags.pairHash("c", "3") + Tags.pairHash("b", "2"), "c", "3", "b", "2")).isSameAs(b);
+		assertThat(table.find(Tags.pairHash("c", "3") + Tags.pairHash("b", "2"), new String[]{"c", "3", "b", "2"})).isSameAs(b);
+		assertThat(table.find(Tags.pairHash("d", "4"), "d", "4", null, null)).isNull();
+	}
+
+	@Test
+	public void testTableGrows() {
+		TagTable table = new TagTable(CardinalityLimit.NONE);
+		for (int i = 0; i < 1000; i++) {
+			table.intern(Tags.parse("n{i=" + i + "}"));
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertThat(table.find(Tags.pairHash("i", "" + i), "i", "" + i, null, null).get("i")).isEqualTo("" + i);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReservedCharacter() {
+		Tags.of("path", "/a,b");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicateKey() {
+		Tags.of("method", "GET", "method", "POST");
+	}
+
+	@Test
+	public void testRepeatedKeysNeverMatch() {
+		assertThat(GET_OK.matches("method", "GET", "status", "200")).isTrue();
+		assertThat(GET_OK.matches("method", "GET", "method", "GET")).isFalse();
+		assertThat(GET_OK.matches(new String[]{"status", "200", "method", "GET"})).isTrue();
+		assertThat(GET_OK.matches(new String[]{"method", "GET", "method", "GET"})).isFalse();
+		assertThat(GET_OK.matches(new String[]{"method", "GET"})).isFalse();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOddNumberOfArguments() {
+		Tags.of("method");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNameWithBrace() {
+		GET_OK.qualify("http{");
+	}
+
+	@Test
+	public void testRecordAndGroup() {
+		TaggedStatistics statistics = new TaggedStatistics(StatisticsFactory.createConcurrentStatistics());
+		statistics.addOccurrence("http.requests", GET_OK);
+		statistics.addOccurrences("http.requests", POST_OK, 2);
+		statistics.counter("http.requests", GET_ERROR).increment(4);
+		statistics.addOccurrence("http.requests");
+		statistics.addOccurrence("http.requests.other", GET_OK);
+		for (int i = 1; i <= 10; i++) {
+			statistics.addSample("http.size", GET_OK, i);
+			statistics.sampleRecorder("http.size", POST_OK).record(10 + i);
+			statistics.addSample("http.size", GET_ERROR, 100);
+		}
+		assertThat(statistics.findOccurrence("http.requests", POST_OK)).isEqualTo(2);
+		assertThat(statistics.findSampleDistribution("http.size", GET_OK).getSampleCount()).isEqualTo(10);
+
+		TaggedSnapshot snapshot = statistics.getTaggedSnapshot();
+		assertThat(snapshot.findOccurrences("http.requests")).containsExactly(
+				entry(Tags.EMPTY, 1L), entry(GET_OK, 1L), entry(GET_ERROR, 4L), entry(POST_OK, 2L));
+		assertThat(snapshot.groupOccurrences("http.requests", "status")).containsExactly(
+				entry(Tags.EMPTY, 1L), entry(Tags.of("status", "200"), 3L), entry(Tags.of("status", "500"), 4L));
+		assertThat(snapshot.groupOccurrences("http.requests")).containsExactly(entry(Tags.EMPTY, 8L));
+		assertThat(snapshot.findOccurrences("http")).isEmpty();
+
+		SortedMap<Tags, StatisticalDistribution> byStatus = snapshot.groupSamples("http.size", "status");
+		StatisticalDistribution ok = byStatus.get(Tags.of("status", "200"));
+		assertThat(ok.getSampleCount()).isEqualTo(20);
+		assertClose("mean", 10.5, ok.getMean());
+		assertThat(ok.getMaximum()).isEqualTo(20d);
+		assertThat(byStatus.get(Tags.of("status", "500")).getMean()).isEqualTo(100d);
+		assertThat(snapshot.groupSamples("http.size").get(Tags.EMPTY).getSampleCount()).isEqualTo(30);
+	}
+
+	@Test
+	public void testDurations() {
+		TaggedStatistics statistics = new TaggedStatistics(StatisticsFactory.createThreadsafeStatistics());
+		statistics.recordElapsedTime("http.duration", GET_OK, statistics.startStopwatch());
+		statistics.recordElapsedNanos("http.duration", POST_OK, System.nanoTime());
+		statistics.timer("http.duration", GET_OK).recordElapsedTime(statistics.startStopwatch());
+		assertThat(statistics.findDuration("http.duration", GET_OK).getSampleCount()).isEqualTo(2);
+		TaggedSnapshot snapshot = statistics.getTaggedSnapshotAndReset();
+		assertThat(snapshot.groupDurations("http.duration", "method").keySet()).containsExactly(
+				Tags.of("method", "GET"), Tags.of("method", "POST"));
+		assertThat(snapshot.groupDurations("http.duration").get(Tags.EMPTY).getSampleCount()).isEqualTo(3);
+		assertThat(statistics.getSnapshot().getDurations()).isEmpty();
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+
+package nl.toefel.patan.threadlocalimpl;
+
+import nl.toefel.patan.StatisticsApiTestBase;
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.Statistics;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ThreadLocalStatisticsTest extends StatisticsApiTestBase {
+    @Override
+    protected Statistics createStatistics() {
+        return StatisticsFactory.createThreadLocalStatistics();
+    }
+
+    @Test
+    public void testValuesOfDeadThreadsAreKept() throws InterruptedException {
+        final Statistics stats = createStatistics();
+        stats.addOccurrence("event");
+        stats.addSample("sample", 1);
+        Thread recorder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stats.addOccurrences("event", 2);
+                stats.addSample("sample", 3);
+            }
+        });
+        recorder.start();
+        recorder.join();
+
+        assertThat(stats.getAllOccurrencesSnapshot().get("event")).isEqualTo(3L);
+        assertThat(stats.getAllSamplesSnapshot().get("sample").getSampleCount()).isEqualTo(2);
+        assertThat(stats.getAllSamplesSnapshot().get("sample").getMean()).isEqualTo(2d);
+
+        assertThat(stats.getAllOccurrencesSnapshotAndReset().get("event")).isEqualTo(3L);
+        assertThat(stats.getAllOccurrencesSnapshot()).isEmpty();
+        assertThat(stats.findOccurrence("event")).isEqualTo(0L);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package nl.toefel.patan.topkimpl;
+
+import nl.toefel.patan.StatisticsApiTestBase;
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.Counter;
+import nl.toefel.patan.api.Statistics;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TopKStatisticsTest extends StatisticsApiTestBase {
+
+    @Override
+    protected Statistics createStatistics() {
+        return new TopKStatistics(StatisticsFactory.createConcurrentStatistics()).withPrefix("customer.", 2);
+    }
+
+    @Test
+    public void testPrefixedNamesAreReportedAsTopKAndOther() {
+        TopKStatistics stats = new TopKStatistics(StatisticsFactory.createConcurrentStatistics()).withPrefix("customer.", 2, 100);
+        stats.addOccurrences("customer.a", 10);
+        stats.addOccurrences("customer.b", 5);
+        stats.addOccurrences("customer.c", 2);
+        stats.addOccurrence("customer.d");
+        stats.addOccurrences("requests", 7);
+
+        Map<String, Long> occurrences = stats.getAllOccurrencesSnapshot();
+        assertThat(occurrences).containsOnlyKeys("customer.a", "customer.b", "customer.other", "requests");
+        assertThat(occurrences.get("customer.a")).isEqualTo(10L);
+        assertThat(occurrences.get("customer.b")).isEqualTo(5L);
+        assertThat(occurrences.get("customer.other")).isEqualTo(3L);
+        assertThat(stats.findOccurrence("customer.c")).isEqualTo(2L);
+        assertThat(stats.getSnapshot().findOccurrence("requests")).isEqualTo(7L);
+    }
+
+    @Test
+    public void testLongestPrefixWins() {
+        TopKStatistics stats = new TopKStatistics(StatisticsFactory.createConcurrentStatistics())
+                .withPrefix("url", 1)
+                .withPrefix("url.api.", 1);
+        Counter counter = stats.counter("url.api.users");
+        counter.increment(3);
+        stats.addOccurrence("url.home");
+        stats.addOccurrence("urls");
+
+        Map<String, Long> occurrences = stats.getAllOccurrencesSnapshotAndReset();
+        assertThat(occurrences.get("url.api.users")).isEqualTo(3L);
+        assertThat(occurrences.get("url.other")).isEqualTo(1L);
+        assertThat(occurrences).hasSize(3);
+        assertThat(stats.getAllOccurrencesSnapshot()).isEmpty();
+        counter.increment();
+        assertThat(stats.findOccurrence("url.api.users")).isEqualTo(1L);
+    }
+
+    @Test
+    public void testBoundedMemoryWithErrorBound() {
+        TopKStatistics stats = new TopKStatistics(StatisticsFactory.createConcurrentStatistics()).withPrefix("customer.", 5, 50);
+        for (int i = 0; i < 100000; i++) {
+            stats.addOccurrence("customer.heavy");
+            stats.addOccurrence("customer." + i);
+        }
+        Map<String, Long> occurrences = stats.getAllOccurrencesSnapshot();
+        assertThat(occurrences).hasSize(6);
+        long error = stats.findOccurrenceError("customer.heavy");
+        assertThat(error).isLessThanOrEqualTo(200000 / 50);
+        assertThat(occurrences.get("customer.heavy")).isBetween(100000L, 100000L + error);
+    }
+}
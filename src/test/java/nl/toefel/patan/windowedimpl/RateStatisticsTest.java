@@ -0,0 +1,148 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package nl.toefel.patan.windowedimpl;
+
+import nl.toefel.patan.StatisticsApiTestBase;
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.MovingRates;
+import nl.toefel.patan.api.Counter;
+import nl.toefel.patan.api.Statistics;
+import nl.toefel.patan.singlethreadedimpl.CardinalityLimit;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class RateStatisticsTest extends StatisticsApiTestBase {
+
+    private long now = 1000000;
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    };
+
+    @Override
+    protected Statistics createStatistics() {
+        return StatisticsFactory.createRateStatistics();
+    }
+
+    private RateStatistics createRated() {
+        return new RateStatistics(StatisticsFactory.createConcurrentStatistics(), clock);
+    }
+
+    @Test
+    public void testRatesAreZeroUntilTheFirstTick() {
+        RateStatistics stats = createRated();
+        stats.addOccurrences("event", 10);
+        assertThat(stats.findRates("event").getOneMinuteRate()).isEqualTo(0d);
+        assertThat(stats.findRates("unknown").getFifteenMinuteRate()).isEqualTo(0d);
+    }
+
+    @Test
+    public void testSteadyRate() {
+        RateStatistics stats = createRated();
+        for (int second = 0; second < 1800; second++) {
+            stats.addOccurrences("event", 4);
+            now += 1000;
+            stats.findRates("event");
+        }
+        MovingRates rates = stats.findRates("event");
+        assertThat(rates.getOneMinuteRate()).isCloseTo(4d, within(0.001));
+        assertThat(rates.getFiveMinuteRate()).isCloseTo(4d, within(0.001));
+        assertThat(rates.getFifteenMinuteRate()).isCloseTo(4d, within(0.01));
+    }
+
+    @Test
+    public void testRatesDecayWhenNothingOccurs() {
+        RateStatistics stats = createRated();
+        stats.counter("event").increment(50);
+        now += RateMeter.TICK_MILLIS;
+        assertThat(stats.findRates("event").getOneMinuteRate()).isEqualTo(10d);
+
+        now += 60000;
+        MovingRates rates = stats.findRates("event");
+        assertThat(rates.getOneMinuteRate()).isCloseTo(10d * Math.exp(-1), within(0.0001));
+        assertThat(rates.getFiveMinuteRate()).isCloseTo(10d * Math.exp(-0.2), within(0.0001));
+        assertThat(rates.getFifteenMinuteRate()).isGreaterThan(rates.getFiveMinuteRate());
+    }
+
+    @Test
+    public void testRatesAreKeptBySnapshotAndReset() {
+        RateStatistics stats = createRated();
+        stats.addOccurrences("event", 50);
+        now += RateMeter.TICK_MILLIS;
+        assertThat(stats.getSnapshotAndReset().findRates("event").getOneMinuteRate()).isEqualTo(10d);
+        assertThat(stats.getSnapshot().getOccurrences()).isEmpty();
+        assertThat(stats.getSnapshot().getRates()).containsKey("event");
+
+        stats.reset();
+        assertThat(stats.getAllRatesSnapshot().get("event").getOneMinuteRate()).isEqualTo(0d);
+    }
+
+    @Test
+    public void testIdleMetersAreDropped() {
+        RateStatistics stats = createRated();
+        Counter counter = stats.counter("event");
+        counter.increment(50);
+        stats.addOccurrence("other");
+        now += RateMeter.TICK_MILLIS;
+        assertThat(stats.getAllRatesSnapshot()).containsOnlyKeys("event", "other");
+
+        now += 3 * 60 * 60 * 1000L;
+        assertThat(stats.getAllRatesSnapshot()).isEmpty();
+        assertThat(stats.meterCount()).isEqualTo(0);
+
+        counter.increment(5);
+        now += RateMeter.TICK_MILLIS;
+        assertThat(stats.getAllRatesSnapshot()).containsOnlyKeys("event");
+        assertThat(stats.findRates("event").getOneMinuteRate()).isEqualTo(1d);
+        assertThat(stats.findOccurrence("event")).isEqualTo(55);
+    }
+
+    @Test
+    public void testDetachedMeterRefusesMarks() {
+        RateMeter meter = new RateMeter("event", 0);
+        assertThat(meter.mark(5)).isTrue();
+        assertThat(meter.ratesOrDetach(RateMeter.TICK_MILLIS).getOneMinuteRate()).isEqualTo(1d);
+        assertThat(meter.ratesOrDetach(3 * 60 * 60 * 1000L)).isNull();
+        assertThat(meter.mark(3)).isFalse();
+        assertThat(meter.drain()).isEqualTo(3);
+        assertThat(meter.ratesOrDetach(4 * 60 * 60 * 1000L)).isNull();
+    }
+
+    @Test
+    public void testNamesAreLimited() {
+        CardinalityLimit limit = new CardinalityLimit(2, "overflow");
+        RateStatistics stats = new RateStatistics(StatisticsFactory.createConcurrentStatistics(limit), clock, limit);
+        for (String name : new String[]{"a", "b", "c", "d"}) {
+            stats.addOccurrences(name, 5);
+        }
+        now += RateMeter.TICK_MILLIS;
+        assertThat(stats.getAllRatesSnapshot()).containsOnlyKeys("a", "b", "overflow");
+        assertThat(stats.getSnapshot().getOccurrences()).containsOnlyKeys("a", "b", "overflow");
+        assertThat(stats.findRates("overflow").getOneMinuteRate()).isEqualTo(2d);
+
+        now += 3 * 60 * 60 * 1000L;
+        assertThat(stats.getAllRatesSnapshot()).isEmpty();
+        stats.addOccurrence("e");
+        assertThat(stats.getAllRatesSnapshot()).containsOnlyKeys("e");
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *    Copyright 2016 Christophe Hesters
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package nl.toefel.patan.windowedimpl;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StripedLongTest {
+
+	@Test
+	public void testUncontendedAddsDoNotAllocateCells() {
+		StripedLong sum = new StripedLong();
+		for (int i = 0; i < 1000; i++) {
+			sum.add(2);
+		}
+		assertThat(sum.isStriped()).isFalse();
+		assertThat(sum.sumThenReset()).isEqualTo(2000);
+		assertThat(sum.sumThenReset()).isEqualTo(0);
+	}
+
+	@Test
+	public void testConcurrentAddsAreNotLost() throws InterruptedException {
+		final StripedLong sum = new StripedLong();
+		final int threads = 8;
+		final int addsPerThread = 100000;
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			workers[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < addsPerThread; i++) {
+						sum.add(1);
+					}
+				}
+			});
+			workers[t].start();
+		}
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		assertThat(sum.sumThenReset()).isEqualTo((long) threads * addsPerThread);
+		assertThat(sum.sumThenReset()).isEqualTo(0);
+	}
+}
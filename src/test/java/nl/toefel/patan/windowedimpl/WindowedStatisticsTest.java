@@ -0,0 +1,159 @@
+/*
+ *
+ *     Copyright 2016 Christophe Hesters
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package nl.toefel.patan.windowedimpl;
+
+import nl.toefel.patan.StatisticsApiTestBase;
+import nl.toefel.patan.StatisticsFactory;
+import nl.toefel.patan.api.Counter;
+import nl.toefel.patan.api.SampleRecorder;
+import nl.toefel.patan.api.Statistics;
+import nl.toefel.patan.singlethreadedimpl.DistributionAccumulator;
+import nl.toefel.patan.singlethreadedimpl.SampleAccumulator;
+import nl.toefel.patan.singlethreadedimpl.SampleAccumulatorFactory;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WindowedStatisticsTest extends StatisticsApiTestBase {
+
+    private long now = 1000000;
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    };
+
+    @Override
+    protected Statistics createStatistics() {
+        return StatisticsFactory.createWindowedStatistics();
+    }
+
+    private WindowedStatistics createWindowed() {
+        return new WindowedStatistics(StatisticsFactory.createConcurrentStatistics(), 1000, 60,
+                DistributionAccumulator.FACTORY, DistributionAccumulator.FACTORY, clock);
+    }
+
+    @Test
+    public void testWindowOnlyContainsRecentBuckets() {
+        WindowedStatistics stats = createWindowed();
+        stats.addOccurrence("event");
+        stats.addSample("sample", 1);
+        now += 10000;
+        stats.addOccurrences("event", 2);
+        stats.addSample("sample", 3);
+
+        assertThat(stats.findOccurrence("event", 5000)).isEqualTo(2L);
+        assertThat(stats.findOccurrence("event", 20000)).isEqualTo(3L);
+        assertThat(stats.findSampleDistribution("sample", 5000).getSampleCount()).isEqualTo(1);
+        assertThat(stats.findSampleDistribution("sample", 5000).getMean()).isEqualTo(3d);
+        assertThat(stats.findSampleDistribution("sample", 20000).getMean()).isEqualTo(2d);
+        assertThat(stats.findOccurrence("event")).isEqualTo(3L);
+    }
+
+    @Test
+    public void testBucketsExpireAfterTheRingWrapsAround() {
+        WindowedStatistics stats = createWindowed();
+        stats.addOccurrence("event");
+        now += 60000;
+        stats.addOccurrences("event", 5);
+
+        assertThat(stats.findOccurrence("event", 60000)).isEqualTo(5L);
+        now += 60000;
+        assertThat(stats.findOccurrence("event", 60000)).isEqualTo(0L);
+        assertThat(stats.getAllOccurrencesSnapshot(60000)).isEmpty();
+        assertThat(stats.findOccurrence("event")).isEqualTo(6L);
+    }
+
+    @Test
+    public void testDurationWindow() {
+        WindowedStatistics stats = createWindowed();
+        stats.recordElapsedTime("task", stats.startStopwatch());
+        stats.timer("task").recordElapsedTime(stats.startStopwatch());
+
+        assertThat(stats.findDuration("task", 1000).getSampleCount()).isEqualTo(2);
+        assertThat(stats.getAllDurationsSnapshot(1000)).containsKey("task");
+        assertThat(stats.findDuration("unknown", 1000).getSampleCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testResetAndResetSnapshots() {
+        WindowedStatistics stats = createWindowed();
+        Counter counter = stats.counter("event");
+        counter.increment(4);
+        stats.getAllOccurrencesSnapshotAndReset();
+        assertThat(stats.findOccurrence("event", 1000)).isEqualTo(4L);
+
+        stats.reset();
+        assertThat(stats.findOccurrence("event", 1000)).isEqualTo(0L);
+        counter.increment();
+        assertThat(stats.findOccurrence("event", 1000)).isEqualTo(1L);
+        assertThat(stats.findOccurrence("event")).isEqualTo(1L);
+    }
+
+    @Test
+    public void testRotationReusesAccumulators() {
+        final int[] created = new int[1];
+        SampleAccumulatorFactory countingFactory = new SampleAccumulatorFactory() {
+            @Override
+            public SampleAccumulator create(String name) {
+                created[0]++;
+                return DistributionAccumulator.FACTORY.create(name);
+            }
+        };
+        WindowedStatistics stats = new WindowedStatistics(StatisticsFactory.createConcurrentStatistics(), 1000, 3,
+                countingFactory, countingFactory, clock);
+        for (int i = 0; i < 30; i++) {
+            stats.addSample("sample", i);
+            now += 1000;
+        }
+        assertThat(created[0]).isEqualTo(3);
+        now -= 1000;
+        assertThat(stats.findSampleDistribution("sample", 1000).getMean()).isEqualTo(29d);
+        assertThat(stats.findSampleDistribution("sample", 3000).getSampleCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testRingsOfIdleNamesAreRemoved() {
+        WindowedStatistics stats = createWindowed();
+        for (int i = 0; i < 100; i++) {
+            stats.addOccurrence("event." + i);
+            stats.addSample("sample." + i, i);
+        }
+        Counter counter = stats.counter("event.0");
+        SampleRecorder recorder = stats.sampleRecorder("sample.0");
+        assertThat(stats.ringCount()).isEqualTo(200);
+
+        now += 2 * 60000;
+        assertThat(stats.getAllOccurrencesSnapshot(60000)).isEmpty();
+        assertThat(stats.ringCount()).isEqualTo(0);
+
+        counter.increment(2);
+        recorder.record(5);
+        assertThat(stats.findOccurrence("event.0", 1000)).isEqualTo(2L);
+        assertThat(stats.findSampleDistribution("sample.0", 1000).getMean()).isEqualTo(5d);
+        assertThat(stats.ringCount()).isEqualTo(2);
+        assertThat(stats.findOccurrence("event.0")).isEqualTo(3L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWindowLongerThanRing() {
+        createWindowed().findOccurrence("event", 60001);
+    }
+}